@@ -0,0 +1,16 @@
+#!/bin/bash
+# Runs the in-JVM end-to-end harness: marketplace and sellers in one process on loopback.
+# Arguments are key=value overrides, e.g.
+#   ./benchmarks/harness.sh loadgen.rate.per.second=200 harness.profile=light harness.sellers=3
+set -e
+
+cd "$(dirname "$0")/.."
+
+if [ ! -f benchmarks/target/benchmarks.jar ] || [ "$REBUILD" = "1" ]; then
+    for module in common seller marketplace proxy; do
+        (cd "$module" && mvn -q -B install -DskipTests)
+    done
+    (cd benchmarks && mvn -q -B package)
+fi
+
+java -Xms512m -Xmx512m -cp benchmarks/target/benchmarks.jar marketplace.ThroughputHarness "$@"
@@ -0,0 +1,25 @@
+#!/bin/bash
+# Builds the benchmark jar and runs it, writing JMH's JSON results to
+# benchmarks/results/<commit>-<timestamp>.json so runs can be compared across commits.
+# Extra arguments go to JMH, e.g. ./benchmarks/run.sh JsonParserBenchmark -f 1
+set -e
+
+cd "$(dirname "$0")/.."
+
+echo "========================================="
+echo "Building benchmarks"
+echo "========================================="
+for module in common seller marketplace proxy; do
+    (cd "$module" && mvn -q -B install -DskipTests)
+done
+(cd benchmarks && mvn -q -B package)
+
+mkdir -p benchmarks/results
+COMMIT=$(git rev-parse --short HEAD 2>/dev/null || echo "unknown")
+if ! git diff --quiet HEAD 2>/dev/null; then
+    COMMIT="${COMMIT}-dirty"
+fi
+RESULT="benchmarks/results/${COMMIT}-$(date +%Y%m%d-%H%M%S).json"
+
+echo "Running benchmarks, results in $RESULT"
+java -jar benchmarks/target/benchmarks.jar -rf json -rff "$RESULT" "$@"
@@ -0,0 +1,16 @@
+#!/bin/bash
+# Runs a deterministic simulation on virtual time: sellers, sagas, retries and breakers on one
+# thread, replayable from simulation.seed. Arguments are key=value overrides, e.g.
+#   ./benchmarks/simulate.sh simulation.seed=7 loadgen.duration.seconds=7200 harness.profile=light
+set -e
+
+cd "$(dirname "$0")/.."
+
+if [ ! -f benchmarks/target/benchmarks.jar ] || [ "$REBUILD" = "1" ]; then
+    for module in common seller marketplace proxy; do
+        (cd "$module" && mvn -q -B install -DskipTests)
+    done
+    (cd benchmarks && mvn -q -B package)
+fi
+
+java -Xms512m -Xmx1g -cp benchmarks/target/benchmarks.jar marketplace.DeterministicSimulation "$@"
@@ -0,0 +1,81 @@
+package common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Overhead {@link CircuitBreaker#execute} adds to every seller request, for both breaker
+ * types: the closed path with an already completed operation, and the rejection path of an
+ * open breaker.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+UseG1GC", "-XX:+AlwaysPreTouch"})
+@State(Scope.Benchmark)
+public class CircuitBreakerBenchmark {
+    private static final Supplier<CompletableFuture<String>> SUCCEEDING =
+        () -> CompletableFuture.completedFuture("ok");
+    private static final Supplier<CompletableFuture<String>> FAILING =
+        () -> CompletableFuture.failedFuture(new RuntimeException("seller failed"));
+
+    @Param({"count", "sliding"})
+    public String type;
+
+    private AbstractCircuitBreaker closed;
+    private AbstractCircuitBreaker open;
+
+    @Setup
+    public void setUp() {
+        Log.setLevel(Log.Level.ERROR);
+        closed = create("closed");
+        open = create("open");
+        // Trip the breaker; the open timeout outlasts the run so it stays open
+        for (int i = 0; i < 100 && open.getState() != CircuitBreaker.State.OPEN; i++) {
+            open.execute(FAILING, "trip");
+        }
+        if (open.getState() != CircuitBreaker.State.OPEN) {
+            throw new IllegalStateException("Breaker did not open: " + open.getStats());
+        }
+    }
+
+    private AbstractCircuitBreaker create(String name) {
+        long openTimeoutMs = TimeUnit.HOURS.toMillis(1);
+        if ("sliding".equals(type)) {
+            return new SlidingWindowCircuitBreaker(name, SlidingWindowCircuitBreaker.WindowType.COUNT,
+                                                   50, 10, 50f, 80f, 3000, openTimeoutMs, 3);
+        }
+        return new CircuitBreaker(name, 5, openTimeoutMs, 3);
+    }
+
+    @Benchmark
+    public CompletableFuture<String> executeClosed() {
+        return closed.execute(SUCCEEDING, "benchmark");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CompletableFuture<String> executeClosedContended() {
+        return closed.execute(SUCCEEDING, "benchmark");
+    }
+
+    @Benchmark
+    public CompletableFuture<String> executeOpen() {
+        return open.execute(SUCCEEDING, "benchmark");
+    }
+}
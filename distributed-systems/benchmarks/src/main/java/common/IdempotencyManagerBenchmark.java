@@ -0,0 +1,106 @@
+package common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Duplicate-message checks under contention. The key space is pre-filled so lookups hit; the
+ * mixed group has readers checking while writers record new results, the access pattern of a
+ * seller absorbing retries and hedges.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+UseG1GC", "-XX:+AlwaysPreTouch"})
+@State(Scope.Benchmark)
+public class IdempotencyManagerBenchmark {
+    private static final String RESULT = "{\"type\":\"RESERVE\",\"success\":\"true\",\"reservationId\":\"seller1-R1\"}";
+
+    @Param({"1000", "100000"})
+    public int keySpace;
+
+    private IdempotencyManager manager;
+    private String[] messageIds;
+
+    @Setup
+    public void setUp() {
+        manager = new IdempotencyManager();
+        // Fixed seed so every run sees the same IDs in the same order
+        Random random = new Random(42);
+        messageIds = new String[keySpace];
+        for (int i = 0; i < keySpace; i++) {
+            messageIds[i] = new UUID(random.nextLong(), random.nextLong()).toString();
+            manager.markAsProcessed(messageIds[i], RESULT);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    /**
+     * Per-thread cursor over the key space, so threads do not share a counter.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        @Setup
+        public void setUp() {
+            next = (int) (Thread.currentThread().getId() * 7919);
+        }
+
+        String nextId(String[] ids) {
+            next = (next + 1) % ids.length;
+            return ids[next];
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String lookupHit(Cursor cursor) {
+        String id = cursor.nextId(messageIds);
+        return manager.isAlreadyProcessed(id) ? manager.getProcessedResult(id) : null;
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean lookupMiss() {
+        return manager.isAlreadyProcessed("not-processed");
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(6)
+    public String mixedLookup(Cursor cursor) {
+        String id = cursor.nextId(messageIds);
+        return manager.isAlreadyProcessed(id) ? manager.getProcessedResult(id) : null;
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public void mixedRecord(Cursor cursor) {
+        // Overwrites existing keys so the map size stays at the key space
+        manager.markAsProcessed(cursor.nextId(messageIds), RESULT);
+    }
+}
@@ -0,0 +1,73 @@
+package common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wire format costs paid on every seller request: encoding on the send pool, the
+ * correlation-ID scan on the shard poll thread and the full decode on the decode pool.
+ * Uses a seller's RESERVE response, the largest message on the hot path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+UseG1GC", "-XX:+AlwaysPreTouch"})
+@State(Scope.Benchmark)
+public class JsonParserBenchmark {
+    private Message message;
+    private String json;
+    private byte[] jsonBytes;
+
+    @Setup
+    public void setUp() {
+        message = new Message();
+        message.setType(Message.Type.RESERVE);
+        message.setMessageId("5f0c8a52-3c1e-4d6b-9a57-2d1f6e0b7c11");
+        message.setCorrelationId("a3d9e4f1-7b2c-4e88-8f10-6c5b2a9d3e47");
+        message.setTimestamp(1_700_000_000_000L);
+        message.setSenderId("seller3");
+        message.setTraceId("4bf92f3577b34da6a3ce929d0e0e4736");
+        message.setSpanId("00f067aa0ba902b7");
+        message.setOrderId("O12345");
+        message.setProductId("P2");
+        message.setQuantity(3);
+        message.setReservationId("seller3-R48213");
+        message.setSuccess(true);
+        message.setCredits(12);
+        json = JsonParser.toJson(message);
+        jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return JsonParser.toJson(message);
+    }
+
+    @Benchmark
+    public Message fromJson() {
+        return JsonParser.fromJson(json);
+    }
+
+    @Benchmark
+    public String extractCorrelationId() {
+        return JsonParser.extractStringField(jsonBytes, "correlationId");
+    }
+
+    @Benchmark
+    public Message roundTrip() {
+        return JsonParser.fromJson(new String(JsonParser.toJson(message).getBytes(StandardCharsets.UTF_8),
+                                              StandardCharsets.UTF_8));
+    }
+}
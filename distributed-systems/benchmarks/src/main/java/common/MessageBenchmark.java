@@ -0,0 +1,61 @@
+package common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of creating a {@link Message}. Every constructor draws a random UUID from the shared
+ * SecureRandom, so the threaded variants show how much of it is contention when many saga
+ * and send threads build requests at once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+UseG1GC", "-XX:+AlwaysPreTouch"})
+public class MessageBenchmark {
+
+    @Benchmark
+    public Message construct() {
+        return new Message();
+    }
+
+    @Benchmark
+    public Message constructReserveRequest() {
+        Message request = new Message();
+        request.setType(Message.Type.RESERVE);
+        request.setOrderId("O12345");
+        request.setProductId("P2");
+        request.setQuantity(3);
+        return request;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Message constructContended() {
+        return new Message();
+    }
+
+    /**
+     * The UUID alone, to separate it from the rest of the constructor.
+     */
+    @Benchmark
+    public UUID randomUuid() {
+        return UUID.randomUUID();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public UUID randomUuidContended() {
+        return UUID.randomUUID();
+    }
+}
@@ -0,0 +1,727 @@
+package marketplace;
+
+import common.AbstractCircuitBreaker;
+import common.CircuitBreaker;
+import common.Clock;
+import common.IdempotencyManager;
+import common.JsonParser;
+import common.LatencyHistogram;
+import common.Log;
+import common.Message;
+import common.RandomSource;
+import common.RetryBudget;
+import common.RetryManager;
+import common.TimerService;
+import common.VirtualClock;
+import seller.AdvancedFailureSimulator;
+import seller.EnhancedInventory;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Runs whole marketplace scenarios on virtual time: an hour of orders, seller failures,
+ * retries, breaker trips and reservation expiry finishes in seconds, and the same seed
+ * replays the run bit for bit.
+ *
+ * Everything happens on one thread as timers of a {@link TimerService} on a
+ * {@link VirtualClock}; the loop advances the clock one tick at a time and fires what came
+ * due. The sellers use the real {@link EnhancedInventory}, {@link AdvancedFailureSimulator}
+ * and {@link IdempotencyManager} behind a FIFO queue that mirrors SellerApp's request loop.
+ * The marketplace uses the real {@link CircuitBreaker}, {@link RetryManager},
+ * {@link RetryBudget} and {@link AdaptiveTimeoutPolicy} and follows the saga protocol of
+ * {@link SagaOrchestrator}: reserve everything, confirm everything, otherwise cancel in
+ * reverse order. ZeroMQ and the orchestrator's blocking thread pools are replaced by network
+ * delays drawn from a seeded stream, which is what makes the run reproducible.
+ *
+ * The saga protocol is a re-implementation, not the real {@link SagaOrchestrator} and
+ * {@link AsyncMessageBroker}, and it leaves out the marketplace's overload protection:
+ * admission limits, seller bulkheads and credits, hedging, seller liveness and the order and
+ * broker thread pools. Breakers follow circuit.breaker.type like the broker's. The simulation
+ * is therefore good for replaying failure sequences and for comparing failure, retry, breaker
+ * and timeout settings under a given load; it says nothing about throughput limits, shedding
+ * or queueing, and its outcome counts are not expected to match {@link ThroughputHarness}.
+ * Settings of the parts it leaves out are listed as ignored at the start of a run.
+ *
+ * Arguments are key=value overrides of the marketplace, seller and loadgen.* keys, plus:
+ * <ul>
+ *   <li>simulation.config: properties file loaded before the overrides</li>
+ *   <li>simulation.seed: seed of every random stream (default 42)</li>
+ *   <li>simulation.sellers: number of sellers (default 5)</li>
+ *   <li>simulation.epoch.millis: wall-clock time the virtual clock starts at (default 0)</li>
+ *   <li>simulation.network.latency.ms and simulation.network.jitter.ms: one-way delay
+ *       (defaults 1 and 2)</li>
+ *   <li>harness.profile: failure profile as in {@link ThroughputHarness} (default none)</li>
+ * </ul>
+ * The run prints a fingerprint over every saga outcome and the final stock; two runs with
+ * the same seed and settings print the same fingerprint.
+ */
+public class DeterministicSimulation {
+    private static final long PHASE_WAIT_MS = 10000;
+    private static final long COMPENSATION_WAIT_MS = 5000;
+    private static final long TICK_MS = 1;
+
+    private final Properties config;
+    private final long seed;
+    private final VirtualClock clock;
+    private final TimerService timer;
+    private final Executor direct = Runnable::run;
+    private final Random network;
+    private final long networkLatencyMs;
+    private final long networkJitterMs;
+    private final long durationNanos;
+    private final long drainNanos;
+    private final long sagaTimeoutMs;
+    private final Map<String, SimulatedSeller> sellers = new TreeMap<>();
+    private final Map<String, AbstractCircuitBreaker> circuitBreakers = new TreeMap<>();
+    private final Map<String, RetryBudget> retryBudgets = new TreeMap<>();
+    private final RetryBudget globalRetryBudget;
+    private final RetryManager retryManager;
+    private final AdaptiveTimeoutPolicy timeoutPolicy;
+    private final LoadGenerator orders;
+
+    private final LatencyHistogram completedLatency = new LatencyHistogram();
+    private final LatencyHistogram failedLatency = new LatencyHistogram();
+    private long orderSequence = 0;
+    private long nextArrivalNanos = 0;
+    private long messageSequence = 0;
+    private long activeSagas = 0;
+    private long compensatedSagas = 0;
+    private long failedCancels = 0;
+    private long requests = 0;
+    private long timeouts = 0;
+    private long fingerprint;
+
+    /** Prefixes of settings for marketplace parts the simulation does not model. */
+    private static final List<String> UNMODELLED_PREFIXES = Arrays.asList(
+        "admission.", "bulkhead.", "request.hedging.", "seller.liveness.", "seller.credits.",
+        "order.processing.threads", "intake.");
+
+    public DeterministicSimulation(Properties config) {
+        this.config = withDefaults(config);
+        printIgnoredSettings(this.config);
+        this.seed = Long.parseLong(this.config.getProperty("simulation.seed"));
+        this.networkLatencyMs = Long.parseLong(this.config.getProperty("simulation.network.latency.ms"));
+        this.networkJitterMs = Long.parseLong(this.config.getProperty("simulation.network.jitter.ms"));
+        this.durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(this.config.getProperty("loadgen.duration.seconds")));
+        this.drainNanos = TimeUnit.SECONDS.toNanos(
+            Long.parseLong(this.config.getProperty("loadgen.drain.timeout.seconds")));
+        this.sagaTimeoutMs = TimeUnit.SECONDS.toMillis(Long.parseLong(this.config.getProperty("saga.timeout.seconds")));
+        this.fingerprint = seed;
+
+        // Components pick the clock and their random streams up while being constructed
+        Log.configure(this.config);
+        RandomSource.setSeed(seed);
+        this.clock = new VirtualClock(Long.parseLong(this.config.getProperty("simulation.epoch.millis")));
+        Clock.setShared(clock);
+        this.timer = new TimerService("SimulationTimer", TICK_MS, 4096, clock);
+        this.network = RandomSource.create("network");
+
+        int sellerCount = Integer.parseInt(this.config.getProperty("simulation.sellers"));
+        for (int i = 1; i <= sellerCount; i++) {
+            String sellerId = "seller" + i;
+            sellers.put(sellerId, new SimulatedSeller(sellerId));
+            circuitBreakers.put(sellerId, AsyncMessageBroker.createCircuitBreaker(sellerId, this.config, clock));
+            retryBudgets.put(sellerId, new RetryBudget(sellerId,
+                Double.parseDouble(this.config.getProperty("retry.budget.ratio", "0.1")),
+                Double.parseDouble(this.config.getProperty("retry.budget.min.per.second", "1")),
+                Double.parseDouble(this.config.getProperty("retry.budget.max.tokens", "10")),
+                clock));
+        }
+        this.globalRetryBudget = new RetryBudget("global",
+            Double.parseDouble(this.config.getProperty("retry.budget.global.ratio", "0.1")),
+            Double.parseDouble(this.config.getProperty("retry.budget.global.min.per.second", "5")),
+            Double.parseDouble(this.config.getProperty("retry.budget.global.max.tokens", "50")),
+            clock);
+        this.retryManager = new RetryManager(
+            Integer.parseInt(this.config.getProperty("retry.max.attempts", "3")),
+            Long.parseLong(this.config.getProperty("retry.base.delay.ms", "1000")),
+            Double.parseDouble(this.config.getProperty("retry.backoff.multiplier", "2.0")),
+            Long.parseLong(this.config.getProperty("retry.max.delay.ms", "30000")),
+            timer, direct, clock, RandomSource.create("retry"));
+        this.timeoutPolicy = new AdaptiveTimeoutPolicy(this.config);
+        this.orders = new LoadGenerator(this.config, this.config.getProperty("marketplace.id"), order -> null);
+    }
+
+    /**
+     * Lists the given settings the simulation ignores, so a run is not mistaken for one that
+     * exercised them.
+     */
+    private static void printIgnoredSettings(Properties config) {
+        List<String> ignored = new ArrayList<>();
+        for (String key : new TreeSet<>(config.stringPropertyNames())) {
+            for (String prefix : UNMODELLED_PREFIXES) {
+                if (key.startsWith(prefix)) {
+                    ignored.add(key);
+                    break;
+                }
+            }
+        }
+        if (!ignored.isEmpty()) {
+            System.out.println("Not modelled by the simulation, ignored: " + String.join(", ", ignored));
+        }
+    }
+
+    /**
+     * Fills in the defaults: an hour of Poisson load against five sellers without failures,
+     * quiet logging and cleanup often enough for expiry to show.
+     */
+    private static Properties withDefaults(Properties overrides) {
+        Properties defaults = new Properties();
+        defaults.setProperty("simulation.seed", "42");
+        defaults.setProperty("simulation.sellers", "5");
+        defaults.setProperty("simulation.epoch.millis", "0");
+        defaults.setProperty("simulation.network.latency.ms", "1");
+        defaults.setProperty("simulation.network.jitter.ms", "2");
+        defaults.setProperty("marketplace.id", "simulation");
+        defaults.setProperty("log.level", "WARN");
+        defaults.setProperty("loadgen.pattern", "poisson");
+        defaults.setProperty("loadgen.rate.per.second", "50");
+        defaults.setProperty("loadgen.duration.seconds", "3600");
+        defaults.setProperty("loadgen.drain.timeout.seconds", "60");
+        defaults.setProperty("saga.timeout.seconds", "60");
+        defaults.setProperty("seller.processing.delay.ms", "2");
+        defaults.setProperty("seller.inventory.size", "1000000000");
+        defaults.setProperty("reservation.timeout.ms", "60000");
+        defaults.setProperty("cleanup.interval.seconds", "10");
+
+        String profile = overrides.getProperty("harness.profile", "none").trim().toLowerCase();
+        ThroughputHarness.profileSettings(profile).forEach(defaults::setProperty);
+
+        Properties merged = new Properties();
+        merged.putAll(defaults);
+        merged.putAll(overrides);
+        int sellerCount = Integer.parseInt(merged.getProperty("simulation.sellers"));
+        if (sellerCount <= 0) {
+            throw new IllegalArgumentException("simulation.sellers must be positive");
+        }
+        if (!merged.containsKey("loadgen.sellers")) {
+            StringBuilder sellerIds = new StringBuilder();
+            for (int i = 1; i <= sellerCount; i++) {
+                sellerIds.append(i > 1 ? "," : "").append("seller").append(i);
+            }
+            merged.setProperty("loadgen.sellers", sellerIds.toString());
+        }
+        // Orders come from the simulation's own stream unless a load seed is pinned explicitly
+        if (!overrides.containsKey("loadgen.seed")) {
+            merged.remove("loadgen.seed");
+        }
+        return merged;
+    }
+
+    /**
+     * Runs the scenario to the end of its load plus the drain period.
+     */
+    public void run() {
+        long wallStartNanos = System.nanoTime();
+        timer.schedule(this::arrive, 0, TimeUnit.MILLISECONDS);
+
+        long endNanos = durationNanos + drainNanos;
+        while (clock.nanos() < endNanos && (clock.nanos() < durationNanos || activeSagas > 0)) {
+            clock.advance(TICK_MS, TimeUnit.MILLISECONDS);
+            timer.runDue();
+        }
+
+        printSummary(System.nanoTime() - wallStartNanos);
+    }
+
+    /**
+     * Starts every order whose arrival time has passed and schedules the next arrival.
+     */
+    private void arrive() {
+        while (nextArrivalNanos <= clock.nanos() && nextArrivalNanos < durationNanos) {
+            startSaga(orders.createOrder(++orderSequence));
+            nextArrivalNanos += orders.nextInterArrivalNanos(nextArrivalNanos);
+        }
+        if (nextArrivalNanos < durationNanos) {
+            timer.schedule(this::arrive, nextArrivalNanos - clock.nanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // ---------------------------------------------------------------- marketplace side
+
+    private void startSaga(Order order) {
+        activeSagas++;
+        Saga saga = new Saga(orderSequence, order, clock.nanos(), clock.millis() + sagaTimeoutMs);
+        List<Order.OrderItem> items = order.getItems();
+        Phase phase = new Phase(items.size(), saga, this::onReservePhaseDone);
+
+        for (Order.OrderItem item : items) {
+            Message request = new Message();
+            request.setType(Message.Type.RESERVE);
+            request.setOrderId(order.getOrderId());
+            request.setProductId(item.getProductId());
+            request.setQuantity(item.getQuantity());
+            String sellerId = item.getSellerId();
+            send(sellerId, request, phase.deadlineMillis).whenComplete((response, exception) -> {
+                if (exception == null && response.isSuccess()) {
+                    phase.succeeded(new String[] {sellerId, response.getReservationId()});
+                } else {
+                    phase.failed();
+                }
+            });
+        }
+    }
+
+    private void onReservePhaseDone(Saga saga, Phase phase) {
+        saga.reservations.addAll(phase.results);
+        if (!phase.allSucceeded()) {
+            compensate(saga);
+            return;
+        }
+
+        Phase confirmPhase = new Phase(saga.reservations.size(), saga, this::onConfirmPhaseDone);
+        for (String[] reservation : saga.reservations) {
+            Message request = new Message();
+            request.setType(Message.Type.CONFIRM);
+            request.setReservationId(reservation[1]);
+            send(reservation[0], request, confirmPhase.deadlineMillis).whenComplete((response, exception) -> {
+                if (exception == null && response.isSuccess()) {
+                    confirmPhase.succeeded(reservation);
+                } else {
+                    confirmPhase.failed();
+                }
+            });
+        }
+    }
+
+    private void onConfirmPhaseDone(Saga saga, Phase phase) {
+        if (phase.allSucceeded()) {
+            finish(saga, true);
+        } else {
+            compensate(saga);
+        }
+    }
+
+    /**
+     * Cancels the reservations in reverse order, waiting for each like the orchestrator does.
+     */
+    private void compensate(Saga saga) {
+        compensatedSagas++;
+        List<String[]> actions = new ArrayList<>(saga.reservations);
+        Collections.reverse(actions);
+        cancelNext(saga, new ArrayDeque<>(actions));
+    }
+
+    private void cancelNext(Saga saga, Queue<String[]> remaining) {
+        String[] reservation = remaining.poll();
+        if (reservation == null) {
+            finish(saga, false);
+            return;
+        }
+        Message request = new Message();
+        request.setType(Message.Type.CANCEL);
+        request.setReservationId(reservation[1]);
+
+        boolean[] done = new boolean[1];
+        Runnable next = () -> {
+            if (!done[0]) {
+                done[0] = true;
+                cancelNext(saga, remaining);
+            }
+        };
+        TimerService.Timeout wait = timer.schedule(() -> {
+            if (!done[0]) {
+                failedCancels++;
+            }
+            next.run();
+        }, COMPENSATION_WAIT_MS, TimeUnit.MILLISECONDS);
+        send(reservation[0], request, 0).whenComplete((response, exception) -> {
+            if (done[0]) {
+                return;
+            }
+            wait.cancel();
+            if (exception != null || !response.isSuccess()) {
+                failedCancels++;
+            }
+            next.run();
+        });
+    }
+
+    private void finish(Saga saga, boolean completed) {
+        activeSagas--;
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(clock.nanos() - saga.startNanos);
+        (completed ? completedLatency : failedLatency).record(latencyMicros);
+        mix(saga.sequence);
+        mix(completed ? 1 : 0);
+        mix(clock.nanos());
+    }
+
+    /**
+     * Sends a request through the seller's circuit breaker and the retry manager, like
+     * AsyncMessageBroker.sendAsyncRequestWithRetry minus bulkheads and admission control.
+     */
+    private CompletableFuture<Message> send(String sellerId, Message request, long deadlineMillis) {
+        request.setSenderId(config.getProperty("marketplace.id"));
+        String operationName = request.getType() + " " + sellerId;
+        return circuitBreakers.get(sellerId).execute(() -> retryManager.executeWithRetry(
+            () -> attempt(sellerId, request), operationName,
+            Arrays.asList(globalRetryBudget, retryBudgets.get(sellerId)), deadlineMillis), operationName);
+    }
+
+    /**
+     * One attempt: the request travels to the seller, the response travels back, and a
+     * timeout from the adaptive policy races the response.
+     */
+    private CompletableFuture<Message> attempt(String sellerId, Message request) {
+        requests++;
+        if (request.getMessageId() == null) {
+            request.setMessageId("sim-" + (++messageSequence));
+        }
+        request.setCorrelationId("sim-" + (++messageSequence));
+
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        long timeoutMs = timeoutPolicy.getTimeoutMs(sellerId, request.getType());
+        TimerService.Timeout timeout = timer.schedule(() -> {
+            if (future.completeExceptionally(new TimeoutException(
+                    "Request to " + sellerId + " timed out after " + timeoutMs + "ms"))) {
+                timeouts++;
+                timeoutPolicy.recordTimeout(sellerId, request.getType());
+            }
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+
+        long sentNanos = clock.nanos();
+        SimulatedSeller seller = sellers.get(sellerId);
+        deliver(() -> seller.receive(request, response -> deliver(() -> {
+            if (future.complete(response)) {
+                timeout.cancel();
+                timeoutPolicy.recordLatency(sellerId, request.getType(), clock.nanos() - sentNanos);
+            }
+        })));
+        return future;
+    }
+
+    /**
+     * Runs a task after a one-way network delay.
+     */
+    private void deliver(Runnable task) {
+        long delayMs = networkLatencyMs + (networkJitterMs > 0 ? (long) (network.nextDouble() * networkJitterMs) : 0);
+        timer.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void mix(long value) {
+        fingerprint = (fingerprint ^ value) * 0x100000001b3L;
+        fingerprint ^= fingerprint >>> 29;
+    }
+
+    // ---------------------------------------------------------------- seller side
+
+    /**
+     * A seller processing one request at a time, with the same checks in the same order as
+     * SellerApp.processRequest.
+     */
+    private final class SimulatedSeller {
+        private final String sellerId;
+        private final EnhancedInventory inventory;
+        private final AdvancedFailureSimulator failureSimulator;
+        private final IdempotencyManager idempotencyManager;
+        private final long processingDelayMs;
+        private final Queue<PendingRequest> queue = new ArrayDeque<>();
+        private boolean busy = false;
+
+        SimulatedSeller(String sellerId) {
+            this.sellerId = sellerId;
+            this.inventory = new EnhancedInventory(sellerId, config, clock, timer, direct);
+            this.failureSimulator = new AdvancedFailureSimulator(sellerId, config, clock,
+                RandomSource.create("failure-simulator-" + sellerId));
+            // Sellers are created at the virtual start of the load; the scenario starts there for all of them
+            if (!config.containsKey("failure.scenario.start.epoch.ms")) {
+                failureSimulator.startScenario(clock.millis());
+            }
+            this.idempotencyManager = new IdempotencyManager(sellerId,
+                Long.parseLong(config.getProperty("idempotency.retention.time.ms", "1800000")), timer, direct, clock);
+            this.processingDelayMs = Long.parseLong(config.getProperty("seller.processing.delay.ms", "200"));
+        }
+
+        void receive(Message request, Consumer<Message> reply) {
+            if (failureSimulator.isPartitioned()) {
+                return;
+            }
+            queue.add(new PendingRequest(request, reply));
+            if (!busy) {
+                startNext();
+            }
+        }
+
+        /**
+         * Answers queued requests that need no processing time and starts the first one that does.
+         */
+        private void startNext() {
+            PendingRequest pending;
+            while ((pending = queue.poll()) != null) {
+                Message request = pending.request;
+                String cached = idempotencyManager.getProcessedResult(request.getMessageId());
+                if (cached != null) {
+                    pending.reply.accept(JsonParser.fromJson(cached));
+                    continue;
+                }
+
+                AdvancedFailureSimulator.FailureDecision noResponse =
+                    failureSimulator.shouldSimulateFailure("no_response");
+                if (noResponse.shouldFail()) {
+                    pending.reply.accept(failure(request, noResponse.getReason()));
+                    continue;
+                }
+
+                AdvancedFailureSimulator.FailureDecision slowResponse =
+                    failureSimulator.shouldSimulateFailure("slow_response");
+                long serviceMs = slowResponse.shouldFail() ? slowResponse.getDelayMs() : processingDelayMs;
+                PendingRequest inService = pending;
+                busy = true;
+                timer.schedule(() -> complete(inService), serviceMs, TimeUnit.MILLISECONDS);
+                return;
+            }
+            busy = false;
+        }
+
+        private void complete(PendingRequest pending) {
+            Message request = pending.request;
+            AdvancedFailureSimulator.FailureDecision processingFailure =
+                failureSimulator.shouldSimulateFailure("processing_failure");
+            if (processingFailure.shouldFail()) {
+                pending.reply.accept(failure(request, processingFailure.getReason()));
+            } else {
+                Message response = handle(request);
+                response.setCorrelationId(request.getCorrelationId());
+                response.setMessageId(request.getMessageId());
+                idempotencyManager.markAsProcessed(request.getMessageId(), JsonParser.toJson(response));
+                if (response.isSuccess()) {
+                    failureSimulator.reportSuccess();
+                }
+                pending.reply.accept(response);
+            }
+            startNext();
+        }
+
+        private Message handle(Message request) {
+            Message response = new Message();
+            response.setType(request.getType());
+            response.setSenderId(sellerId);
+            switch (request.getTypeEnum()) {
+                case RESERVE:
+                    AdvancedFailureSimulator.FailureDecision outOfStock =
+                        failureSimulator.shouldSimulateFailure("out_of_stock");
+                    String reservationId = outOfStock.shouldFail() ? null
+                        : inventory.reserve(request.getProductId(), request.getQuantity());
+                    response.setSuccess(reservationId != null);
+                    if (reservationId != null) {
+                        response.setReservationId(reservationId);
+                    } else {
+                        response.setReason(outOfStock.shouldFail() ? outOfStock.getReason() : "Insufficient stock");
+                    }
+                    break;
+                case CONFIRM:
+                    response.setSuccess(inventory.confirm(request.getReservationId()));
+                    break;
+                case CANCEL:
+                    response.setSuccess(inventory.cancel(request.getReservationId()));
+                    break;
+                default:
+                    response.setSuccess(false);
+                    response.setReason("Unknown message type");
+            }
+            return response;
+        }
+
+        private Message failure(Message request, String reason) {
+            Message response = new Message();
+            response.setSuccess(false);
+            response.setReason(reason);
+            response.setCorrelationId(request.getCorrelationId());
+            response.setMessageId(request.getMessageId());
+            return response;
+        }
+    }
+
+    private static final class PendingRequest {
+        final Message request;
+        final Consumer<Message> reply;
+
+        PendingRequest(Message request, Consumer<Message> reply) {
+            this.request = request;
+            this.reply = reply;
+        }
+    }
+
+    // ---------------------------------------------------------------- saga bookkeeping
+
+    private static final class Saga {
+        final long sequence;
+        final Order order;
+        final long startNanos;
+        final long deadlineMillis;
+        final List<String[]> reservations = new ArrayList<>();
+
+        Saga(long sequence, Order order, long startNanos, long deadlineMillis) {
+            this.sequence = sequence;
+            this.order = order;
+            this.startNanos = startNanos;
+            this.deadlineMillis = deadlineMillis;
+        }
+    }
+
+    private interface PhaseListener {
+        void onDone(Saga saga, Phase phase);
+    }
+
+    /**
+     * Requests of one saga phase sent in parallel. The phase ends when all have answered or
+     * when its wait limit expires; answers arriving later are ignored, and reservations they
+     * carry are left to expire at the seller, as with the orchestrator.
+     */
+    private final class Phase {
+        final Saga saga;
+        final long deadlineMillis;
+        final List<String[]> results = new ArrayList<>();
+        private final PhaseListener listener;
+        private final TimerService.Timeout waitLimit;
+        private int outstanding;
+        private boolean anyFailed = false;
+        private boolean done = false;
+
+        Phase(int requestCount, Saga saga, PhaseListener listener) {
+            this.saga = saga;
+            this.listener = listener;
+            this.outstanding = requestCount;
+            this.deadlineMillis = Math.min(saga.deadlineMillis, clock.millis() + PHASE_WAIT_MS);
+            this.waitLimit = timer.schedule(() -> {
+                anyFailed = true;
+                end();
+            }, deadlineMillis - clock.millis(), TimeUnit.MILLISECONDS);
+            if (requestCount == 0) {
+                timer.schedule(this::end, 0, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        void succeeded(String[] result) {
+            if (!done) {
+                results.add(result);
+                answered();
+            }
+        }
+
+        void failed() {
+            if (!done) {
+                anyFailed = true;
+                answered();
+            }
+        }
+
+        boolean allSucceeded() {
+            return !anyFailed;
+        }
+
+        private void answered() {
+            if (--outstanding == 0) {
+                end();
+            }
+        }
+
+        private void end() {
+            if (!done) {
+                done = true;
+                waitLimit.cancel();
+                listener.onDone(saga, this);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------- reporting
+
+    private void printSummary(long wallNanos) {
+        long completed = completedLatency.getCount();
+        long failed = failedLatency.getCount();
+        long unfinished = orderSequence - completed - failed;
+
+        System.out.println("\n=== Simulation Summary ===");
+        System.out.println(String.format("Seed %d, %d sellers, simulated %.1fs in %.1fs wall clock",
+                                        seed, sellers.size(), clock.nanos() / 1e9, wallNanos / 1e9));
+        System.out.println(String.format("Orders: submitted=%d completed=%d failed=%d unfinished=%d",
+                                        orderSequence, completed, failed, unfinished));
+        printLatency("completed", completedLatency);
+        printLatency("failed", failedLatency);
+        System.out.println(String.format("Compensated sagas: %d, failed cancellations: %d",
+                                        compensatedSagas, failedCancels));
+        System.out.println(String.format("Seller requests: %d, timeouts: %d, retries: %d (suppressed by budget %d, deadline %d)",
+                                        requests, timeouts, retryManager.getRetriesAttempted(),
+                                        retryManager.getRetriesSuppressedByBudget(),
+                                        retryManager.getRetriesSuppressedByDeadline()));
+        for (SimulatedSeller seller : sellers.values()) {
+            Map<String, Integer> stock = new TreeMap<>(seller.inventory.getInventoryStatus());
+            Map<String, Object> reservations = new TreeMap<>(seller.inventory.getReservationStatus());
+            System.out.println(String.format("  %s: breaker=%s stock=%s reservations=%s",
+                                            seller.sellerId, circuitBreakers.get(seller.sellerId).getState(),
+                                            stock, reservations));
+            stock.values().forEach(this::mix);
+        }
+        mix(requests);
+        mix(timeouts);
+        System.out.println(String.format("Fingerprint: %016x", fingerprint));
+    }
+
+    private static void printLatency(String outcome, LatencyHistogram histogram) {
+        System.out.println(String.format("Saga latency %s (virtual ms, n=%d): p50=%.1f p90=%.1f p99=%.1f max=%.1f",
+                                        outcome, histogram.getCount(),
+                                        histogram.getValueAtPercentile(50) / 1000.0,
+                                        histogram.getValueAtPercentile(90) / 1000.0,
+                                        histogram.getValueAtPercentile(99) / 1000.0,
+                                        histogram.getMax() / 1000.0));
+    }
+
+    /**
+     * Stops the simulation's timers and restores the system clock and unseeded randomness.
+     */
+    public void shutdown() {
+        sellers.values().forEach(seller -> {
+            seller.inventory.shutdown();
+            seller.idempotencyManager.shutdown();
+        });
+        timer.shutdown();
+        Clock.setShared(null);
+        RandomSource.setSeed(null);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties overrides = new Properties();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                System.err.println("Expected key=value, got: " + arg);
+                System.exit(2);
+            }
+            overrides.setProperty(arg.substring(0, separator).trim(), arg.substring(separator + 1).trim());
+        }
+
+        Properties config = new Properties();
+        String file = overrides.getProperty("simulation.config");
+        if (file != null) {
+            try (InputStream is = new FileInputStream(file)) {
+                config.load(is);
+            }
+        }
+        config.putAll(overrides);
+
+        DeterministicSimulation simulation = new DeterministicSimulation(config);
+        try {
+            simulation.run();
+        } finally {
+            simulation.shutdown();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package marketplace;
+
+import common.SagaState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the saga snapshot codec {@link SagaStateManager} runs on every state transition,
+ * for orders of increasing size. Leaves out the file write so it measures only the codec.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+UseG1GC", "-XX:+AlwaysPreTouch"})
+@State(Scope.Benchmark)
+public class SagaSnapshotBenchmark {
+
+    /**
+     * Items per order; each item has one reservation and one compensation action.
+     */
+    @Param({"1", "5", "20"})
+    public int items;
+
+    private SagaStateManager.SagaSnapshot snapshot;
+    private String serialized;
+
+    @Setup
+    public void setUp() {
+        List<SagaStateManager.CompensationActionSnapshot> actions = new ArrayList<>();
+        Map<String, String> reservationIds = new LinkedHashMap<>();
+        for (int i = 0; i < items; i++) {
+            String sellerId = "seller" + (i % 5 + 1);
+            String reservationId = sellerId + "-R" + (10_000 + i);
+            actions.add(new SagaStateManager.CompensationActionSnapshot(sellerId, reservationId, "CANCEL"));
+            reservationIds.put(sellerId + ":P" + (i % 3 + 1) + ":" + i, reservationId);
+        }
+        snapshot = new SagaStateManager.SagaSnapshot("saga-4bf92f3577b34da6", "O12345", SagaState.RESERVING_PRODUCTS,
+                                                     actions, reservationIds,
+                                                     1_700_000_000_000L, 1_700_000_000_250L);
+        serialized = SagaStateManager.serializeSnapshot(snapshot);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return SagaStateManager.serializeSnapshot(snapshot);
+    }
+
+    @Benchmark
+    public SagaStateManager.SagaSnapshot deserialize() {
+        return SagaStateManager.deserializeSnapshot(serialized);
+    }
+}
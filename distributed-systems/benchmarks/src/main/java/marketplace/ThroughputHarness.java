@@ -0,0 +1,466 @@
+package marketplace;
+
+import common.Clock;
+import common.LatencyHistogram;
+import common.MetricsRegistry;
+import common.OrderStatus;
+import common.RandomSource;
+import proxy.FaultInjectingProxy;
+import seller.AdvancedFailureSimulator;
+import seller.ChaosScenario;
+import seller.SellerApp;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end throughput run with the marketplace and N sellers in one JVM, connected over
+ * loopback sockets and driven by the open-loop {@link LoadGenerator}. Replaces the
+ * docker-compose setup when all that is needed is orders/sec, saga latency and failure rates.
+ *
+ * Arguments are key=value overrides of the marketplace, seller and loadgen.* keys, plus:
+ * <ul>
+ *   <li>harness.config: properties file loaded before the overrides</li>
+ *   <li>harness.sellers: number of sellers (default 5)</li>
+ *   <li>harness.profile: failure profile none, light, default or heavy (default none);
+ *       failure.* and pattern.* keys set explicitly take precedence</li>
+ *   <li>harness.port: base port the marketplace binds on loopback (default 15555)</li>
+ *   <li>harness.proxy: route all seller traffic through a {@link FaultInjectingProxy} on
+ *       harness.port + 1000 (default false); its fault.* keys set the network faults</li>
+ * </ul>
+ * With failure.scenario.file set, all sellers play the {@link ChaosScenario} from the start
+ * of the load on, the run lasts as long as the scenario unless loadgen.duration.seconds is given,
+ * and the summary adds throughput per phase and how long throughput took to recover after
+ * each faulty phase.
+ * Example: {@code java -cp benchmarks.jar marketplace.ThroughputHarness loadgen.rate.per.second=300 harness.profile=light}
+ */
+public class ThroughputHarness {
+
+    /**
+     * Failure simulator settings per profile. Bursts override the base probabilities, so they
+     * are part of the profile too. A slow response stalls the single-threaded seller for about
+     * a second, and every request queued behind it times out, so even a fraction of a percent
+     * of them opens breakers at a few dozen orders per second. "light" therefore injects only
+     * fast failures (failure replies, out of stock) and turns off bursts and the recovery
+     * pattern, whose 1% floor would add slow responses after every failure; stalls start
+     * with "default".
+     */
+    private static final Map<String, Map<String, String>> PROFILES = new LinkedHashMap<>();
+    static {
+        PROFILES.put("none", profile(0, 0, 0, 0, 0, 0, 0));
+        PROFILES.put("light", profile(0, 0.002, 0.005, 0.02, 0, 0, 0));
+        PROFILES.get("light").put("pattern.recovery.success.threshold", "0");
+        PROFILES.put("default", profile(0.8, 0.04, 0.10, 0.15, 0.02, 0.20, 0.01));
+        PROFILES.put("heavy", profile(0.9, 0.10, 0.20, 0.25, 0.05, 0.30, 0.02));
+    }
+
+    /**
+     * Builds a profile from the burst probability and the base probabilities, in the order of
+     * {@link AdvancedFailureSimulator#PROBABILITY_KEYS}.
+     */
+    private static Map<String, String> profile(double burstProbability, double... probabilities) {
+        Map<String, String> settings = new LinkedHashMap<>();
+        int index = 0;
+        for (String key : AdvancedFailureSimulator.PROBABILITY_KEYS.values()) {
+            settings.put(key, String.valueOf(probabilities[index++]));
+        }
+        settings.put("pattern.burst.probability", String.valueOf(burstProbability));
+        return settings;
+    }
+
+    /**
+     * Gets the failure simulator settings of a profile.
+     * @param profile One of none, light, default or heavy
+     * @return The failure.* and pattern.* settings
+     */
+    static Map<String, String> profileSettings(String profile) {
+        Map<String, String> settings = PROFILES.get(profile);
+        if (settings == null) {
+            throw new IllegalArgumentException("Unknown harness.profile '" + profile + "', expected one of " +
+                                               PROFILES.keySet());
+        }
+        return settings;
+    }
+
+    private final Properties config;
+    private final int sellerCount;
+    private final String profile;
+    private final List<SellerApp> sellers = new ArrayList<>();
+    private final List<Thread> sellerThreads = new ArrayList<>();
+    private final ChaosScenario scenario;
+    private final boolean proxyEnabled;
+    private FaultInjectingProxy proxy;
+    private Thread proxyThread;
+    private OrderProcessor processor;
+    private Path stateDirectory;
+    private AtomicLongArray succeededPerSecond;
+    private AtomicLongArray failedPerSecond;
+    private volatile long loadStartNanos;
+
+    public ThroughputHarness(Properties config) throws IOException {
+        this.sellerCount = Integer.parseInt(config.getProperty("harness.sellers", "5"));
+        this.profile = config.getProperty("harness.profile", "none").trim().toLowerCase();
+        if (sellerCount <= 0) {
+            throw new IllegalArgumentException("harness.sellers must be positive");
+        }
+        profileSettings(profile);
+        String scenarioFile = config.getProperty("failure.scenario.file", "").trim();
+        this.scenario = scenarioFile.isEmpty() ? null : ChaosScenario.load(scenarioFile);
+        this.proxyEnabled = Boolean.parseBoolean(config.getProperty("harness.proxy", "false"));
+        this.config = withDefaults(config);
+    }
+
+    /**
+     * Fills in laptop-sized defaults for everything not set explicitly: a short run, fast
+     * sellers with ample stock, quiet logging and the chosen failure profile.
+     */
+    private Properties withDefaults(Properties overrides) {
+        Properties defaults = new Properties();
+        defaults.setProperty("marketplace.id", "harness");
+        int port = Integer.parseInt(overrides.getProperty("harness.port", "15555"));
+        defaults.setProperty("marketplace.router.port", String.valueOf(port));
+        defaults.setProperty("proxy.listen.host", "127.0.0.1");
+        defaults.setProperty("proxy.listen.port", String.valueOf(port + 1000));
+        defaults.setProperty("proxy.upstream.endpoint", "tcp://127.0.0.1:" + port);
+        defaults.setProperty("proxy.stats.interval.seconds", "0");
+        defaults.setProperty("log.level", "WARN");
+        defaults.setProperty("orders.file", "");
+        defaults.setProperty("loadgen.pattern", "poisson");
+        defaults.setProperty("loadgen.rate.per.second", "100");
+        defaults.setProperty("loadgen.duration.seconds", "20");
+        defaults.setProperty("loadgen.drain.timeout.seconds", "15");
+        defaults.setProperty("loadgen.seed", "42");
+        defaults.setProperty("saga.timeout.seconds", "15");
+        defaults.setProperty("retry.base.delay.ms", "100");
+        defaults.setProperty("retry.max.delay.ms", "1000");
+        defaults.setProperty("seller.processing.delay.ms", "2");
+        defaults.setProperty("seller.inventory.size", "1000000000");
+        defaults.setProperty("seller.heartbeat.interval.ms", "1000");
+        defaults.setProperty("seller.liveness.timeout.ms", "3000");
+        if (scenario != null) {
+            defaults.setProperty("loadgen.duration.seconds",
+                                 String.valueOf(TimeUnit.MILLISECONDS.toSeconds(scenario.getDurationMs())));
+        }
+
+        StringBuilder sellerIds = new StringBuilder();
+        for (int i = 1; i <= sellerCount; i++) {
+            sellerIds.append(i > 1 ? "," : "").append("seller").append(i);
+        }
+        defaults.setProperty("loadgen.sellers", sellerIds.toString());
+
+        profileSettings(profile).forEach(defaults::setProperty);
+
+        Properties merged = new Properties();
+        merged.putAll(defaults);
+        merged.putAll(overrides);
+        // The generator must not start on its own; the harness starts it once the sellers are live
+        merged.setProperty("loadgen.enabled", "false");
+        return merged;
+    }
+
+    /**
+     * Runs the whole measurement and prints the summaries.
+     * @return true if the load generator finished within its drain timeout
+     */
+    public boolean run() throws Exception {
+        stateDirectory = Files.createTempDirectory("harness-saga-states");
+        config.setProperty("saga.state.directory", stateDirectory.toString());
+        RandomSource.configure(config);
+
+        if (proxyEnabled) {
+            startProxy();
+        }
+        startSellers();
+        processor = new OrderProcessor(config);
+        processor.start();
+        awaitSellersLive(TimeUnit.SECONDS.toMillis(10));
+
+        LoadGenerator generator = new LoadGenerator(config, config.getProperty("marketplace.id"), this::submit);
+        long durationMs = TimeUnit.SECONDS.toMillis(Long.parseLong(config.getProperty("loadgen.duration.seconds")));
+        long drainMs = TimeUnit.SECONDS.toMillis(Long.parseLong(config.getProperty("loadgen.drain.timeout.seconds")));
+        int seconds = (int) TimeUnit.MILLISECONDS.toSeconds(durationMs + drainMs) + 10;
+        succeededPerSecond = new AtomicLongArray(seconds);
+        failedPerSecond = new AtomicLongArray(seconds);
+        // Phase windows in the summary are measured from here, so the sellers' scenario clocks start here too
+        long loadStartMs = Clock.shared().millis();
+        loadStartNanos = System.nanoTime();
+        if (scenario != null && !config.containsKey("failure.scenario.start.epoch.ms")) {
+            sellers.forEach(seller -> seller.startFailureScenario(loadStartMs));
+        }
+        generator.start();
+        boolean finished = generator.awaitCompletion(durationMs + drainMs + 5000);
+        if (!finished) {
+            generator.stop();
+        }
+
+        printSummary(generator);
+        if (scenario != null) {
+            printScenarioSummary();
+        }
+        return finished;
+    }
+
+    /**
+     * Submits an order and counts its outcome in the second it finished, for the phase summary.
+     */
+    private CompletableFuture<Order> submit(Order order) {
+        CompletableFuture<Order> future = processor.processOrderAsync(order);
+        future.whenComplete((result, exception) -> {
+            int second = (int) TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - loadStartNanos);
+            if (second < succeededPerSecond.length()) {
+                boolean succeeded = exception == null && result != null && result.getStatus() == OrderStatus.COMPLETED;
+                (succeeded ? succeededPerSecond : failedPerSecond).incrementAndGet(second);
+            }
+        });
+        return future;
+    }
+
+    private void startProxy() {
+        Properties proxyConfig = new Properties();
+        proxyConfig.putAll(config);
+        proxyConfig.setProperty("metrics.enabled", "false");
+        proxyConfig.setProperty("admin.enabled", "false");
+        proxy = new FaultInjectingProxy(proxyConfig);
+        proxyThread = new Thread(proxy::run, "FaultProxy");
+        proxyThread.setDaemon(true);
+        proxyThread.start();
+    }
+
+    private void startSellers() {
+        // Sellers share the marketplace's config but not its HTTP endpoints
+        Properties sellerConfig = new Properties();
+        sellerConfig.putAll(config);
+        sellerConfig.setProperty("metrics.enabled", "false");
+        sellerConfig.setProperty("admin.enabled", "false");
+        String endpoint = "tcp://127.0.0.1:" + config.getProperty(proxyEnabled ? "proxy.listen.port"
+                                                                              : "marketplace.router.port");
+
+        for (int i = 1; i <= sellerCount; i++) {
+            SellerApp seller = new SellerApp("seller" + i, endpoint, sellerConfig);
+            Thread thread = new Thread(seller::run, "Seller-seller" + i);
+            thread.setDaemon(true);
+            thread.start();
+            sellers.add(seller);
+            sellerThreads.add(thread);
+        }
+    }
+
+    private void awaitSellersLive(long timeoutMs) throws InterruptedException {
+        AsyncMessageBroker broker = processor.getMessageBroker();
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (broker.getLiveSellers().size() < sellerCount) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Only " + broker.getLiveSellers().size() + " of " + sellerCount +
+                                                " sellers registered within " + timeoutMs + "ms");
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private void printSummary(LoadGenerator generator) {
+        MetricsRegistry metrics = MetricsRegistry.shared();
+        MetricsRegistry.Family<MetricsRegistry.Histogram> sagaDurations = metrics.histogramFamily(
+            "marketplace_saga_duration_seconds", "End-to-end saga duration by outcome", "outcome");
+        MetricsRegistry.Histogram compensations = metrics.histogramFamily(
+            "marketplace_saga_phase_duration_seconds", "Duration of each saga phase", "phase").labels("compensate");
+        long responses = 0;
+        for (MetricsRegistry.Histogram rtt : metrics.histogramFamily("marketplace_broker_rtt_seconds",
+                "Round-trip time of successful seller requests", "seller", "type").getChildren().values()) {
+            responses += rtt.getHistogram().getCount();
+        }
+        long timeouts = 0;
+        for (MetricsRegistry.Counter counter : metrics.counterFamily("marketplace_broker_timeouts_total",
+                "Seller requests that timed out", "seller", "type").getChildren().values()) {
+            timeouts += counter.get();
+        }
+
+        LatencyHistogram completed = sagaDurations.labels("completed").getHistogram();
+        LatencyHistogram failed = sagaDurations.labels("failed").getHistogram();
+        long sagas = completed.getCount() + failed.getCount();
+
+        System.out.println("\n=== Harness Summary ===");
+        System.out.println(String.format("Sellers: %d, failure profile: %s, processing delay: %sms",
+                                        sellerCount, profile, config.getProperty("seller.processing.delay.ms")));
+        System.out.println(String.format("Orders: submitted=%d succeeded=%d failed=%d rejected=%d",
+                                        generator.getSubmittedCount(), generator.getSucceededCount(),
+                                        generator.getFailedCount(), generator.getRejectedCount()));
+        printSagaLatency("completed", completed);
+        printSagaLatency("failed", failed);
+        System.out.println(String.format("Compensation rate: %.2f%% (%d of %d sagas)",
+                                        percent(compensations.getHistogram().getCount(), sagas),
+                                        compensations.getHistogram().getCount(), sagas));
+        System.out.println(String.format("Seller request timeout rate: %.2f%% (%d of %d requests)",
+                                        percent(timeouts, responses + timeouts), timeouts, responses + timeouts));
+        if (proxy != null) {
+            printProxySummary(metrics);
+        }
+    }
+
+    /**
+     * Prints what the fault proxy did to the traffic, summed over sellers, per direction.
+     */
+    private static void printProxySummary(MetricsRegistry metrics) {
+        Map<String, Map<String, Long>> byDirection = new TreeMap<>();
+        for (Map.Entry<List<String>, MetricsRegistry.Counter> entry : metrics.counterFamily("proxy_messages_total",
+                "Messages passing the fault proxy by outcome: forwarded, dropped, partitioned, overflow, unroutable",
+                "seller", "direction", "outcome").getChildren().entrySet()) {
+            byDirection.computeIfAbsent(entry.getKey().get(1), direction -> new TreeMap<>())
+                .merge(entry.getKey().get(2), entry.getValue().get(), Long::sum);
+        }
+        for (Map.Entry<List<String>, MetricsRegistry.Counter> entry : metrics.counterFamily(
+                "proxy_messages_reordered_total", "Messages held back so that later ones overtake them",
+                "seller", "direction").getChildren().entrySet()) {
+            byDirection.computeIfAbsent(entry.getKey().get(1), direction -> new TreeMap<>())
+                .merge("reordered", entry.getValue().get(), Long::sum);
+        }
+        byDirection.forEach((direction, outcomes) ->
+            System.out.println("Proxy " + direction + ": " + outcomes));
+    }
+
+    /**
+     * Prints succeeded orders per second and the failure share of every phase, and for each
+     * faulty phase how long after its end the succeeded rate was back to 90% of the rate
+     * before the first fault (three-second average).
+     */
+    private void printScenarioSummary() {
+        List<ChaosScenario.Phase> phases = scenario.getPhases();
+        double baseline = Double.parseDouble(config.getProperty("loadgen.rate.per.second"));
+        if (!phases.get(0).isFaulty()) {
+            baseline = rate(0, (int) TimeUnit.MILLISECONDS.toSeconds(phases.get(0).getDurationMs()));
+        }
+
+        System.out.println("\n=== Scenario ===");
+        System.out.println(String.format("%-24s %-12s %12s %9s  %s", "Phase", "Window", "Succeeded/s", "Failed", "Recovery"));
+        int start = 0;
+        for (ChaosScenario.Phase phase : phases) {
+            int end = start + (int) TimeUnit.MILLISECONDS.toSeconds(phase.getDurationMs());
+            long succeeded = 0;
+            long failed = 0;
+            for (int second = start; second < end && second < succeededPerSecond.length(); second++) {
+                succeeded += succeededPerSecond.get(second);
+                failed += failedPerSecond.get(second);
+            }
+            String recovery = "";
+            if (phase.isFaulty()) {
+                int recoveredAt = recoverySecond(end, baseline * 0.9);
+                recovery = recoveredAt < 0 ? "not recovered" : "recovered " + (recoveredAt - end) + "s after end";
+            }
+            System.out.println(String.format("%-24s %-12s %12.1f %8.2f%%  %s", phase.getName(), start + "-" + end + "s",
+                                            rate(start, end), percent(failed, succeeded + failed), recovery));
+            start = end;
+        }
+    }
+
+    private double rate(int fromSecond, int toSecond) {
+        long succeeded = 0;
+        int seconds = 0;
+        for (int second = fromSecond; second < toSecond && second < succeededPerSecond.length(); second++) {
+            succeeded += succeededPerSecond.get(second);
+            seconds++;
+        }
+        return seconds == 0 ? 0.0 : (double) succeeded / seconds;
+    }
+
+    /**
+     * Finds the first second from which three consecutive seconds average at least the target rate.
+     * @return The second, or -1 if the rate never got there before the load ended
+     */
+    private int recoverySecond(int fromSecond, double targetRate) {
+        int lastSecond = (int) Long.parseLong(config.getProperty("loadgen.duration.seconds"));
+        for (int second = fromSecond; second + 3 <= lastSecond; second++) {
+            if (rate(second, second + 3) >= targetRate) {
+                return second;
+            }
+        }
+        return -1;
+    }
+
+    private static void printSagaLatency(String outcome, LatencyHistogram histogram) {
+        System.out.println(String.format("Saga latency %s (ms, n=%d): p50=%.1f p90=%.1f p99=%.1f max=%.1f",
+                                        outcome, histogram.getCount(),
+                                        histogram.getValueAtPercentile(50) / 1000.0,
+                                        histogram.getValueAtPercentile(90) / 1000.0,
+                                        histogram.getValueAtPercentile(99) / 1000.0,
+                                        histogram.getMax() / 1000.0));
+    }
+
+    private static double percent(long part, long total) {
+        return total == 0 ? 0.0 : 100.0 * part / total;
+    }
+
+    /**
+     * Stops the marketplace and sellers and removes the temporary saga state.
+     */
+    public void shutdown() {
+        if (processor != null) {
+            processor.shutdown();
+        }
+        sellers.forEach(SellerApp::stop);
+        for (Thread thread : sellerThreads) {
+            try {
+                thread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (proxy != null) {
+            proxy.stop();
+            try {
+                proxyThread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (stateDirectory != null) {
+            try (Stream<Path> paths = Files.walk(stateDirectory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            } catch (IOException e) {
+                System.err.println("Could not remove " + stateDirectory + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties overrides = new Properties();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                System.err.println("Expected key=value, got: " + arg);
+                System.exit(2);
+            }
+            overrides.setProperty(arg.substring(0, separator).trim(), arg.substring(separator + 1).trim());
+        }
+
+        Properties config = new Properties();
+        String file = overrides.getProperty("harness.config");
+        if (file != null) {
+            try (InputStream is = new FileInputStream(file)) {
+                config.load(is);
+            }
+        }
+        config.putAll(overrides);
+
+        ThroughputHarness harness = new ThroughputHarness(config);
+        boolean finished = false;
+        try {
+            finished = harness.run();
+        } finally {
+            harness.shutdown();
+        }
+        System.exit(finished ? 0 : 1);
+    }
+}
@@ -0,0 +1,112 @@
+package seller;
+
+import common.Log;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reservation throughput of a single seller's inventory with several request threads, the
+ * way {@link SellerApp} drives it. Stock is large enough that reserves never run dry within
+ * an iteration, so the numbers measure locking and bookkeeping rather than rejections.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+UseG1GC", "-XX:+AlwaysPreTouch"})
+@Threads(4)
+public class EnhancedInventoryBenchmark {
+    private static final String[] PRODUCTS = {"P1", "P2", "P3"};
+
+    static Properties config() {
+        Properties config = new Properties();
+        config.setProperty("seller.inventory.size", String.valueOf(Integer.MAX_VALUE / 2));
+        config.setProperty("reservation.timeout.ms", "300000");
+        config.setProperty("cleanup.interval.seconds", "3600");
+        return config;
+    }
+
+    /**
+     * Inventory whose reservations are cancelled again, so it stays the same size.
+     */
+    @State(Scope.Benchmark)
+    public static class Steady {
+        EnhancedInventory inventory;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Log.setLevel(Log.Level.ERROR);
+            inventory = new EnhancedInventory("bench", config());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            inventory.shutdown();
+        }
+    }
+
+    /**
+     * Inventory for the confirm path. Confirmed reservations stay in the map, so it is
+     * recreated every iteration to keep iterations comparable.
+     */
+    @State(Scope.Benchmark)
+    public static class Growing {
+        EnhancedInventory inventory;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            Log.setLevel(Log.Level.ERROR);
+            inventory = new EnhancedInventory("bench", config());
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            inventory.shutdown();
+        }
+    }
+
+    /**
+     * Per-thread product rotation, so threads spread over the products like real orders.
+     */
+    @State(Scope.Thread)
+    public static class Products {
+        private int next;
+
+        String next() {
+            next = (next + 1) % PRODUCTS.length;
+            return PRODUCTS[next];
+        }
+    }
+
+    @Benchmark
+    public boolean reserveCancel(Steady state, Products products) {
+        String reservationId = state.inventory.reserve(products.next(), 1);
+        return reservationId != null && state.inventory.cancel(reservationId);
+    }
+
+    @Benchmark
+    public boolean reserveConfirm(Growing state, Products products) {
+        String reservationId = state.inventory.reserve(products.next(), 1);
+        return reservationId != null && state.inventory.confirm(reservationId);
+    }
+
+    @Benchmark
+    public Map<String, Integer> inventoryStatus(Steady state) {
+        return state.inventory.getInventoryStatus();
+    }
+}
@@ -0,0 +1,97 @@
+package common;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Common base for circuit breakers, so callers can hold either kind of breaker.
+ * Subclasses decide when to trip and keep their own state; the base provides the name,
+ * the clock and the flight recorder event for state changes.
+ */
+public abstract class AbstractCircuitBreaker {
+
+    /**
+     * Circuit breaker states.
+     */
+    public enum State {
+        CLOSED,    // Normal operation
+        OPEN,      // Failing fast
+        HALF_OPEN  // Testing if service recovered
+    }
+
+    private final String name;
+    protected final Clock clock;
+
+    /**
+     * Creates the base of a circuit breaker.
+     * @param name Name for logging purposes
+     * @param clock Clock the breaker measures time on
+     */
+    protected AbstractCircuitBreaker(String name, Clock clock) {
+        this.name = name;
+        this.clock = clock;
+    }
+
+    /**
+     * Executes an operation through the circuit breaker.
+     * @param operation The operation to execute
+     * @param operationName Name for logging purposes
+     * @return CompletableFuture with the operation result
+     */
+    public abstract <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> operation, String operationName);
+
+    /**
+     * Gets the current state of the circuit breaker.
+     * @return Current state
+     */
+    public abstract State getState();
+
+    /**
+     * Gets the number of failures the breaker currently counts towards opening.
+     * @return Current failure count
+     */
+    public abstract int getFailureCount();
+
+    /**
+     * Gets the number of successful calls counted towards closing from HALF_OPEN.
+     * @return Current success count
+     */
+    public abstract int getSuccessCount();
+
+    /**
+     * Resets the circuit breaker to CLOSED state.
+     * Use with caution - primarily for testing or manual intervention.
+     */
+    public abstract void reset();
+
+    /**
+     * Gets circuit breaker statistics.
+     * @return Statistics string
+     */
+    public abstract String getStats();
+
+    /**
+     * Gets the name of the circuit breaker.
+     * @return Circuit breaker name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Emits a flight recorder event for a state change.
+     * @param from Previous state
+     * @param to New state
+     * @param reason What triggered the change
+     */
+    protected void recordStateChange(State from, State to, String reason) {
+        FlightEvents.CircuitBreakerStateChange event = new FlightEvents.CircuitBreakerStateChange();
+        if (event.isEnabled()) {
+            event.name = getName();
+            event.fromState = from.name();
+            event.toState = to.name();
+            event.reason = reason;
+            event.commit();
+        }
+    }
+}
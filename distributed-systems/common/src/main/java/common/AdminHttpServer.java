@@ -0,0 +1,331 @@
+package common;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Operator endpoint for watching and tuning a running process.
+ *
+ * GET /admin/status renders every registered status section as one JSON object. Sections are
+ * read on the admin thread from lock-free snapshots, so polling under load never stalls the
+ * request path. GET /admin/settings lists the runtime-tunable settings with their current
+ * values, and POST /admin/settings?key=value[&amp;key=value...] (or the same pairs as a form body)
+ * changes them in place. Settings use the configuration key they are read from at startup.
+ *
+ * The endpoint can change behaviour, so it listens on loopback unless admin.http.host says
+ * otherwise.
+ */
+public class AdminHttpServer {
+    private final String service;
+    private final String host;
+    private final int port;
+    private final long startedAt = System.currentTimeMillis();
+    private final Map<String, Supplier<?>> sections = new ConcurrentHashMap<>();
+    private final Map<String, Setting> settings = new ConcurrentHashMap<>();
+    private volatile HttpServer server;
+    private ExecutorService httpExecutor;
+
+    /**
+     * Creates an admin endpoint from configuration. The log level is tunable out of the box.
+     * @param config Configuration properties (admin.http.host, admin.http.port); the ADMIN_PORT
+     *               environment variable overrides the port
+     * @param service Name reported in the status document
+     */
+    public AdminHttpServer(Properties config, String service) {
+        this.service = service;
+        this.host = config.getProperty("admin.http.host", "127.0.0.1");
+        this.port = Integer.parseInt(System.getenv().getOrDefault("ADMIN_PORT",
+            config.getProperty("admin.http.port", "9200")));
+        addSetting("log.level", Log::getLevel, value -> Log.setLevel(Log.Level.valueOf(value.trim().toUpperCase())));
+        addStatus("log", () -> {
+            Map<String, Object> log = new LinkedHashMap<>();
+            log.put("level", Log.getLevel());
+            log.put("dropped", Log.getDroppedCount());
+            return log;
+        });
+    }
+
+    /**
+     * Registers a section of the status document.
+     * @param name Key of the section
+     * @param supplier Produces the section: a map, collection, string, number or boolean. Called
+     *                 on every status request, so it must not take locks the request path holds
+     */
+    public void addStatus(String name, Supplier<?> supplier) {
+        sections.put(name, supplier);
+    }
+
+    /**
+     * Registers a setting that can be changed at runtime.
+     * @param key Configuration key the setting is read from at startup
+     * @param getter Reads the current value
+     * @param setter Applies a new value; throws IllegalArgumentException (including
+     *               NumberFormatException) if the value is not acceptable
+     */
+    public void addSetting(String key, Supplier<?> getter, Consumer<String> setter) {
+        settings.put(key, new Setting(getter, setter));
+    }
+
+    /**
+     * Starts serving /admin.
+     */
+    public synchronized void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext("/admin/status", this::handleStatus);
+        server.createContext("/admin/settings", this::handleSettings);
+        httpExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "AdminHttpServer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(httpExecutor);
+        server.start();
+        System.out.println("Admin endpoint available at http://" + host + ":" + port + "/admin/status");
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                sendJson(exchange, 405, "{\"error\":\"Method not allowed\"}");
+                return;
+            }
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("service", service);
+            status.put("uptimeMs", System.currentTimeMillis() - startedAt);
+            new TreeMap<>(sections).forEach((name, supplier) -> {
+                try {
+                    status.put(name, supplier.get());
+                } catch (RuntimeException e) {
+                    status.put(name, "unavailable: " + e.getMessage());
+                }
+            });
+            sendJson(exchange, 200, toJson(status));
+        } catch (RuntimeException e) {
+            sendJson(exchange, 500, "{\"error\":" + toJson(e.getMessage()) + "}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleSettings(HttpExchange exchange) throws IOException {
+        try {
+            if ("GET".equals(exchange.getRequestMethod())) {
+                sendJson(exchange, 200, toJson(currentSettings()));
+            } else if ("POST".equals(exchange.getRequestMethod())) {
+                applySettings(exchange);
+            } else {
+                exchange.getResponseHeaders().set("Allow", "GET, POST");
+                sendJson(exchange, 405, "{\"error\":\"Method not allowed\"}");
+            }
+        } catch (RuntimeException e) {
+            sendJson(exchange, 500, "{\"error\":" + toJson(e.getMessage()) + "}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Applies the key=value pairs from the query string and the body in order. Stops at the
+     * first unknown key or rejected value and reports what had been applied up to then.
+     */
+    private void applySettings(HttpExchange exchange) throws IOException {
+        Map<String, String> updates = new LinkedHashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), updates);
+        try (InputStream in = exchange.getRequestBody()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            in.transferTo(body);
+            parseForm(body.toString(StandardCharsets.UTF_8), updates);
+        }
+        if (updates.isEmpty()) {
+            sendJson(exchange, 400, "{\"error\":\"No settings given, expected key=value pairs\"}");
+            return;
+        }
+
+        Map<String, Object> applied = new LinkedHashMap<>();
+        for (Map.Entry<String, String> update : updates.entrySet()) {
+            Setting setting = settings.get(update.getKey());
+            String error = null;
+            if (setting == null) {
+                error = "Unknown setting " + update.getKey();
+            } else {
+                Object previous = setting.getter.get();
+                try {
+                    setting.setter.accept(update.getValue());
+                    applied.put(update.getKey(), setting.getter.get());
+                    Log.warn("Admin changed {} from {} to {}", update.getKey(), previous, setting.getter.get());
+                } catch (IllegalArgumentException e) {
+                    error = "Invalid value '" + update.getValue() + "' for " + update.getKey() +
+                            (e.getMessage() != null ? ": " + e.getMessage() : "");
+                }
+            }
+            if (error != null) {
+                Map<String, Object> response = new LinkedHashMap<>();
+                response.put("error", error);
+                response.put("applied", applied);
+                sendJson(exchange, 400, toJson(response));
+                return;
+            }
+        }
+        sendJson(exchange, 200, toJson(Map.of("applied", applied)));
+    }
+
+    private Map<String, Object> currentSettings() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        new TreeMap<>(settings).forEach((key, setting) -> values.put(key, setting.getter.get()));
+        return values;
+    }
+
+    private static void parseForm(String form, Map<String, String> into) {
+        if (form == null || form.isBlank()) {
+            return;
+        }
+        for (String pair : form.trim().split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            into.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                     URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+        }
+    }
+
+    private void sendJson(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Renders maps, collections, numbers, booleans and nulls as JSON; anything else as a string.
+     */
+    static String toJson(Object value) {
+        StringBuilder out = new StringBuilder();
+        appendJson(out, value);
+        return out.toString();
+    }
+
+    private static void appendJson(StringBuilder out, Object value) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value);
+        } else if (value instanceof Map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) out.append(',');
+                first = false;
+                appendJson(out, String.valueOf(entry.getKey()));
+                out.append(':');
+                appendJson(out, entry.getValue());
+            }
+            out.append('}');
+        } else if (value instanceof Collection) {
+            out.append('[');
+            boolean first = true;
+            for (Object element : (Collection<?>) value) {
+                if (!first) out.append(',');
+                first = false;
+                appendJson(out, element);
+            }
+            out.append(']');
+        } else {
+            String text = value.toString();
+            out.append('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '"': out.append("\\\""); break;
+                    case '\\': out.append("\\\\"); break;
+                    case '\n': out.append("\\n"); break;
+                    case '\r': out.append("\\r"); break;
+                    case '\t': out.append("\\t"); break;
+                    default:
+                        if (c < 0x20) {
+                            out.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            out.append(c);
+                        }
+                }
+            }
+            out.append('"');
+        }
+    }
+
+    /**
+     * Resizes a fixed-size pool in place. Threads above the new size exit once idle; queued
+     * tasks are kept.
+     * @param pool The pool to resize
+     * @param size New number of threads (at least 1)
+     */
+    public static void resize(ThreadPoolExecutor pool, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("pool size must be at least 1");
+        }
+        // The core size may never exceed the maximum, so the order depends on the direction
+        if (size > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(size);
+            pool.setCorePoolSize(size);
+        } else {
+            pool.setCorePoolSize(size);
+            pool.setMaximumPoolSize(size);
+        }
+    }
+
+    /**
+     * Gets a pool's size and load.
+     * @param pool The pool
+     * @return Map of threads, active and queued
+     */
+    public static Map<String, Object> poolStats(ThreadPoolExecutor pool) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("threads", pool.getCorePoolSize());
+        stats.put("active", pool.getActiveCount());
+        stats.put("queued", pool.getQueue().size());
+        return stats;
+    }
+
+    /**
+     * Stops the endpoint.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            httpExecutor.shutdown();
+            server = null;
+        }
+    }
+
+    private static class Setting {
+        final Supplier<?> getter;
+        final Consumer<String> setter;
+
+        Setting(Supplier<?> getter, Consumer<String> setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+}
@@ -10,16 +10,7 @@ import java.util.function.Supplier;
  * Circuit breaker pattern implementation to prevent cascading failures.
  * Provides protection against repeated calls to failing services.
  */
-public class CircuitBreaker {
-    
-    /**
-     * Circuit breaker states.
-     */
-    public enum State { 
-        CLOSED,    // Normal operation
-        OPEN,      // Failing fast
-        HALF_OPEN  // Testing if service recovered
-    }
+public class CircuitBreaker extends AbstractCircuitBreaker {
     
     private final int failureThreshold;
     private final long timeoutMs;
@@ -28,7 +19,6 @@ public class CircuitBreaker {
     private final AtomicInteger successCount = new AtomicInteger(0);
     private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
     private final AtomicLong lastFailureTime = new AtomicLong(0);
-    private final String name;
     
     /**
      * Creates a circuit breaker with default settings.
@@ -46,7 +36,19 @@ public class CircuitBreaker {
      * @param successThreshold Number of successes needed to close circuit from half-open
      */
     public CircuitBreaker(String name, int failureThreshold, long timeoutMs, int successThreshold) {
-        this.name = name;
+        this(name, failureThreshold, timeoutMs, successThreshold, Clock.shared());
+    }
+    
+    /**
+     * Creates a circuit breaker with custom settings on the given clock.
+     * @param name Name for logging purposes
+     * @param failureThreshold Number of failures before opening circuit
+     * @param timeoutMs Time to wait before trying again when circuit is open
+     * @param successThreshold Number of successes needed to close circuit from half-open
+     * @param clock Clock the open timeout is measured on
+     */
+    public CircuitBreaker(String name, int failureThreshold, long timeoutMs, int successThreshold, Clock clock) {
+        super(name, clock);
         this.failureThreshold = failureThreshold;
         this.timeoutMs = timeoutMs;
         this.successThreshold = successThreshold;
@@ -58,6 +60,7 @@ public class CircuitBreaker {
      * @param operationName Name for logging purposes
      * @return CompletableFuture with the operation result
      */
+    @Override
     public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> operation, String operationName) {
         State currentState = state.get();
         
@@ -66,7 +69,7 @@ public class CircuitBreaker {
                 return attemptReset(operation, operationName);
             } else {
                 return CompletableFuture.failedFuture(
-                    new RuntimeException("Circuit breaker is OPEN for " + name + " - " + operationName)
+                    new RuntimeException("Circuit breaker is OPEN for " + getName() + " - " + operationName)
                 );
             }
         }
@@ -105,7 +108,8 @@ public class CircuitBreaker {
     private <T> CompletableFuture<T> attemptReset(Supplier<CompletableFuture<T>> operation, String operationName) {
         if (state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
             successCount.set(0);
-            System.out.println("Circuit breaker for " + name + " moved to HALF_OPEN state");
+            Log.info("Circuit breaker for {} moved to HALF_OPEN state", getName());
+            recordStateChange(State.OPEN, State.HALF_OPEN, "open timeout elapsed");
             return executeOperation(operation, operationName);
         } else {
             // Another thread already moved to HALF_OPEN
@@ -118,7 +122,7 @@ public class CircuitBreaker {
      * @return true if reset should be attempted
      */
     private boolean shouldAttemptReset() {
-        return System.currentTimeMillis() - lastFailureTime.get() > timeoutMs;
+        return clock.millis() - lastFailureTime.get() > timeoutMs;
     }
     
     /**
@@ -130,10 +134,10 @@ public class CircuitBreaker {
         
         if (state.get() == State.HALF_OPEN) {
             int currentSuccessCount = successCount.incrementAndGet();
-            if (currentSuccessCount >= successThreshold) {
-                state.set(State.CLOSED);
-                System.out.println("Circuit breaker for " + name + " moved to CLOSED state after " + 
-                                 currentSuccessCount + " successful operations");
+            if (currentSuccessCount >= successThreshold && state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+                Log.info("Circuit breaker for {} moved to CLOSED state after {} successful operations", 
+                         getName(), currentSuccessCount);
+                recordStateChange(State.HALF_OPEN, State.CLOSED, currentSuccessCount + " successful operations");
             }
         }
     }
@@ -145,16 +149,20 @@ public class CircuitBreaker {
      */
     private void onFailure(String operationName, Throwable exception) {
         int currentFailureCount = failureCount.incrementAndGet();
-        lastFailureTime.set(System.currentTimeMillis());
+        lastFailureTime.set(clock.millis());
         
-        System.out.println("Circuit breaker for " + name + " recorded failure " + currentFailureCount + 
-                         "/" + failureThreshold + " for operation " + operationName + 
-                         ": " + exception.getMessage());
+        if (Log.isDebugEnabled()) {
+            Log.debug("Circuit breaker for " + getName() + " recorded failure " + currentFailureCount + 
+                      "/" + failureThreshold + " for operation " + operationName + 
+                      ": " + exception.getMessage());
+        }
         
         if (currentFailureCount >= failureThreshold) {
-            state.set(State.OPEN);
-            System.out.println("Circuit breaker for " + name + " moved to OPEN state after " + 
-                             currentFailureCount + " failures");
+            State previous = state.getAndSet(State.OPEN);
+            if (previous != State.OPEN) {
+                Log.warn("Circuit breaker for {} moved to OPEN state after {} failures", getName(), currentFailureCount);
+                recordStateChange(previous, State.OPEN, currentFailureCount + " consecutive failures");
+            }
         }
     }
     
@@ -162,6 +170,7 @@ public class CircuitBreaker {
      * Gets the current state of the circuit breaker.
      * @return Current state
      */
+    @Override
     public State getState() { 
         return state.get(); 
     }
@@ -170,6 +179,7 @@ public class CircuitBreaker {
      * Gets the current failure count.
      * @return Current failure count
      */
+    @Override
     public int getFailureCount() { 
         return failureCount.get(); 
     }
@@ -178,37 +188,33 @@ public class CircuitBreaker {
      * Gets the current success count (relevant in HALF_OPEN state).
      * @return Current success count
      */
+    @Override
     public int getSuccessCount() { 
         return successCount.get(); 
     }
     
-    /**
-     * Gets the name of the circuit breaker.
-     * @return Circuit breaker name
-     */
-    public String getName() { 
-        return name; 
-    }
-    
     /**
      * Resets the circuit breaker to CLOSED state.
      * Use with caution - primarily for testing or manual intervention.
      */
+    @Override
     public void reset() {
-        state.set(State.CLOSED);
+        State previous = state.getAndSet(State.CLOSED);
         failureCount.set(0);
         successCount.set(0);
         lastFailureTime.set(0);
-        System.out.println("Circuit breaker for " + name + " manually reset to CLOSED state");
+        Log.info("Circuit breaker for {} manually reset to CLOSED state", getName());
+        recordStateChange(previous, State.CLOSED, "manual reset");
     }
     
     /**
      * Gets circuit breaker statistics.
      * @return Statistics string
      */
+    @Override
     public String getStats() {
         return String.format("CircuitBreaker[%s]: State=%s, Failures=%d/%d, Successes=%d/%d", 
-                           name, state.get(), failureCount.get(), failureThreshold, 
+                           getName(), state.get(), failureCount.get(), failureThreshold, 
                            successCount.get(), successThreshold);
     }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package common;
+
+/**
+ * Source of time for everything whose behaviour depends on it: timeouts, backoff, expiry and
+ * failure patterns. Components take a clock in their constructor and default to
+ * {@link #shared()}, which is the system clock unless a simulation installed a
+ * {@link VirtualClock}. Durations that only feed metrics and traces keep using the system
+ * clock, since they measure this process rather than the simulated system.
+ */
+public abstract class Clock {
+
+    /**
+     * Wall-clock and monotonic time of this machine.
+     */
+    public static final Clock SYSTEM = new Clock() {
+        @Override
+        public long millis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public long nanos() {
+            return System.nanoTime();
+        }
+    };
+
+    private static volatile Clock sharedInstance = SYSTEM;
+
+    /**
+     * Gets the process-wide clock picked up by components constructed without one.
+     * @return Shared clock
+     */
+    public static Clock shared() {
+        return sharedInstance;
+    }
+
+    /**
+     * Replaces the process-wide clock. Only components constructed afterwards use it.
+     * @param clock The new shared clock
+     */
+    public static void setShared(Clock clock) {
+        sharedInstance = clock != null ? clock : SYSTEM;
+    }
+
+    /**
+     * Gets the current time, like {@link System#currentTimeMillis()}.
+     * @return Epoch milliseconds
+     */
+    public abstract long millis();
+
+    /**
+     * Gets a monotonic timestamp for measuring elapsed time, like {@link System#nanoTime()}.
+     * @return Nanoseconds from an arbitrary origin
+     */
+    public abstract long nanos();
+}
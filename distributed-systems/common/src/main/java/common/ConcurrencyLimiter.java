@@ -0,0 +1,191 @@
+package common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adaptive concurrency limiter using additive-increase/multiplicative-decrease (AIMD).
+ * Callers acquire a slot before starting work and report the outcome when it finishes.
+ * The limit grows by roughly one per limit-sized window of fast, successful calls while
+ * the limiter is actually being used, and shrinks multiplicatively on drops (timeouts,
+ * overload errors) or calls slower than the latency threshold.
+ */
+public class ConcurrencyLimiter {
+    private final String name;
+    protected final int minLimit;
+    protected final int maxLimit;
+    private final long latencyThresholdNanos;
+    protected final double backoffRatio;
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+    private final Object slotReleased = new Object();
+    private final AtomicInteger waiters = new AtomicInteger(0);
+    protected volatile double estimatedLimit;
+
+    /**
+     * Creates an AIMD concurrency limiter.
+     * @param name Name for logging purposes
+     * @param initialLimit Starting concurrency limit
+     * @param minLimit Lower bound for the limit
+     * @param maxLimit Upper bound for the limit
+     * @param latencyThresholdMs Calls slower than this are treated like drops
+     * @param backoffRatio Multiplier applied to the limit on a drop (0 < ratio < 1)
+     */
+    public ConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                              long latencyThresholdMs, double backoffRatio) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.latencyThresholdNanos = latencyThresholdMs * 1_000_000L;
+        this.backoffRatio = backoffRatio;
+        this.estimatedLimit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+    }
+
+    /**
+     * Tries to take a slot without blocking.
+     * @return true if the caller may proceed and must later report an outcome
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= getLimit()) {
+                rejectedCount.incrementAndGet();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Takes a slot, waiting up to the timeout for one to be released. Meant for work that
+     * has already been accepted and must not be shed, so callers that run out of time
+     * are not counted as rejected.
+     * @param timeout Maximum time to wait; 0 only takes a slot that is free right now
+     * @param unit Unit of the timeout
+     * @return true if the caller may proceed and must later report an outcome
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        waiters.incrementAndGet();
+        try {
+            synchronized (slotReleased) {
+                while (true) {
+                    int current = inFlight.get();
+                    if (current < getLimit()) {
+                        if (inFlight.compareAndSet(current, current + 1)) {
+                            return true;
+                        }
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    // Bounded wait, since a growing limit frees slots without a release
+                    TimeUnit.NANOSECONDS.timedWait(slotReleased, Math.min(remaining, 50_000_000L));
+                }
+            }
+        } finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * Releases a slot after a successful call and adapts the limit.
+     * @param rttNanos Observed round-trip time in nanoseconds
+     */
+    public void onSuccess(long rttNanos) {
+        int current = inFlight.getAndDecrement();
+        signalRelease();
+        onSample(rttNanos, current);
+    }
+
+    /**
+     * Releases a slot after a timeout or overload error and backs off the limit.
+     */
+    public void onDropped() {
+        inFlight.decrementAndGet();
+        signalRelease();
+        decrease();
+    }
+
+    /**
+     * Adapts the limit to a successful call. Subclasses override this to use a different
+     * limit algorithm; slot accounting stays in this class.
+     * @param rttNanos Observed round-trip time in nanoseconds
+     * @param inFlightAtCompletion Slots in use when the call completed, including its own
+     */
+    protected void onSample(long rttNanos, int inFlightAtCompletion) {
+        if (rttNanos > latencyThresholdNanos) {
+            decrease();
+        } else if (inFlightAtCompletion * 2 >= estimatedLimit) {
+            // Only probe upwards while the limit is actually the constraint
+            increase();
+        }
+    }
+
+    /**
+     * Releases a slot without adapting the limit (e.g. business-level failures).
+     */
+    public void onIgnore() {
+        inFlight.decrementAndGet();
+        signalRelease();
+    }
+
+    private void signalRelease() {
+        if (waiters.get() > 0) {
+            synchronized (slotReleased) {
+                slotReleased.notifyAll();
+            }
+        }
+    }
+
+    private synchronized void increase() {
+        estimatedLimit = Math.min(maxLimit, estimatedLimit + 1.0 / estimatedLimit);
+    }
+
+    protected synchronized void decrease() {
+        estimatedLimit = Math.max(minLimit, estimatedLimit * backoffRatio);
+    }
+
+    /**
+     * Gets the current concurrency limit.
+     * @return Current limit
+     */
+    public int getLimit() {
+        return (int) estimatedLimit;
+    }
+
+    /**
+     * Gets the number of slots currently in use.
+     * @return In-flight count
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Gets the number of rejected acquisitions since creation.
+     * @return Rejected count
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets limiter statistics.
+     * @return Statistics string
+     */
+    public String getStats() {
+        return String.format("ConcurrencyLimiter[%s]: InFlight=%d, Limit=%d (%d-%d), Rejected=%d",
+                           name, inFlight.get(), getLimit(), minLimit, maxLimit, rejectedCount.get());
+    }
+}
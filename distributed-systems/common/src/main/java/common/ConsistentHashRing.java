@@ -0,0 +1,72 @@
+package common;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring mapping keys (e.g. seller IDs) to a fixed number of shards.
+ * Uses a JVM-independent hash so that the marketplace and the sellers, running in
+ * separate processes, agree on the shard for a given key.
+ */
+public class ConsistentHashRing {
+    private final TreeMap<Long, Integer> ring = new TreeMap<>();
+    private final int shardCount;
+
+    /**
+     * Creates a ring with the default number of virtual nodes per shard.
+     * @param shardCount Number of shards
+     */
+    public ConsistentHashRing(int shardCount) {
+        this(shardCount, 64);
+    }
+
+    /**
+     * Creates a ring.
+     * @param shardCount Number of shards
+     * @param virtualNodes Virtual nodes per shard; more nodes give a more even spread
+     */
+    public ConsistentHashRing(int shardCount, int virtualNodes) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1");
+        }
+        this.shardCount = shardCount;
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                ring.put(hash("shard-" + shard + "#" + node), shard);
+            }
+        }
+    }
+
+    /**
+     * Gets the shard responsible for a key.
+     * @param key The key to look up
+     * @return Shard index between 0 and shardCount - 1
+     */
+    public int shardFor(String key) {
+        if (shardCount == 1) {
+            return 0;
+        }
+        Map.Entry<Long, Integer> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * 64-bit FNV-1a with a final avalanche mix.
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        return h;
+    }
+}
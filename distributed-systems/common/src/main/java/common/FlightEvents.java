@@ -0,0 +1,151 @@
+package common;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events for sagas, the broker, retries, circuit breakers and the
+ * seller inventory, so a recording lines up our own latencies with GC, safepoints and
+ * thread activity.
+ *
+ * Events are registered with the JVM but cost next to nothing unless a recording enables
+ * them: callers create the event, check {@link Event#isEnabled()} or
+ * {@link Event#shouldCommit()} and only then fill in fields. None of them capture stack
+ * traces; the jfr/distributed-systems.jfc profile sets their thresholds.
+ */
+public final class FlightEvents {
+
+    private FlightEvents() {
+    }
+
+    @Name("distributed.SagaTransition")
+    @Label("Saga Transition")
+    @Description("A saga moved, or failed to move, to a new state")
+    @Category({"Distributed Systems", "Saga"})
+    @StackTrace(false)
+    public static class SagaTransition extends Event {
+        @Label("Saga ID")
+        public String sagaId;
+
+        @Label("Order ID")
+        public String orderId;
+
+        @Label("From State")
+        public String fromState;
+
+        @Label("To State")
+        public String toState;
+
+        @Label("Accepted")
+        @Description("False if the transition was not allowed from the current state")
+        public boolean accepted;
+
+        @Label("Time in Previous State")
+        @Timespan(Timespan.NANOSECONDS)
+        public long timeInPreviousState;
+    }
+
+    @Name("distributed.BrokerRequest")
+    @Label("Broker Request")
+    @Description("One request to a seller, from handing it to the send pool until the response, timeout or failure")
+    @Category({"Distributed Systems", "Broker"})
+    @StackTrace(false)
+    public static class BrokerRequest extends Event {
+        @Label("Seller")
+        public String seller;
+
+        @Label("Message Type")
+        public String messageType;
+
+        @Label("Correlation ID")
+        public String correlationId;
+
+        @Label("Shard")
+        public int shard;
+
+        @Label("Outcome")
+        @Description("response, timeout or failed")
+        public String outcome;
+
+        @Label("Timeout")
+        @Timespan(Timespan.MILLISECONDS)
+        public long timeout;
+    }
+
+    @Name("distributed.RetryScheduled")
+    @Label("Retry Scheduled")
+    @Description("A failed operation was scheduled to run again after a backoff")
+    @Category({"Distributed Systems", "Retry"})
+    @StackTrace(false)
+    public static class RetryScheduled extends Event {
+        @Label("Operation")
+        public String operation;
+
+        @Label("Attempt")
+        @Description("Number of the attempt that will run after the backoff")
+        public int attempt;
+
+        @Label("Backoff")
+        @Timespan(Timespan.MILLISECONDS)
+        public long backoff;
+
+        @Label("Error")
+        public String error;
+    }
+
+    @Name("distributed.CircuitBreakerStateChange")
+    @Label("Circuit Breaker State Change")
+    @Category({"Distributed Systems", "Circuit Breaker"})
+    @StackTrace(false)
+    public static class CircuitBreakerStateChange extends Event {
+        @Label("Circuit Breaker")
+        public String name;
+
+        @Label("From State")
+        public String fromState;
+
+        @Label("To State")
+        public String toState;
+
+        @Label("Reason")
+        public String reason;
+    }
+
+    @Name("distributed.InventoryOperation")
+    @Label("Inventory Operation")
+    @Description("A reserve, confirm or cancel on the seller inventory, including the wait for its lock")
+    @Category({"Distributed Systems", "Inventory"})
+    @StackTrace(false)
+    public static class InventoryOperation extends Event {
+        @Label("Seller")
+        public String seller;
+
+        @Label("Operation")
+        public String operation;
+
+        @Label("Product ID")
+        public String productId;
+
+        @Label("Quantity")
+        public int quantity;
+
+        @Label("Reservation ID")
+        public String reservationId;
+
+        @Label("Success")
+        public boolean success;
+
+        @Label("Lock Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        public long lockWait;
+
+        @Label("Lock Hold")
+        @Timespan(Timespan.NANOSECONDS)
+        public long lockHold;
+    }
+}
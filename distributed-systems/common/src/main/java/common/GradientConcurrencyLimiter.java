@@ -0,0 +1,121 @@
+package common;
+
+/**
+ * Concurrency limiter that sizes its limit from round-trip time trends instead of a fixed
+ * latency threshold. The dependency's unloaded RTT serves as the baseline, and the ratio of
+ * that baseline to each new sample is the gradient: near 1 means no queueing and the limit
+ * may grow, while a rising RTT means requests are queueing at the dependency and the limit
+ * shrinks in proportion. Because the baseline is learned per limiter, fast and slow
+ * dependencies each settle at their own limit without tuning.
+ *
+ * A baseline taken from a loaded dependency would already include queueing and let the
+ * limit ratchet upwards, so the baseline only moves down between probes. Once per baseline
+ * window the limiter halves its limit until enough calls have completed below it, drains the
+ * dependency's queue, and re-measures the baseline from those calls before restoring the limit.
+ */
+public class GradientConcurrencyLimiter extends ConcurrencyLimiter {
+    private final double rttTolerance;
+    private final double smoothing;
+    private final int baselineWindow;
+    private volatile long baselineRttNanos = Long.MAX_VALUE;
+    private int windowSamples = 0;
+
+    private boolean probing = false;
+    private double limitBeforeProbe;
+    private long probeMinRttNanos;
+    private int probeSamplesNeeded;
+
+    /**
+     * Creates a gradient concurrency limiter.
+     * @param name Name for logging purposes
+     * @param initialLimit Starting concurrency limit
+     * @param minLimit Lower bound for the limit
+     * @param maxLimit Upper bound for the limit
+     * @param backoffRatio Multiplier applied to the limit on a drop (0 < ratio < 1)
+     * @param rttTolerance How far above the baseline RTT a sample may be before the limit shrinks (>= 1)
+     * @param smoothing Weight of each new limit estimate (0 < smoothing <= 1)
+     * @param baselineWindow Number of samples between baseline probes
+     */
+    public GradientConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                                      double backoffRatio, double rttTolerance, double smoothing, int baselineWindow) {
+        super(name, initialLimit, minLimit, maxLimit, Long.MAX_VALUE / 1_000_000L, backoffRatio);
+        this.rttTolerance = Math.max(1.0, rttTolerance);
+        this.smoothing = Math.max(0.01, Math.min(1.0, smoothing));
+        this.baselineWindow = Math.max(1, baselineWindow);
+    }
+
+    @Override
+    protected synchronized void onSample(long rttNanos, int inFlightAtCompletion) {
+        if (rttNanos <= 0) {
+            return;
+        }
+        if (probing) {
+            recordProbeSample(rttNanos, inFlightAtCompletion);
+            return;
+        }
+
+        baselineRttNanos = Math.min(baselineRttNanos, rttNanos);
+        if (++windowSamples >= baselineWindow) {
+            startProbe();
+            return;
+        }
+
+        double limit = estimatedLimit;
+        // Not enough load to learn anything about the upper bound
+        if (inFlightAtCompletion * 2 < limit) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * baselineRttNanos / rttNanos));
+        double queueAllowance = Math.sqrt(limit);
+        double newLimit = limit * gradient + queueAllowance;
+        newLimit = limit * (1 - smoothing) + newLimit * smoothing;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    private void startProbe() {
+        probing = true;
+        limitBeforeProbe = estimatedLimit;
+        estimatedLimit = Math.max(minLimit, estimatedLimit / 2);
+        probeMinRttNanos = Long.MAX_VALUE;
+        probeSamplesNeeded = Math.max(3, (int) estimatedLimit);
+    }
+
+    private void recordProbeSample(long rttNanos, int inFlightAtCompletion) {
+        // Calls sent before the limit dropped still carry the old queueing delay
+        if (inFlightAtCompletion > estimatedLimit) {
+            return;
+        }
+        probeMinRttNanos = Math.min(probeMinRttNanos, rttNanos);
+        if (--probeSamplesNeeded <= 0) {
+            baselineRttNanos = probeMinRttNanos;
+            estimatedLimit = limitBeforeProbe;
+            windowSamples = 0;
+            probing = false;
+        }
+    }
+
+    @Override
+    protected synchronized void decrease() {
+        super.decrease();
+        if (probing) {
+            limitBeforeProbe = Math.max(minLimit, limitBeforeProbe * backoffRatio);
+        }
+    }
+
+    /**
+     * Gets the baseline round-trip time the limiter compares samples against.
+     * @return Baseline RTT in milliseconds, or -1 before the first sample
+     */
+    public double getBaselineRttMs() {
+        long baseline = baselineRttNanos;
+        return baseline == Long.MAX_VALUE ? -1 : baseline / 1_000_000.0;
+    }
+
+    @Override
+    public String getStats() {
+        return String.format("GradientConcurrencyLimiter[%s]: InFlight=%d, Limit=%d (%d-%d), BaselineRtt=%.1fms, Rejected=%d",
+                           getName(), getInFlight(), getLimit(), minLimit, maxLimit,
+                           getBaselineRttMs(), getRejectedCount());
+    }
+}
@@ -2,8 +2,8 @@ package common;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -12,17 +12,60 @@ import java.util.concurrent.TimeUnit;
  */
 public class IdempotencyManager {
     private final Map<String, ProcessedMessage> processedMessages = new ConcurrentHashMap<>();
-    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor();
+    private final TimerService.Timeout cleanupTimer;
     private final long retentionTimeMs;
+    private final Clock clock;
+    private final MetricsRegistry.Counter hitMetric;
+    private final MetricsRegistry.Counter missMetric;
     
     public IdempotencyManager() {
-        this(TimeUnit.MINUTES.toMillis(30)); // Default 30 minutes retention
+        this("default");
     }
     
     public IdempotencyManager(long retentionTimeMs) {
+        this("default", retentionTimeMs, TimerService.shared());
+    }
+    
+    /**
+     * Creates an idempotency manager with 30 minutes retention.
+     * @param service Service the manager belongs to, e.g. the seller ID; labels its metrics
+     */
+    public IdempotencyManager(String service) {
+        this(service, TimeUnit.MINUTES.toMillis(30), TimerService.shared());
+    }
+    
+    /**
+     * Creates an idempotency manager.
+     * @param service Service the manager belongs to, e.g. the seller ID; labels its metrics
+     * @param retentionTimeMs How long processed results are kept
+     * @param timer Timer service that triggers the periodic cleanup
+     */
+    public IdempotencyManager(String service, long retentionTimeMs, TimerService timer) {
+        this(service, retentionTimeMs, timer, ForkJoinPool.commonPool(), Clock.shared());
+    }
+    
+    /**
+     * Creates an idempotency manager on the given clock.
+     * @param service Service the manager belongs to, e.g. the seller ID; labels its metrics
+     * @param retentionTimeMs How long processed results are kept
+     * @param timer Timer service that triggers the periodic cleanup
+     * @param cleanupExecutor Executor that runs the cleanup
+     * @param clock Clock the retention is measured on
+     */
+    public IdempotencyManager(String service, long retentionTimeMs, TimerService timer, Executor cleanupExecutor,
+                              Clock clock) {
         this.retentionTimeMs = retentionTimeMs;
+        this.clock = clock;
+        // Several managers share one registry in a JVM (harness, simulation), so each gets its own children
+        MetricsRegistry.Family<MetricsRegistry.Counter> lookups = MetricsRegistry.shared().counterFamily(
+            "idempotency_lookups_total", "Duplicate-message checks by result", "service", "result");
+        this.hitMetric = lookups.labels(service, "hit");
+        this.missMetric = lookups.labels(service, "miss");
+        MetricsRegistry.shared().gaugeFamily("idempotency_entries", "Processed messages currently remembered",
+                                             "service").labels(service).setSupplier(() -> processedMessages.size());
         // Clean expired entries every 5 minutes
-        cleaner.scheduleAtFixedRate(this::cleanExpiredEntries, 5, 5, TimeUnit.MINUTES);
+        this.cleanupTimer = timer.scheduleAtFixedRate(this::cleanExpiredEntries, 5, 5, TimeUnit.MINUTES, 
+                                                      cleanupExecutor);
     }
     
     /**
@@ -32,7 +75,9 @@ public class IdempotencyManager {
      */
     public boolean isAlreadyProcessed(String messageId) {
         ProcessedMessage processed = processedMessages.get(messageId);
-        return processed != null && !processed.isExpired();
+        boolean hit = processed != null && !processed.isExpired();
+        (hit ? hitMetric : missMetric).increment();
+        return hit;
     }
     
     /**
@@ -41,7 +86,7 @@ public class IdempotencyManager {
      * @param result The processing result (JSON string)
      */
     public void markAsProcessed(String messageId, String result) {
-        processedMessages.put(messageId, new ProcessedMessage(result, System.currentTimeMillis()));
+        processedMessages.put(messageId, new ProcessedMessage(result, clock.millis()));
     }
     
     /**
@@ -58,23 +103,16 @@ public class IdempotencyManager {
      * Cleans up expired processed message entries.
      */
     private void cleanExpiredEntries() {
-        long cutoff = System.currentTimeMillis() - retentionTimeMs;
+        long cutoff = clock.millis() - retentionTimeMs;
         processedMessages.entrySet().removeIf(entry -> entry.getValue().getTimestamp() < cutoff);
-        System.out.println("Cleaned up " + processedMessages.size() + " expired idempotency entries");
+        Log.debug("Cleaned up expired idempotency entries, {} remaining", processedMessages.size());
     }
     
     /**
-     * Shuts down the cleanup scheduler.
+     * Stops the periodic cleanup.
      */
     public void shutdown() {
-        cleaner.shutdown();
-        try {
-            if (!cleaner.awaitTermination(5, TimeUnit.SECONDS)) {
-                cleaner.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+        cleanupTimer.cancel();
     }
     
     /**
@@ -106,7 +144,7 @@ public class IdempotencyManager {
         }
         
         public boolean isExpired() { 
-            return System.currentTimeMillis() - timestamp > retentionTimeMs;
+            return clock.millis() - timestamp > retentionTimeMs;
         }
     }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package common;
 
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -48,6 +49,18 @@ public class JsonParser {
             first = false;
         }
         
+        if (message.getTraceId() != null) {
+            if (!first) json.append(",");
+            json.append("\"traceId\":\"").append(escapeJson(message.getTraceId())).append("\"");
+            first = false;
+        }
+        
+        if (message.getSpanId() != null) {
+            if (!first) json.append(",");
+            json.append("\"spanId\":\"").append(escapeJson(message.getSpanId())).append("\"");
+            first = false;
+        }
+        
         if (message.getTimestamp() != 0) {
             if (!first) json.append(",");
             json.append("\"timestamp\":").append(message.getTimestamp());
@@ -108,6 +121,14 @@ public class JsonParser {
             message.setSenderId(values.get("senderId"));
         }
         
+        if (values.containsKey("traceId")) {
+            message.setTraceId(values.get("traceId"));
+        }
+        
+        if (values.containsKey("spanId")) {
+            message.setSpanId(values.get("spanId"));
+        }
+        
         if (values.containsKey("timestamp")) {
             try {
                 message.setTimestamp(Long.parseLong(values.get("timestamp")));
@@ -120,7 +141,8 @@ public class JsonParser {
         for (Map.Entry<String, String> entry : values.entrySet()) {
             String key = entry.getKey();
             if (!key.equals("type") && !key.equals("messageId") && !key.equals("correlationId") && 
-                !key.equals("timestamp") && !key.equals("senderId")) {
+                !key.equals("timestamp") && !key.equals("senderId") && 
+                !key.equals("traceId") && !key.equals("spanId")) {
                 data.put(key, entry.getValue());
             }
         }
@@ -129,6 +151,44 @@ public class JsonParser {
         return message;
     }
     
+    /**
+     * Extracts a single string field from a UTF-8 encoded message without decoding the rest.
+     * Relies on the flat layout written by {@link #toJson(Message)}; since UTF-8 multi-byte
+     * sequences never contain ASCII bytes, the key can be matched byte by byte.
+     * @param json UTF-8 encoded JSON object
+     * @param field Field name to look for
+     * @return The field value, or null if absent or not a plain (unescaped) string
+     */
+    public static String extractStringField(byte[] json, String field) {
+        byte[] key = ("\"" + field + "\"").getBytes(StandardCharsets.UTF_8);
+        int limit = json.length - key.length;
+        outer:
+        for (int i = 0; i <= limit; i++) {
+            for (int k = 0; k < key.length; k++) {
+                if (json[i + k] != key[k]) {
+                    continue outer;
+                }
+            }
+            
+            int pos = i + key.length;
+            while (pos < json.length && (json[pos] == ' ' || json[pos] == ':')) {
+                pos++;
+            }
+            if (pos >= json.length || json[pos] != '"') {
+                return null;
+            }
+            int start = ++pos;
+            while (pos < json.length && json[pos] != '"') {
+                if (json[pos] == '\\') {
+                    return null;
+                }
+                pos++;
+            }
+            return pos < json.length ? new String(json, start, pos - start, StandardCharsets.UTF_8) : null;
+        }
+        return null;
+    }
+    
     /**
      * Parses key-value pairs from JSON content.
      */
@@ -0,0 +1,295 @@
+package common;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous, level-gated logger for hot paths.
+ *
+ * Callers only claim a slot in a bounded lock-free ring buffer and store the message
+ * pattern with its arguments; a background writer thread formats the entries and writes
+ * them in batches, so request threads never contend on the PrintStream lock or build
+ * strings. Patterns use {} placeholders and are formatted on the writer thread, so
+ * arguments should be values that do not change after the call. A disabled level costs
+ * a single volatile read: pass arguments through the placeholder overloads, and guard
+ * calls whose arguments need computing (or boxing) with {@link #isDebugEnabled()}.
+ *
+ * WARN and ERROR go to stderr, everything else to stdout. When the buffer is full,
+ * new entries are dropped and the writer reports how many were lost.
+ */
+public final class Log {
+
+    /**
+     * Log levels in increasing order of severity.
+     */
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private static final int CAPACITY = 1 << 14;
+    private static final int MASK = CAPACITY - 1;
+    private static final int BATCH_SIZE = 512;
+    private static final DateTimeFormatter TIME_FORMAT =
+        DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private static final AtomicReferenceArray<Entry> ring = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong tail = new AtomicLong(0);
+    private static final AtomicLong droppedCount = new AtomicLong(0);
+    private static volatile long head = 0;
+    // Position up to which entries have been written out, trailing head by one batch
+    private static volatile long flushed = 0;
+    private static volatile boolean writerParked = false;
+    private static volatile int threshold = levelFromEnv().ordinal();
+    private static final Thread writer;
+
+    static {
+        writer = new Thread(Log::writeLoop, "AsyncLogWriter");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "AsyncLogFlush"));
+    }
+
+    private Log() {
+    }
+
+    /**
+     * Applies the log.level setting; the LOG_LEVEL environment variable takes precedence.
+     * @param config Configuration properties
+     */
+    public static void configure(Properties config) {
+        String level = System.getenv("LOG_LEVEL");
+        if (level == null) {
+            level = config.getProperty("log.level", "INFO");
+        }
+        try {
+            setLevel(Level.valueOf(level.trim().toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown log level '" + level + "', keeping " + getLevel());
+        }
+    }
+
+    public static void setLevel(Level level) {
+        threshold = level.ordinal();
+    }
+
+    public static Level getLevel() {
+        return Level.values()[threshold];
+    }
+
+    public static boolean isDebugEnabled() {
+        return threshold <= Level.DEBUG.ordinal();
+    }
+
+    public static boolean isInfoEnabled() {
+        return threshold <= Level.INFO.ordinal();
+    }
+
+    public static boolean isEnabled(Level level) {
+        return threshold <= level.ordinal();
+    }
+
+    public static void debug(String message) {
+        if (threshold <= 0) publish(Level.DEBUG, message, null, null, null, 0);
+    }
+
+    public static void debug(String pattern, Object arg) {
+        if (threshold <= 0) publish(Level.DEBUG, pattern, arg, null, null, 1);
+    }
+
+    public static void debug(String pattern, Object arg1, Object arg2) {
+        if (threshold <= 0) publish(Level.DEBUG, pattern, arg1, arg2, null, 2);
+    }
+
+    public static void debug(String pattern, Object arg1, Object arg2, Object arg3) {
+        if (threshold <= 0) publish(Level.DEBUG, pattern, arg1, arg2, arg3, 3);
+    }
+
+    public static void info(String message) {
+        if (threshold <= 1) publish(Level.INFO, message, null, null, null, 0);
+    }
+
+    public static void info(String pattern, Object arg) {
+        if (threshold <= 1) publish(Level.INFO, pattern, arg, null, null, 1);
+    }
+
+    public static void info(String pattern, Object arg1, Object arg2) {
+        if (threshold <= 1) publish(Level.INFO, pattern, arg1, arg2, null, 2);
+    }
+
+    public static void info(String pattern, Object arg1, Object arg2, Object arg3) {
+        if (threshold <= 1) publish(Level.INFO, pattern, arg1, arg2, arg3, 3);
+    }
+
+    public static void warn(String message) {
+        if (threshold <= 2) publish(Level.WARN, message, null, null, null, 0);
+    }
+
+    public static void warn(String pattern, Object arg) {
+        if (threshold <= 2) publish(Level.WARN, pattern, arg, null, null, 1);
+    }
+
+    public static void warn(String pattern, Object arg1, Object arg2) {
+        if (threshold <= 2) publish(Level.WARN, pattern, arg1, arg2, null, 2);
+    }
+
+    public static void warn(String pattern, Object arg1, Object arg2, Object arg3) {
+        if (threshold <= 2) publish(Level.WARN, pattern, arg1, arg2, arg3, 3);
+    }
+
+    public static void error(String message) {
+        publish(Level.ERROR, message, null, null, null, 0);
+    }
+
+    public static void error(String pattern, Object arg) {
+        publish(Level.ERROR, pattern, arg, null, null, 1);
+    }
+
+    public static void error(String pattern, Object arg1, Object arg2) {
+        publish(Level.ERROR, pattern, arg1, arg2, null, 2);
+    }
+
+    public static void error(String pattern, Object arg1, Object arg2, Object arg3) {
+        publish(Level.ERROR, pattern, arg1, arg2, arg3, 3);
+    }
+
+    /**
+     * Gets the number of entries dropped because the buffer was full.
+     * @return Dropped entry count
+     */
+    public static long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Writes out everything logged so far, waiting up to a second for the writer.
+     */
+    public static void flush() {
+        long target = tail.get();
+        long deadline = System.nanoTime() + 1_000_000_000L;
+        while (flushed < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    private static void publish(Level level, String pattern, Object arg1, Object arg2, Object arg3, int argCount) {
+        long slot;
+        do {
+            slot = tail.get();
+            if (slot - head >= CAPACITY) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+        } while (!tail.compareAndSet(slot, slot + 1));
+
+        ring.set((int) (slot & MASK), new Entry(level, System.currentTimeMillis(), Thread.currentThread().getName(),
+                                                pattern, arg1, arg2, arg3, argCount));
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private static void writeLoop() {
+        StringBuilder out = new StringBuilder(64 * 1024);
+        StringBuilder err = new StringBuilder(4 * 1024);
+        long reportedDrops = 0;
+        while (true) {
+            int written = 0;
+            long position = head;
+            while (written < BATCH_SIZE) {
+                int index = (int) (position & MASK);
+                Entry entry = ring.get(index);
+                if (entry == null) {
+                    // Empty, or a producer has claimed the slot but not filled it yet
+                    break;
+                }
+                ring.set(index, null);
+                position++;
+                head = position;
+                entry.format(entry.level.ordinal() >= Level.WARN.ordinal() ? err : out);
+                written++;
+            }
+
+            long drops = droppedCount.get();
+            if (drops > reportedDrops) {
+                err.append("[Log] dropped ").append(drops - reportedDrops).append(" messages, buffer full\n");
+                reportedDrops = drops;
+            }
+            write(System.out, out);
+            write(System.err, err);
+            flushed = position;
+
+            if (written == 0) {
+                writerParked = true;
+                if (ring.get((int) (head & MASK)) == null) {
+                    LockSupport.parkNanos(10_000_000L);
+                }
+                writerParked = false;
+            }
+        }
+    }
+
+    private static void write(PrintStream stream, StringBuilder buffer) {
+        if (buffer.length() > 0) {
+            stream.print(buffer);
+            stream.flush();
+            buffer.setLength(0);
+        }
+    }
+
+    private static Level levelFromEnv() {
+        String level = System.getenv("LOG_LEVEL");
+        try {
+            return level != null ? Level.valueOf(level.trim().toUpperCase()) : Level.INFO;
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
+    /**
+     * A captured log call, formatted later by the writer.
+     */
+    private static final class Entry {
+        final Level level;
+        final long timestamp;
+        final String thread;
+        final String pattern;
+        final Object arg1;
+        final Object arg2;
+        final Object arg3;
+        final int argCount;
+
+        Entry(Level level, long timestamp, String thread, String pattern,
+              Object arg1, Object arg2, Object arg3, int argCount) {
+            this.level = level;
+            this.timestamp = timestamp;
+            this.thread = thread;
+            this.pattern = pattern;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+            this.arg3 = arg3;
+            this.argCount = argCount;
+        }
+
+        void format(StringBuilder out) {
+            TIME_FORMAT.formatTo(Instant.ofEpochMilli(timestamp), out);
+            out.append(' ').append(level.name()).append(" [").append(thread).append("] ");
+            int argIndex = 0;
+            int start = 0;
+            int placeholder;
+            while (argIndex < argCount && (placeholder = pattern.indexOf("{}", start)) >= 0) {
+                out.append(pattern, start, placeholder);
+                out.append(argIndex == 0 ? arg1 : argIndex == 1 ? arg2 : arg3);
+                argIndex++;
+                start = placeholder + 2;
+            }
+            out.append(pattern, start, pattern.length()).append('\n');
+        }
+    }
+}
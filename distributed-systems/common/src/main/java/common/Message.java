@@ -24,10 +24,12 @@ public class Message implements Serializable {
     private Map<String, String> data;
     private long timestamp;
     private String senderId;
+    private String traceId;
+    private String spanId;
     
     public Message() {
         this.messageId = UUID.randomUUID().toString();
-        this.timestamp = System.currentTimeMillis();
+        this.timestamp = Clock.shared().millis();
     }
     
     public Message(String type, Map<String, String> data) {
@@ -71,6 +73,13 @@ public class Message implements Serializable {
     public String getSenderId() { return senderId; }
     public void setSenderId(String senderId) { this.senderId = senderId; }
     
+    // Trace context: the trace this message belongs to and the span that sent it
+    public String getTraceId() { return traceId; }
+    public void setTraceId(String traceId) { this.traceId = traceId; }
+    
+    public String getSpanId() { return spanId; }
+    public void setSpanId(String spanId) { this.spanId = spanId; }
+    
     // Convenience methods for accessing data fields
     public String getOrderId() { return data != null ? data.get("orderId") : null; }
     public void setOrderId(String orderId) { 
@@ -115,4 +124,31 @@ public class Message implements Serializable {
         if (data == null) data = new HashMap<>();
         data.put("reason", reason);
     }
+    
+    /**
+     * Whether this request is a hedged duplicate, sent while the original may still be on its way
+     * or may already have been answered.
+     * @return true for a hedge
+     */
+    public boolean isHedge() { 
+        return data != null && Boolean.parseBoolean(data.get("hedge"));
+    }
+    public void setHedge(boolean hedge) { 
+        if (data == null) data = new HashMap<>();
+        data.put("hedge", String.valueOf(hedge));
+    }
+    
+    /**
+     * Flow-control credits a seller advertises: how many outstanding requests it can absorb.
+     * @return Advertised credits, or -1 if the message carries none
+     */
+    public int getCredits() { 
+        if (data == null) return -1;
+        String credits = data.get("credits");
+        return credits != null ? Integer.parseInt(credits) : -1;
+    }
+    public void setCredits(int credits) { 
+        if (data == null) data = new HashMap<>();
+        data.put("credits", String.valueOf(credits));
+    }
 }
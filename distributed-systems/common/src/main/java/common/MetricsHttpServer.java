@@ -0,0 +1,79 @@
+package common;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HTTP endpoint serving a metrics registry in the Prometheus text format on GET /metrics.
+ * Rendering happens on the scrape thread, so the recording side never waits for a scrape.
+ */
+public class MetricsHttpServer {
+    private final MetricsRegistry registry;
+    private final int port;
+    private volatile HttpServer server;
+    private ExecutorService httpExecutor;
+
+    /**
+     * Creates a metrics endpoint from configuration.
+     * @param config Configuration properties (metrics.http.port); the METRICS_PORT
+     *               environment variable overrides the port
+     * @param registry Registry to expose
+     */
+    public MetricsHttpServer(Properties config, MetricsRegistry registry) {
+        this.registry = registry;
+        this.port = Integer.parseInt(System.getenv().getOrDefault("METRICS_PORT",
+            config.getProperty("metrics.http.port", "9100")));
+    }
+
+    /**
+     * Starts serving /metrics.
+     */
+    public synchronized void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", this::handleMetrics);
+        httpExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "MetricsHttpServer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(httpExecutor);
+        server.start();
+        System.out.println("Metrics available at http://*:" + port + "/metrics");
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Stops the endpoint.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            httpExecutor.shutdown();
+            server = null;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+
+/**
+ * Process-wide registry of counters, gauges and latency histograms, rendered in the
+ * Prometheus text exposition format.
+ *
+ * Recording is lock-free: counters are striped adders and histograms are
+ * {@link LatencyHistogram}s, so the hot path costs a few uncontended atomic adds. Metrics
+ * with labels are grouped in a {@link Family}; callers that record often should keep the
+ * child returned by {@link Family#labels} instead of looking it up on every call.
+ * Histograms record microseconds and are exported as summaries in seconds.
+ */
+public class MetricsRegistry {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static volatile MetricsRegistry sharedInstance;
+
+    private final Map<String, Family<?>> families = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the process-wide registry, creating it on first use.
+     * @return Shared metrics registry
+     */
+    public static MetricsRegistry shared() {
+        MetricsRegistry instance = sharedInstance;
+        if (instance == null) {
+            synchronized (MetricsRegistry.class) {
+                instance = sharedInstance;
+                if (instance == null) {
+                    instance = new MetricsRegistry();
+                    sharedInstance = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Gets or creates an unlabelled counter.
+     * @param name Metric name
+     * @param help Description shown in the exposition
+     * @return The counter
+     */
+    public Counter counter(String name, String help) {
+        return counterFamily(name, help).labels();
+    }
+
+    /**
+     * Gets or creates a family of labelled counters.
+     * @param name Metric name
+     * @param help Description shown in the exposition
+     * @param labelNames Names of the labels, in the order values are passed to {@link Family#labels}
+     * @return The counter family
+     */
+    public Family<Counter> counterFamily(String name, String help, String... labelNames) {
+        return register(name, help, "counter", labelNames, values -> new Counter());
+    }
+
+    /**
+     * Gets or creates an unlabelled gauge whose value is read at scrape time.
+     * @param name Metric name
+     * @param help Description shown in the exposition
+     * @param supplier Supplies the current value
+     * @return The gauge
+     */
+    public Gauge gauge(String name, String help, DoubleSupplier supplier) {
+        Gauge gauge = gaugeFamily(name, help).labels();
+        gauge.setSupplier(supplier);
+        return gauge;
+    }
+
+    /**
+     * Gets or creates a family of labelled gauges.
+     * @param name Metric name
+     * @param help Description shown in the exposition
+     * @param labelNames Names of the labels
+     * @return The gauge family
+     */
+    public Family<Gauge> gaugeFamily(String name, String help, String... labelNames) {
+        return register(name, help, "gauge", labelNames, values -> new Gauge());
+    }
+
+    /**
+     * Gets or creates an unlabelled latency histogram.
+     * @param name Metric name, conventionally ending in _seconds
+     * @param help Description shown in the exposition
+     * @return The histogram
+     */
+    public Histogram histogram(String name, String help) {
+        return histogramFamily(name, help).labels();
+    }
+
+    /**
+     * Gets or creates a family of labelled latency histograms.
+     * @param name Metric name, conventionally ending in _seconds
+     * @param help Description shown in the exposition
+     * @param labelNames Names of the labels
+     * @return The histogram family
+     */
+    public Family<Histogram> histogramFamily(String name, String help, String... labelNames) {
+        return register(name, help, "summary", labelNames, values -> new Histogram());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Metric> Family<T> register(String name, String help, String type, String[] labelNames,
+                                                  Function<List<String>, T> factory) {
+        Family<?> family = families.computeIfAbsent(name, n -> new Family<>(n, help, type, labelNames, factory));
+        if (!family.type.equals(type) || family.labelNames.length != labelNames.length) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type +
+                                               " with labels " + Arrays.toString(family.labelNames));
+        }
+        return (Family<T>) family;
+    }
+
+    /**
+     * Renders all metrics in the Prometheus text exposition format (version 0.0.4).
+     * @return Exposition text
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Family<?> family : new TreeMap<>(families).values()) {
+            family.writeTo(out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Base type of everything a family holds.
+     */
+    public abstract static class Metric {
+        abstract void writeTo(StringBuilder out, String name, String labels);
+    }
+
+    /**
+     * Monotonically increasing count.
+     */
+    public static class Counter extends Metric {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        @Override
+        void writeTo(StringBuilder out, String name, String labels) {
+            sample(out, name, labels, value.sum());
+        }
+    }
+
+    /**
+     * Value that can go up and down, either set directly or read from a supplier at scrape time.
+     */
+    public static class Gauge extends Metric {
+        private volatile double value;
+        private volatile DoubleSupplier supplier;
+
+        public void set(double value) {
+            this.value = value;
+        }
+
+        public void setSupplier(DoubleSupplier supplier) {
+            this.supplier = supplier;
+        }
+
+        public double get() {
+            DoubleSupplier current = supplier;
+            return current != null ? current.getAsDouble() : value;
+        }
+
+        @Override
+        void writeTo(StringBuilder out, String name, String labels) {
+            sample(out, name, labels, get());
+        }
+    }
+
+    /**
+     * Latency distribution backed by a lock-free log-linear histogram.
+     */
+    public static class Histogram extends Metric {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        /**
+         * Records a duration measured with {@link System#nanoTime()}.
+         * @param nanos Duration in nanoseconds
+         */
+        public void recordNanos(long nanos) {
+            histogram.record(nanos / 1000);
+        }
+
+        /**
+         * Records a duration in milliseconds.
+         * @param millis Duration in milliseconds
+         */
+        public void recordMillis(long millis) {
+            histogram.record(millis * 1000);
+        }
+
+        /**
+         * Gets the underlying histogram, in microseconds.
+         * @return The histogram
+         */
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        @Override
+        void writeTo(StringBuilder out, String name, String labels) {
+            for (double quantile : QUANTILES) {
+                String quantileLabel = "quantile=\"" + quantile + "\"";
+                sample(out, name, labels.isEmpty() ? quantileLabel : labels + "," + quantileLabel,
+                       histogram.getValueAtPercentile(quantile * 100) / 1e6);
+            }
+            sample(out, name + "_sum", labels, histogram.getSum() / 1e6);
+            sample(out, name + "_count", labels, histogram.getCount());
+        }
+    }
+
+    /**
+     * All metrics sharing a name, one child per combination of label values.
+     */
+    public static class Family<T extends Metric> {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final String[] labelNames;
+        private final Function<List<String>, T> factory;
+        private final Map<List<String>, T> children = new ConcurrentHashMap<>();
+
+        private Family(String name, String help, String type, String[] labelNames, Function<List<String>, T> factory) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labelNames = labelNames.clone();
+            this.factory = factory;
+        }
+
+        /**
+         * Gets or creates the child for the given label values.
+         * @param labelValues One value per label name, in registration order
+         * @return The child metric
+         */
+        public T labels(String... labelValues) {
+            if (labelValues.length != labelNames.length) {
+                throw new IllegalArgumentException("Metric " + name + " expects labels " + Arrays.toString(labelNames));
+            }
+            List<String> key = labelValues.length == 0 ? Collections.emptyList() : Arrays.asList(labelValues);
+            T child = children.get(key);
+            return child != null ? child : children.computeIfAbsent(new ArrayList<>(key), factory);
+        }
+
+        /**
+         * Gets the children created so far, keyed by their label values.
+         * @return Read-only view of the children
+         */
+        public Map<List<String>, T> getChildren() {
+            return Collections.unmodifiableMap(children);
+        }
+
+        private void writeTo(StringBuilder out) {
+            if (children.isEmpty()) {
+                return;
+            }
+            out.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+            children.forEach((labelValues, child) -> child.writeTo(out, name, formatLabels(labelValues)));
+        }
+
+        private String formatLabels(List<String> labelValues) {
+            StringBuilder labels = new StringBuilder();
+            for (int i = 0; i < labelNames.length; i++) {
+                if (i > 0) {
+                    labels.append(',');
+                }
+                String value = labelValues.get(i) != null ? labelValues.get(i) : "";
+                labels.append(labelNames[i]).append("=\"")
+                      .append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                      .append('"');
+            }
+            return labels.toString();
+        }
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (Double.isInfinite(value)) {
+            out.append(value > 0 ? "+Inf" : "-Inf");
+        } else if (value == Math.rint(value)) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+}
@@ -8,5 +8,6 @@ public enum OrderStatus {
     COMPLETED,
     COMPENSATING,
     FAILED,
-    CANCELLED
+    CANCELLED,
+    REJECTED
 }
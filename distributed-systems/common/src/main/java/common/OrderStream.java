@@ -0,0 +1,504 @@
+package common;
+
+import common.OrderLoader.OrderData;
+import common.OrderLoader.OrderItem;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * Lazily parsed stream of orders.
+ * Only the order currently being assembled is held in memory, so files with
+ * tens of millions of lines can be replayed with constant memory.
+ *
+ * Supported formats:
+ * - Pipe-delimited text: orderId|customerId|productId|sellerId|quantity (one item per line)
+ * - JSON array: [{"orderId":..., "customerId":..., "items":[{"productId":..., "sellerId":..., "quantity":...}]}]
+ * - Properties: order.N.id / order.N.customerId / order.N.items.M.(productId|sellerId|quantity)
+ *
+ * Lines (or array entries) belonging to one order must be contiguous. An order with a
+ * malformed quantity is read to its end and then reported with an IllegalArgumentException,
+ * so the caller can skip the whole order and carry on with the next one.
+ */
+public abstract class OrderStream implements Iterator<OrderData>, AutoCloseable {
+    private final BufferedReader reader;
+    private OrderData next;
+    private boolean exhausted = false;
+
+    protected OrderStream(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 64 * 1024);
+    }
+
+    /**
+     * Opens an order file, choosing the format from its extension
+     * (.json, .properties, anything else is treated as pipe-delimited text).
+     * @param filename The order file
+     * @return Stream over the orders in the file
+     */
+    public static OrderStream open(String filename) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(Paths.get(filename), StandardCharsets.UTF_8);
+        String lower = filename.toLowerCase();
+        if (lower.endsWith(".json")) {
+            return fromJson(reader);
+        } else if (lower.endsWith(".properties")) {
+            return fromProperties(reader);
+        }
+        return fromText(reader);
+    }
+
+    public static OrderStream fromText(Reader reader) {
+        return new TextOrderStream(reader);
+    }
+
+    public static OrderStream fromJson(Reader reader) {
+        return new JsonOrderStream(reader);
+    }
+
+    public static OrderStream fromProperties(Reader reader) {
+        return new PropertiesOrderStream(reader);
+    }
+
+    /**
+     * Reads the next complete order from the underlying reader.
+     * @return The next order or null at end of input
+     */
+    protected abstract OrderData readNext(BufferedReader reader) throws IOException;
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !exhausted) {
+            try {
+                next = readNext(reader);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            exhausted = next == null;
+        }
+        return next != null;
+    }
+
+    @Override
+    public OrderData next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        OrderData result = next;
+        next = null;
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        exhausted = true;
+        reader.close();
+    }
+
+    private static OrderData newOrder(String orderId, String customerId) {
+        OrderData order = new OrderData();
+        order.orderId = orderId;
+        order.customerId = customerId;
+        order.items = new ArrayList<>();
+        return order;
+    }
+
+    private static OrderItem newItem(String productId, String sellerId, int quantity) {
+        OrderItem item = new OrderItem();
+        item.productId = productId;
+        item.sellerId = sellerId;
+        item.quantity = quantity;
+        return item;
+    }
+
+    /**
+     * Pipe-delimited text, one item per line; consecutive lines with the same order ID form one order.
+     */
+    private static class TextOrderStream extends OrderStream {
+        private String[] pending;
+
+        TextOrderStream(Reader reader) {
+            super(reader);
+        }
+
+        @Override
+        protected OrderData readNext(BufferedReader reader) throws IOException {
+            String[] first = pending != null ? pending : readFields(reader);
+            pending = null;
+            if (first == null) {
+                return null;
+            }
+
+            OrderData order = newOrder(first[0], first[1]);
+            String badQuantity = null;
+            String[] fields = first;
+            do {
+                try {
+                    order.items.add(toItem(fields));
+                } catch (NumberFormatException e) {
+                    // Keep reading so the rest of this order is not taken for the next one
+                    badQuantity = badQuantity != null ? badQuantity : fields[4];
+                }
+                fields = readFields(reader);
+                if (fields != null && !fields[0].equals(order.orderId)) {
+                    pending = fields;
+                    break;
+                }
+            } while (fields != null);
+
+            if (badQuantity != null) {
+                throw new IllegalArgumentException("Order " + order.orderId + " has malformed quantity '" + badQuantity + "'");
+            }
+            return order;
+        }
+
+        private String[] readFields(BufferedReader reader) throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\|");
+                if (parts.length >= 5) {
+                    for (int i = 0; i < 5; i++) {
+                        parts[i] = parts[i].trim();
+                    }
+                    return parts;
+                }
+            }
+            return null;
+        }
+
+        private OrderItem toItem(String[] fields) {
+            return newItem(fields[2], fields[3], Integer.parseInt(fields[4]));
+        }
+    }
+
+    /**
+     * Properties format parsed line by line instead of through {@link java.util.Properties},
+     * so only the keys of the current order are kept.
+     */
+    private static class PropertiesOrderStream extends OrderStream {
+        private String[] pending;
+
+        PropertiesOrderStream(Reader reader) {
+            super(reader);
+        }
+
+        @Override
+        protected OrderData readNext(BufferedReader reader) throws IOException {
+            // Blocks without an id are skipped in this loop rather than by recursion, so a long run of
+            // them cannot overflow the stack
+            while (true) {
+                String currentIndex = null;
+                String orderId = null;
+                String customerId = null;
+                Map<Integer, String[]> items = new TreeMap<>();
+
+                while (true) {
+                    String[] entry = pending != null ? pending : readOrderEntry(reader);
+                    pending = null;
+                    if (entry == null) {
+                        break;
+                    }
+
+                    // entry = {orderIndex, field, value}
+                    if (currentIndex != null && !currentIndex.equals(entry[0])) {
+                        pending = entry;
+                        break;
+                    }
+                    currentIndex = entry[0];
+
+                    String field = entry[1];
+                    if (field.equals("id")) {
+                        orderId = entry[2];
+                    } else if (field.equals("customerId")) {
+                        customerId = entry[2];
+                    } else if (field.startsWith("items.") && !field.equals("items.count")) {
+                        int dot = field.indexOf('.', 6);
+                        if (dot > 0) {
+                            int itemIndex = Integer.parseInt(field.substring(6, dot));
+                            String[] item = items.computeIfAbsent(itemIndex, k -> new String[3]);
+                            switch (field.substring(dot + 1)) {
+                                case "productId": item[0] = entry[2]; break;
+                                case "sellerId": item[1] = entry[2]; break;
+                                case "quantity": item[2] = entry[2]; break;
+                                default: break;
+                            }
+                        }
+                    }
+                }
+
+                if (currentIndex == null) {
+                    return null;
+                }
+                if (orderId == null) {
+                    continue; // Incomplete order block, skip it
+                }
+
+                OrderData order = newOrder(orderId, customerId != null ? customerId : "customer" + currentIndex);
+                for (String[] item : items.values()) {
+                    if (item[0] != null && item[1] != null && item[2] != null) {
+                        try {
+                            order.items.add(newItem(item[0], item[1], Integer.parseInt(item[2])));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("Order " + orderId + " has malformed quantity '" + item[2] + "'");
+                        }
+                    }
+                }
+                return order;
+            }
+        }
+
+        private String[] readOrderEntry(BufferedReader reader) throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || line.startsWith("!") || !line.startsWith("order.")) {
+                    continue;
+                }
+
+                int separator = indexOfSeparator(line);
+                if (separator < 0) {
+                    continue;
+                }
+                String key = line.substring(0, separator).trim();
+                String value = line.substring(separator + 1).trim();
+
+                int dot = key.indexOf('.', 6);
+                if (dot > 6) {
+                    return new String[] { key.substring(6, dot), key.substring(dot + 1), value };
+                }
+            }
+            return null;
+        }
+
+        private int indexOfSeparator(String line) {
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == '=' || c == ':') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Streaming reader for a top-level JSON array of order objects.
+     * Unknown fields are skipped; quantities may be numbers or strings.
+     */
+    private static class JsonOrderStream extends OrderStream {
+        private int pushback = -2;
+        private boolean started = false;
+        private String badQuantity;
+
+        JsonOrderStream(Reader reader) {
+            super(reader);
+        }
+
+        @Override
+        protected OrderData readNext(BufferedReader reader) throws IOException {
+            if (!started) {
+                expect(reader, '[');
+                started = true;
+                if (peekNonWhitespace(reader) == ']') {
+                    read(reader);
+                    return null;
+                }
+            } else {
+                int c = readNonWhitespace(reader);
+                if (c == ']' || c == -1) {
+                    return null;
+                }
+                if (c != ',') {
+                    throw new IOException("Expected ',' or ']' in order array but found '" + (char) c + "'");
+                }
+            }
+            return readOrder(reader);
+        }
+
+        private OrderData readOrder(BufferedReader reader) throws IOException {
+            OrderData order = newOrder(null, null);
+            expect(reader, '{');
+            if (peekNonWhitespace(reader) == '}') {
+                read(reader);
+                return order;
+            }
+
+            do {
+                String key = readString(reader);
+                expect(reader, ':');
+                switch (key) {
+                    case "orderId":
+                        order.orderId = readScalar(reader);
+                        break;
+                    case "customerId":
+                        order.customerId = readScalar(reader);
+                        break;
+                    case "items":
+                        readItems(reader, order.items);
+                        break;
+                    default:
+                        skipValue(reader);
+                }
+            } while (readNonWhitespace(reader) == ',');
+
+            if (badQuantity != null) {
+                String quantity = badQuantity;
+                badQuantity = null;
+                throw new IllegalArgumentException("Order " + order.orderId + " has malformed quantity '" + quantity + "'");
+            }
+            if (order.customerId == null) {
+                order.customerId = "customer-" + order.orderId;
+            }
+            return order;
+        }
+
+        private void readItems(BufferedReader reader, List<OrderItem> items) throws IOException {
+            expect(reader, '[');
+            if (peekNonWhitespace(reader) == ']') {
+                read(reader);
+                return;
+            }
+            do {
+                expect(reader, '{');
+                String productId = null;
+                String sellerId = null;
+                String quantity = null;
+                if (peekNonWhitespace(reader) != '}') {
+                    do {
+                        String key = readString(reader);
+                        expect(reader, ':');
+                        switch (key) {
+                            case "productId": productId = readScalar(reader); break;
+                            case "sellerId": sellerId = readScalar(reader); break;
+                            case "quantity": quantity = readScalar(reader); break;
+                            default: skipValue(reader);
+                        }
+                    } while (readNonWhitespace(reader) == ',');
+                } else {
+                    read(reader);
+                }
+                if (productId != null && sellerId != null && quantity != null) {
+                    try {
+                        items.add(newItem(productId, sellerId, Integer.parseInt(quantity)));
+                    } catch (NumberFormatException e) {
+                        // Finish the order object first, readOrder reports it
+                        badQuantity = badQuantity != null ? badQuantity : quantity;
+                    }
+                }
+            } while (readNonWhitespace(reader) == ',');
+        }
+
+        private String readScalar(BufferedReader reader) throws IOException {
+            int c = peekNonWhitespace(reader);
+            if (c == '"') {
+                return readString(reader);
+            }
+            StringBuilder sb = new StringBuilder();
+            while ((c = read(reader)) != -1 && c != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) {
+                sb.append((char) c);
+            }
+            unread(c);
+            return sb.toString();
+        }
+
+        private String readString(BufferedReader reader) throws IOException {
+            expect(reader, '"');
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = read(reader)) != '"') {
+                if (c == -1) {
+                    throw new IOException("Unterminated string in order file");
+                }
+                if (c == '\\') {
+                    c = read(reader);
+                    switch (c) {
+                        case 'n': sb.append('\n'); break;
+                        case 'r': sb.append('\r'); break;
+                        case 't': sb.append('\t'); break;
+                        case 'u':
+                            char[] hex = new char[4];
+                            for (int i = 0; i < 4; i++) {
+                                hex[i] = (char) read(reader);
+                            }
+                            sb.append((char) Integer.parseInt(new String(hex), 16));
+                            break;
+                        default: sb.append((char) c);
+                    }
+                } else {
+                    sb.append((char) c);
+                }
+            }
+            return sb.toString();
+        }
+
+        private void skipValue(BufferedReader reader) throws IOException {
+            int c = peekNonWhitespace(reader);
+            if (c == '"') {
+                readString(reader);
+            } else if (c == '{' || c == '[') {
+                int depth = 0;
+                do {
+                    c = read(reader);
+                    if (c == '"') {
+                        unread(c);
+                        readString(reader);
+                    } else if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (c == '}' || c == ']') {
+                        depth--;
+                    }
+                } while (depth > 0 && c != -1);
+            } else {
+                readScalar(reader);
+            }
+        }
+
+        private void expect(BufferedReader reader, char expected) throws IOException {
+            int c = readNonWhitespace(reader);
+            if (c != expected) {
+                throw new IOException("Expected '" + expected + "' in order file but found " +
+                                    (c == -1 ? "end of input" : "'" + (char) c + "'"));
+            }
+        }
+
+        private int peekNonWhitespace(BufferedReader reader) throws IOException {
+            int c = readNonWhitespace(reader);
+            unread(c);
+            return c;
+        }
+
+        private int readNonWhitespace(BufferedReader reader) throws IOException {
+            int c;
+            do {
+                c = read(reader);
+            } while (c != -1 && Character.isWhitespace(c));
+            return c;
+        }
+
+        private int read(BufferedReader reader) throws IOException {
+            if (pushback != -2) {
+                int c = pushback;
+                pushback = -2;
+                return c;
+            }
+            return reader.read();
+        }
+
+        private void unread(int c) {
+            pushback = c;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package common;
+
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Creates the random number generators used by retries, failure simulation and load
+ * generation. Unseeded, every generator is independently random. Seeded through random.seed,
+ * each generator derives its seed from the process seed and its stream name, so a run replays
+ * exactly and adding a stream does not shift the numbers any other stream produces.
+ */
+public final class RandomSource {
+    private static volatile Long seed;
+
+    private RandomSource() {
+    }
+
+    /**
+     * Reads random.seed from the configuration; without it generators stay unseeded.
+     * @param config Configuration properties
+     */
+    public static void configure(Properties config) {
+        String value = config.getProperty("random.seed");
+        setSeed(value != null && !value.trim().isEmpty() ? Long.valueOf(value.trim()) : null);
+    }
+
+    /**
+     * Sets the process seed. Only generators created afterwards are affected.
+     * @param processSeed The seed, or null for unseeded generators
+     */
+    public static void setSeed(Long processSeed) {
+        seed = processSeed;
+    }
+
+    /**
+     * Gets the process seed.
+     * @return The seed, or null when unseeded
+     */
+    public static Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Creates a generator for a named stream, e.g. "retry" or "failure-simulator-seller3".
+     * @param stream Name that identifies the consumer
+     * @return New generator, seeded from the process seed and the name if a seed is set
+     */
+    public static Random create(String stream) {
+        Long processSeed = seed;
+        if (processSeed == null) {
+            return new Random();
+        }
+        long streamSeed = processSeed;
+        for (int i = 0; i < stream.length(); i++) {
+            streamSeed = 31 * streamSeed + stream.charAt(i);
+        }
+        return new Random(mix(streamSeed));
+    }
+
+    /**
+     * SplitMix64 finalizer, so streams with similar names get unrelated seeds.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,109 @@
+package common;
+
+/**
+ * Token bucket that caps retries as a fraction of normal traffic.
+ * Every first attempt deposits {@code retryRatio} tokens and every retry withdraws one, so
+ * with a ratio of 0.1 at most one retry per ten requests is allowed over time. A small
+ * time-based refill keeps retries possible at low traffic. When a dependency degrades, the
+ * bucket drains and further retries are suppressed instead of multiplying its load.
+ */
+public class RetryBudget {
+    // Slack for the rounding of repeated fractional deposits, e.g. ten deposits of 0.1
+    private static final double EPSILON = 1e-9;
+
+    private final String name;
+    private final double retryRatio;
+    private final double minRetriesPerSecond;
+    private final double maxTokens;
+    private final Clock clock;
+    // Updated under the monitor, volatile so getAvailableTokens can read them without it
+    private volatile double tokens;
+    private volatile long lastRefillNanos;
+
+    /**
+     * Creates a retry budget that starts full.
+     * @param name Name for logging purposes
+     * @param retryRatio Tokens deposited per first attempt
+     * @param minRetriesPerSecond Tokens added per second regardless of traffic
+     * @param maxTokens Bucket capacity, i.e. the largest burst of retries allowed
+     */
+    public RetryBudget(String name, double retryRatio, double minRetriesPerSecond, double maxTokens) {
+        this(name, retryRatio, minRetriesPerSecond, maxTokens, Clock.shared());
+    }
+
+    /**
+     * Creates a retry budget that starts full and refills on the given clock.
+     * @param name Name for logging purposes
+     * @param retryRatio Tokens deposited per first attempt
+     * @param minRetriesPerSecond Tokens added per second regardless of traffic
+     * @param maxTokens Bucket capacity, i.e. the largest burst of retries allowed
+     * @param clock Clock the time-based refill is measured on
+     */
+    public RetryBudget(String name, double retryRatio, double minRetriesPerSecond, double maxTokens, Clock clock) {
+        this.name = name;
+        this.clock = clock;
+        this.retryRatio = retryRatio;
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.maxTokens = Math.max(1.0, maxTokens);
+        this.tokens = this.maxTokens;
+        this.lastRefillNanos = clock.nanos();
+    }
+
+    /**
+     * Records a first attempt, earning retry credit.
+     */
+    public synchronized void recordRequest() {
+        refill();
+        tokens = Math.min(maxTokens, tokens + retryRatio);
+    }
+
+    /**
+     * Tries to spend one token on a retry.
+     * @return true if the retry may go ahead
+     */
+    public synchronized boolean tryAcquireRetry() {
+        refill();
+        if (tokens + EPSILON >= 1.0) {
+            tokens = Math.max(0.0, tokens - 1.0);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a token taken by {@link #tryAcquireRetry()} for a retry that did not happen.
+     */
+    public synchronized void refund() {
+        tokens = Math.min(maxTokens, tokens + 1.0);
+    }
+
+    private void refill() {
+        long now = clock.nanos();
+        tokens = Math.min(maxTokens, tokens + (now - lastRefillNanos) / 1e9 * minRetriesPerSecond);
+        lastRefillNanos = now;
+    }
+
+    /**
+     * Gets the retries currently affordable, projecting the time-based refill without
+     * taking the budget's lock.
+     * @return Available tokens
+     */
+    public double getAvailableTokens() {
+        long lastRefill = lastRefillNanos;
+        double available = tokens;
+        return Math.min(maxTokens, available + Math.max(0, clock.nanos() - lastRefill) / 1e9 * minRetriesPerSecond);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets budget statistics.
+     * @return Statistics string
+     */
+    public String getStats() {
+        return String.format("RetryBudget[%s]: Tokens=%.1f/%.0f, Ratio=%.2f, MinPerSecond=%.1f",
+                           name, getAvailableTokens(), maxTokens, retryRatio, minRetriesPerSecond);
+    }
+}
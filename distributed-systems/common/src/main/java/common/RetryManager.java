@@ -1,10 +1,13 @@
 package common;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
 /**
@@ -16,8 +19,14 @@ public class RetryManager {
     private final long baseDelayMs;
     private final double backoffMultiplier;
     private final long maxDelayMs;
-    private final Random random = new Random();
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+    private final Random random;
+    private final Clock clock;
+    private final TimerService timer;
+    private final Executor retryExecutor;
+    private volatile boolean shutdown = false;
+    private final AtomicLong retriesAttempted = new AtomicLong(0);
+    private final AtomicLong retriesSuppressedByBudget = new AtomicLong(0);
+    private final AtomicLong retriesSuppressedByDeadline = new AtomicLong(0);
     
     /**
      * Creates a retry manager with default settings.
@@ -34,6 +43,41 @@ public class RetryManager {
      * @param maxDelayMs Maximum delay between retries in milliseconds
      */
     public RetryManager(int maxRetries, long baseDelayMs, double backoffMultiplier, long maxDelayMs) {
+        this(maxRetries, baseDelayMs, backoffMultiplier, maxDelayMs, TimerService.shared(), ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Creates a retry manager with custom settings and scheduling runtime.
+     * @param maxRetries Maximum number of retry attempts
+     * @param baseDelayMs Base delay between retries in milliseconds
+     * @param backoffMultiplier Multiplier for exponential backoff
+     * @param maxDelayMs Maximum delay between retries in milliseconds
+     * @param timer Timer service that waits out the backoff
+     * @param retryExecutor Executor that runs the retried operations
+     */
+    public RetryManager(int maxRetries, long baseDelayMs, double backoffMultiplier, long maxDelayMs,
+                        TimerService timer, Executor retryExecutor) {
+        this(maxRetries, baseDelayMs, backoffMultiplier, maxDelayMs, timer, retryExecutor,
+             Clock.shared(), RandomSource.create("retry"));
+    }
+    
+    /**
+     * Creates a retry manager with custom settings, scheduling runtime, clock and jitter source.
+     * @param maxRetries Maximum number of retry attempts
+     * @param baseDelayMs Base delay between retries in milliseconds
+     * @param backoffMultiplier Multiplier for exponential backoff
+     * @param maxDelayMs Maximum delay between retries in milliseconds
+     * @param timer Timer service that waits out the backoff
+     * @param retryExecutor Executor that runs the retried operations
+     * @param clock Clock the deadlines are compared against
+     * @param random Source of the backoff jitter
+     */
+    public RetryManager(int maxRetries, long baseDelayMs, double backoffMultiplier, long maxDelayMs,
+                        TimerService timer, Executor retryExecutor, Clock clock, Random random) {
+        this.timer = timer;
+        this.clock = clock;
+        this.random = random;
+        this.retryExecutor = retryExecutor;
         this.maxRetries = maxRetries;
         this.baseDelayMs = baseDelayMs;
         this.backoffMultiplier = backoffMultiplier;
@@ -48,7 +92,43 @@ public class RetryManager {
      */
     public <T> CompletableFuture<T> executeWithRetry(Supplier<CompletableFuture<T>> operation, 
                                                      String operationName) {
-        return executeWithRetry(operation, operationName, 0);
+        return executeWithRetry(operation, operationName, Collections.emptyList(), 0);
+    }
+    
+    /**
+     * Executes an operation with retry logic limited by retry budgets and a deadline.
+     * The first attempt earns credit in every budget; each retry must be affordable in all
+     * of them, and no retry is scheduled to start at or after the deadline.
+     * @param operation The operation to execute
+     * @param operationName Name for logging purposes
+     * @param budgets Retry budgets that must all allow a retry
+     * @param deadlineMillis Epoch millis by which the caller stops waiting, or 0 for none
+     * @return CompletableFuture with the operation result
+     */
+    public <T> CompletableFuture<T> executeWithRetry(Supplier<CompletableFuture<T>> operation, 
+                                                     String operationName,
+                                                     List<RetryBudget> budgets, 
+                                                     long deadlineMillis) {
+        return executeWithRetry(operation, operationName, budgets, deadlineMillis, Tracer.NOOP_SPAN);
+    }
+    
+    /**
+     * Executes an operation with retry logic limited by retry budgets and a deadline,
+     * recording each backoff wait as a retry.backoff child of the given span.
+     * @param operation The operation to execute
+     * @param operationName Name for logging purposes
+     * @param budgets Retry budgets that must all allow a retry
+     * @param deadlineMillis Epoch millis by which the caller stops waiting, or 0 for none
+     * @param span Span of the retried operation
+     * @return CompletableFuture with the operation result
+     */
+    public <T> CompletableFuture<T> executeWithRetry(Supplier<CompletableFuture<T>> operation, 
+                                                     String operationName,
+                                                     List<RetryBudget> budgets, 
+                                                     long deadlineMillis,
+                                                     Tracer.Span span) {
+        budgets.forEach(RetryBudget::recordRequest);
+        return executeWithRetry(operation, operationName, 0, budgets, deadlineMillis, span);
     }
     
     /**
@@ -56,23 +136,28 @@ public class RetryManager {
      * @param operation The operation to execute
      * @param operationName Name for logging purposes
      * @param attemptNumber Current attempt number
+     * @param budgets Retry budgets that must all allow a retry
+     * @param deadlineMillis Deadline for scheduling retries, or 0 for none
+     * @param span Span of the retried operation
      * @return CompletableFuture with the operation result
      */
     private <T> CompletableFuture<T> executeWithRetry(Supplier<CompletableFuture<T>> operation, 
-                                                      String operationName, int attemptNumber) {
+                                                      String operationName, int attemptNumber,
+                                                      List<RetryBudget> budgets, long deadlineMillis,
+                                                      Tracer.Span span) {
         CompletableFuture<T> result = new CompletableFuture<>();
         
         try {
             operation.get()
                 .whenComplete((value, exception) -> {
                     if (exception != null) {
-                        handleFailure(operation, operationName, attemptNumber, exception, result);
+                        handleFailure(operation, operationName, attemptNumber, exception, result, budgets, deadlineMillis, span);
                     } else {
                         result.complete(value);
                     }
                 });
         } catch (Exception e) {
-            handleFailure(operation, operationName, attemptNumber, e, result);
+            handleFailure(operation, operationName, attemptNumber, e, result, budgets, deadlineMillis, span);
         }
         
         return result;
@@ -85,21 +170,59 @@ public class RetryManager {
      * @param attemptNumber Current attempt number
      * @param exception The exception that occurred
      * @param result The result future to complete
+     * @param budgets Retry budgets that must all allow a retry
+     * @param deadlineMillis Deadline for scheduling retries, or 0 for none
+     * @param span Span of the retried operation
      */
     private <T> void handleFailure(Supplier<CompletableFuture<T>> operation, 
                                    String operationName, 
                                    int attemptNumber, 
                                    Throwable exception, 
-                                   CompletableFuture<T> result) {
-        if (attemptNumber < maxRetries && isRetryableException(exception)) {
+                                   CompletableFuture<T> result,
+                                   List<RetryBudget> budgets,
+                                   long deadlineMillis,
+                                   Tracer.Span span) {
+        if (!shutdown && attemptNumber < maxRetries && isRetryableException(exception)) {
             long delay = calculateDelay(attemptNumber);
-            System.out.println(String.format(
-                "Retry %d/%d for %s after %dms delay. Error: %s", 
-                attemptNumber + 1, maxRetries, operationName, delay, exception.getMessage()
-            ));
             
-            scheduler.schedule(() -> {
-                executeWithRetry(operation, operationName, attemptNumber + 1)
+            if (deadlineMillis > 0 && clock.millis() + delay >= deadlineMillis) {
+                retriesSuppressedByDeadline.incrementAndGet();
+                span.tag("retry.suppressed", "deadline");
+                if (Log.isInfoEnabled()) {
+                    Log.info("Retry for {} suppressed: {}ms backoff would pass the deadline. Error: {}", 
+                             operationName, delay, exception.getMessage());
+                }
+                result.completeExceptionally(exception);
+                return;
+            }
+            if (!tryAcquireRetry(budgets)) {
+                retriesSuppressedByBudget.incrementAndGet();
+                span.tag("retry.suppressed", "budget");
+                Log.info("Retry for {} suppressed: retry budget exhausted. Error: {}", 
+                         operationName, exception.getMessage());
+                result.completeExceptionally(exception);
+                return;
+            }
+            
+            retriesAttempted.incrementAndGet();
+            if (Log.isInfoEnabled()) {
+                Log.info(String.format("Retry %d/%d for %s after %dms delay. Error: %s", 
+                         attemptNumber + 1, maxRetries, operationName, delay, exception.getMessage()));
+            }
+            
+            FlightEvents.RetryScheduled event = new FlightEvents.RetryScheduled();
+            if (event.isEnabled()) {
+                event.operation = operationName;
+                event.attempt = attemptNumber + 2;
+                event.backoff = delay;
+                event.error = String.valueOf(exception.getMessage());
+                event.commit();
+            }
+            
+            long backoffStartNanos = System.nanoTime();
+            timer.schedule(() -> {
+                span.recordChild("retry.backoff", backoffStartNanos, System.nanoTime());
+                executeWithRetry(operation, operationName, attemptNumber + 1, budgets, deadlineMillis, span)
                     .whenComplete((value, retryException) -> {
                         if (retryException != null) {
                             result.completeExceptionally(retryException);
@@ -107,16 +230,31 @@ public class RetryManager {
                             result.complete(value);
                         }
                     });
-            }, delay, TimeUnit.MILLISECONDS);
+            }, delay, TimeUnit.MILLISECONDS, retryExecutor);
         } else {
-            System.err.println(String.format(
-                "Operation %s failed after %d attempts. Final error: %s", 
-                operationName, attemptNumber + 1, exception.getMessage()
-            ));
+            if (Log.isEnabled(Log.Level.WARN)) {
+                Log.warn("Operation {} failed after {} attempts. Final error: {}", 
+                         operationName, attemptNumber + 1, exception.getMessage());
+            }
             result.completeExceptionally(exception);
         }
     }
     
+    /**
+     * Takes a token from every budget, or from none if any of them is exhausted.
+     */
+    private boolean tryAcquireRetry(List<RetryBudget> budgets) {
+        for (int i = 0; i < budgets.size(); i++) {
+            if (!budgets.get(i).tryAcquireRetry()) {
+                for (int j = 0; j < i; j++) {
+                    budgets.get(j).refund();
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+    
     /**
      * Calculates delay for the next retry attempt using exponential backoff with jitter.
      * @param attemptNumber Current attempt number
@@ -147,17 +285,11 @@ public class RetryManager {
     }
     
     /**
-     * Shuts down the retry manager.
+     * Shuts down the retry manager. Failures after this point are not retried;
+     * retries already waiting out their backoff still run.
      */
     public void shutdown() {
-        scheduler.shutdown();
-        try {
-            if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
-                scheduler.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+        shutdown = true;
     }
     
     /**
@@ -168,6 +300,39 @@ public class RetryManager {
         return maxRetries;
     }
     
+    /**
+     * Gets the number of retries scheduled since creation.
+     * @return Retry count
+     */
+    public long getRetriesAttempted() {
+        return retriesAttempted.get();
+    }
+    
+    /**
+     * Gets the number of retries skipped because a retry budget was exhausted.
+     * @return Suppressed retry count
+     */
+    public long getRetriesSuppressedByBudget() {
+        return retriesSuppressedByBudget.get();
+    }
+    
+    /**
+     * Gets the number of retries skipped because they would have started past the deadline.
+     * @return Suppressed retry count
+     */
+    public long getRetriesSuppressedByDeadline() {
+        return retriesSuppressedByDeadline.get();
+    }
+    
+    /**
+     * Gets retry statistics.
+     * @return Statistics string
+     */
+    public String getStats() {
+        return String.format("RetryManager: Attempted=%d, SuppressedByBudget=%d, SuppressedByDeadline=%d",
+                           retriesAttempted.get(), retriesSuppressedByBudget.get(), retriesSuppressedByDeadline.get());
+    }
+    
     /**
      * Gets the base delay configured.
      * @return Base delay in milliseconds
@@ -30,4 +30,8 @@ public enum SagaState {
                 return false;
         }
     }
+    
+    public boolean isTerminal() {
+        return this == COMPLETED || this == COMPENSATION_COMPLETED || this == FAILED;
+    }
 }
@@ -0,0 +1,381 @@
+package common;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker that trips on failure rate and slow-call rate over a sliding window.
+ * The window covers either the last N calls (count-based) or the last N seconds (time-based)
+ * and is kept in lock-free ring buffers, so old failures age out instead of accumulating.
+ * After the open wait, a fixed number of half-open probe calls decide whether to close again.
+ * Rejections raised locally (RejectedExecutionException from load shedding) are not counted,
+ * since they say nothing about the health of the remote side.
+ */
+public class SlidingWindowCircuitBreaker extends AbstractCircuitBreaker {
+
+    /**
+     * What the sliding window counts.
+     */
+    public enum WindowType {
+        COUNT,  // Last N calls
+        TIME    // Calls in the last N seconds
+    }
+
+    private final int minimumCalls;
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+    private final long slowCallDurationNanos;
+    private final long waitDurationOpenMs;
+    private final int halfOpenProbes;
+    private final Window window;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicLong openedAt = new AtomicLong(0);
+    private final AtomicInteger probesRemaining = new AtomicInteger(0);
+    private final AtomicInteger probesCompleted = new AtomicInteger(0);
+    private final AtomicInteger probesFailed = new AtomicInteger(0);
+
+    /**
+     * Creates a sliding-window circuit breaker.
+     * @param name Name for logging purposes
+     * @param windowType Whether the window counts calls or seconds
+     * @param windowSize Number of calls or seconds in the window
+     * @param minimumCalls Calls the window must hold before rates are evaluated
+     * @param failureRateThreshold Failure percentage at which the circuit opens
+     * @param slowCallRateThreshold Slow-call percentage at which the circuit opens
+     * @param slowCallDurationMs Calls taking at least this long count as slow
+     * @param waitDurationOpenMs Time to stay open before probing
+     * @param halfOpenProbes Number of probe calls allowed in HALF_OPEN
+     */
+    public SlidingWindowCircuitBreaker(String name, WindowType windowType, int windowSize, int minimumCalls,
+                                       float failureRateThreshold, float slowCallRateThreshold,
+                                       long slowCallDurationMs, long waitDurationOpenMs, int halfOpenProbes) {
+        this(name, windowType, windowSize, minimumCalls, failureRateThreshold, slowCallRateThreshold,
+             slowCallDurationMs, waitDurationOpenMs, halfOpenProbes, Clock.shared());
+    }
+
+    /**
+     * Creates a sliding-window circuit breaker on the given clock.
+     * @param name Name for logging purposes
+     * @param windowType Whether the window counts calls or seconds
+     * @param windowSize Number of calls or seconds in the window
+     * @param minimumCalls Calls the window must hold before rates are evaluated
+     * @param failureRateThreshold Failure percentage at which the circuit opens
+     * @param slowCallRateThreshold Slow-call percentage at which the circuit opens
+     * @param slowCallDurationMs Calls taking at least this long count as slow
+     * @param waitDurationOpenMs Time to stay open before probing
+     * @param halfOpenProbes Number of probe calls allowed in HALF_OPEN
+     * @param clock Clock for call durations, the time window and the open wait
+     */
+    public SlidingWindowCircuitBreaker(String name, WindowType windowType, int windowSize, int minimumCalls,
+                                       float failureRateThreshold, float slowCallRateThreshold,
+                                       long slowCallDurationMs, long waitDurationOpenMs, int halfOpenProbes,
+                                       Clock clock) {
+        super(name, clock);
+        this.minimumCalls = Math.max(1, minimumCalls);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDurationNanos = slowCallDurationMs * 1_000_000L;
+        this.waitDurationOpenMs = waitDurationOpenMs;
+        this.halfOpenProbes = Math.max(1, halfOpenProbes);
+        this.window = windowType == WindowType.TIME ? new TimeWindow(windowSize, clock) : new CountWindow(windowSize);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> operation, String operationName) {
+        State currentState = state.get();
+
+        if (currentState == State.OPEN) {
+            if (clock.millis() - openedAt.get() < waitDurationOpenMs) {
+                return rejected(operationName);
+            }
+            if (state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+                probesCompleted.set(0);
+                probesFailed.set(0);
+                probesRemaining.set(halfOpenProbes);
+                Log.info("Circuit breaker for {} moved to HALF_OPEN state", getName());
+                recordStateChange(State.OPEN, State.HALF_OPEN, "open wait elapsed");
+            }
+            currentState = state.get();
+        }
+
+        if (currentState == State.HALF_OPEN) {
+            if (!tryAcquireProbe()) {
+                return rejected(operationName);
+            }
+            return executeOperation(operation, operationName, true);
+        }
+
+        return executeOperation(operation, operationName, false);
+    }
+
+    private boolean tryAcquireProbe() {
+        while (true) {
+            int remaining = probesRemaining.get();
+            if (remaining <= 0) {
+                return false;
+            }
+            if (probesRemaining.compareAndSet(remaining, remaining - 1)) {
+                return true;
+            }
+        }
+    }
+
+    private <T> CompletableFuture<T> rejected(String operationName) {
+        return CompletableFuture.failedFuture(
+            new RuntimeException("Circuit breaker is " + state.get() + " for " + getName() + " - " + operationName));
+    }
+
+    private <T> CompletableFuture<T> executeOperation(Supplier<CompletableFuture<T>> operation,
+                                                      String operationName, boolean probe) {
+        long startNanos = clock.nanos();
+        CompletableFuture<T> future;
+        try {
+            future = operation.get();
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((result, exception) -> {
+            if (exception != null && isLocalRejection(exception)) {
+                if (probe) {
+                    // Give the probe slot back, the call never reached the remote side
+                    probesRemaining.incrementAndGet();
+                }
+                return;
+            }
+            boolean slow = clock.nanos() - startNanos >= slowCallDurationNanos;
+            if (probe) {
+                onProbeResult(exception != null || slow, operationName);
+            } else {
+                onResult(exception != null, slow, operationName, exception);
+            }
+        });
+    }
+
+    private void onResult(boolean failed, boolean slow, String operationName, Throwable exception) {
+        window.record(failed, slow);
+        if (failed && Log.isDebugEnabled()) {
+            Log.debug("Circuit breaker for {} recorded failure for operation {}: {}",
+                      getName(), operationName, exception.getMessage());
+        }
+
+        if (state.get() != State.CLOSED) {
+            return;
+        }
+        int calls = window.getCalls();
+        if (calls < minimumCalls) {
+            return;
+        }
+        float failureRate = window.getFailures() * 100f / calls;
+        float slowRate = window.getSlowCalls() * 100f / calls;
+        if ((failureRate >= failureRateThreshold || slowRate >= slowCallRateThreshold) &&
+            state.compareAndSet(State.CLOSED, State.OPEN)) {
+            openedAt.set(clock.millis());
+            Log.warn(String.format("Circuit breaker for %s moved to OPEN state (failure rate %.1f%%, " +
+                                   "slow-call rate %.1f%% over %d calls)", getName(), failureRate, slowRate, calls));
+            recordStateChange(State.CLOSED, State.OPEN, String.format("failure rate %.1f%%, slow-call rate %.1f%% over %d calls",
+                                                                      failureRate, slowRate, calls));
+        }
+    }
+
+    private void onProbeResult(boolean bad, String operationName) {
+        if (bad) {
+            probesFailed.incrementAndGet();
+        }
+        if (probesCompleted.incrementAndGet() < halfOpenProbes) {
+            return;
+        }
+
+        float badRate = probesFailed.get() * 100f / halfOpenProbes;
+        if (badRate >= Math.min(failureRateThreshold, slowCallRateThreshold)) {
+            if (state.compareAndSet(State.HALF_OPEN, State.OPEN)) {
+                openedAt.set(clock.millis());
+                Log.warn("Circuit breaker for " + getName() + " moved back to OPEN state after " +
+                         probesFailed.get() + "/" + halfOpenProbes + " failed probes");
+                recordStateChange(State.HALF_OPEN, State.OPEN, probesFailed.get() + "/" + halfOpenProbes + " failed probes");
+            }
+        } else if (state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+            window.reset();
+            Log.info("Circuit breaker for {} moved to CLOSED state after {} probes", getName(), halfOpenProbes);
+            recordStateChange(State.HALF_OPEN, State.CLOSED, halfOpenProbes + " probes passed");
+        }
+    }
+
+    private static boolean isLocalRejection(Throwable exception) {
+        Throwable cause = exception;
+        while (cause != null) {
+            if (cause instanceof RejectedExecutionException) {
+                return true;
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+
+    @Override
+    public State getState() {
+        return state.get();
+    }
+
+    @Override
+    public int getFailureCount() {
+        return window.getFailures();
+    }
+
+    @Override
+    public int getSuccessCount() {
+        return probesCompleted.get() - probesFailed.get();
+    }
+
+    @Override
+    public void reset() {
+        State previous = state.getAndSet(State.CLOSED);
+        window.reset();
+        Log.info("Circuit breaker for {} manually reset to CLOSED state", getName());
+        recordStateChange(previous, State.CLOSED, "manual reset");
+    }
+
+    @Override
+    public String getStats() {
+        int calls = window.getCalls();
+        return String.format("SlidingWindowCircuitBreaker[%s]: State=%s, Calls=%d, FailureRate=%.1f%%, SlowCallRate=%.1f%%",
+                           getName(), state.get(), calls,
+                           calls == 0 ? 0f : window.getFailures() * 100f / calls,
+                           calls == 0 ? 0f : window.getSlowCalls() * 100f / calls);
+    }
+
+    /**
+     * Sliding window of call outcomes.
+     */
+    private interface Window {
+        void record(boolean failed, boolean slow);
+        int getCalls();
+        int getFailures();
+        int getSlowCalls();
+        void reset();
+    }
+
+    /**
+     * Ring buffer of the last N outcomes. Each slot holds a bit set (recorded, failed, slow);
+     * replacing a slot adjusts the running totals by the difference, so reads are O(1).
+     */
+    private static class CountWindow implements Window {
+        private static final int RECORDED = 1;
+        private static final int FAILED = 2;
+        private static final int SLOW = 4;
+
+        private final AtomicIntegerArray slots;
+        private final AtomicLong cursor = new AtomicLong(0);
+        private final AtomicInteger calls = new AtomicInteger(0);
+        private final AtomicInteger failures = new AtomicInteger(0);
+        private final AtomicInteger slowCalls = new AtomicInteger(0);
+
+        CountWindow(int size) {
+            this.slots = new AtomicIntegerArray(Math.max(1, size));
+        }
+
+        @Override
+        public void record(boolean failed, boolean slow) {
+            int outcome = RECORDED | (failed ? FAILED : 0) | (slow ? SLOW : 0);
+            int index = (int) (cursor.getAndIncrement() % slots.length());
+            int evicted = slots.getAndSet(index, outcome);
+            calls.addAndGet(1 - (evicted & RECORDED));
+            failures.addAndGet((failed ? 1 : 0) - ((evicted & FAILED) != 0 ? 1 : 0));
+            slowCalls.addAndGet((slow ? 1 : 0) - ((evicted & SLOW) != 0 ? 1 : 0));
+        }
+
+        @Override
+        public int getCalls() { return calls.get(); }
+
+        @Override
+        public int getFailures() { return failures.get(); }
+
+        @Override
+        public int getSlowCalls() { return slowCalls.get(); }
+
+        @Override
+        public void reset() {
+            for (int i = 0; i < slots.length(); i++) {
+                int evicted = slots.getAndSet(i, 0);
+                calls.addAndGet(-(evicted & RECORDED));
+                failures.addAndGet((evicted & FAILED) != 0 ? -1 : 0);
+                slowCalls.addAndGet((evicted & SLOW) != 0 ? -1 : 0);
+            }
+        }
+    }
+
+    /**
+     * Ring of one-second buckets. A bucket is lazily cleared when its second comes around
+     * again; reads sum the buckets that still fall inside the window.
+     */
+    private static class TimeWindow implements Window {
+        private final int seconds;
+        private final Clock clock;
+        private final AtomicLongArray bucketEpochs;
+        private final AtomicIntegerArray bucketCalls;
+        private final AtomicIntegerArray bucketFailures;
+        private final AtomicIntegerArray bucketSlowCalls;
+
+        TimeWindow(int seconds, Clock clock) {
+            this.seconds = Math.max(1, seconds);
+            this.clock = clock;
+            this.bucketEpochs = new AtomicLongArray(this.seconds);
+            this.bucketCalls = new AtomicIntegerArray(this.seconds);
+            this.bucketFailures = new AtomicIntegerArray(this.seconds);
+            this.bucketSlowCalls = new AtomicIntegerArray(this.seconds);
+        }
+
+        @Override
+        public void record(boolean failed, boolean slow) {
+            long epochSecond = clock.millis() / 1000;
+            int index = (int) (epochSecond % seconds);
+            long bucketEpoch = bucketEpochs.get(index);
+            if (bucketEpoch != epochSecond && bucketEpochs.compareAndSet(index, bucketEpoch, epochSecond)) {
+                // First call in this second: clear what the bucket held a full window ago.
+                // Increments racing with the clear may be lost, which only makes the window slightly lenient.
+                bucketCalls.set(index, 0);
+                bucketFailures.set(index, 0);
+                bucketSlowCalls.set(index, 0);
+            }
+            bucketCalls.incrementAndGet(index);
+            if (failed) bucketFailures.incrementAndGet(index);
+            if (slow) bucketSlowCalls.incrementAndGet(index);
+        }
+
+        @Override
+        public int getCalls() { return sum(bucketCalls); }
+
+        @Override
+        public int getFailures() { return sum(bucketFailures); }
+
+        @Override
+        public int getSlowCalls() { return sum(bucketSlowCalls); }
+
+        private int sum(AtomicIntegerArray counters) {
+            long oldest = clock.millis() / 1000 - seconds;
+            int total = 0;
+            for (int i = 0; i < seconds; i++) {
+                if (bucketEpochs.get(i) > oldest) {
+                    total += counters.get(i);
+                }
+            }
+            return total;
+        }
+
+        @Override
+        public void reset() {
+            for (int i = 0; i < seconds; i++) {
+                bucketEpochs.set(i, 0);
+                bucketCalls.set(i, 0);
+                bucketFailures.set(i, 0);
+                bucketSlowCalls.set(i, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package common;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared scheduling runtime built on a hashed timing wheel.
+ * A single ticker thread advances the wheel every tick and hands expired tasks to the
+ * executor supplied when they were scheduled, so components no longer need their own
+ * scheduler threads and delay queues. Scheduling and cancelling are O(1) and lock-free
+ * for callers; timers fire with tick granularity (10ms by default), which suits request
+ * timeouts, retry backoff and housekeeping rather than precise timing.
+ *
+ * Tasks scheduled without an executor run on the ticker thread itself and must be short
+ * and non-blocking.
+ *
+ * A timer service on a {@link VirtualClock} has no ticker thread. Whoever advances the clock
+ * calls {@link #runDue()}, which fires everything that has come due on the calling thread,
+ * so a simulation can run hours of timers in order and without waiting.
+ */
+public class TimerService {
+    private static final int INIT = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private static volatile TimerService sharedInstance;
+
+    private final String name;
+    private final Clock clock;
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startNanos;
+    private final Queue<Timeout> pendingAdds = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> pendingCancels = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger(0);
+    private final Thread ticker;
+    private volatile boolean running = true;
+    private long currentTick = 0;
+
+    /**
+     * Gets the process-wide timer service, creating it on first use.
+     * @return Shared timer service
+     */
+    public static TimerService shared() {
+        TimerService instance = sharedInstance;
+        if (instance == null) {
+            synchronized (TimerService.class) {
+                instance = sharedInstance;
+                if (instance == null) {
+                    instance = new TimerService("SharedTimer", 10, 512);
+                    sharedInstance = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Creates a timer service with its own ticker thread.
+     * @param name Name of the ticker thread
+     * @param tickMs Wheel resolution in milliseconds
+     * @param wheelSize Number of buckets, rounded up to a power of two
+     */
+    public TimerService(String name, long tickMs, int wheelSize) {
+        this(name, tickMs, wheelSize, Clock.SYSTEM);
+    }
+
+    /**
+     * Creates a timer service on the given clock. On a {@link VirtualClock} no ticker thread
+     * is started; call {@link #runDue()} after advancing the clock.
+     * @param name Name of the ticker thread
+     * @param tickMs Wheel resolution in milliseconds
+     * @param wheelSize Number of buckets, rounded up to a power of two
+     * @param clock Clock the deadlines are measured on
+     */
+    public TimerService(String name, long tickMs, int wheelSize, Clock clock) {
+        this.name = name;
+        this.clock = clock;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMs));
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.startNanos = clock.nanos();
+
+        if (clock instanceof VirtualClock) {
+            this.ticker = null;
+        } else {
+            this.ticker = new Thread(this::tickLoop, name);
+            ticker.setDaemon(true);
+            ticker.start();
+        }
+    }
+
+    /**
+     * Schedules a short task to run on the ticker thread.
+     * @param task The task to run
+     * @param delay Delay before running
+     * @param unit Unit of the delay
+     * @return Handle for cancellation
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return schedule(task, delay, unit, null);
+    }
+
+    /**
+     * Schedules a task to run once on the given executor.
+     * @param task The task to run
+     * @param delay Delay before running
+     * @param unit Unit of the delay
+     * @param executor Executor that runs the task, or null for the ticker thread
+     * @return Handle for cancellation
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit, Executor executor) {
+        return add(new Timeout(task, executor, 0), unit.toNanos(delay));
+    }
+
+    /**
+     * Schedules a task to run periodically at a fixed rate, measured from one scheduled
+     * start to the next. Runs may overlap if the executor allows it.
+     * @param task The task to run
+     * @param initialDelay Delay before the first run
+     * @param period Time between runs
+     * @param unit Unit of the delays
+     * @param executor Executor that runs the task, or null for the ticker thread
+     * @return Handle for cancellation
+     */
+    public Timeout scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit, Executor executor) {
+        return add(new Timeout(task, executor, Math.max(1, unit.toNanos(period))), unit.toNanos(initialDelay));
+    }
+
+    /**
+     * Schedules a task to run periodically with a fixed delay between the end of one run and
+     * the start of the next, so runs never overlap.
+     * @param task The task to run
+     * @param initialDelay Delay before the first run
+     * @param delay Delay after each run
+     * @param unit Unit of the delays
+     * @param executor Executor that runs the task, or null for the ticker thread
+     * @return Handle for cancellation
+     */
+    public Timeout scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit, Executor executor) {
+        return add(new Timeout(task, executor, -Math.max(1, unit.toNanos(delay))), unit.toNanos(initialDelay));
+    }
+
+    private Timeout add(Timeout timeout, long delayNanos) {
+        if (!running) {
+            throw new RejectedExecutionException("Timer service " + name + " is shut down");
+        }
+        timeout.deadlineNanos = clock.nanos() - startNanos + Math.max(0, delayNanos);
+        pendingCount.incrementAndGet();
+        pendingAdds.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Gets the number of scheduled tasks that have neither fired nor been cancelled.
+     * Periodic tasks count once until cancelled.
+     * @return Pending task count
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Stops the ticker thread. Tasks that have not fired yet are dropped.
+     */
+    public void shutdown() {
+        running = false;
+        if (ticker != null) {
+            ticker.interrupt();
+        }
+    }
+
+    /**
+     * Fires every tick that has come due on the virtual clock. Tasks scheduled from inside a
+     * firing task with no delay run on the next tick.
+     * @throws IllegalStateException if this timer has its own ticker thread
+     */
+    public void runDue() {
+        if (ticker != null) {
+            throw new IllegalStateException("Timer service " + name + " runs its own ticker");
+        }
+        long now = clock.nanos() - startNanos;
+        while (running && tickNanos * (currentTick + 1) <= now) {
+            advanceTick(tickNanos * (currentTick + 1));
+        }
+    }
+
+    private void tickLoop() {
+        while (running) {
+            long tickDeadline = waitForNextTick();
+            if (tickDeadline < 0) {
+                break;
+            }
+            advanceTick(tickDeadline);
+        }
+    }
+
+    private void advanceTick(long tickDeadline) {
+        processCancellations();
+        transferPendingAdds();
+        wheel[(int) (currentTick & mask)].expire(tickDeadline);
+        currentTick++;
+    }
+
+    /**
+     * Sleeps until the end of the current tick.
+     * @return The tick's deadline relative to the start time, or -1 when shutting down
+     */
+    private long waitForNextTick() {
+        long deadline = tickNanos * (currentTick + 1);
+        while (true) {
+            long now = clock.nanos() - startNanos;
+            long sleepNanos = deadline - now;
+            if (sleepNanos <= 0) {
+                return deadline;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void processCancellations() {
+        Timeout timeout;
+        while ((timeout = pendingCancels.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+            pendingCount.decrementAndGet();
+        }
+    }
+
+    private void transferPendingAdds() {
+        // Bound the work per tick so a burst of scheduling cannot stall expiry
+        for (int i = 0; i < 100_000; i++) {
+            Timeout timeout = pendingAdds.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state.get() == CANCELLED) {
+                continue;
+            }
+            long expiryTick = timeout.deadlineNanos / tickNanos;
+            timeout.remainingRounds = (expiryTick - currentTick) / wheel.length;
+            long tick = Math.max(expiryTick, currentTick);
+            wheel[(int) (tick & mask)].add(timeout);
+        }
+    }
+
+    private void fire(Timeout timeout) {
+        if (timeout.state.get() == CANCELLED) {
+            // Cancelled after this tick's cancellations were processed
+            return;
+        }
+        Runnable work = timeout.task;
+        if (timeout.periodNanos > 0) {
+            // Fixed rate: the next run is due one period after this one was due
+            timeout.deadlineNanos += timeout.periodNanos;
+            pendingAdds.add(timeout);
+        } else if (timeout.periodNanos < 0) {
+            // Fixed delay: the next run is scheduled once this one has finished
+            work = () -> {
+                try {
+                    timeout.task.run();
+                } finally {
+                    if (timeout.state.get() == INIT && running) {
+                        timeout.deadlineNanos = clock.nanos() - startNanos - timeout.periodNanos;
+                        pendingAdds.add(timeout);
+                    }
+                }
+            };
+        } else if (timeout.state.compareAndSet(INIT, EXPIRED)) {
+            pendingCount.decrementAndGet();
+        } else {
+            return;
+        }
+
+        if (timeout.executor == null) {
+            runSafely(work);
+        } else {
+            try {
+                timeout.executor.execute(work);
+            } catch (RejectedExecutionException e) {
+                Log.warn("Timer {} could not hand off task: {}", name, e.getMessage());
+                timeout.cancel();
+            }
+        }
+    }
+
+    private void runSafely(Runnable work) {
+        try {
+            work.run();
+        } catch (Throwable t) {
+            Log.error("Timer {} task failed: {}", name, t.getMessage());
+        }
+    }
+
+    /**
+     * Handle for a scheduled task.
+     */
+    public final class Timeout {
+        private final Runnable task;
+        private final Executor executor;
+        private final long periodNanos;
+        private final AtomicInteger state = new AtomicInteger(INIT);
+        private long deadlineNanos;
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task, Executor executor, long periodNanos) {
+            this.task = task;
+            this.executor = executor;
+            this.periodNanos = periodNanos;
+        }
+
+        /**
+         * Cancels the task. A one-shot task that has already fired cannot be cancelled.
+         * @return true if this call cancelled the task
+         */
+        public boolean cancel() {
+            if (state.compareAndSet(INIT, CANCELLED)) {
+                pendingCancels.add(this);
+                return true;
+            }
+            return false;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        /**
+         * @return true once a one-shot task has fired or any task has been cancelled
+         */
+        public boolean isDone() {
+            return state.get() != INIT;
+        }
+    }
+
+    /**
+     * Intrusive doubly linked list of timeouts, touched only by the ticker thread.
+     */
+    private final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        void expire(long tickDeadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.deadlineNanos <= tickDeadline) {
+                        fire(timeout);
+                    } else {
+                        // Placed in the wrong bucket, which cannot happen unless the clock misbehaves
+                        pendingAdds.add(timeout);
+                    }
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package common;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Offline tool that rebuilds the critical path of traced orders from the span files
+ * written by {@link Tracer}.
+ *
+ * The critical path is found by walking back from the end of the root span: at each level
+ * the child that finished last is the one the parent was waiting for, the next one on the
+ * path is the child that finished last before that child started, and any gap in between is
+ * the parent's own time. The self time of a broker.attempt span is therefore the time the
+ * request spent on the wire and queued in the seller's receive loop.
+ *
+ * Usage: {@code java -cp common.jar common.TraceAnalyzer [--order ID] [--trace ID] [--top N] FILE|DIR...}
+ * Without a filter it prints the N slowest traces (default 5) and, for all traces, where the
+ * time on the critical path went by span name.
+ */
+public class TraceAnalyzer {
+
+    public static void main(String[] args) throws IOException {
+        String orderFilter = null;
+        String traceFilter = null;
+        int top = 5;
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--order": orderFilter = args[++i]; break;
+                case "--trace": traceFilter = args[++i]; break;
+                case "--top": top = Integer.parseInt(args[++i]); break;
+                default: inputs.add(Paths.get(args[i]));
+            }
+        }
+        if (inputs.isEmpty()) {
+            inputs.add(Paths.get("./traces"));
+        }
+
+        Map<String, List<SpanRecord>> traces = new HashMap<>();
+        int spanCount = 0;
+        for (Path input : inputs) {
+            for (Path file : listSpanFiles(input)) {
+                try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.isBlank()) {
+                            continue;
+                        }
+                        try {
+                            SpanRecord span = SpanRecord.parse(line);
+                            traces.computeIfAbsent(span.traceId, id -> new ArrayList<>()).add(span);
+                            spanCount++;
+                        } catch (RuntimeException e) {
+                            System.err.println("Skipping malformed span in " + file + ": " + e.getMessage());
+                        }
+                    }
+                }
+            }
+        }
+
+        List<TraceResult> results = new ArrayList<>();
+        for (Map.Entry<String, List<SpanRecord>> entry : traces.entrySet()) {
+            TraceResult result = analyze(entry.getValue());
+            if (result == null) {
+                continue;
+            }
+            if (traceFilter != null && !traceFilter.equals(result.root.traceId)) {
+                continue;
+            }
+            if (orderFilter != null && !orderFilter.equals(result.root.tags.get("orderId"))) {
+                continue;
+            }
+            results.add(result);
+        }
+        results.sort(Comparator.comparingLong((TraceResult r) -> r.root.duration).reversed());
+
+        System.out.println("Read " + spanCount + " spans in " + traces.size() + " traces, " +
+                           results.size() + " matching trace(s) with a root span");
+        if (results.isEmpty()) {
+            return;
+        }
+
+        int shown = orderFilter != null || traceFilter != null ? results.size() : Math.min(top, results.size());
+        for (int i = 0; i < shown; i++) {
+            print(results.get(i));
+        }
+
+        if (results.size() > 1) {
+            printSummary(results);
+        }
+    }
+
+    private static List<Path> listSpanFiles(Path input) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(input)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(input, "*.jsonl")) {
+                stream.forEach(files::add);
+            }
+        } else if (Files.exists(input)) {
+            files.add(input);
+        } else {
+            System.err.println("No such file or directory: " + input);
+        }
+        return files;
+    }
+
+    /**
+     * Builds the span tree of one trace and walks its critical path.
+     * @return The result, or null if the trace has no root span (e.g. only seller spans were read)
+     */
+    private static TraceResult analyze(List<SpanRecord> spans) {
+        Map<String, SpanRecord> byId = new HashMap<>();
+        for (SpanRecord span : spans) {
+            byId.put(span.spanId, span);
+        }
+        SpanRecord root = null;
+        for (SpanRecord span : spans) {
+            if (span.parentId == null) {
+                root = span;
+            } else {
+                SpanRecord parent = byId.get(span.parentId);
+                if (parent != null) {
+                    parent.children.add(span);
+                }
+            }
+        }
+        if (root == null) {
+            return null;
+        }
+
+        List<Segment> path = new ArrayList<>();
+        walk(root, root.end(), path);
+        // The walk runs backwards from the end of the root
+        Collections.reverse(path);
+        return new TraceResult(root, spans, path);
+    }
+
+    private static void walk(SpanRecord span, long windowEnd, List<Segment> path) {
+        long cursor = Math.min(span.end(), windowEnd);
+        List<SpanRecord> children = new ArrayList<>(span.children);
+        children.sort(Comparator.comparingLong(SpanRecord::end).reversed());
+        for (SpanRecord child : children) {
+            if (cursor <= span.start) {
+                break;
+            }
+            if (child.start >= cursor) {
+                // Finished after what the parent was waiting for, so not on the path
+                continue;
+            }
+            long childEnd = Math.min(child.end(), cursor);
+            if (childEnd < cursor) {
+                path.add(new Segment(span, childEnd, cursor));
+            }
+            walk(child, childEnd, path);
+            cursor = Math.max(child.start, span.start);
+        }
+        if (cursor > span.start) {
+            path.add(new Segment(span, span.start, cursor));
+        }
+    }
+
+    private static void print(TraceResult result) {
+        SpanRecord root = result.root;
+        TreeSet<String> services = new TreeSet<>();
+        result.spans.forEach(span -> services.add(span.service));
+        System.out.println();
+        System.out.printf("Trace %s  order=%s  outcome=%s  total=%.1fms  (%d spans; %s)%n",
+            root.traceId, root.tags.getOrDefault("orderId", "-"), root.tags.getOrDefault("outcome", "-"),
+            root.duration / 1000.0, result.spans.size(), String.join(", ", services));
+        System.out.println("  Critical path (stretches under 0.1ms omitted):");
+        System.out.println("      offset       self   share  span");
+        for (Segment segment : result.path) {
+            if (segment.length() < 100) {
+                continue;
+            }
+            System.out.printf("  %8.1fms %8.1fms  %5.1f%%  %s%n",
+                (segment.start - root.start) / 1000.0, segment.length() / 1000.0,
+                root.duration > 0 ? 100.0 * segment.length() / root.duration : 0.0,
+                describe(segment.span));
+        }
+    }
+
+    private static String describe(SpanRecord span) {
+        StringBuilder out = new StringBuilder(span.name).append(" [").append(span.service).append(']');
+        for (String key : new String[]{"seller", "type", "attempt", "result", "retry.suppressed", "error"}) {
+            String value = span.tags.get(key);
+            if (value != null) {
+                out.append(' ').append(key).append('=').append(value);
+            }
+        }
+        return out.toString();
+    }
+
+    private static void printSummary(List<TraceResult> results) {
+        Map<String, Long> timeByName = new LinkedHashMap<>();
+        long total = 0;
+        long[] durations = new long[results.size()];
+        for (int i = 0; i < results.size(); i++) {
+            TraceResult result = results.get(i);
+            durations[i] = result.root.duration;
+            for (Segment segment : result.path) {
+                timeByName.merge(segment.span.name, segment.length(), Long::sum);
+                total += segment.length();
+            }
+        }
+        Arrays.sort(durations);
+
+        System.out.println();
+        System.out.printf("%d traces: p50=%.1fms p99=%.1fms max=%.1fms%n", durations.length,
+            durations[(int) (durations.length * 0.5)] / 1000.0,
+            durations[Math.min(durations.length - 1, (int) (durations.length * 0.99))] / 1000.0,
+            durations[durations.length - 1] / 1000.0);
+        System.out.println("Critical path time by span:");
+        long grandTotal = total;
+        timeByName.entrySet().stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+            .forEach(entry -> System.out.printf("  %10.1fms  %5.1f%%  %s%n", entry.getValue() / 1000.0,
+                grandTotal > 0 ? 100.0 * entry.getValue() / grandTotal : 0.0, entry.getKey()));
+    }
+
+    private static class TraceResult {
+        final SpanRecord root;
+        final List<SpanRecord> spans;
+        final List<Segment> path;
+
+        TraceResult(SpanRecord root, List<SpanRecord> spans, List<Segment> path) {
+            this.root = root;
+            this.spans = spans;
+            this.path = path;
+        }
+    }
+
+    /**
+     * A stretch of the critical path during which the given span was the one being waited on.
+     */
+    private static class Segment {
+        final SpanRecord span;
+        final long start;
+        final long end;
+
+        Segment(SpanRecord span, long start, long end) {
+            this.span = span;
+            this.start = start;
+            this.end = end;
+        }
+
+        long length() {
+            return end - start;
+        }
+    }
+
+    /**
+     * One line of a span file. Times are epoch microseconds.
+     */
+    private static class SpanRecord {
+        String traceId;
+        String spanId;
+        String parentId;
+        String service;
+        String name;
+        long start;
+        long duration;
+        final Map<String, String> tags = new HashMap<>();
+        final List<SpanRecord> children = new ArrayList<>();
+
+        long end() {
+            return start + duration;
+        }
+
+        /**
+         * Parses the flat JSON object written by {@link Tracer}: string or integer values,
+         * tags as "tag."-prefixed keys.
+         */
+        static SpanRecord parse(String line) {
+            SpanRecord span = new SpanRecord();
+            int[] pos = {skipWhitespace(line, 0)};
+            expect(line, pos, '{');
+            while (true) {
+                pos[0] = skipWhitespace(line, pos[0]);
+                if (line.charAt(pos[0]) == '}') {
+                    break;
+                }
+                String key = readString(line, pos);
+                pos[0] = skipWhitespace(line, pos[0]);
+                expect(line, pos, ':');
+                pos[0] = skipWhitespace(line, pos[0]);
+                String value;
+                if (line.charAt(pos[0]) == '"') {
+                    value = readString(line, pos);
+                } else {
+                    int start = pos[0];
+                    while (pos[0] < line.length() && ",} ".indexOf(line.charAt(pos[0])) < 0) {
+                        pos[0]++;
+                    }
+                    value = line.substring(start, pos[0]);
+                }
+                span.set(key, value);
+                pos[0] = skipWhitespace(line, pos[0]);
+                if (line.charAt(pos[0]) == ',') {
+                    pos[0]++;
+                }
+            }
+            if (span.traceId == null || span.spanId == null) {
+                throw new IllegalArgumentException("missing traceId or spanId");
+            }
+            return span;
+        }
+
+        private void set(String key, String value) {
+            switch (key) {
+                case "traceId": traceId = value; break;
+                case "spanId": spanId = value; break;
+                case "parentId": parentId = value; break;
+                case "service": service = value; break;
+                case "name": name = value; break;
+                case "start": start = Long.parseLong(value); break;
+                case "duration": duration = Long.parseLong(value); break;
+                default:
+                    if (key.startsWith("tag.")) {
+                        tags.put(key.substring(4), value);
+                    }
+            }
+        }
+
+        private static int skipWhitespace(String line, int pos) {
+            while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) {
+                pos++;
+            }
+            if (pos >= line.length()) {
+                throw new IllegalArgumentException("unexpected end of line");
+            }
+            return pos;
+        }
+
+        private static void expect(String line, int[] pos, char expected) {
+            if (line.charAt(pos[0]) != expected) {
+                throw new IllegalArgumentException("expected '" + expected + "' at " + pos[0]);
+            }
+            pos[0]++;
+        }
+
+        private static String readString(String line, int[] pos) {
+            expect(line, pos, '"');
+            StringBuilder out = new StringBuilder();
+            while (true) {
+                char c = line.charAt(pos[0]++);
+                if (c == '"') {
+                    return out.toString();
+                }
+                if (c != '\\') {
+                    out.append(c);
+                    continue;
+                }
+                char escaped = line.charAt(pos[0]++);
+                switch (escaped) {
+                    case 'n': out.append('\n'); break;
+                    case 'r': out.append('\r'); break;
+                    case 't': out.append('\t'); break;
+                    case 'u':
+                        out.append((char) Integer.parseInt(line.substring(pos[0], pos[0] + 4), 16));
+                        pos[0] += 4;
+                        break;
+                    default: out.append(escaped);
+                }
+            }
+        }
+    }
+}
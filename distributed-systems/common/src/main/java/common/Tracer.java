@@ -0,0 +1,410 @@
+package common;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records trace spans across the marketplace and the sellers.
+ *
+ * A trace starts at the saga of one order; its trace ID and the current span ID travel to the
+ * sellers in the traceId and spanId headers of each {@link Message}, so every process adds its
+ * spans to the same tree. Finished spans are queued and written by a background thread as one
+ * JSON object per line to {@code <tracing.directory>/spans-<service>.jsonl}; a full queue drops
+ * spans rather than block the caller. {@link TraceAnalyzer} merges the files of all processes
+ * and rebuilds the critical path of each order.
+ *
+ * While tracing is disabled, or for traces not picked by sampling, every span is
+ * {@link #NOOP_SPAN}, which records nothing and propagates nothing.
+ */
+public class Tracer {
+    /**
+     * Span that records nothing; returned whenever a call is not traced.
+     */
+    public static final Span NOOP_SPAN = new Span(null, null, null, null, null, 0);
+
+    private static volatile Tracer sharedInstance = new Tracer();
+    private static final ThreadLocal<Span> currentSpan = new ThreadLocal<>();
+
+    private final boolean enabled;
+    private final String service;
+    private final double sampleRate;
+    private final BlockingQueue<Span> finished;
+    private final AtomicLong droppedCount = new AtomicLong(0);
+    private final long baseEpochMicros;
+    private final long baseNanos;
+    private final Path file;
+    private final Thread writer;
+    private volatile boolean closed = false;
+
+    private Tracer() {
+        this.enabled = false;
+        this.service = null;
+        this.sampleRate = 0;
+        this.finished = null;
+        this.baseEpochMicros = 0;
+        this.baseNanos = 0;
+        this.file = null;
+        this.writer = null;
+    }
+
+    private Tracer(String service, double sampleRate, int bufferSize, Path file) {
+        this.enabled = true;
+        this.service = service;
+        this.sampleRate = sampleRate;
+        this.finished = new ArrayBlockingQueue<>(bufferSize);
+        this.baseEpochMicros = System.currentTimeMillis() * 1000;
+        this.baseNanos = System.nanoTime();
+        this.file = file;
+        this.writer = new Thread(this::writeLoop, "TraceWriter-" + service);
+        this.writer.setDaemon(true);
+        this.writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "TraceFlush-" + service));
+    }
+
+    /**
+     * Gets the process-wide tracer. Disabled until {@link #configure} enables it.
+     * @return Shared tracer
+     */
+    public static Tracer shared() {
+        return sharedInstance;
+    }
+
+    /**
+     * Sets up the shared tracer from tracing.enabled, tracing.sample.rate, tracing.directory
+     * and tracing.buffer.size. Spans still queued in the previous tracer are written first.
+     * @param config Configuration properties
+     * @param service Name of this process in the spans, e.g. the marketplace or seller ID
+     */
+    public static synchronized void configure(Properties config, String service) {
+        Tracer tracer = new Tracer();
+        if (Boolean.parseBoolean(config.getProperty("tracing.enabled", "false"))) {
+            Path file = Paths.get(config.getProperty("tracing.directory", "./traces"), "spans-" + service + ".jsonl");
+            try {
+                Files.createDirectories(file.getParent());
+                tracer = new Tracer(service,
+                    Double.parseDouble(config.getProperty("tracing.sample.rate", "1.0")),
+                    Integer.parseInt(config.getProperty("tracing.buffer.size", "65536")),
+                    file);
+                Log.info("Tracing enabled, writing spans to {}", file);
+            } catch (IOException e) {
+                Log.warn("Could not create trace directory, tracing disabled: {}", e.getMessage());
+            }
+        }
+        Tracer previous = sharedInstance;
+        sharedInstance = tracer;
+        previous.close();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts a new trace, subject to sampling.
+     * @param name Name of the root span
+     * @return The root span, or {@link #NOOP_SPAN} if the trace is not recorded
+     */
+    public Span startTrace(String name) {
+        if (!enabled || (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return NOOP_SPAN;
+        }
+        return new Span(this, newId(), newId(), null, name, System.nanoTime());
+    }
+
+    /**
+     * Starts a span continuing the trace carried by an incoming message.
+     * @param name Span name
+     * @param message Message with traceId and spanId headers
+     * @return The span, or {@link #NOOP_SPAN} if the message is not part of a recorded trace
+     */
+    public Span startSpan(String name, Message message) {
+        if (!enabled || message == null || message.getTraceId() == null) {
+            return NOOP_SPAN;
+        }
+        return new Span(this, message.getTraceId(), newId(), message.getSpanId(), name, System.nanoTime());
+    }
+
+    /**
+     * Gets the span the current thread is working on, as set by {@link #setCurrentSpan}.
+     * Lets code deep in a call path, such as lock helpers, attach child spans without
+     * threading the span through every signature.
+     * @return The current span, or {@link #NOOP_SPAN}
+     */
+    public static Span currentSpan() {
+        Span span = currentSpan.get();
+        return span != null ? span : NOOP_SPAN;
+    }
+
+    /**
+     * Sets the span the current thread is working on.
+     * @param span The span, or null to clear
+     */
+    public static void setCurrentSpan(Span span) {
+        if (span == null || span == NOOP_SPAN) {
+            currentSpan.remove();
+        } else {
+            currentSpan.set(span);
+        }
+    }
+
+    /**
+     * Gets the number of spans dropped because the write queue was full.
+     * @return Dropped span count
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private void submit(Span span) {
+        if (closed || !finished.offer(span)) {
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    private long toEpochMicros(long nanos) {
+        return baseEpochMicros + (nanos - baseNanos) / 1000;
+    }
+
+    private static String newId() {
+        long id = ThreadLocalRandom.current().nextLong();
+        String hex = Long.toHexString(id);
+        return hex.length() == 16 ? hex : "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    private void writeLoop() {
+        List<Span> batch = new ArrayList<>(1024);
+        StringBuilder line = new StringBuilder(256);
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            while (!closed || !finished.isEmpty()) {
+                Span first = finished.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                finished.drainTo(batch, 1023);
+                for (Span span : batch) {
+                    line.setLength(0);
+                    span.writeTo(line);
+                    out.append(line).append('\n');
+                }
+                batch.clear();
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Trace writer stopped: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes out the queued spans and stops the writer.
+     */
+    public void close() {
+        if (!enabled || closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writer.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (droppedCount.get() > 0) {
+            System.err.println("Tracer dropped " + droppedCount.get() + " spans, trace buffer full");
+        }
+    }
+
+    /**
+     * A timed operation within a trace. Tags may be added from any thread until the span ends.
+     */
+    public static class Span {
+        private final Tracer tracer;
+        private final String traceId;
+        private final String spanId;
+        private final String parentId;
+        private final String name;
+        private final long startNanos;
+        private long endNanos;
+        private List<String> tags;
+        private boolean ended;
+
+        private Span(Tracer tracer, String traceId, String spanId, String parentId, String name, long startNanos) {
+            this.tracer = tracer;
+            this.traceId = traceId;
+            this.spanId = spanId;
+            this.parentId = parentId;
+            this.name = name;
+            this.startNanos = startNanos;
+        }
+
+        public boolean isRecording() {
+            return tracer != null;
+        }
+
+        public String getTraceId() {
+            return traceId;
+        }
+
+        public String getSpanId() {
+            return spanId;
+        }
+
+        /**
+         * Starts a child span now.
+         * @param name Span name
+         * @return The child, or {@link #NOOP_SPAN} if this span is not recorded
+         */
+        public Span startChild(String name) {
+            return startChild(name, System.nanoTime());
+        }
+
+        /**
+         * Starts a child span at an earlier point in time.
+         * @param name Span name
+         * @param startNanos Start time from {@link System#nanoTime()}
+         * @return The child, or {@link #NOOP_SPAN} if this span is not recorded
+         */
+        public Span startChild(String name, long startNanos) {
+            return tracer != null ? new Span(tracer, traceId, newId(), spanId, name, startNanos) : NOOP_SPAN;
+        }
+
+        /**
+         * Records a child span that has already finished, e.g. a measured wait.
+         * @param name Span name
+         * @param startNanos Start time from {@link System#nanoTime()}
+         * @param endNanos End time from {@link System#nanoTime()}
+         */
+        public void recordChild(String name, long startNanos, long endNanos) {
+            if (tracer != null) {
+                startChild(name, startNanos).end(endNanos);
+            }
+        }
+
+        /**
+         * Adds a tag; later values for the same key are written as well, the analyzer keeps the last.
+         * @param key Tag name
+         * @param value Tag value
+         * @return This span
+         */
+        public Span tag(String key, String value) {
+            if (tracer != null) {
+                synchronized (this) {
+                    if (!ended) {
+                        if (tags == null) {
+                            tags = new ArrayList<>(8);
+                        }
+                        tags.add(key);
+                        tags.add(value);
+                    }
+                }
+            }
+            return this;
+        }
+
+        public Span tag(String key, long value) {
+            return tracer != null ? tag(key, String.valueOf(value)) : this;
+        }
+
+        /**
+         * Tags the span with the failure that ended the traced operation.
+         * @param failure The failure, unwrapped from CompletionException by the caller
+         * @return This span
+         */
+        public Span error(Throwable failure) {
+            return tracer != null ? tag("error", failure.getClass().getSimpleName() + ": " + failure.getMessage()) : this;
+        }
+
+        /**
+         * Puts this span's trace context into a message's headers, making it the parent of
+         * whatever the receiver records.
+         * @param message Outgoing message
+         */
+        public void inject(Message message) {
+            if (tracer != null) {
+                message.setTraceId(traceId);
+                message.setSpanId(spanId);
+            }
+        }
+
+        /**
+         * Ends the span now and queues it for writing. Ending twice has no effect.
+         */
+        public void end() {
+            if (tracer != null) {
+                end(System.nanoTime());
+            }
+        }
+
+        private void end(long endNanos) {
+            synchronized (this) {
+                if (ended) {
+                    return;
+                }
+                ended = true;
+                this.endNanos = endNanos;
+            }
+            tracer.submit(this);
+        }
+
+        private void writeTo(StringBuilder out) {
+            out.append("{\"traceId\":\"").append(traceId)
+               .append("\",\"spanId\":\"").append(spanId).append('"');
+            if (parentId != null) {
+                out.append(",\"parentId\":\"").append(parentId).append('"');
+            }
+            out.append(",\"service\":");
+            appendString(out, tracer.service);
+            out.append(",\"name\":");
+            appendString(out, name);
+            out.append(",\"start\":").append(tracer.toEpochMicros(startNanos))
+               .append(",\"duration\":").append(Math.max(0, (endNanos - startNanos) / 1000));
+            if (tags != null) {
+                for (int i = 0; i < tags.size(); i += 2) {
+                    out.append(',');
+                    appendString(out, "tag." + tags.get(i));
+                    out.append(':');
+                    appendString(out, tags.get(i + 1));
+                }
+            }
+            out.append('}');
+        }
+
+        private static void appendString(StringBuilder out, String value) {
+            out.append('"');
+            if (value != null) {
+                for (int i = 0; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    switch (c) {
+                        case '"': out.append("\\\""); break;
+                        case '\\': out.append("\\\\"); break;
+                        case '\n': out.append("\\n"); break;
+                        case '\r': out.append("\\r"); break;
+                        case '\t': out.append("\\t"); break;
+                        default:
+                            if (c < 0x20) {
+                                out.append(String.format("\\u%04x", (int) c));
+                            } else {
+                                out.append(c);
+                            }
+                    }
+                }
+            }
+            out.append('"');
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package common;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock that only moves when told to, for deterministic simulation. Time starts at a fixed
+ * epoch so periodic behaviour lines up identically on every run.
+ */
+public class VirtualClock extends Clock {
+    private final long epochMillis;
+    private volatile long elapsedNanos;
+
+    /**
+     * Creates a virtual clock.
+     * @param epochMillis Wall-clock time the clock starts at
+     */
+    public VirtualClock(long epochMillis) {
+        this.epochMillis = epochMillis;
+    }
+
+    @Override
+    public long millis() {
+        return epochMillis + TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    @Override
+    public long nanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Moves the clock forward.
+     * @param amount Amount of time to add
+     * @param unit Unit of the amount
+     */
+    public void advance(long amount, TimeUnit unit) {
+        advanceTo(elapsedNanos + unit.toNanos(amount));
+    }
+
+    /**
+     * Moves the clock to a point in time, never backwards.
+     * @param nanos Target as returned by {@link #nanos()}
+     */
+    public synchronized void advanceTo(long nanos) {
+        if (nanos > elapsedNanos) {
+            elapsedNanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * State-transition tests for the consecutive-failure {@link CircuitBreaker}.
+ */
+class CircuitBreakerTest {
+
+    @Test
+    void successBetweenFailuresKeepsTheBreakerClosed() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 3, 3_600_000, 2);
+
+        fail(breaker);
+        fail(breaker);
+        succeed(breaker);
+        fail(breaker);
+        fail(breaker);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(2, breaker.getFailureCount());
+
+        fail(breaker);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void openBreakerRejectsUntilTheTimeoutHasPassed() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 3_600_000, 1);
+        fail(breaker);
+
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> result = breaker.execute(() -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("ok");
+        }, "test");
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    void closesAfterEnoughHalfOpenSuccesses() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 1, 2);
+        fail(breaker);
+        Thread.sleep(20);
+
+        succeed(breaker);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        succeed(breaker);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void failureWhileHalfOpenReopens() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 1, 2);
+        fail(breaker);
+        Thread.sleep(20);
+
+        fail(breaker);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private static void succeed(CircuitBreaker breaker) {
+        breaker.execute(() -> CompletableFuture.completedFuture("ok"), "test");
+    }
+
+    private static void fail(CircuitBreaker breaker) {
+        breaker.execute(() -> CompletableFuture.failedFuture(new IOException("down")), "test");
+    }
+}
@@ -0,0 +1,121 @@
+package common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for slot accounting and the AIMD limit of {@link ConcurrencyLimiter}.
+ */
+class ConcurrencyLimiterTest {
+    private static final long FAST_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    @Test
+    void rejectsBeyondTheLimitAndCountsRejections() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 2, 1, 10, 100, 0.5);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(1, limiter.getRejectedCount());
+
+        limiter.onIgnore();
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void dropsBackOffMultiplicativelyDownToTheMinimum() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 10, 2, 20, 100, 0.5);
+
+        acquireAndDrop(limiter);
+        assertEquals(5, limiter.getLimit());
+        acquireAndDrop(limiter);
+        assertEquals(2, limiter.getLimit());
+        acquireAndDrop(limiter);
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void slowSuccessesBackOffLikeDrops() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 10, 2, 20, 100, 0.5);
+
+        assertTrue(limiter.tryAcquire());
+        limiter.onSuccess(SLOW_NANOS);
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    void growsAdditivelyOnlyWhileTheLimitIsTheConstraint() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 10, 2, 20, 100, 0.5);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.onSuccess(FAST_NANOS);
+        }
+        assertEquals(10, limiter.getLimit(), "grew without load");
+
+        for (int i = 0; i < 20; i++) {
+            completeAtFullLoad(limiter, FAST_NANOS);
+        }
+        // About one per limit-sized window of calls: 10 -> 11.8
+        assertEquals(11, limiter.getLimit());
+    }
+
+    @Test
+    void neverGrowsPastTheMaximum() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 4, 1, 4, 100, 0.5);
+
+        for (int i = 0; i < 50; i++) {
+            completeAtFullLoad(limiter, FAST_NANOS);
+        }
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void acquireWaitsForAReleasedSlotWithoutCountingARejection() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 1, 1, 1, 100, 0.5);
+        assertTrue(limiter.tryAcquire());
+
+        assertFalse(limiter.acquire(0, TimeUnit.MILLISECONDS));
+        assertEquals(0, limiter.getRejectedCount());
+
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            limiter.onIgnore();
+        });
+        releaser.start();
+        assertTrue(limiter.acquire(5, TimeUnit.SECONDS));
+        releaser.join();
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    private static void acquireAndDrop(ConcurrencyLimiter limiter) {
+        assertTrue(limiter.tryAcquire());
+        limiter.onDropped();
+    }
+
+    /**
+     * Completes one call while every slot is taken, then hands the other slots back.
+     */
+    static void completeAtFullLoad(ConcurrencyLimiter limiter, long rttNanos) {
+        int acquired = 0;
+        while (limiter.tryAcquire()) {
+            acquired++;
+        }
+        limiter.onSuccess(rttNanos);
+        for (int i = 1; i < acquired; i++) {
+            limiter.onIgnore();
+        }
+    }
+}
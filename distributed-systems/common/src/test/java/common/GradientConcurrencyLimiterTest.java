@@ -0,0 +1,101 @@
+package common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the RTT-gradient limit and the baseline probe of {@link GradientConcurrencyLimiter}.
+ * Smoothing is off so each sample moves the limit by the full estimate.
+ */
+class GradientConcurrencyLimiterTest {
+
+    @Test
+    void learnsTheBaselineFromTheFastestSample() {
+        GradientConcurrencyLimiter limiter = limiter(1000);
+        assertEquals(-1.0, limiter.getBaselineRttMs(), 0.0);
+
+        completeAtLightLoad(limiter, 30);
+        completeAtLightLoad(limiter, 10);
+        completeAtLightLoad(limiter, 20);
+        assertEquals(10.0, limiter.getBaselineRttMs(), 1e-9);
+    }
+
+    @Test
+    void growsAtTheBaselineAndShrinksWhenRttRises() {
+        GradientConcurrencyLimiter limiter = limiter(1000);
+
+        // Gradient 1: limit + sqrt(limit) = 10 + 3.16
+        ConcurrencyLimiterTest.completeAtFullLoad(limiter, millis(10));
+        assertEquals(13, limiter.getLimit());
+
+        // Twice the baseline: 13.16 * 0.5 + sqrt(13.16)
+        ConcurrencyLimiterTest.completeAtFullLoad(limiter, millis(20));
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    void doesNotMoveTheLimitWithoutLoad() {
+        GradientConcurrencyLimiter limiter = limiter(1000);
+
+        for (int i = 0; i < 50; i++) {
+            completeAtLightLoad(limiter, 10);
+        }
+        completeAtLightLoad(limiter, 100);
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    void probeHalvesTheLimitAndRemeasuresTheBaseline() {
+        GradientConcurrencyLimiter limiter = limiter(3);
+
+        ConcurrencyLimiterTest.completeAtFullLoad(limiter, millis(10));
+        ConcurrencyLimiterTest.completeAtFullLoad(limiter, millis(10));
+        int limitBeforeProbe = limiter.getLimit();
+        assertEquals(16, limitBeforeProbe);
+
+        // The third sample ends the window and starts the probe at half the limit
+        ConcurrencyLimiterTest.completeAtFullLoad(limiter, millis(10));
+        assertEquals(limitBeforeProbe / 2, limiter.getLimit());
+
+        // The dependency has become slower for good; the probe must let the baseline rise
+        for (int i = 0; i < limitBeforeProbe / 2; i++) {
+            completeAtLightLoad(limiter, 30);
+        }
+        assertEquals(30.0, limiter.getBaselineRttMs(), 1e-9);
+        assertEquals(limitBeforeProbe, limiter.getLimit());
+    }
+
+    @Test
+    void dropsDuringAProbeAlsoLowerTheRestoredLimit() {
+        GradientConcurrencyLimiter limiter = limiter(3);
+        for (int i = 0; i < 3; i++) {
+            ConcurrencyLimiterTest.completeAtFullLoad(limiter, millis(10));
+        }
+        int probeLimit = limiter.getLimit();
+
+        assertTrue(limiter.tryAcquire());
+        limiter.onDropped();
+        for (int i = 0; i < probeLimit; i++) {
+            completeAtLightLoad(limiter, 10);
+        }
+        // 16.8 before the probe, halved by the drop
+        assertEquals(8, limiter.getLimit());
+    }
+
+    private static GradientConcurrencyLimiter limiter(int baselineWindow) {
+        return new GradientConcurrencyLimiter("test", 10, 1, 100, 0.5, 1.0, 1.0, baselineWindow);
+    }
+
+    private static void completeAtLightLoad(ConcurrencyLimiter limiter, long rttMs) {
+        assertTrue(limiter.tryAcquire());
+        limiter.onSuccess(millis(rttMs));
+    }
+
+    private static long millis(long ms) {
+        return TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+}
@@ -0,0 +1,78 @@
+package common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the log-linear bucket layout of {@link LatencyHistogram}.
+ */
+class LatencyHistogramTest {
+
+    @Test
+    void smallValuesAreRecordedExactly() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 0; value < 128; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(128, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(0));
+        assertEquals(63, histogram.getValueAtPercentile(50));
+        assertEquals(127, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void neighbouringValuesAtAMagnitudeBoundaryLandInSeparateBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(127);
+        histogram.record(128);
+        histogram.record(129);
+        histogram.record(1_000_000);
+
+        // 128 and 129 share a two-wide bucket whose upper bound is 129
+        assertEquals(127, histogram.getValueAtPercentile(25));
+        assertEquals(129, histogram.getValueAtPercentile(50));
+        assertEquals(129, histogram.getValueAtPercentile(75));
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void largeValuesKeepAboutOnePercentPrecision() {
+        for (long value : new long[] {200, 1_000, 12_345, 1_000_000, 987_654_321L, Long.MAX_VALUE / 3}) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(value);
+            histogram.record(Long.MAX_VALUE);
+
+            long reported = histogram.getValueAtPercentile(50);
+            assertTrue(reported >= value, value + " reported as " + reported);
+            assertTrue(reported - value <= value / 64, value + " reported as " + reported);
+        }
+    }
+
+    @Test
+    void percentileNeverExceedsTheRecordedMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000);
+
+        assertEquals(1_000, histogram.getValueAtPercentile(99.9));
+        assertEquals(1_000, histogram.getMax());
+    }
+
+    @Test
+    void negativeValuesCountAsZeroAndResetClearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(10);
+
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(10, histogram.getSum());
+        assertEquals(5.0, histogram.getMean());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+}
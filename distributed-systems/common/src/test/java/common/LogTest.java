@@ -0,0 +1,152 @@
+package common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the ring buffer behind {@link Log}. The writer thread is held inside a blocked
+ * stdout so the test controls exactly when the ring drains.
+ */
+class LogTest {
+    // Must match Log.CAPACITY
+    private static final int CAPACITY = 1 << 14;
+
+    private PrintStream originalOut;
+    private PrintStream originalErr;
+    private Log.Level originalLevel;
+    private final ByteArrayOutputStream errCapture = new ByteArrayOutputStream();
+
+    @BeforeEach
+    void setUp() {
+        originalOut = System.out;
+        originalErr = System.err;
+        originalLevel = Log.getLevel();
+        Log.setLevel(Log.Level.INFO);
+        Log.flush();
+        System.setErr(new PrintStream(errCapture, true, StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    void tearDown() {
+        Log.flush();
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+        Log.setLevel(originalLevel);
+    }
+
+    @Test
+    void fullRingDropsNewEntriesAndKeepsTheOldOnes() throws Exception {
+        BlockingStream stdout = new BlockingStream();
+        System.setOut(new PrintStream(stdout, true, StandardCharsets.UTF_8));
+        long droppedBefore = Log.getDroppedCount();
+
+        // The writer takes this entry off the ring and then blocks writing it
+        Log.info("first");
+        assertTrue(stdout.writing.await(5, TimeUnit.SECONDS), "writer never reached stdout");
+
+        int overflow = 100;
+        for (int i = 0; i < CAPACITY + overflow; i++) {
+            Log.info("entry {}", i);
+        }
+        assertEquals(overflow, Log.getDroppedCount() - droppedBefore);
+
+        stdout.release.countDown();
+        Log.flush();
+
+        String written = stdout.captured();
+        assertEquals(1 + CAPACITY, countLines(written));
+        assertTrue(written.contains("entry 0\n"));
+        assertTrue(written.contains("entry " + (CAPACITY - 1) + "\n"));
+        assertTrue(!written.contains("entry " + CAPACITY + "\n"), "dropped entry was written");
+        assertTrue(errCapture.toString(StandardCharsets.UTF_8).contains("dropped " + overflow + " messages"));
+    }
+
+    @Test
+    void ringKeepsWorkingAcrossManyWrapArounds() {
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(stdout, true, StandardCharsets.UTF_8));
+        long droppedBefore = Log.getDroppedCount();
+
+        int total = 0;
+        for (int round = 0; round < 5; round++) {
+            // Half the ring per round, so the slots wrap without ever filling up
+            for (int i = 0; i < CAPACITY / 2; i++) {
+                Log.info("round {} entry {}", round, i);
+                total++;
+            }
+            Log.flush();
+        }
+
+        String written = stdout.toString(StandardCharsets.UTF_8);
+        assertEquals(0, Log.getDroppedCount() - droppedBefore);
+        assertEquals(total, countLines(written));
+        assertTrue(written.contains("round 4 entry " + (CAPACITY / 2 - 1) + "\n"));
+    }
+
+    @Test
+    void disabledLevelNeverReachesTheRing() {
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(stdout, true, StandardCharsets.UTF_8));
+        Log.setLevel(Log.Level.WARN);
+
+        Log.info("hidden {}", 1);
+        Log.debug("hidden {}", 2);
+        Log.flush();
+
+        assertEquals(0, stdout.size());
+    }
+
+    private static int countLines(String text) {
+        int lines = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Captures output, holding the first writer inside write() until released.
+     */
+    private static final class BlockingStream extends OutputStream {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        private final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+
+        @Override
+        public void write(int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (captured) {
+                captured.write(bytes, offset, length);
+            }
+        }
+
+        String captured() {
+            synchronized (captured) {
+                return captured.toString(StandardCharsets.UTF_8);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import common.OrderLoader.OrderData;
+
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the text, JSON and properties order parsers, including malformed input.
+ */
+class OrderStreamTest {
+
+    @Test
+    void textGroupsConsecutiveLinesByOrderId() {
+        OrderStream stream = OrderStream.fromText(new StringReader(
+            "# orderId|customerId|productId|sellerId|quantity\n" +
+            "o1|c1|P1|seller1|2\n" +
+            "o1|c1|P2|seller2|1\n" +
+            "\n" +
+            "o2|c2|P3|seller1|5\n"));
+
+        List<OrderData> orders = readAll(stream);
+        assertEquals(2, orders.size());
+        assertEquals("o1", orders.get(0).orderId);
+        assertEquals("c1", orders.get(0).customerId);
+        assertEquals(2, orders.get(0).items.size());
+        assertEquals("P2", orders.get(0).items.get(1).productId);
+        assertEquals("seller2", orders.get(0).items.get(1).sellerId);
+        assertEquals(5, orders.get(1).items.get(0).quantity);
+    }
+
+    @Test
+    void textSkipsLinesWithTooFewFields() {
+        OrderStream stream = OrderStream.fromText(new StringReader(
+            "o1|c1|P1|seller1\n" +
+            "o2|c2|P1|seller1|3\n"));
+
+        List<OrderData> orders = readAll(stream);
+        assertEquals(1, orders.size());
+        assertEquals("o2", orders.get(0).orderId);
+    }
+
+    @Test
+    void textDropsTheWholeOrderWhenOneQuantityIsMalformed() {
+        OrderStream stream = OrderStream.fromText(new StringReader(
+            "o1|c1|P1|seller1|2\n" +
+            "o1|c1|P2|seller2|two\n" +
+            "o1|c1|P3|seller3|1\n" +
+            "o2|c2|P1|seller1|4\n"));
+
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, stream::next);
+        assertTrue(error.getMessage().contains("o1"), error.getMessage());
+
+        // The third line of o1 must not come back as an order of its own
+        OrderData next = stream.next();
+        assertEquals("o2", next.orderId);
+        assertEquals(1, next.items.size());
+        assertFalse(stream.hasNext());
+    }
+
+    @Test
+    void jsonReadsOrdersAndSkipsUnknownFields() {
+        OrderStream stream = OrderStream.fromJson(new StringReader(
+            "[{\"orderId\":\"o1\",\"customerId\":\"c1\",\"note\":{\"a\":[1,2]},\n" +
+            "  \"items\":[{\"productId\":\"P1\",\"sellerId\":\"seller1\",\"quantity\":2},\n" +
+            "            {\"productId\":\"P2\",\"sellerId\":\"seller2\",\"quantity\":\"3\"}]},\n" +
+            " {\"orderId\":\"o2\",\"items\":[]}]"));
+
+        List<OrderData> orders = readAll(stream);
+        assertEquals(2, orders.size());
+        assertEquals(2, orders.get(0).items.size());
+        assertEquals(3, orders.get(0).items.get(1).quantity);
+        assertEquals("customer-o2", orders.get(1).customerId);
+        assertTrue(orders.get(1).items.isEmpty());
+    }
+
+    @Test
+    void jsonEmptyArrayHasNoOrders() {
+        assertFalse(OrderStream.fromJson(new StringReader("  [ ]  ")).hasNext());
+    }
+
+    @Test
+    void jsonDropsTheWholeOrderWhenOneQuantityIsMalformed() {
+        OrderStream stream = OrderStream.fromJson(new StringReader(
+            "[{\"orderId\":\"o1\",\"items\":[{\"productId\":\"P1\",\"sellerId\":\"s1\",\"quantity\":\"x\"}," +
+            "{\"productId\":\"P2\",\"sellerId\":\"s1\",\"quantity\":1}]}," +
+            "{\"orderId\":\"o2\",\"items\":[{\"productId\":\"P1\",\"sellerId\":\"s1\",\"quantity\":1}]}]"));
+
+        assertThrows(IllegalArgumentException.class, stream::next);
+        assertEquals("o2", stream.next().orderId);
+        assertFalse(stream.hasNext());
+    }
+
+    @Test
+    void jsonWithBrokenStructureFailsAsIoError() {
+        OrderStream stream = OrderStream.fromJson(new StringReader("{\"orderId\":\"o1\"}"));
+
+        assertThrows(UncheckedIOException.class, stream::hasNext);
+    }
+
+    @Test
+    void propertiesGroupItemsByOrderIndex() {
+        OrderStream stream = OrderStream.fromProperties(new StringReader(
+            "# orders\n" +
+            "order.1.id=o1\n" +
+            "order.1.customerId=c1\n" +
+            "order.1.items.count=2\n" +
+            "order.1.items.2.productId=P2\n" +
+            "order.1.items.2.sellerId=seller2\n" +
+            "order.1.items.2.quantity=1\n" +
+            "order.1.items.1.productId=P1\n" +
+            "order.1.items.1.sellerId=seller1\n" +
+            "order.1.items.1.quantity=4\n" +
+            "order.2.id: o2\n" +
+            "order.2.items.1.productId=P3\n" +
+            "order.2.items.1.sellerId=seller3\n" +
+            "order.2.items.1.quantity=1\n"));
+
+        List<OrderData> orders = readAll(stream);
+        assertEquals(2, orders.size());
+        assertEquals("P1", orders.get(0).items.get(0).productId);
+        assertEquals(4, orders.get(0).items.get(0).quantity);
+        assertEquals("o2", orders.get(1).orderId);
+        assertEquals("customer2", orders.get(1).customerId);
+    }
+
+    @Test
+    void propertiesSkipBlocksWithoutId() {
+        StringBuilder input = new StringBuilder();
+        // Enough id-less blocks in a row to overflow the stack if they were skipped recursively
+        for (int i = 0; i < 100_000; i++) {
+            input.append("order.").append(i).append(".customerId=c\n");
+        }
+        input.append("order.last.id=o-last\n");
+
+        List<OrderData> orders = readAll(OrderStream.fromProperties(new StringReader(input.toString())));
+        assertEquals(1, orders.size());
+        assertEquals("o-last", orders.get(0).orderId);
+    }
+
+    @Test
+    void propertiesWithMalformedQuantityDropTheOrder() {
+        OrderStream stream = OrderStream.fromProperties(new StringReader(
+            "order.1.id=o1\n" +
+            "order.1.items.1.productId=P1\n" +
+            "order.1.items.1.sellerId=seller1\n" +
+            "order.1.items.1.quantity=lots\n" +
+            "order.2.id=o2\n"));
+
+        assertThrows(IllegalArgumentException.class, stream::next);
+        assertEquals("o2", stream.next().orderId);
+    }
+
+    private static List<OrderData> readAll(OrderStream stream) {
+        List<OrderData> orders = new ArrayList<>();
+        stream.forEachRemaining(orders::add);
+        return orders;
+    }
+}
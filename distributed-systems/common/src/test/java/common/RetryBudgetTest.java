@@ -0,0 +1,87 @@
+package common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link RetryBudget} with the time-based refill driven by a virtual clock.
+ */
+class RetryBudgetTest {
+    private static final double DELTA = 1e-9;
+
+    private final VirtualClock clock = new VirtualClock(0);
+
+    @Test
+    void startsFullAndDrainsOneTokenPerRetry() {
+        RetryBudget budget = new RetryBudget("test", 0.1, 0, 3, clock);
+
+        assertTrue(budget.tryAcquireRetry());
+        assertTrue(budget.tryAcquireRetry());
+        assertTrue(budget.tryAcquireRetry());
+        assertFalse(budget.tryAcquireRetry());
+        assertEquals(0.0, budget.getAvailableTokens(), DELTA);
+    }
+
+    @Test
+    void firstAttemptsEarnRetriesAtTheConfiguredRatio() {
+        RetryBudget budget = drained(new RetryBudget("test", 0.1, 0, 10, clock));
+
+        for (int i = 0; i < 9; i++) {
+            budget.recordRequest();
+        }
+        assertFalse(budget.tryAcquireRetry(), "nine requests must not pay for a retry at ratio 0.1");
+
+        budget.recordRequest();
+        assertTrue(budget.tryAcquireRetry());
+        assertFalse(budget.tryAcquireRetry());
+    }
+
+    @Test
+    void refillsOverTimeWithoutTraffic() {
+        RetryBudget budget = drained(new RetryBudget("test", 0.1, 2, 10, clock));
+
+        clock.advance(250, TimeUnit.MILLISECONDS);
+        assertEquals(0.5, budget.getAvailableTokens(), DELTA);
+        assertFalse(budget.tryAcquireRetry());
+
+        clock.advance(250, TimeUnit.MILLISECONDS);
+        assertTrue(budget.tryAcquireRetry());
+        assertEquals(0.0, budget.getAvailableTokens(), DELTA);
+    }
+
+    @Test
+    void neverHoldsMoreThanItsCapacity() {
+        RetryBudget budget = new RetryBudget("test", 0.5, 1, 4, clock);
+
+        for (int i = 0; i < 100; i++) {
+            budget.recordRequest();
+        }
+        clock.advance(1, TimeUnit.HOURS);
+        assertEquals(4.0, budget.getAvailableTokens(), DELTA);
+
+        budget.refund();
+        assertEquals(4.0, budget.getAvailableTokens(), DELTA);
+    }
+
+    @Test
+    void refundReturnsTheTokenOfARetryThatDidNotHappen() {
+        RetryBudget budget = new RetryBudget("test", 0.1, 0, 1, clock);
+
+        assertTrue(budget.tryAcquireRetry());
+        assertFalse(budget.tryAcquireRetry());
+        budget.refund();
+        assertTrue(budget.tryAcquireRetry());
+    }
+
+    private static RetryBudget drained(RetryBudget budget) {
+        while (budget.tryAcquireRetry()) {
+            // Spend the initial burst allowance
+        }
+        return budget;
+    }
+}
@@ -0,0 +1,166 @@
+package common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * State-transition tests for {@link SlidingWindowCircuitBreaker} with a count-based window.
+ * An open wait of zero lets the next call probe right away; a long one keeps the breaker open.
+ */
+class SlidingWindowCircuitBreakerTest {
+    private static final long NEVER_SLOW_MS = 60_000;
+    private static final long STAY_OPEN_MS = 3_600_000;
+
+    @Test
+    void opensOnlyOnceTheWindowHoldsTheMinimumCalls() {
+        SlidingWindowCircuitBreaker breaker = breaker(50, 100, NEVER_SLOW_MS, STAY_OPEN_MS, 2);
+
+        for (int i = 0; i < 3; i++) {
+            fail(breaker);
+        }
+        assertEquals(AbstractCircuitBreaker.State.CLOSED, breaker.getState());
+
+        fail(breaker);
+        assertEquals(AbstractCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void oldFailuresAgeOutOfTheWindow() {
+        SlidingWindowCircuitBreaker breaker = breaker(75, 100, NEVER_SLOW_MS, STAY_OPEN_MS, 2);
+
+        fail(breaker);
+        fail(breaker);
+        succeed(breaker);
+        succeed(breaker);
+        assertEquals(AbstractCircuitBreaker.State.CLOSED, breaker.getState());
+
+        succeed(breaker);
+        succeed(breaker);
+        assertEquals(0, breaker.getFailureCount());
+
+        fail(breaker);
+        fail(breaker);
+        assertEquals(AbstractCircuitBreaker.State.CLOSED, breaker.getState());
+        fail(breaker);
+        assertEquals(AbstractCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void openBreakerRejectsWithoutCallingTheOperation() {
+        SlidingWindowCircuitBreaker breaker = breaker(50, 100, NEVER_SLOW_MS, STAY_OPEN_MS, 2);
+        trip(breaker);
+
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> result = breaker.execute(() -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("ok");
+        }, "test");
+
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    void passingProbesCloseTheBreakerWithAnEmptyWindow() {
+        SlidingWindowCircuitBreaker breaker = breaker(50, 100, NEVER_SLOW_MS, 0, 2);
+        trip(breaker);
+
+        succeed(breaker);
+        assertEquals(AbstractCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        succeed(breaker);
+        assertEquals(AbstractCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureCount());
+    }
+
+    @Test
+    void failedProbesReopenTheBreaker() {
+        SlidingWindowCircuitBreaker breaker = breaker(50, 100, NEVER_SLOW_MS, 0, 2);
+        trip(breaker);
+
+        fail(breaker);
+        fail(breaker);
+        assertEquals(AbstractCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void halfOpenAdmitsOnlyTheConfiguredProbes() {
+        SlidingWindowCircuitBreaker breaker = breaker(50, 100, NEVER_SLOW_MS, 0, 2);
+        trip(breaker);
+
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        breaker.execute(() -> first, "probe");
+        breaker.execute(() -> second, "probe");
+
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> third = breaker.execute(() -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("ok");
+        }, "probe");
+        assertTrue(third.isCompletedExceptionally());
+        assertEquals(0, calls.get());
+
+        first.complete("ok");
+        second.complete("ok");
+        assertEquals(AbstractCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void slowCallsOpenTheBreakerEvenWhenTheySucceed() {
+        SlidingWindowCircuitBreaker breaker = breaker(50, 100, 0, STAY_OPEN_MS, 2);
+
+        for (int i = 0; i < 4; i++) {
+            succeed(breaker);
+        }
+        assertEquals(AbstractCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void localRejectionsAreNotCounted() {
+        SlidingWindowCircuitBreaker breaker = breaker(50, 100, NEVER_SLOW_MS, STAY_OPEN_MS, 2);
+
+        for (int i = 0; i < 10; i++) {
+            breaker.execute(() -> CompletableFuture.failedFuture(new RejectedExecutionException("shed")), "test");
+        }
+        assertEquals(AbstractCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureCount());
+    }
+
+    @Test
+    void resetClosesAndClearsTheWindow() {
+        SlidingWindowCircuitBreaker breaker = breaker(50, 100, NEVER_SLOW_MS, STAY_OPEN_MS, 2);
+        trip(breaker);
+
+        breaker.reset();
+        assertEquals(AbstractCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureCount());
+    }
+
+    private static SlidingWindowCircuitBreaker breaker(float failureRate, float slowRate, long slowCallMs,
+                                                       long waitOpenMs, int probes) {
+        return new SlidingWindowCircuitBreaker("test", SlidingWindowCircuitBreaker.WindowType.COUNT, 4, 4,
+                                               failureRate, slowRate, slowCallMs, waitOpenMs, probes);
+    }
+
+    private static void trip(SlidingWindowCircuitBreaker breaker) {
+        for (int i = 0; i < 4; i++) {
+            fail(breaker);
+        }
+        assertEquals(AbstractCircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private static void succeed(AbstractCircuitBreaker breaker) {
+        breaker.execute(() -> CompletableFuture.completedFuture("ok"), "test");
+    }
+
+    private static void fail(AbstractCircuitBreaker breaker) {
+        breaker.execute(() -> CompletableFuture.failedFuture(new IOException("down")), "test");
+    }
+}
@@ -0,0 +1,105 @@
+package common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the timing wheel on a virtual clock, so every tick is driven explicitly.
+ */
+class TimerServiceTest {
+    private static final int WHEEL_SIZE = 8;
+
+    private final VirtualClock clock = new VirtualClock(0);
+    private final TimerService timer = new TimerService("TestTimer", 1, WHEEL_SIZE, clock);
+
+    @Test
+    void delayLongerThanOneRoundWaitsForAllRounds() {
+        AtomicLong firedAtMs = new AtomicLong(-1);
+        // 20 ticks on an 8-bucket wheel: the bucket comes round at ticks 4 and 12 first
+        timer.schedule(() -> firedAtMs.set(clock.nanos() / 1_000_000), 20, TimeUnit.MILLISECONDS);
+
+        advanceMillis(19);
+        assertEquals(-1, firedAtMs.get(), "fired before its deadline");
+        assertEquals(1, timer.getPendingCount());
+
+        advanceMillis(2);
+        assertTrue(firedAtMs.get() >= 20 && firedAtMs.get() <= 21, "fired at " + firedAtMs.get() + "ms");
+        assertEquals(0, timer.getPendingCount());
+    }
+
+    @Test
+    void timersSharingABucketFireInTheirOwnRound() {
+        List<Integer> fired = new ArrayList<>();
+        timer.schedule(() -> fired.add(3), 3, TimeUnit.MILLISECONDS);
+        timer.schedule(() -> fired.add(3 + WHEEL_SIZE), 3 + WHEEL_SIZE, TimeUnit.MILLISECONDS);
+        timer.schedule(() -> fired.add(3 + 2 * WHEEL_SIZE), 3 + 2 * WHEEL_SIZE, TimeUnit.MILLISECONDS);
+
+        advanceMillis(5);
+        assertEquals(List.of(3), fired);
+        advanceMillis(WHEEL_SIZE);
+        assertEquals(List.of(3, 3 + WHEEL_SIZE), fired);
+        advanceMillis(WHEEL_SIZE);
+        assertEquals(List.of(3, 3 + WHEEL_SIZE, 3 + 2 * WHEEL_SIZE), fired);
+    }
+
+    @Test
+    void cancelledTimeoutNeverRuns() {
+        AtomicInteger runs = new AtomicInteger();
+        TimerService.Timeout timeout = timer.schedule(runs::incrementAndGet, 12, TimeUnit.MILLISECONDS);
+        advanceMillis(5);
+
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertTrue(timeout.isDone());
+        assertFalse(timeout.cancel(), "second cancel must report nothing cancelled");
+
+        advanceMillis(3 * WHEEL_SIZE);
+        assertEquals(0, runs.get());
+        assertEquals(0, timer.getPendingCount());
+    }
+
+    @Test
+    void firedOneShotCannotBeCancelled() {
+        AtomicInteger runs = new AtomicInteger();
+        TimerService.Timeout timeout = timer.schedule(runs::incrementAndGet, 2, TimeUnit.MILLISECONDS);
+        advanceMillis(4);
+
+        assertEquals(1, runs.get());
+        assertTrue(timeout.isDone());
+        assertFalse(timeout.cancel());
+        assertFalse(timeout.isCancelled());
+        assertEquals(0, timer.getPendingCount());
+    }
+
+    @Test
+    void cancellingAPeriodicTaskStopsFurtherRuns() {
+        AtomicInteger runs = new AtomicInteger();
+        TimerService.Timeout timeout = timer.scheduleAtFixedRate(runs::incrementAndGet, 5, 5, TimeUnit.MILLISECONDS, null);
+
+        advanceMillis(4 * WHEEL_SIZE);
+        int runsBeforeCancel = runs.get();
+        assertTrue(runsBeforeCancel >= 5, "ran " + runsBeforeCancel + " times");
+        assertEquals(1, timer.getPendingCount());
+
+        timeout.cancel();
+        advanceMillis(4 * WHEEL_SIZE);
+        assertEquals(runsBeforeCancel, runs.get());
+        assertEquals(0, timer.getPendingCount());
+    }
+
+    private void advanceMillis(int millis) {
+        for (int i = 0; i < millis; i++) {
+            clock.advance(1, TimeUnit.MILLISECONDS);
+            timer.runDue();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package marketplace;
+
+import common.Clock;
+import common.LatencyHistogram;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Derives request timeouts from the latency each seller actually shows for each message type.
+ * Successful round-trip times are recorded into rotating histograms per seller and type; the
+ * timeout is a high percentile of the recent window times a headroom multiplier, clamped to
+ * a floor and a ceiling. Until a window holds enough samples the static request.timeout.ms
+ * is used. Timed-out requests are counted apart from the samples: their latency is unknown,
+ * they only rank above every answered request. While more requests time out than the
+ * percentile's tail allows, the percentile cannot be known and the static timeout applies
+ * again, so a seller that slows down past its timeout gets the static timeout back, and a dead
+ * one is never waited on for longer than that.
+ */
+public class AdaptiveTimeoutPolicy {
+    private volatile boolean enabled;
+    private volatile long defaultTimeoutMs;
+    private final long minTimeoutMs;
+    private final long maxTimeoutMs;
+    private final double percentile;
+    private final double multiplier;
+    private final long minSamples;
+    private final long windowMs;
+    private final Map<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+    private final Clock clock = Clock.shared();
+
+    public AdaptiveTimeoutPolicy(Properties config) {
+        this.defaultTimeoutMs = Long.parseLong(config.getProperty("request.timeout.ms", "5000"));
+        this.enabled = Boolean.parseBoolean(config.getProperty("request.timeout.adaptive", "true"));
+        this.minTimeoutMs = Long.parseLong(config.getProperty("request.timeout.min.ms", "250"));
+        this.maxTimeoutMs = Long.parseLong(config.getProperty("request.timeout.max.ms",
+            String.valueOf(defaultTimeoutMs)));
+        this.percentile = Double.parseDouble(config.getProperty("request.timeout.percentile", "99.0"));
+        this.multiplier = Double.parseDouble(config.getProperty("request.timeout.multiplier", "1.5"));
+        this.minSamples = Long.parseLong(config.getProperty("request.timeout.min.samples", "20"));
+        this.windowMs = Long.parseLong(config.getProperty("request.timeout.window.ms", "60000"));
+    }
+
+    /**
+     * Gets the timeout to apply to a request.
+     * @param sellerId The seller the request goes to
+     * @param messageType The request's message type
+     * @return Timeout in milliseconds
+     */
+    public long getTimeoutMs(String sellerId, String messageType) {
+        if (!enabled) {
+            return defaultTimeoutMs;
+        }
+        long percentileMs = getLatencyPercentileMs(sellerId, messageType, percentile);
+        if (percentileMs < 0) {
+            return defaultTimeoutMs;
+        }
+        long timeoutMs = (long) (percentileMs * multiplier);
+        return Math.max(minTimeoutMs, Math.min(maxTimeoutMs, timeoutMs));
+    }
+
+    /**
+     * Gets the static timeout used while adaptive timeouts are off or lack samples.
+     * @return Timeout in milliseconds
+     */
+    public long getDefaultTimeoutMs() {
+        return defaultTimeoutMs;
+    }
+
+    /**
+     * Changes the static timeout. Requests already sent keep their timeout.
+     * @param timeoutMs Timeout in milliseconds (at least 1)
+     */
+    public void setDefaultTimeoutMs(long timeoutMs) {
+        if (timeoutMs < 1) {
+            throw new IllegalArgumentException("timeout must be at least 1ms");
+        }
+        this.defaultTimeoutMs = timeoutMs;
+    }
+
+    public boolean isAdaptive() {
+        return enabled;
+    }
+
+    /**
+     * Switches between adaptive and static timeouts. The latency windows keep recording
+     * either way, so switching back on takes effect immediately.
+     * @param adaptive true to derive timeouts from observed latency
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.enabled = adaptive;
+    }
+
+    /**
+     * Gets a latency percentile of the recent window, e.g. to decide when to hedge. Timed-out
+     * requests rank above all answered ones, so the percentile is taken over both.
+     * @param sellerId The seller
+     * @param messageType The message type
+     * @param percentile Percentile between 0 and 100
+     * @return Latency in milliseconds, or -1 if there are not enough samples yet or the
+     *         percentile falls among the timed-out requests
+     */
+    public long getLatencyPercentileMs(String sellerId, String messageType, double percentile) {
+        LatencyWindow window = windows.get(key(sellerId, messageType));
+        Period period = window != null ? window.getStablePeriod() : null;
+        if (period == null) {
+            return -1;
+        }
+        long answered = period.latencies.getCount();
+        long total = answered + period.timeouts.get();
+        if (answered < minSamples || answered * 100.0 < total * percentile) {
+            return -1;
+        }
+        return period.latencies.getValueAtPercentile(percentile * total / answered) / 1000;
+    }
+
+    /**
+     * Records the round-trip time of a successful request.
+     * @param sellerId The seller that answered
+     * @param messageType The request's message type
+     * @param rttNanos Round-trip time in nanoseconds
+     */
+    public void recordLatency(String sellerId, String messageType, long rttNanos) {
+        windows.computeIfAbsent(key(sellerId, messageType), k -> new LatencyWindow())
+               .record(rttNanos / 1000);
+    }
+
+    /**
+     * Records a request that timed out. Its latency is unknown, so it is counted rather than
+     * sampled; otherwise the timeout itself would become the percentile and every further
+     * timeout would widen it.
+     * @param sellerId The seller that did not answer in time
+     * @param messageType The request's message type
+     */
+    public void recordTimeout(String sellerId, String messageType) {
+        windows.computeIfAbsent(key(sellerId, messageType), k -> new LatencyWindow())
+               .recordTimeout();
+    }
+
+    /**
+     * Gets the current timeout and sample count per seller and message type.
+     * @return Map of "seller/type" to statistics string
+     */
+    public Map<String, String> getStats() {
+        Map<String, String> stats = new TreeMap<>();
+        windows.forEach((key, window) -> {
+            int separator = key.indexOf('/');
+            Period period = window.getStablePeriod();
+            stats.put(key, String.format("Timeout=%dms, Samples=%d, Timeouts=%d",
+                getTimeoutMs(key.substring(0, separator), key.substring(separator + 1)),
+                period.latencies.getCount(), period.timeouts.get()));
+        });
+        return stats;
+    }
+
+    private static String key(String sellerId, String messageType) {
+        return sellerId + "/" + (messageType != null ? messageType : "UNKNOWN");
+    }
+
+    /**
+     * Answered request latencies and the count of timed-out requests over one window.
+     */
+    private static class Period {
+        final LatencyHistogram latencies = new LatencyHistogram();
+        final AtomicLong timeouts = new AtomicLong();
+
+        long getTotal() {
+            return latencies.getCount() + timeouts.get();
+        }
+    }
+
+    /**
+     * Two periods covering the current and the previous window. Rotating instead of
+     * accumulating forever lets the timeout follow a seller whose latency changes.
+     */
+    private class LatencyWindow {
+        private volatile Period current = new Period();
+        private volatile Period previous = new Period();
+        private volatile long windowStart = clock.millis();
+
+        void record(long micros) {
+            rotateIfDue();
+            current.latencies.record(micros);
+        }
+
+        void recordTimeout() {
+            rotateIfDue();
+            current.timeouts.incrementAndGet();
+        }
+
+        /**
+         * Gets whichever of the two windows holds more requests.
+         */
+        Period getStablePeriod() {
+            rotateIfDue();
+            Period cur = current;
+            Period prev = previous;
+            return cur.getTotal() >= prev.getTotal() ? cur : prev;
+        }
+
+        private void rotateIfDue() {
+            if (clock.millis() - windowStart < windowMs) {
+                return;
+            }
+            synchronized (this) {
+                if (clock.millis() - windowStart >= windowMs) {
+                    previous = current;
+                    current = new Period();
+                    windowStart = clock.millis();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package marketplace;
+
+import common.ConcurrencyLimiter;
+import common.GradientConcurrencyLimiter;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Admission control for the marketplace.
+ * Caps the number of concurrently running sagas and the number of in-flight
+ * requests per seller with adaptive limits, so that a traffic spike
+ * is shed at the door instead of piling up in executor and pending-request queues.
+ * Seller limits use either AIMD or an RTT gradient (admission.seller.algorithm); with the
+ * gradient each seller's limit follows its own latency trend, so fast and slow sellers
+ * settle at different limits without per-seller tuning.
+ * The saga limit adapts to how long admitted orders queue for an order thread rather than
+ * to saga latency, which is dominated by phase timeouts of failing sellers and says little
+ * about the marketplace's own capacity. Orders already accepted from a client or a file
+ * wait for a slot via {@link #admitAcceptedOrder} instead of being shed.
+ */
+public class AdmissionController {
+    private final ConcurrencyLimiter sagaLimiter;
+    private final Map<String, ConcurrencyLimiter> sellerLimiters = new ConcurrentHashMap<>();
+    private final Properties config;
+    private final String sellerAlgorithm;
+    private final Set<String> sellerRttTypes;
+
+    public AdmissionController(Properties config) {
+        this.config = config;
+        this.sellerAlgorithm = config.getProperty("admission.seller.algorithm", "gradient").trim().toLowerCase();
+        this.sellerRttTypes = new HashSet<>(Arrays.asList(
+            config.getProperty("admission.seller.rtt.types", "RESERVE,CONFIRM,CANCEL").split("\\s*,\\s*")));
+        this.sagaLimiter = new ConcurrencyLimiter(
+            "sagas",
+            Integer.parseInt(config.getProperty("admission.saga.limit.initial", "50")),
+            Integer.parseInt(config.getProperty("admission.saga.limit.min", "5")),
+            Integer.parseInt(config.getProperty("admission.saga.limit.max", "500")),
+            Long.parseLong(config.getProperty("admission.saga.queue.threshold.ms", "1000")),
+            Double.parseDouble(config.getProperty("admission.backoff.ratio", "0.9"))
+        );
+    }
+
+    /**
+     * Tries to admit a new order for saga processing.
+     * @return true if the order may start; its outcome must be reported via {@link #onOrderCompleted}
+     */
+    public boolean tryAdmitOrder() {
+        return sagaLimiter.tryAcquire();
+    }
+
+    /**
+     * Admits an order that has already been accepted and must not be rejected, waiting up to
+     * the timeout for a saga slot. Waiting is not counted as a rejection.
+     * @param timeoutMs Maximum time to wait; 0 only takes a slot that is free right now
+     * @return true if the order may start; its outcome must be reported via {@link #onOrderCompleted},
+     *         or the slot handed back via {@link #releaseUnusedOrderSlot} if no order is started
+     */
+    public boolean admitAcceptedOrder(long timeoutMs) {
+        try {
+            return sagaLimiter.acquire(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Hands back a saga slot that was admitted but not used for an order.
+     */
+    public void releaseUnusedOrderSlot() {
+        sagaLimiter.onIgnore();
+    }
+
+    /**
+     * Reports the end of an admitted order's saga. Only a rejection by the order pool backs
+     * the limit off directly; saga timeouts stem from slow sellers, which the seller limits handle.
+     * @param queueNanos Time the order waited between admission and the start of its saga
+     * @param failure Exception that ended the saga, or null
+     */
+    public void onOrderCompleted(long queueNanos, Throwable failure) {
+        if (failure instanceof RejectedExecutionException) {
+            sagaLimiter.onDropped();
+        } else {
+            sagaLimiter.onSuccess(queueNanos);
+        }
+    }
+
+    /**
+     * Tries to take an in-flight slot for a request to a seller.
+     * @param sellerId The seller identifier
+     * @return true if the request may be sent; its outcome must be reported via {@link #onSellerResponse}
+     */
+    public boolean tryAcquireSeller(String sellerId) {
+        return getSellerLimiter(sellerId).tryAcquire();
+    }
+
+    /**
+     * Reports the outcome of a seller request.
+     * @param sellerId The seller identifier
+     * @param rttNanos Round-trip time of the request
+     * @param failure Exception the request failed with, or null
+     */
+    public void onSellerResponse(String sellerId, long rttNanos, Throwable failure) {
+        onSellerResponse(sellerId, null, rttNanos, failure);
+    }
+
+    /**
+     * Reports the outcome of a seller request. Only successful requests of the types in
+     * admission.seller.rtt.types adapt the limit; other types just release their slot, since
+     * their latency says little about the seller's order-processing capacity.
+     * @param sellerId The seller identifier
+     * @param messageType The request's message type, or null if unknown
+     * @param rttNanos Round-trip time of the request
+     * @param failure Exception the request failed with, or null
+     */
+    public void onSellerResponse(String sellerId, String messageType, long rttNanos, Throwable failure) {
+        ConcurrencyLimiter limiter = getSellerLimiter(sellerId);
+        if (failure == null) {
+            if (messageType == null || sellerRttTypes.contains(messageType)) {
+                limiter.onSuccess(rttNanos);
+            } else {
+                limiter.onIgnore();
+            }
+        } else if (isOverloadSignal(failure)) {
+            limiter.onDropped();
+        } else {
+            limiter.onIgnore();
+        }
+    }
+
+    private ConcurrencyLimiter getSellerLimiter(String sellerId) {
+        return sellerLimiters.computeIfAbsent(sellerId, this::createSellerLimiter);
+    }
+
+    /**
+     * Creates a seller's limiter according to admission.seller.algorithm: "aimd" for the
+     * latency-threshold limiter, "gradient" for the RTT-gradient limiter.
+     */
+    private ConcurrencyLimiter createSellerLimiter(String sellerId) {
+        int initialLimit = Integer.parseInt(config.getProperty("admission.seller.limit.initial", "20"));
+        int minLimit = Integer.parseInt(config.getProperty("admission.seller.limit.min", "1"));
+        int maxLimit = Integer.parseInt(config.getProperty("admission.seller.limit.max", "200"));
+        double backoffRatio = Double.parseDouble(config.getProperty("admission.backoff.ratio", "0.9"));
+
+        if ("aimd".equals(sellerAlgorithm)) {
+            return new ConcurrencyLimiter(sellerId, initialLimit, minLimit, maxLimit,
+                Long.parseLong(config.getProperty("admission.seller.latency.threshold.ms", "2000")),
+                backoffRatio);
+        }
+        return new GradientConcurrencyLimiter(sellerId, initialLimit, minLimit, maxLimit, backoffRatio,
+            Double.parseDouble(config.getProperty("admission.seller.gradient.rtt.tolerance", "1.5")),
+            Double.parseDouble(config.getProperty("admission.seller.gradient.smoothing", "0.2")),
+            Integer.parseInt(config.getProperty("admission.seller.gradient.baseline.window", "500")));
+    }
+
+    /**
+     * Timeouts and rejections mean the downstream is saturated; other errors are not load related.
+     */
+    private static boolean isOverloadSignal(Throwable failure) {
+        Throwable cause = failure;
+        while (cause != null) {
+            if (cause instanceof TimeoutException || cause instanceof RejectedExecutionException) {
+                return true;
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+
+    public int getActiveSagaCount() {
+        return sagaLimiter.getInFlight();
+    }
+
+    public int getSagaLimit() {
+        return sagaLimiter.getLimit();
+    }
+
+    public int getSellerInFlight(String sellerId) {
+        return getSellerLimiter(sellerId).getInFlight();
+    }
+
+    public int getSellerLimit(String sellerId) {
+        return getSellerLimiter(sellerId).getLimit();
+    }
+
+    /**
+     * Gets admission statistics for the saga limit and every seller limit.
+     * @return Map of limiter name to statistics string
+     */
+    public Map<String, String> getStats() {
+        Map<String, String> stats = new HashMap<>();
+        stats.put("sagas", sagaLimiter.getStats());
+        sellerLimiters.forEach((sellerId, limiter) -> stats.put(sellerId, limiter.getStats()));
+        return stats;
+    }
+}
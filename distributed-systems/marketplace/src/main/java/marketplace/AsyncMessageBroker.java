@@ -1,51 +1,138 @@
 package marketplace;
 
+import common.AdminHttpServer;
+import common.Clock;
+import common.FlightEvents;
 import common.Message;
 import common.JsonParser;
+import common.Log;
+import common.MetricsRegistry;
+import common.RetryBudget;
 import common.RetryManager;
+import common.TimerService;
+import common.Tracer;
+import common.AbstractCircuitBreaker;
 import common.CircuitBreaker;
+import common.SlidingWindowCircuitBreaker;
+import common.ConsistentHashRing;
 import org.zeromq.SocketType;
 import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
+import org.zeromq.ZMQException;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
+/**
+ * Asynchronous request/response broker between the marketplace and its sellers.
+ * Sellers connect with DEALER sockets; the broker binds one ROUTER socket per shard
+ * on consecutive ports starting at {@code marketplace.router.port}. Each seller is
+ * assigned to a shard by a {@link ConsistentHashRing} over its seller ID, which the
+ * seller evaluates the same way to pick the port it connects to. Every shard socket
+ * is owned by its own poll thread: senders hand frames over through an outbox and a
+ * wake-up signal, so receiving and sending on a shard never race.
+ */
 public class AsyncMessageBroker {
     private final Properties config;
     private final Map<String, String> sellerEndpoints;
     private final ZContext context;
 
     private final RetryManager retryManager;
-    private final Map<String, CircuitBreaker> circuitBreakers;
+    private final Map<String, AbstractCircuitBreaker> circuitBreakers;
+    private final Map<String, SellerBulkhead> bulkheads = new ConcurrentHashMap<>();
+    private final Map<String, RetryBudget> retryBudgets = new ConcurrentHashMap<>();
+    private final RetryBudget globalRetryBudget;
+    private final AdmissionController admissionController;
+    private final SellerLivenessRegistry livenessRegistry;
+    private final AdaptiveTimeoutPolicy timeoutPolicy;
     
-    // Router-Dealer pattern for async messaging
-    private ZMQ.Socket routerSocket;
+    // Request hedging (opt-in)
+    private final boolean hedgingEnabled;
+    private final Set<String> hedgedTypes;
+    private final double hedgePercentile;
+    private final double hedgeMaxRatio;
+    private final AtomicLong hedgeEligibleCount = new AtomicLong(0);
+    private final AtomicLong hedgeSentCount = new AtomicLong(0);
+    
+    // Router-Dealer pattern for async messaging, one ROUTER socket per shard
+    private final RouterShard[] shards;
+    private final ConsistentHashRing shardRing;
     private final Map<String, CompletableFuture<Message>> pendingRequests;
     private final ExecutorService messageExecutor;
-    private final ScheduledExecutorService timeoutScheduler;
-    private final ScheduledExecutorService heartbeatScheduler;
+    private final ThreadPoolExecutor decodeExecutor;
+    private volatile int bulkheadMaxInFlight;
+    private final TimerService timer;
+    private TimerService.Timeout heartbeatTimer;
+    
+    // Metrics
+    private final MetricsRegistry.Family<MetricsRegistry.Histogram> rttMetrics;
+    private final MetricsRegistry.Family<MetricsRegistry.Counter> timeoutMetrics;
+    private final MetricsRegistry.Family<MetricsRegistry.Gauge> circuitStateMetrics;
+    private final Map<String, Map<String, RequestMetrics>> requestMetrics = new ConcurrentHashMap<>();
     
     private volatile boolean running = false;
-    private Thread receiverThread;
     private final int routerPort;
     
     public AsyncMessageBroker(Properties config) {
+        this(config, new AdmissionController(config));
+    }
+    
+    public AsyncMessageBroker(Properties config, AdmissionController admissionController) {
+        this(config, admissionController, TimerService.shared());
+    }
+    
+    public AsyncMessageBroker(Properties config, AdmissionController admissionController, TimerService timer) {
         this.config = config;
-        this.context = new ZContext();
+        this.timer = timer;
+        this.admissionController = admissionController;
+        this.context = new ZContext(Integer.parseInt(config.getProperty("zmq.io.threads", "1")));
 
         this.pendingRequests = new ConcurrentHashMap<>();
         this.messageExecutor = Executors.newFixedThreadPool(10);
-        this.timeoutScheduler = Executors.newSingleThreadScheduledExecutor();
-        this.heartbeatScheduler = Executors.newSingleThreadScheduledExecutor();
-        this.retryManager = new RetryManager();
+        this.decodeExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool(Integer.parseInt(config.getProperty(
+            "marketplace.decode.threads", String.valueOf(Runtime.getRuntime().availableProcessors()))));
+        this.bulkheadMaxInFlight = Integer.parseInt(config.getProperty("bulkhead.max.in.flight", "32"));
+        this.retryManager = new RetryManager(3, 1000, 2.0, 30000, timer, ForkJoinPool.commonPool());
+        this.globalRetryBudget = new RetryBudget("global",
+            Double.parseDouble(config.getProperty("retry.budget.global.ratio", "0.1")),
+            Double.parseDouble(config.getProperty("retry.budget.global.min.per.second", "5")),
+            Double.parseDouble(config.getProperty("retry.budget.global.max.tokens", "50")));
         this.circuitBreakers = new ConcurrentHashMap<>();
+        this.timeoutPolicy = new AdaptiveTimeoutPolicy(config);
+        this.hedgingEnabled = Boolean.parseBoolean(config.getProperty("request.hedging.enabled", "false"));
+        this.hedgedTypes = new HashSet<>(Arrays.asList(
+            config.getProperty("request.hedging.types", "RESERVE,CONFIRM").split("\\s*,\\s*")));
+        this.hedgePercentile = Double.parseDouble(config.getProperty("request.hedging.percentile", "95.0"));
+        this.hedgeMaxRatio = Double.parseDouble(config.getProperty("request.hedging.max.ratio", "0.1"));
+        this.livenessRegistry = new SellerLivenessRegistry(
+            Long.parseLong(config.getProperty("seller.liveness.timeout.ms", "90000")));
         this.routerPort = Integer.parseInt(config.getProperty("marketplace.router.port", "5555"));
         
+        MetricsRegistry metrics = MetricsRegistry.shared();
+        this.rttMetrics = metrics.histogramFamily("marketplace_broker_rtt_seconds",
+            "Round-trip time of successful seller requests", "seller", "type");
+        this.timeoutMetrics = metrics.counterFamily("marketplace_broker_timeouts_total",
+            "Seller requests that timed out", "seller", "type");
+        this.circuitStateMetrics = metrics.gaugeFamily("marketplace_circuit_breaker_state",
+            "Seller circuit breaker state (0=closed, 1=open, 2=half-open)", "seller");
+        metrics.gaugeFamily("marketplace_broker_pending_requests", "Requests awaiting a seller response", "marketplace")
+               .labels(config.getProperty("marketplace.id", "marketplace1")).setSupplier(() -> pendingRequests.size());
+        
+        int shardCount = Integer.parseInt(config.getProperty("marketplace.router.shards", "1"));
+        this.shardRing = new ConsistentHashRing(shardCount);
+        this.shards = new RouterShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new RouterShard(i, routerPort + i);
+        }
+        
         // Configure seller endpoints - not needed for ROUTER binding
         this.sellerEndpoints = new HashMap<>();
-        System.out.println("AsyncMessageBroker initialized with router port: " + routerPort);
+        System.out.println("AsyncMessageBroker initialized with router port: " + routerPort + 
+                         " (" + shardCount + " shard(s), " + config.getProperty("zmq.io.threads", "1") + " I/O thread(s))");
     }
     
     public void start() {
@@ -53,54 +140,213 @@ public class AsyncMessageBroker {
         
         running = true;
         
-        // Create ROUTER socket for async communication
-        routerSocket = context.createSocket(SocketType.ROUTER);
-        routerSocket.setIdentity(UUID.randomUUID().toString().getBytes());
-        
-        // Bind ROUTER socket - sellers will connect to us
-        String bindAddress = "tcp://*:" + routerPort;
-        routerSocket.bind(bindAddress);
-        System.out.println("MessageBroker ROUTER socket bound to " + bindAddress);
-        
-        // Start receiver thread
-        receiverThread = new Thread(this::receiveLoop, "MessageBroker-Receiver");
-        receiverThread.start();
+        // Bind ROUTER sockets - sellers will connect to us
+        for (RouterShard shard : shards) {
+            shard.start();
+        }
         
         // Start heartbeat monitoring
         startHeartbeatMonitoring();
     }
     
-    private void receiveLoop() {
-        ZMQ.Poller poller = context.createPoller(1);
-        poller.register(routerSocket, ZMQ.Poller.POLLIN);
-        
-        while (running) {
-            if (poller.poll(1000) > 0) {
-                if (poller.pollin(0)) {
-                    // Receive multipart message [identity, empty, message]
-                    byte[] identity = routerSocket.recv();
-                    byte[] empty = routerSocket.recv();
-                    byte[] messageBytes = routerSocket.recv();
-                    
-                    if (messageBytes != null) {
-                        try {
-                            String messageJson = new String(messageBytes, ZMQ.CHARSET);
-                            Message response = JsonParser.fromJson(messageJson);
-                            
-                            // Complete the pending future
-                            CompletableFuture<Message> future = pendingRequests.remove(response.getCorrelationId());
-                            if (future != null) {
-                                future.complete(response);
-                            }
-                        } catch (Exception e) {
-                            System.err.println("Error processing response: " + e.getMessage());
-                        }
+    /**
+     * Applies the zmq.* socket options from the configuration. Unset options keep the ZMQ defaults.
+     */
+    private void configureSocket(ZMQ.Socket socket) {
+        String value;
+        if ((value = config.getProperty("zmq.sndhwm")) != null) socket.setSndHWM(Integer.parseInt(value));
+        if ((value = config.getProperty("zmq.rcvhwm")) != null) socket.setRcvHWM(Integer.parseInt(value));
+        if ((value = config.getProperty("zmq.sndbuf")) != null) socket.setSendBufferSize(Integer.parseInt(value));
+        if ((value = config.getProperty("zmq.rcvbuf")) != null) socket.setReceiveBufferSize(Integer.parseInt(value));
+        if ((value = config.getProperty("zmq.linger.ms")) != null) socket.setLinger(Integer.parseInt(value));
+    }
+    
+    /**
+     * Called on a shard poll thread. Only the correlation ID is extracted here; the full
+     * JSON decode runs on the decode pool so the socket drain rate is not bounded by parsing.
+     */
+    private void handleResponse(String sellerId, byte[] messageBytes) {
+        // Responses and heartbeats both carry the seller's current credit window
+        String credits = JsonParser.extractStringField(messageBytes, "credits");
+        if (credits != null) {
+            try {
+                getOrCreateBulkhead(sellerId).updateCredits(Integer.parseInt(credits));
+            } catch (NumberFormatException e) {
+                Log.warn("Invalid credits from {}: {}", sellerId, credits);
+            }
+        }
+        
+        String correlationId = JsonParser.extractStringField(messageBytes, "correlationId");
+        if (correlationId == null) {
+            return;
+        }
+        
+        // Complete the pending future
+        CompletableFuture<Message> future = pendingRequests.remove(correlationId);
+        if (future == null) {
+            return;
+        }
+        
+        try {
+            decodeExecutor.execute(() -> {
+                try {
+                    future.complete(JsonParser.fromJson(new String(messageBytes, ZMQ.CHARSET)));
+                } catch (Exception e) {
+                    Log.error("Error processing response: {}", e.getMessage());
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new RuntimeException("Broker shutdown"));
+        }
+    }
+    
+    /**
+     * Gets the shard index a seller is assigned to.
+     * @param sellerId The seller identifier
+     * @return Shard index
+     */
+    public int getShardFor(String sellerId) {
+        return shardRing.shardFor(sellerId);
+    }
+    
+    /**
+     * One ROUTER socket with its own poll thread. Only the poll thread touches the socket;
+     * other threads enqueue outgoing frames and wake it through an inproc PAIR socket.
+     */
+    private class RouterShard {
+        private final int index;
+        private final int port;
+        private final Queue<OutgoingMessage> outbox = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
+        private ZMQ.Socket routerSocket;
+        private ZMQ.Socket wakeupSender;
+        private ZMQ.Socket wakeupReceiver;
+        private Thread pollThread;
+        
+        RouterShard(int index, int port) {
+            this.index = index;
+            this.port = port;
+        }
+        
+        void start() {
+            routerSocket = context.createSocket(SocketType.ROUTER);
+            routerSocket.setIdentity(UUID.randomUUID().toString().getBytes());
+            routerSocket.setRouterMandatory(true);
+            configureSocket(routerSocket);
+            
+            String bindAddress = "tcp://*:" + port;
+            routerSocket.bind(bindAddress);
+            System.out.println("MessageBroker ROUTER shard " + index + " bound to " + bindAddress);
+            
+            String wakeupAddress = "inproc://broker-shard-" + index + "-" + System.identityHashCode(this);
+            wakeupReceiver = context.createSocket(SocketType.PAIR);
+            wakeupReceiver.bind(wakeupAddress);
+            wakeupSender = context.createSocket(SocketType.PAIR);
+            wakeupSender.connect(wakeupAddress);
+            
+            pollThread = new Thread(this::pollLoop, "MessageBroker-Shard-" + index);
+            pollThread.start();
+        }
+        
+        /**
+         * Queues a message for the seller and wakes the poll thread if it is not already due to flush.
+         */
+        void send(String sellerId, String correlationId, byte[] messageBytes) {
+            outbox.add(new OutgoingMessage(sellerId, correlationId, messageBytes));
+            if (wakeupPending.compareAndSet(false, true)) {
+                synchronized (wakeupSender) {
+                    wakeupSender.send(new byte[0], 0);
+                }
+            }
+        }
+        
+        private void pollLoop() {
+            ZMQ.Poller poller = context.createPoller(2);
+            poller.register(routerSocket, ZMQ.Poller.POLLIN);
+            poller.register(wakeupReceiver, ZMQ.Poller.POLLIN);
+            
+            while (running) {
+                if (poller.poll(1000) > 0) {
+                    if (poller.pollin(1)) {
+                        wakeupReceiver.recv(ZMQ.DONTWAIT);
+                        flushOutbox();
+                    }
+                    if (poller.pollin(0)) {
+                        drainIncoming();
+                    }
+                }
+            }
+            
+            flushOutbox();
+            poller.close();
+        }
+        
+        private void flushOutbox() {
+            // Clear the flag before draining so a sender racing with the drain triggers another wake-up
+            wakeupPending.set(false);
+            OutgoingMessage message;
+            while ((message = outbox.poll()) != null) {
+                try {
+                    routerSocket.send(message.sellerId.getBytes(ZMQ.CHARSET), ZMQ.SNDMORE);
+                } catch (ZMQException e) {
+                    // ROUTER_MANDATORY: the seller has no connection to this shard
+                    if (e.getErrorCode() != ZMQ.Error.EHOSTUNREACH.getCode()) throw e;
+                    livenessRegistry.markUnreachable(message.sellerId);
+                    CompletableFuture<Message> future = pendingRequests.remove(message.correlationId);
+                    if (future != null) {
+                        future.completeExceptionally(new IllegalStateException(
+                            "Seller " + message.sellerId + " is not connected to shard " + index));
                     }
+                    continue;
                 }
+                routerSocket.send("", ZMQ.SNDMORE);
+                routerSocket.send(message.payload, 0);
             }
         }
         
-        poller.close();
+        private void drainIncoming() {
+            // Receive multipart messages [identity, empty, message] until the socket is empty
+            byte[] identity;
+            while ((identity = routerSocket.recv(ZMQ.DONTWAIT)) != null) {
+                byte[] empty = routerSocket.recv();
+                byte[] messageBytes = routerSocket.recv();
+                
+                // Any frame, heartbeat or response, proves the seller is alive
+                String sellerId = new String(identity, ZMQ.CHARSET);
+                livenessRegistry.recordActivity(sellerId);
+                
+                if (messageBytes != null) {
+                    handleResponse(sellerId, messageBytes);
+                }
+            }
+        }
+        
+        private class OutgoingMessage {
+            final String sellerId;
+            final String correlationId;
+            final byte[] payload;
+            
+            OutgoingMessage(String sellerId, String correlationId, byte[] payload) {
+                this.sellerId = sellerId;
+                this.correlationId = correlationId;
+                this.payload = payload;
+            }
+        }
+        
+        void join(long timeoutMs) throws InterruptedException {
+            if (pollThread != null) {
+                pollThread.join(timeoutMs);
+            }
+        }
+        
+        void close() {
+            if (routerSocket != null) {
+                routerSocket.close();
+                wakeupSender.close();
+                wakeupReceiver.close();
+            }
+        }
     }
     
     public CompletableFuture<Message> sendAsyncRequest(String sellerId, Message request) {
@@ -108,13 +354,88 @@ public class AsyncMessageBroker {
     }
     
     public CompletableFuture<Message> sendAsyncRequestWithRetry(String sellerId, Message request, String operationName) {
-        CircuitBreaker circuitBreaker = getOrCreateCircuitBreaker(sellerId);
+        return sendAsyncRequestWithRetry(sellerId, request, operationName, 0);
+    }
+    
+    /**
+     * Sends a request with retries, circuit breaking and flow control.
+     * @param sellerId The target seller
+     * @param request The request message
+     * @param operationName Name for logging purposes
+     * @param deadlineMillis Epoch millis after which the caller no longer needs an answer;
+     *                       no retry is scheduled past it. 0 means no deadline.
+     * @return Future completing with the seller's response
+     */
+    public CompletableFuture<Message> sendAsyncRequestWithRetry(String sellerId, Message request, 
+                                                                String operationName, long deadlineMillis) {
+        // Child of the span the caller put into the request; attempts re-inject their own span
+        Tracer.Span span = Tracer.shared().startSpan("broker.request", request)
+            .tag("seller", sellerId).tag("type", request.getType());
         
-        return circuitBreaker.execute(() -> {
+        // Don't spend a timeout (and retries) on a seller that has gone silent
+        if (livenessRegistry.isDown(sellerId)) {
+            long lastSeen = livenessRegistry.getLastSeen(sellerId);
+            return failFast(span, new IllegalStateException("Seller " + sellerId + " is down (" +
+                (lastSeen == 0 ? "never connected" : "last seen " + (System.currentTimeMillis() - lastSeen) + "ms ago") + ")"));
+        }
+        
+        // Bound the requests outstanding per seller so a slow seller cannot grow pendingRequests without limit
+        if (!admissionController.tryAcquireSeller(sellerId)) {
+            return failFast(span, new RejectedExecutionException(
+                "Seller " + sellerId + " saturated: " + admissionController.getSellerInFlight(sellerId) + 
+                " requests in flight (limit " + admissionController.getSellerLimit(sellerId) + ")"));
+        }
+        
+        AbstractCircuitBreaker circuitBreaker = getOrCreateCircuitBreaker(sellerId);
+        long startNanos = System.nanoTime();
+        // The seller's own round-trip time of the last attempt, excluding retry backoff and
+        // bulkhead queueing, which would otherwise skew the limiter's RTT trend
+        AtomicLong attemptRttNanos = new AtomicLong(-1);
+        AtomicInteger attempts = new AtomicInteger(0);
+        
+        CompletableFuture<Message> result = circuitBreaker.execute(() -> {
             return retryManager.executeWithRetry(() -> {
-                return sendAsyncRequestInternal(sellerId, request);
-            }, operationName);
+                long queuedNanos = System.nanoTime();
+                return getOrCreateBulkhead(sellerId).submit(() -> {
+                    long sentNanos = System.nanoTime();
+                    span.recordChild("broker.bulkhead.wait", queuedNanos, sentNanos);
+                    Tracer.Span attemptSpan = span.startChild("broker.attempt", sentNanos)
+                        .tag("attempt", attempts.incrementAndGet());
+                    // Attempts run one after another, so the shared request can carry the current one
+                    attemptSpan.inject(request);
+                    // Completed by hand so failures reach the retry manager unwrapped
+                    CompletableFuture<Message> attempt = new CompletableFuture<>();
+                    sendAsyncRequestInternal(sellerId, request).whenComplete((response, exception) -> {
+                        attemptRttNanos.set(System.nanoTime() - sentNanos);
+                        if (exception != null) {
+                            attemptSpan.error(exception).end();
+                            attempt.completeExceptionally(exception);
+                        } else {
+                            attemptSpan.end();
+                            attempt.complete(response);
+                        }
+                    });
+                    return attempt;
+                });
+            }, operationName, Arrays.asList(globalRetryBudget, getOrCreateRetryBudget(sellerId)), deadlineMillis, span);
         }, operationName);
+        
+        result.whenComplete((response, exception) -> {
+            long rttNanos = attemptRttNanos.get();
+            admissionController.onSellerResponse(sellerId, request.getType(),
+                rttNanos >= 0 ? rttNanos : System.nanoTime() - startNanos, exception);
+            if (exception != null) {
+                span.error(exception instanceof CompletionException && exception.getCause() != null
+                           ? exception.getCause() : exception);
+            }
+            span.end();
+        });
+        return result;
+    }
+    
+    private CompletableFuture<Message> failFast(Tracer.Span span, RuntimeException failure) {
+        span.error(failure).end();
+        return CompletableFuture.failedFuture(failure);
     }
     
     private CompletableFuture<Message> sendAsyncRequestInternal(String sellerId, Message request) {
@@ -131,39 +452,48 @@ public class AsyncMessageBroker {
         }
         
         // Schedule timeout first (optimized approach)
-        int timeoutMs = Integer.parseInt(config.getProperty("request.timeout.ms", "5000"));
+        long timeoutMs = timeoutPolicy.getTimeoutMs(sellerId, request.getType());
+        RequestMetrics metrics = requestMetrics(sellerId, String.valueOf(request.getType()));
         String finalCorrelationId = correlationId;
-        ScheduledFuture<?> timeoutFuture = timeoutScheduler.schedule(() -> {
+        // Timeouts complete futures on the decode pool, like responses do
+        TimerService.Timeout timeoutFuture = timer.schedule(() -> {
             CompletableFuture<Message> pendingFuture = pendingRequests.remove(finalCorrelationId);
             if (pendingFuture != null) {
+                metrics.timeouts.increment();
+                timeoutPolicy.recordTimeout(sellerId, request.getType());
                 pendingFuture.completeExceptionally(
                     new TimeoutException("Request to " + sellerId + " timed out after " + timeoutMs + "ms")
                 );
             }
-        }, timeoutMs, TimeUnit.MILLISECONDS);
+        }, timeoutMs, TimeUnit.MILLISECONDS, decodeExecutor);
         
         // Store future with its timeout task for potential cancellation
         pendingRequests.put(correlationId, future);
+        recordRequestEvent(sellerId, request.getType(), correlationId, timeoutMs, future);
+        
+        // Feed successful round-trip times back into the timeout policy and the RTT metrics
+        long sentNanos = System.nanoTime();
+        future.thenRun(() -> {
+            long rttNanos = System.nanoTime() - sentNanos;
+            timeoutPolicy.recordLatency(sellerId, request.getType(), rttNanos);
+            metrics.rtt.recordNanos(rttNanos);
+        });
         
         // Send request
         final String finalCorrelationId2 = correlationId;
         messageExecutor.execute(() -> {
             try {
-                String messageJson = JsonParser.toJson(request);
-                byte[] sellerIdentity = sellerId.getBytes(ZMQ.CHARSET);
+                byte[] messageBytes = JsonParser.toJson(request).getBytes(ZMQ.CHARSET);
+                shards[shardRing.shardFor(sellerId)].send(sellerId, finalCorrelationId2, messageBytes);
                 
-                synchronized (routerSocket) {
-                    routerSocket.send(sellerIdentity, ZMQ.SNDMORE);
-                    routerSocket.send("", ZMQ.SNDMORE);
-                    routerSocket.send(messageJson.getBytes(ZMQ.CHARSET), 0);
-                }
+                Log.debug("Sent request to {} with correlation ID: {}", sellerId, finalCorrelationId2);
                 
-                System.out.println("Sent request to " + sellerId + " with correlation ID: " + finalCorrelationId2);
+                scheduleHedge(sellerId, request, finalCorrelationId2, future);
                 
                 // Add hook to cancel timeout when future completes
                 future.whenComplete((result, ex) -> {
                     if (!timeoutFuture.isDone()) {
-                        timeoutFuture.cancel(false);
+                        timeoutFuture.cancel();
                     }
                 });
                 
@@ -176,17 +506,182 @@ public class AsyncMessageBroker {
         return future;
     }
     
-    private CircuitBreaker getOrCreateCircuitBreaker(String sellerId) {
-        return circuitBreakers.computeIfAbsent(sellerId, 
-            id -> new CircuitBreaker(id, 5, 30000, 3));
+    /**
+     * Emits a flight recorder event spanning a request from queueing to its response, timeout or failure.
+     */
+    private void recordRequestEvent(String sellerId, String type, String correlationId, long timeoutMs,
+                                    CompletableFuture<Message> future) {
+        FlightEvents.BrokerRequest event = new FlightEvents.BrokerRequest();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.begin();
+        future.whenComplete((response, exception) -> {
+            event.end();
+            if (event.shouldCommit()) {
+                event.seller = sellerId;
+                event.messageType = type;
+                event.correlationId = correlationId;
+                event.shard = shardRing.shardFor(sellerId);
+                event.outcome = exception == null ? "response" : 
+                    exception instanceof TimeoutException ? "timeout" : "failed";
+                event.timeout = timeoutMs;
+                event.commit();
+            }
+        });
+    }
+    
+    /**
+     * Schedules a duplicate of a request once it has been outstanding longer than the seller's
+     * hedge percentile. The duplicate carries the same messageId and correlationId, so whichever
+     * answer arrives first completes the request and the other is dropped. Sellers handle their
+     * requests one at a time and answer a duplicate of a finished request from their caches, so a
+     * hedge only helps when the original request or its reply was lost; it cannot overtake a slow
+     * seller. The duplicate is flagged as a hedge, so a seller whose original attempt failed
+     * replays that failure instead of running the operation for a reply nobody waits for. Hedges
+     * take a bulkhead slot like any request and are capped to a fraction of all requests, so
+     * they never exceed the seller's advertised credits or send a slow seller twice the load.
+     */
+    private void scheduleHedge(String sellerId, Message request, String correlationId, 
+                               CompletableFuture<Message> future) {
+        if (!hedgingEnabled || !hedgedTypes.contains(request.getType())) {
+            return;
+        }
+        long requests = hedgeEligibleCount.incrementAndGet();
+        long delayMs = timeoutPolicy.getLatencyPercentileMs(sellerId, request.getType(), hedgePercentile);
+        if (delayMs < 0) {
+            return;
+        }
+        byte[] hedgeBytes = JsonParser.toJson(hedgeOf(request)).getBytes(ZMQ.CHARSET);
+        
+        // Sending only queues to the shard outbox, so the hedge can run on the timer thread
+        TimerService.Timeout hedgeFuture = timer.schedule(() -> {
+            if (future.isDone() || !pendingRequests.containsKey(correlationId)) {
+                return;
+            }
+            if (hedgeSentCount.get() >= requests * hedgeMaxRatio) {
+                return;
+            }
+            // A full bulkhead rejects the hedge, which is then simply not sent
+            getOrCreateBulkhead(sellerId).submit(() -> {
+                if (future.isDone()) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                hedgeSentCount.incrementAndGet();
+                shards[shardRing.shardFor(sellerId)].send(sellerId, correlationId, hedgeBytes);
+                if (Log.isDebugEnabled()) {
+                    Log.debug("Hedged request to {} with correlation ID: {} after {}ms", sellerId, correlationId, delayMs);
+                }
+                // The slot is held until the request is answered or times out
+                return future.handle((response, exception) -> null);
+            });
+        }, Math.max(1, delayMs), TimeUnit.MILLISECONDS);
+        
+        future.whenComplete((result, ex) -> hedgeFuture.cancel());
+    }
+    
+    /**
+     * Copies a request for hedging, with its own data map so the original stays untouched.
+     */
+    private static Message hedgeOf(Message request) {
+        Message hedge = new Message(request.getType(),
+            request.getData() != null ? new HashMap<>(request.getData()) : null, request.getCorrelationId());
+        hedge.setMessageId(request.getMessageId());
+        hedge.setTimestamp(request.getTimestamp());
+        hedge.setSenderId(request.getSenderId());
+        hedge.setTraceId(request.getTraceId());
+        hedge.setSpanId(request.getSpanId());
+        hedge.setHedge(true);
+        return hedge;
+    }
+    
+    /**
+     * Gets the number of duplicate requests sent by hedging.
+     * @return Hedged request count
+     */
+    public long getHedgedRequestCount() {
+        return hedgeSentCount.get();
+    }
+    
+    private RetryBudget getOrCreateRetryBudget(String sellerId) {
+        return retryBudgets.computeIfAbsent(sellerId, id -> new RetryBudget(id,
+            Double.parseDouble(config.getProperty("retry.budget.ratio", "0.1")),
+            Double.parseDouble(config.getProperty("retry.budget.min.per.second", "1")),
+            Double.parseDouble(config.getProperty("retry.budget.max.tokens", "10"))));
+    }
+    
+    private SellerBulkhead getOrCreateBulkhead(String sellerId) {
+        return bulkheads.computeIfAbsent(sellerId, id -> new SellerBulkhead(id, bulkheadMaxInFlight,
+            Integer.parseInt(config.getProperty("bulkhead.queue.capacity", "100"))));
+    }
+    
+    private AbstractCircuitBreaker getOrCreateCircuitBreaker(String sellerId) {
+        return circuitBreakers.computeIfAbsent(sellerId, id -> {
+            AbstractCircuitBreaker circuitBreaker = createCircuitBreaker(id);
+            circuitStateMetrics.labels(id).setSupplier(() -> circuitBreaker.getState().ordinal());
+            return circuitBreaker;
+        });
+    }
+    
+    /**
+     * Gets the RTT histogram and timeout counter of a seller and message type, resolving the
+     * labelled children once instead of on every request.
+     */
+    private RequestMetrics requestMetrics(String sellerId, String type) {
+        Map<String, RequestMetrics> byType = requestMetrics.get(sellerId);
+        if (byType == null) {
+            byType = requestMetrics.computeIfAbsent(sellerId, id -> new ConcurrentHashMap<>());
+        }
+        RequestMetrics metrics = byType.get(type);
+        if (metrics == null) {
+            metrics = byType.computeIfAbsent(type, t -> new RequestMetrics(
+                rttMetrics.labels(sellerId, t), timeoutMetrics.labels(sellerId, t)));
+        }
+        return metrics;
+    }
+    
+    private AbstractCircuitBreaker createCircuitBreaker(String sellerId) {
+        return createCircuitBreaker(sellerId, config, Clock.shared());
+    }
+    
+    /**
+     * Creates a seller's circuit breaker according to circuit.breaker.type: "count" for the
+     * consecutive-failure breaker, "sliding" for the failure-rate/slow-call breaker.
+     * Package-private so the deterministic simulation builds the same breakers on its clock.
+     * @param sellerId The seller the breaker protects
+     * @param config Configuration properties (circuit.breaker.* keys)
+     * @param clock Clock the breaker measures time on
+     * @return The breaker
+     */
+    static AbstractCircuitBreaker createCircuitBreaker(String sellerId, Properties config, Clock clock) {
+        long openTimeoutMs = Long.parseLong(config.getProperty("circuit.breaker.timeout.ms", "30000"));
+        if ("sliding".equalsIgnoreCase(config.getProperty("circuit.breaker.type", "count"))) {
+            return new SlidingWindowCircuitBreaker(sellerId,
+                SlidingWindowCircuitBreaker.WindowType.valueOf(
+                    config.getProperty("circuit.breaker.window.type", "COUNT").toUpperCase()),
+                Integer.parseInt(config.getProperty("circuit.breaker.window.size", "50")),
+                Integer.parseInt(config.getProperty("circuit.breaker.minimum.calls", "10")),
+                Float.parseFloat(config.getProperty("circuit.breaker.failure.rate.threshold", "50")),
+                Float.parseFloat(config.getProperty("circuit.breaker.slow.call.rate.threshold", "80")),
+                Long.parseLong(config.getProperty("circuit.breaker.slow.call.duration.ms", "3000")),
+                openTimeoutMs,
+                Integer.parseInt(config.getProperty("circuit.breaker.half.open.probes", "3")),
+                clock);
+        }
+        return new CircuitBreaker(sellerId,
+            Integer.parseInt(config.getProperty("circuit.breaker.failure.threshold", "5")),
+            openTimeoutMs,
+            Integer.parseInt(config.getProperty("circuit.breaker.success.threshold", "3")),
+            clock);
     }
     
     private void startHeartbeatMonitoring() {
-        heartbeatScheduler.scheduleAtFixedRate(() -> {
+        heartbeatTimer = timer.scheduleAtFixedRate(() -> {
             // Send heartbeat to all connected sellers to check connectivity
             // This is optional - sellers send heartbeats to us
-            System.out.println("Heartbeat monitoring active. Pending requests: " + pendingRequests.size());
-        }, 30, 30, TimeUnit.SECONDS);
+            Log.info("Heartbeat monitoring active. Pending requests: {}, live sellers: {}",
+                     pendingRequests.size(), livenessRegistry.getLiveSellers());
+        }, 30, 30, TimeUnit.SECONDS, messageExecutor);
     }
     
     public void shutdown() {
@@ -194,17 +689,18 @@ public class AsyncMessageBroker {
         
         // Shutdown executors
         messageExecutor.shutdown();
-        timeoutScheduler.shutdown();
-        heartbeatScheduler.shutdown();
+        decodeExecutor.shutdown();
+        if (heartbeatTimer != null) {
+            heartbeatTimer.cancel();
+        }
         retryManager.shutdown();
         
         try {
-            if (receiverThread != null) {
-                receiverThread.join(5000);
+            for (RouterShard shard : shards) {
+                shard.join(5000);
             }
             messageExecutor.awaitTermination(5, TimeUnit.SECONDS);
-            timeoutScheduler.awaitTermination(5, TimeUnit.SECONDS);
-            heartbeatScheduler.awaitTermination(5, TimeUnit.SECONDS);
+            decodeExecutor.awaitTermination(5, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
@@ -216,8 +712,8 @@ public class AsyncMessageBroker {
         pendingRequests.clear();
         
         // Close sockets
-        if (routerSocket != null) {
-            routerSocket.close();
+        for (RouterShard shard : shards) {
+            shard.close();
         }
         context.close();
         
@@ -230,7 +726,98 @@ public class AsyncMessageBroker {
         return stats;
     }
     
+    /**
+     * Gets the adaptive request timeout per seller and message type.
+     * @return Map of "seller/type" to statistics string
+     */
+    public Map<String, String> getTimeoutStats() {
+        return timeoutPolicy.getStats();
+    }
+    
+    /**
+     * Gets the sellers that have been heard from within the liveness timeout.
+     * @return Live seller IDs
+     */
+    public Set<String> getLiveSellers() {
+        return livenessRegistry.getLiveSellers();
+    }
+    
+    public Map<String, String> getBulkheadStats() {
+        Map<String, String> stats = new HashMap<>();
+        bulkheads.forEach((sellerId, bulkhead) -> stats.put(sellerId, bulkhead.getStats()));
+        return stats;
+    }
+    
+    /**
+     * Gets retry counters and the state of the global and per-seller retry budgets.
+     * @return Map of budget name ("retries" for the counters) to statistics string
+     */
+    public Map<String, String> getRetryStats() {
+        Map<String, String> stats = new HashMap<>();
+        stats.put("retries", retryManager.getStats());
+        stats.put("global", globalRetryBudget.getStats());
+        retryBudgets.forEach((sellerId, budget) -> stats.put(sellerId, budget.getStats()));
+        return stats;
+    }
+    
     public int getPendingRequestCount() {
         return pendingRequests.size();
     }
+    
+    /**
+     * Gets the size and load of the pool that decodes responses and fires timeouts.
+     * @return Map of threads, active and queued
+     */
+    public Map<String, Object> getDecodePoolStats() {
+        return AdminHttpServer.poolStats(decodeExecutor);
+    }
+    
+    public int getDecodeThreads() {
+        return decodeExecutor.getCorePoolSize();
+    }
+    
+    /**
+     * Resizes the pool that decodes responses and fires timeouts.
+     * @param threads New number of threads (at least 1)
+     */
+    public void setDecodeThreads(int threads) {
+        AdminHttpServer.resize(decodeExecutor, threads);
+    }
+    
+    public int getBulkheadMaxInFlight() {
+        return bulkheadMaxInFlight;
+    }
+    
+    /**
+     * Changes the per-seller bulkhead bound for existing and future sellers.
+     * @param maxInFlight New bound on outstanding requests per seller (at least 1)
+     */
+    public void setBulkheadMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("bulkhead bound must be at least 1");
+        }
+        bulkheadMaxInFlight = maxInFlight;
+        bulkheads.values().forEach(bulkhead -> bulkhead.setMaxInFlight(maxInFlight));
+    }
+    
+    /**
+     * Gets the timeout policy, e.g. to change the static timeout at runtime.
+     * @return The broker's timeout policy
+     */
+    public AdaptiveTimeoutPolicy getTimeoutPolicy() {
+        return timeoutPolicy;
+    }
+    
+    /**
+     * Metric children of one seller and message type.
+     */
+    private static final class RequestMetrics {
+        final MetricsRegistry.Histogram rtt;
+        final MetricsRegistry.Counter timeouts;
+        
+        RequestMetrics(MetricsRegistry.Histogram rtt, MetricsRegistry.Counter timeouts) {
+            this.rtt = rtt;
+            this.timeouts = timeouts;
+        }
+    }
 }
@@ -0,0 +1,321 @@
+package marketplace;
+
+import common.LatencyHistogram;
+import common.OrderStatus;
+import common.RandomSource;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Open-loop load generator that synthesizes orders at a target arrival rate.
+ *
+ * Arrivals follow a fixed schedule (constant, linear ramp or Poisson) that does not
+ * wait for earlier orders to finish. Latency is measured from each order's intended
+ * start time, so time spent queueing behind a saturated system is part of the result
+ * instead of being hidden by a slower submission rate (coordinated omission).
+ */
+public class LoadGenerator {
+
+    /**
+     * Arrival patterns supported by the generator.
+     */
+    public enum Pattern {
+        CONSTANT,  // Fixed inter-arrival time
+        RAMP,      // Rate grows linearly from the start rate to the target rate
+        POISSON    // Exponentially distributed inter-arrival times
+    }
+
+    private final String marketplaceId;
+    private final Function<Order, CompletableFuture<Order>> submitter;
+    private final Pattern pattern;
+    private final double targetRate;
+    private final double rampStartRate;
+    private final long durationNanos;
+    private final long drainTimeoutMs;
+    private final WeightedChoice sellers;
+    private final WeightedChoice products;
+    private final int minQuantity;
+    private final int maxQuantity;
+    private final int minItems;
+    private final int maxItems;
+    private final Random random;
+
+    private final LatencyHistogram latencyMicros = new LatencyHistogram();
+    private final AtomicLong submitted = new AtomicLong(0);
+    private final AtomicLong completed = new AtomicLong(0);
+    private final AtomicLong succeeded = new AtomicLong(0);
+    private final AtomicLong failed = new AtomicLong(0);
+    private final AtomicLong rejected = new AtomicLong(0);
+    private final AtomicLong maxScheduleLagNanos = new AtomicLong(0);
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private volatile boolean running = false;
+    private Thread generatorThread;
+
+    /**
+     * Creates a load generator from configuration.
+     * @param config Configuration properties (loadgen.* keys)
+     * @param marketplaceId Marketplace the synthesized orders belong to
+     * @param submitter Submits an order and completes when its saga has finished
+     */
+    public LoadGenerator(Properties config, String marketplaceId,
+                         Function<Order, CompletableFuture<Order>> submitter) {
+        this.marketplaceId = marketplaceId;
+        this.submitter = submitter;
+        this.pattern = Pattern.valueOf(config.getProperty("loadgen.pattern", "constant").trim().toUpperCase());
+        this.targetRate = Double.parseDouble(config.getProperty("loadgen.rate.per.second", "50"));
+        this.rampStartRate = Double.parseDouble(config.getProperty("loadgen.ramp.start.rate.per.second", "1"));
+        this.durationNanos = TimeUnit.SECONDS.toNanos(
+            Long.parseLong(config.getProperty("loadgen.duration.seconds", "60")));
+        this.drainTimeoutMs = TimeUnit.SECONDS.toMillis(
+            Long.parseLong(config.getProperty("loadgen.drain.timeout.seconds", "60")));
+        this.sellers = WeightedChoice.parse(
+            config.getProperty("loadgen.sellers", "seller1,seller2,seller3,seller4,seller5"));
+        this.products = WeightedChoice.parse(config.getProperty("loadgen.products", "P1,P2,P3"));
+        this.minQuantity = Integer.parseInt(config.getProperty("loadgen.quantity.min", "1"));
+        this.maxQuantity = Integer.parseInt(config.getProperty("loadgen.quantity.max", "5"));
+        this.minItems = Integer.parseInt(config.getProperty("loadgen.items.min", "1"));
+        this.maxItems = Integer.parseInt(config.getProperty("loadgen.items.max", "3"));
+
+        String seed = config.getProperty("loadgen.seed");
+        this.random = seed != null ? new Random(Long.parseLong(seed)) : RandomSource.create("loadgen");
+
+        if (targetRate <= 0) {
+            throw new IllegalArgumentException("loadgen.rate.per.second must be positive");
+        }
+    }
+
+    /**
+     * Starts generating load on a dedicated thread.
+     */
+    public void start() {
+        if (running) return;
+
+        running = true;
+        generatorThread = new Thread(this::run, "LoadGenerator");
+        generatorThread.start();
+
+        System.out.println(String.format("Load generator started: pattern=%s rate=%.1f/s duration=%ds",
+                                        pattern, targetRate, TimeUnit.NANOSECONDS.toSeconds(durationNanos)));
+    }
+
+    /**
+     * Stops generating new orders. Orders already submitted keep running.
+     */
+    public void stop() {
+        running = false;
+        if (generatorThread != null) {
+            generatorThread.interrupt();
+        }
+    }
+
+    /**
+     * Waits until the run has finished and the summary has been printed.
+     * @param timeoutMs Maximum time to wait in milliseconds
+     * @return true if the run finished within the timeout
+     */
+    public boolean awaitCompletion(long timeoutMs) throws InterruptedException {
+        return finished.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void run() {
+        long startNanos = System.nanoTime();
+        long elapsedIntendedNanos = 0;
+        long sequence = 0;
+
+        try {
+            while (running && elapsedIntendedNanos < durationNanos) {
+                long intendedStart = startNanos + elapsedIntendedNanos;
+
+                // Sleep until the intended start; never skip arrivals when running behind
+                long waitNanos = intendedStart - System.nanoTime();
+                while (waitNanos > 0 && running) {
+                    LockSupport.parkNanos(waitNanos);
+                    waitNanos = intendedStart - System.nanoTime();
+                }
+                if (!running) break;
+
+                long lag = -waitNanos;
+                if (lag > maxScheduleLagNanos.get()) {
+                    maxScheduleLagNanos.set(lag);
+                }
+
+                submit(createOrder(++sequence), intendedStart);
+                elapsedIntendedNanos += nextInterArrivalNanos(elapsedIntendedNanos);
+            }
+
+            long submitEndNanos = System.nanoTime();
+            awaitOutstanding();
+            printSummary(startNanos, submitEndNanos, System.nanoTime());
+        } finally {
+            running = false;
+            finished.countDown();
+        }
+    }
+
+    private void submit(Order order, long intendedStartNanos) {
+        submitted.incrementAndGet();
+        CompletableFuture<Order> future;
+        try {
+            future = submitter.apply(order);
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        future.whenComplete((result, exception) -> {
+            latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStartNanos));
+            if (exception == null && result != null && result.getStatus() == OrderStatus.COMPLETED) {
+                succeeded.incrementAndGet();
+            } else if (exception == null && result != null && result.getStatus() == OrderStatus.REJECTED) {
+                rejected.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+            }
+            completed.incrementAndGet();
+        });
+    }
+
+    /**
+     * Computes the gap to the next intended arrival for the configured pattern.
+     * @param elapsedNanos Intended time of the current arrival relative to the start
+     * @return Inter-arrival time in nanoseconds
+     */
+    long nextInterArrivalNanos(long elapsedNanos) {
+        double seconds;
+        switch (pattern) {
+            case POISSON:
+                seconds = -Math.log(1.0 - random.nextDouble()) / targetRate;
+                break;
+            case RAMP:
+                // Solve r(t)*dt + k*dt^2/2 = 1 for the linearly increasing rate r(t) = r0 + k*t
+                double durationSeconds = durationNanos / 1e9;
+                double slope = (targetRate - rampStartRate) / durationSeconds;
+                double currentRate = Math.max(0.0, rampStartRate + slope * (elapsedNanos / 1e9));
+                if (Math.abs(slope) < 1e-9) {
+                    seconds = 1.0 / Math.max(currentRate, 1e-9);
+                } else {
+                    double discriminant = currentRate * currentRate + 2 * slope;
+                    seconds = discriminant > 0
+                        ? (-currentRate + Math.sqrt(discriminant)) / slope
+                        : 1.0 / Math.max(currentRate, 1e-9);
+                }
+                break;
+            case CONSTANT:
+            default:
+                seconds = 1.0 / targetRate;
+        }
+        return Math.max(1, (long) (seconds * 1e9));
+    }
+
+    Order createOrder(long sequence) {
+        Order order = new Order("LG-" + marketplaceId + "-" + sequence,
+                                "loadgen-customer-" + (sequence % 1000), marketplaceId);
+
+        int itemCount = minItems + random.nextInt(maxItems - minItems + 1);
+        for (int i = 0; i < itemCount; i++) {
+            int quantity = minQuantity + random.nextInt(maxQuantity - minQuantity + 1);
+            order.addItem(products.next(random), quantity, sellers.next(random));
+        }
+
+        return order;
+    }
+
+    private void awaitOutstanding() {
+        long deadline = System.currentTimeMillis() + drainTimeoutMs;
+        while (completed.get() < submitted.get() && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void printSummary(long startNanos, long submitEndNanos, long endNanos) {
+        double submitSeconds = Math.max(1e-9, (submitEndNanos - startNanos) / 1e9);
+        double totalSeconds = Math.max(1e-9, (endNanos - startNanos) / 1e9);
+        long done = completed.get();
+
+        System.out.println("\n=== Load Generator Summary ===");
+        System.out.println(String.format("Pattern: %s, target rate: %.1f orders/s", pattern, targetRate));
+        System.out.println(String.format("Submitted: %d in %.1fs (%.1f orders/s offered)",
+                                        submitted.get(), submitSeconds, submitted.get() / submitSeconds));
+        System.out.println(String.format("Completed: %d in %.1fs (%.1f orders/s), succeeded=%d, failed=%d, rejected=%d, outstanding=%d",
+                                        done, totalSeconds, done / totalSeconds, succeeded.get(), failed.get(),
+                                        rejected.get(), submitted.get() - done));
+        System.out.println(String.format("Latency from intended start (ms): p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f mean=%.1f",
+                                        latencyMicros.getValueAtPercentile(50) / 1000.0,
+                                        latencyMicros.getValueAtPercentile(90) / 1000.0,
+                                        latencyMicros.getValueAtPercentile(99) / 1000.0,
+                                        latencyMicros.getValueAtPercentile(99.9) / 1000.0,
+                                        latencyMicros.getMax() / 1000.0,
+                                        latencyMicros.getMean() / 1000.0));
+        System.out.println(String.format("Max submission lag behind schedule: %.1fms",
+                                        maxScheduleLagNanos.get() / 1e6));
+    }
+
+    /**
+     * Gets the latency histogram (microseconds from intended start).
+     * @return Latency histogram
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return latencyMicros;
+    }
+
+    public long getSubmittedCount() { return submitted.get(); }
+    public long getCompletedCount() { return completed.get(); }
+    public long getSucceededCount() { return succeeded.get(); }
+    public long getFailedCount() { return failed.get(); }
+    public long getRejectedCount() { return rejected.get(); }
+
+    /**
+     * Weighted random choice over a list like "seller1:3,seller2,seller3:0.5".
+     * Entries without a weight default to 1.
+     */
+    static class WeightedChoice {
+        private final String[] values;
+        private final double[] cumulativeWeights;
+
+        private WeightedChoice(String[] values, double[] cumulativeWeights) {
+            this.values = values;
+            this.cumulativeWeights = cumulativeWeights;
+        }
+
+        static WeightedChoice parse(String spec) {
+            String[] entries = spec.split(",");
+            String[] values = new String[entries.length];
+            double[] cumulative = new double[entries.length];
+            double total = 0;
+
+            for (int i = 0; i < entries.length; i++) {
+                String[] parts = entries[i].trim().split(":");
+                values[i] = parts[0].trim();
+                total += parts.length > 1 ? Double.parseDouble(parts[1].trim()) : 1.0;
+                cumulative[i] = total;
+            }
+
+            if (total <= 0) {
+                throw new IllegalArgumentException("Weights must sum to a positive value: " + spec);
+            }
+            return new WeightedChoice(values, cumulative);
+        }
+
+        String next(Random random) {
+            double point = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (point < cumulativeWeights[i]) {
+                    return values[i];
+                }
+            }
+            return values[values.length - 1];
+        }
+    }
+}
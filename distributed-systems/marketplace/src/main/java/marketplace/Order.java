@@ -1,5 +1,6 @@
 package marketplace;
 
+import common.Clock;
 import common.OrderStatus;
 import java.util.ArrayList;
 import java.util.List;
@@ -19,7 +20,7 @@ public class Order {
         this.marketplaceId = marketplaceId;
         this.items = new ArrayList<>();
         this.status = new AtomicReference<>(OrderStatus.CREATED);
-        this.createdAt = System.currentTimeMillis();
+        this.createdAt = Clock.shared().millis();
     }
     
     public void addItem(String productId, int quantity, String sellerId) {
@@ -0,0 +1,284 @@
+package marketplace;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import common.OrderLoader.OrderData;
+import common.OrderLoader.OrderItem;
+import common.OrderStream;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * HTTP endpoint that lets external clients submit orders to a running marketplace.
+ *
+ * POST /orders accepts a batch of orders, either as a JSON array (Content-Type
+ * application/json) or as pipe-delimited text lines. Accepted orders go onto a
+ * bounded queue that a dispatcher drains into the saga orchestrator, holding at
+ * most {@code intake.max.in.flight} sagas at a time. The dispatcher takes an order
+ * off the queue only once the admission controller has granted it a saga slot, so
+ * an order acknowledged with 202 waits instead of being shed. When the dispatcher falls
+ * behind, the queue fills and new orders are rejected with 429 (optionally after
+ * waiting up to {@code intake.ack.timeout.ms} for space), which pushes the
+ * backpressure out to the clients. GET /orders returns intake statistics.
+ */
+public class OrderIntakeServer {
+    private final String marketplaceId;
+    private final AdmissionController admissionController;
+    private final Function<Order, CompletableFuture<Order>> submitter;
+    private final int port;
+    private final long ackTimeoutMs;
+    private final int maxInFlight;
+    private final BlockingQueue<Order> intakeQueue;
+    private final Semaphore inFlightPermits;
+    private final ExecutorService httpExecutor;
+
+    private final AtomicLong acceptedCount = new AtomicLong(0);
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+    private final AtomicLong completedCount = new AtomicLong(0);
+    private final AtomicInteger inFlightCount = new AtomicInteger(0);
+
+    private volatile boolean running = false;
+    private HttpServer server;
+    private Thread dispatcherThread;
+
+    /**
+     * Creates an intake server from configuration.
+     * @param config Configuration properties (intake.* keys)
+     * @param marketplaceId Marketplace the submitted orders belong to
+     * @param admissionController Grants saga slots before orders leave the queue
+     * @param submitter Runs an admitted order and completes when its saga has finished
+     */
+    public OrderIntakeServer(Properties config, String marketplaceId, AdmissionController admissionController,
+                             Function<Order, CompletableFuture<Order>> submitter) {
+        this.marketplaceId = marketplaceId;
+        this.admissionController = admissionController;
+        this.submitter = submitter;
+        this.port = Integer.parseInt(config.getProperty("intake.http.port", "8080"));
+        this.ackTimeoutMs = Long.parseLong(config.getProperty("intake.ack.timeout.ms", "0"));
+        this.maxInFlight = Integer.parseInt(config.getProperty("intake.max.in.flight", "200"));
+        this.intakeQueue = new ArrayBlockingQueue<>(
+            Integer.parseInt(config.getProperty("intake.queue.capacity", "1000")));
+        this.inFlightPermits = new Semaphore(maxInFlight);
+        this.httpExecutor = Executors.newFixedThreadPool(
+            Integer.parseInt(config.getProperty("intake.http.threads", "4")));
+    }
+
+    /**
+     * Starts the HTTP endpoint and the dispatcher thread.
+     */
+    public void start() throws IOException {
+        if (running) return;
+
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/orders", this::handleOrders);
+        server.setExecutor(httpExecutor);
+
+        running = true;
+        dispatcherThread = new Thread(this::dispatchLoop, "OrderIntake-Dispatcher");
+        dispatcherThread.start();
+        server.start();
+
+        System.out.println("Order intake listening on http://*:" + port + "/orders (queue capacity " +
+                         (intakeQueue.size() + intakeQueue.remainingCapacity()) + ", max in-flight " + maxInFlight + ")");
+    }
+
+    /**
+     * Moves queued orders into saga processing while in-flight permits and saga slots are available.
+     */
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                inFlightPermits.acquire();
+                if (!admissionController.admitAcceptedOrder(500)) {
+                    inFlightPermits.release();
+                    continue;
+                }
+                Order order;
+                try {
+                    order = intakeQueue.poll(500, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    admissionController.releaseUnusedOrderSlot();
+                    throw e;
+                }
+                if (order == null) {
+                    admissionController.releaseUnusedOrderSlot();
+                    inFlightPermits.release();
+                    continue;
+                }
+
+                inFlightCount.incrementAndGet();
+                CompletableFuture<Order> future;
+                try {
+                    future = submitter.apply(order);
+                } catch (Exception e) {
+                    future = CompletableFuture.failedFuture(e);
+                }
+                future.whenComplete((result, exception) -> {
+                    completedCount.incrementAndGet();
+                    inFlightCount.decrementAndGet();
+                    inFlightPermits.release();
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void handleOrders(HttpExchange exchange) throws IOException {
+        try {
+            if ("GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendJson(exchange, 200, getStatsJson());
+            } else if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                handleSubmit(exchange);
+            } else {
+                exchange.getResponseHeaders().set("Allow", "GET, POST");
+                sendJson(exchange, 405, "{\"error\":\"Method not allowed\"}");
+            }
+        } catch (Exception e) {
+            System.err.println("Error handling intake request: " + e.getMessage());
+            sendJson(exchange, 500, "{\"error\":\"" + escape(e.getMessage()) + "\"}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleSubmit(HttpExchange exchange) throws IOException {
+        if (!running) {
+            sendJson(exchange, 503, "{\"error\":\"Intake is shutting down\"}");
+            return;
+        }
+
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        boolean json = contentType != null && contentType.toLowerCase().contains("json");
+
+        List<String> rejectedIds = new ArrayList<>();
+        int accepted = 0;
+
+        try (OrderStream stream = json
+                ? OrderStream.fromJson(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))
+                : OrderStream.fromText(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            while (stream.hasNext()) {
+                OrderData orderData = stream.next();
+                if (orderData.orderId == null || orderData.items.isEmpty()) {
+                    rejectedIds.add(String.valueOf(orderData.orderId));
+                    continue;
+                }
+
+                if (intakeQueue.offer(toOrder(orderData), ackTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    accepted++;
+                } else {
+                    rejectedIds.add(orderData.orderId);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Orders before the malformed one were already accepted or rejected; count both
+            acceptedCount.addAndGet(accepted);
+            rejectedCount.addAndGet(rejectedIds.size());
+            sendJson(exchange, 400, "{\"error\":\"Malformed order batch: " + escape(e.getMessage()) +
+                                  "\",\"accepted\":" + accepted + ",\"rejected\":" + rejectedIds.size() + "}");
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        acceptedCount.addAndGet(accepted);
+        rejectedCount.addAndGet(rejectedIds.size());
+
+        StringBuilder body = new StringBuilder();
+        body.append("{\"accepted\":").append(accepted)
+            .append(",\"rejected\":").append(rejectedIds.size())
+            .append(",\"rejectedOrderIds\":[");
+        for (int i = 0; i < rejectedIds.size(); i++) {
+            if (i > 0) body.append(",");
+            body.append("\"").append(escape(rejectedIds.get(i))).append("\"");
+        }
+        body.append("]}");
+
+        if (accepted == 0 && !rejectedIds.isEmpty()) {
+            // Saturated: ask the client to back off before retrying the batch
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendJson(exchange, 429, body.toString());
+        } else {
+            sendJson(exchange, 202, body.toString());
+        }
+    }
+
+    private Order toOrder(OrderData orderData) {
+        Order order = new Order(orderData.orderId, orderData.customerId, marketplaceId);
+        for (OrderItem item : orderData.items) {
+            order.addItem(item.productId, item.quantity, item.sellerId);
+        }
+        return order;
+    }
+
+    private String getStatsJson() {
+        return String.format("{\"queued\":%d,\"inFlight\":%d,\"accepted\":%d,\"rejected\":%d,\"completed\":%d}",
+                           intakeQueue.size(), getInFlightCount(), acceptedCount.get(),
+                           rejectedCount.get(), completedCount.get());
+    }
+
+    private void sendJson(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String escape(String value) {
+        return value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * Gets the number of intake orders whose sagas are still running.
+     * @return In-flight order count
+     */
+    public int getInFlightCount() {
+        return inFlightCount.get();
+    }
+
+    /**
+     * Gets the number of accepted orders waiting for dispatch.
+     * @return Queue depth
+     */
+    public int getQueueDepth() {
+        return intakeQueue.size();
+    }
+
+    /**
+     * Stops accepting orders. Orders still queued are dropped.
+     */
+    public void shutdown() {
+        running = false;
+        if (server != null) {
+            server.stop(1);
+        }
+        if (dispatcherThread != null) {
+            dispatcherThread.interrupt();
+        }
+        httpExecutor.shutdown();
+
+        int dropped = intakeQueue.size();
+        intakeQueue.clear();
+        System.out.println("Order intake shut down (" + dropped + " queued orders dropped)");
+    }
+}
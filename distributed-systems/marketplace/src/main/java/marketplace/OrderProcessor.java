@@ -1,11 +1,20 @@
 package marketplace;
 
+import common.AdminHttpServer;
+import common.Log;
+import common.MetricsHttpServer;
+import common.MetricsRegistry;
 import common.OrderStatus;
 import common.OrderLoader;
 import common.OrderLoader.OrderData;
 import common.OrderLoader.OrderItem;
+import common.OrderStream;
+import common.RandomSource;
+import common.TimerService;
+import common.Tracer;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -13,85 +22,168 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 public class OrderProcessor {
     private final String marketplaceId;
-    private final List<Order> orders;
+    private final Iterator<Order> orderSource;
     private final int orderDelayMs;
+    private final int replayBatchSize;
+    private final int replayMaxInFlight;
     private final Properties config;
+    private final AtomicInteger inFlightOrders = new AtomicInteger(0);
+    private OrderStream orderStream;
 
     
-    private final ExecutorService orderExecutor;
-    private final ScheduledExecutorService scheduler;
+    private final ThreadPoolExecutor orderExecutor;
+    private TimerService.Timeout replayTimer;
     private final SagaOrchestrator sagaOrchestrator;
     private final AsyncMessageBroker messageBroker;
+    private final AdmissionController admissionController;
+    private final LoadGenerator loadGenerator;
+    private final OrderIntakeServer intakeServer;
+    private final MetricsHttpServer metricsServer;
+    private final AdminHttpServer adminServer;
     private final AtomicBoolean running = new AtomicBoolean(false);
     
     public OrderProcessor(Properties config) {
         this.config = config;
+        Log.configure(config);
+        RandomSource.configure(config);
         this.marketplaceId = config.getProperty("marketplace.id", "marketplace1");
+        Tracer.configure(config, marketplaceId);
         this.orderDelayMs = Integer.parseInt(config.getProperty("order.delay.ms", "5000"));
+        this.replayBatchSize = Integer.parseInt(config.getProperty("order.replay.batch.size", "1"));
+        this.replayMaxInFlight = Integer.parseInt(config.getProperty("order.replay.max.in.flight", "1000"));
 
         
         // Initialize thread pools
-        this.orderExecutor = Executors.newFixedThreadPool(
+        this.orderExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool(
             Integer.parseInt(config.getProperty("order.processing.threads", "10"))
         );
-        this.scheduler = Executors.newScheduledThreadPool(2);
         
         // Initialize components
-        this.messageBroker = new AsyncMessageBroker(config);
+        this.admissionController = new AdmissionController(config);
+        this.messageBroker = new AsyncMessageBroker(config, admissionController);
         this.sagaOrchestrator = new SagaOrchestrator(marketplaceId, messageBroker, config);
         
-        // Load orders
-        this.orders = loadOrders();
+        // Optional live intake endpoint for orders submitted by external clients
+        this.intakeServer = Boolean.parseBoolean(config.getProperty("intake.enabled", "false"))
+            ? new OrderIntakeServer(config, marketplaceId, admissionController, this::runAdmittedOrder)
+            : null;
+        
+        // Prometheus scrape endpoint
+        this.metricsServer = Boolean.parseBoolean(config.getProperty("metrics.enabled", "false"))
+            ? new MetricsHttpServer(config, MetricsRegistry.shared())
+            : null;
+        
+        // Operator status and runtime tuning
+        this.adminServer = Boolean.parseBoolean(config.getProperty("admin.enabled", "false"))
+            ? createAdminServer()
+            : null;
+        
+        // Either synthesize orders at a target rate or replay the order file
+        if (Boolean.parseBoolean(config.getProperty("loadgen.enabled", "false"))) {
+            this.loadGenerator = new LoadGenerator(config, marketplaceId, this::processOrderAsync);
+            this.orderSource = Collections.emptyIterator();
+        } else {
+            this.loadGenerator = null;
+            this.orderSource = openOrderSource();
+        }
     }
     
-    private List<Order> loadOrders() {
-        try {
-            // Try loading from properties file first
-            List<OrderData> orderDataList = OrderLoader.loadOrdersFromProperties("orders.properties");
-            return convertOrderDataToOrders(orderDataList);
-        } catch (Exception e) {
-            System.out.println("Could not load orders.properties, generating default orders: " + e.getMessage());
-            return generateDefaultOrders();
+    /**
+     * Creates the admin endpoint with the marketplace's status sections and tunable settings.
+     */
+    private AdminHttpServer createAdminServer() {
+        AdminHttpServer admin = new AdminHttpServer(config, marketplaceId);
+        admin.addStatus("orders", () -> {
+            Map<String, Object> orders = new LinkedHashMap<>();
+            orders.put("inFlight", inFlightOrders.get());
+            orders.put("pool", AdminHttpServer.poolStats(orderExecutor));
+            if (intakeServer != null) {
+                orders.put("intakeQueued", intakeServer.getQueueDepth());
+                orders.put("intakeInFlight", intakeServer.getInFlightCount());
+            }
+            return orders;
+        });
+        admin.addStatus("admission", admissionController::getStats);
+        admin.addStatus("broker", () -> {
+            Map<String, Object> broker = new LinkedHashMap<>();
+            broker.put("pendingRequests", messageBroker.getPendingRequestCount());
+            broker.put("hedgedRequests", messageBroker.getHedgedRequestCount());
+            broker.put("liveSellers", new TreeSet<>(messageBroker.getLiveSellers()));
+            broker.put("decodePool", messageBroker.getDecodePoolStats());
+            return broker;
+        });
+        admin.addStatus("circuitBreakers", () -> new TreeMap<>(messageBroker.getCircuitBreakerStats()));
+        admin.addStatus("bulkheads", () -> new TreeMap<>(messageBroker.getBulkheadStats()));
+        admin.addStatus("retries", () -> new TreeMap<>(messageBroker.getRetryStats()));
+        admin.addStatus("timeouts", messageBroker::getTimeoutStats);
+        
+        AdaptiveTimeoutPolicy timeoutPolicy = messageBroker.getTimeoutPolicy();
+        admin.addSetting("order.processing.threads", orderExecutor::getCorePoolSize,
+                         value -> AdminHttpServer.resize(orderExecutor, Integer.parseInt(value.trim())));
+        admin.addSetting("marketplace.decode.threads", messageBroker::getDecodeThreads,
+                         value -> messageBroker.setDecodeThreads(Integer.parseInt(value.trim())));
+        admin.addSetting("bulkhead.max.in.flight", messageBroker::getBulkheadMaxInFlight,
+                         value -> messageBroker.setBulkheadMaxInFlight(Integer.parseInt(value.trim())));
+        admin.addSetting("request.timeout.ms", timeoutPolicy::getDefaultTimeoutMs,
+                         value -> timeoutPolicy.setDefaultTimeoutMs(Long.parseLong(value.trim())));
+        admin.addSetting("request.timeout.adaptive", timeoutPolicy::isAdaptive,
+                         value -> timeoutPolicy.setAdaptive(parseBoolean(value)));
+        return admin;
+    }
+    
+    private static boolean parseBoolean(String value) {
+        String trimmed = value.trim().toLowerCase();
+        if (!trimmed.equals("true") && !trimmed.equals("false")) {
+            throw new IllegalArgumentException("expected true or false");
         }
+        return Boolean.parseBoolean(trimmed);
     }
     
-    private List<Order> convertOrderDataToOrders(List<OrderData> orderDataList) {
-        List<Order> orders = new ArrayList<>();
+    /**
+     * Opens the configured order file as a lazily parsed stream, so only the
+     * orders currently being submitted are held in memory.
+     */
+    private Iterator<Order> openOrderSource() {
+        String ordersFile = config.getProperty("orders.file", "orders.properties").trim();
+        if (ordersFile.isEmpty()) {
+            // No file replay, e.g. when orders only arrive through the intake endpoint
+            return Collections.emptyIterator();
+        }
         
-        for (OrderData orderData : orderDataList) {
-            Order order = new Order(orderData.orderId, orderData.customerId, marketplaceId);
+        try {
+            OrderStream stream = OrderStream.open(ordersFile);
+            this.orderStream = stream;
+            System.out.println("Streaming orders from " + ordersFile);
             
-            for (OrderItem item : orderData.items) {
-                order.addItem(item.productId, item.quantity, item.sellerId);
+            return new Iterator<Order>() {
+                @Override
+                public boolean hasNext() {
+                    return stream.hasNext();
+                }
+                
+                @Override
+                public Order next() {
+                    return convertOrderData(stream.next());
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error loading orders from " + ordersFile + ", generating default orders: " + e.getMessage());
+            List<Order> defaults = new ArrayList<>();
+            for (OrderData orderData : OrderLoader.generateDefaultOrders()) {
+                defaults.add(convertOrderData(orderData));
             }
-            
-            orders.add(order);
+            return defaults.iterator();
         }
-        
-        return orders;
     }
     
-    private List<Order> generateDefaultOrders() {
-        List<Order> defaultOrders = new ArrayList<>();
+    private Order convertOrderData(OrderData orderData) {
+        Order order = new Order(orderData.orderId, orderData.customerId, marketplaceId);
         
-        // Generate diverse test orders
-        for (int i = 1; i <= 10; i++) {
-            Order order = new Order("O" + i, "customer" + i, marketplaceId);
-            
-            // Add random products
-            int productCount = 1 + (i % 3);
-            for (int j = 0; j < productCount; j++) {
-                int sellerId = 1 + ((i + j) % 5);
-                int productId = 1 + ((i * j) % 3);
-                int quantity = 1 + (i % 4);
-                
-                order.addItem("P" + productId, quantity, "seller" + sellerId);
-            }
-            
-            defaultOrders.add(order);
+        for (OrderItem item : orderData.items) {
+            order.addItem(item.productId, item.quantity, item.sellerId);
         }
         
-        return defaultOrders;
+        return order;
     }
     
     public void start() {
@@ -101,57 +193,162 @@ public class OrderProcessor {
             // Start message broker
             messageBroker.start();
             
+            if (intakeServer != null) {
+                try {
+                    intakeServer.start();
+                } catch (IOException e) {
+                    System.err.println("Could not start order intake: " + e.getMessage());
+                }
+            }
+            if (metricsServer != null) {
+                try {
+                    metricsServer.start();
+                } catch (IOException e) {
+                    System.err.println("Could not start metrics endpoint: " + e.getMessage());
+                }
+            }
+            if (adminServer != null) {
+                try {
+                    adminServer.start();
+                } catch (IOException e) {
+                    System.err.println("Could not start admin endpoint: " + e.getMessage());
+                }
+            }
+            
             // Schedule order processing
-            scheduleOrderProcessing();
+            if (loadGenerator != null) {
+                loadGenerator.start();
+            } else {
+                scheduleOrderProcessing();
+            }
         }
     }
     
     private void scheduleOrderProcessing() {
-        AtomicInteger orderIndex = new AtomicInteger(0);
+        AtomicBoolean allSubmitted = new AtomicBoolean(false);
         
-        scheduler.scheduleWithFixedDelay(() -> {
-            if (!running.get()) return;
+        replayTimer = TimerService.shared().scheduleWithFixedDelay(() -> {
+            if (!running.get() || allSubmitted.get()) return;
             
-            int index = orderIndex.getAndIncrement();
-            if (index < orders.size()) {
-                Order order = orders.get(index);
-                processOrderAsync(order);
-            } else {
-                System.out.println("All orders submitted for processing.");
+            try {
+                // Pull at most one batch per tick and stop pulling while too many orders are in flight
+                for (int i = 0; i < replayBatchSize && inFlightOrders.get() < replayMaxInFlight; i++) {
+                    if (!orderSource.hasNext()) {
+                        allSubmitted.set(true);
+                        System.out.println("All orders submitted for processing.");
+                        return;
+                    }
+                    // Replayed orders are never shed: leave them in the source until a saga slot is free
+                    if (!admissionController.admitAcceptedOrder(0)) {
+                        break;
+                    }
+                    Order order;
+                    try {
+                        order = orderSource.next();
+                    } catch (RuntimeException e) {
+                        admissionController.releaseUnusedOrderSlot();
+                        throw e;
+                    }
+                    runAdmittedOrder(order);
+                }
+            } catch (UncheckedIOException e) {
+                allSubmitted.set(true);
+                System.err.println("Error reading order file, stopping replay: " + e.getMessage());
+            } catch (RuntimeException e) {
+                Log.warn("Skipping malformed order: {}", e.getMessage());
             }
-        }, 1000, orderDelayMs, TimeUnit.MILLISECONDS);
+        }, 1000, Math.max(1, orderDelayMs), TimeUnit.MILLISECONDS, ForkJoinPool.commonPool());
     }
     
-    private void processOrderAsync(Order order) {
-        CompletableFuture.supplyAsync(() -> {
-            System.out.println("\n=== Submitting Order " + order.getOrderId() + " for processing ===");
-            order.setStatus(OrderStatus.CREATED);
-            
-            try {
-                return sagaOrchestrator.processOrder(order);
-            } catch (Exception e) {
-                System.err.println("Error processing order " + order.getOrderId() + ": " + e.getMessage());
-                order.setStatus(OrderStatus.FAILED);
-                return order;
+    /**
+     * Admits an order and runs its saga on the order pool. Package-private for the in-JVM harness.
+     * @param order The order to process
+     * @return Completes with the processed order, also when it was rejected or failed
+     */
+    CompletableFuture<Order> processOrderAsync(Order order) {
+        // Shed load at the door instead of queueing behind saturated sagas
+        if (!admissionController.tryAdmitOrder()) {
+            order.setStatus(OrderStatus.REJECTED);
+            if (Log.isInfoEnabled()) {
+                Log.info("Order {} rejected: marketplace saturated ({}/{} sagas active)", order.getOrderId(),
+                         admissionController.getActiveSagaCount(), admissionController.getSagaLimit());
             }
-        }, orderExecutor).thenAccept(processedOrder -> {
-            System.out.println("Order " + processedOrder.getOrderId() + 
-                             " completed with status: " + processedOrder.getStatus());
-        });
+            return CompletableFuture.completedFuture(order);
+        }
+        return runAdmittedOrder(order);
+    }
+    
+    /**
+     * Runs the saga of an order that already holds a saga slot from the admission controller.
+     * @param order The order to process
+     * @return Completes with the processed order, also when it failed
+     */
+    CompletableFuture<Order> runAdmittedOrder(Order order) {
+        inFlightOrders.incrementAndGet();
+        long admittedAt = System.nanoTime();
+        CompletableFuture<Order> result;
+        try {
+            result = CompletableFuture.supplyAsync(() -> {
+                long queuedNanos = System.nanoTime() - admittedAt;
+                Log.debug("Submitting order {} for processing", order.getOrderId());
+                order.setStatus(OrderStatus.CREATED);
+                
+                Throwable failure = null;
+                try {
+                    return sagaOrchestrator.processOrder(order);
+                } catch (Exception e) {
+                    failure = e;
+                    Log.warn("Error processing order {}: {}", order.getOrderId(), e.getMessage());
+                    order.setStatus(OrderStatus.FAILED);
+                    return order;
+                } finally {
+                    admissionController.onOrderCompleted(queuedNanos, failure);
+                }
+            }, orderExecutor);
+        } catch (RejectedExecutionException e) {
+            admissionController.onOrderCompleted(System.nanoTime() - admittedAt, e);
+            inFlightOrders.decrementAndGet();
+            order.setStatus(OrderStatus.REJECTED);
+            return CompletableFuture.completedFuture(order);
+        }
+        
+        result.whenComplete((processedOrder, exception) -> inFlightOrders.decrementAndGet());
+        result.thenAccept(processedOrder -> 
+            Log.info("Order {} completed with status: {}", processedOrder.getOrderId(), processedOrder.getStatus()));
+        return result;
+    }
+    
+    /**
+     * Gets the broker the sagas send through. Package-private for the in-JVM harness.
+     */
+    AsyncMessageBroker getMessageBroker() {
+        return messageBroker;
     }
     
     public void shutdown() {
         if (running.compareAndSet(true, false)) {
             System.out.println("Shutting down order processor...");
             
+            if (loadGenerator != null) {
+                loadGenerator.stop();
+            }
+            if (intakeServer != null) {
+                intakeServer.shutdown();
+            }
+            if (metricsServer != null) {
+                metricsServer.stop();
+            }
+            if (adminServer != null) {
+                adminServer.stop();
+            }
+            
             // Shutdown schedulers
-            scheduler.shutdown();
+            if (replayTimer != null) {
+                replayTimer.cancel();
+            }
             orderExecutor.shutdown();
             
             try {
-                if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
-                    scheduler.shutdownNow();
-                }
                 if (!orderExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
                     orderExecutor.shutdownNow();
                 }
@@ -162,6 +359,14 @@ public class OrderProcessor {
             // Shutdown components
             sagaOrchestrator.shutdown();
             messageBroker.shutdown();
+            
+            if (orderStream != null) {
+                try {
+                    orderStream.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing order file: " + e.getMessage());
+                }
+            }
         }
     }
 }
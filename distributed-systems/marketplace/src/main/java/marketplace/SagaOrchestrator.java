@@ -1,9 +1,13 @@
 package marketplace;
 
+import common.Clock;
+import common.FlightEvents;
+import common.Log;
 import common.Message;
+import common.MetricsRegistry;
 import common.OrderStatus;
 import common.SagaState;
-import common.RetryManager;
+import common.Tracer;
 import common.CircuitBreaker;
 
 import java.util.*;
@@ -11,33 +15,55 @@ import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class SagaOrchestrator {
+    // How long each saga phase waits for its seller responses
+    private static final long PHASE_WAIT_MS = 10000;
+    
     private final String marketplaceId;
     private final AsyncMessageBroker messageBroker;
     private final ExecutorService sagaExecutor;
     private final int sagaTimeoutSeconds;
-    private final RetryManager retryManager;
+    private final int maxCompensationAttempts;
     private final SagaStateManager stateManager;
     private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
     
     // Active sagas tracking
     private final Map<String, SagaInstance> activeSagas = new ConcurrentHashMap<>();
+    private final Set<String> staleSagasInCompensation = ConcurrentHashMap.newKeySet();
+    // Sweeps that left cancels undone, per saga; in memory only, a restart starts counting again
+    private final Map<String, Integer> compensationAttempts = new ConcurrentHashMap<>();
+    
+    // Metrics
+    private final MetricsRegistry.Histogram reservePhaseMetric;
+    private final MetricsRegistry.Histogram confirmPhaseMetric;
+    private final MetricsRegistry.Histogram compensatePhaseMetric;
+    private final MetricsRegistry.Family<MetricsRegistry.Histogram> sagaDurationMetrics;
     
     public SagaOrchestrator(String marketplaceId, AsyncMessageBroker messageBroker, Properties config) {
         this.marketplaceId = marketplaceId;
         this.messageBroker = messageBroker;
         this.sagaTimeoutSeconds = Integer.parseInt(config.getProperty("saga.timeout.seconds", "60"));
+        this.maxCompensationAttempts = Integer.parseInt(config.getProperty("saga.compensation.max.attempts", "5"));
         this.sagaExecutor = Executors.newFixedThreadPool(
             Integer.parseInt(config.getProperty("saga.processing.threads", "20"))
         );
-        this.retryManager = new RetryManager(
-            Integer.parseInt(config.getProperty("retry.max.attempts", "3")),
-            Long.parseLong(config.getProperty("retry.base.delay.ms", "1000")),
-            Double.parseDouble(config.getProperty("retry.backoff.multiplier", "2.0")),
-            Long.parseLong(config.getProperty("retry.max.delay.ms", "30000"))
-        );
         this.stateManager = new SagaStateManager(
-            config.getProperty("saga.state.directory", "./saga-states")
+            config.getProperty("saga.state.directory", "./saga-states"),
+            Long.parseLong(config.getProperty("saga.persistence.interval.ms", "10000")),
+            TimeUnit.SECONDS.toMillis(sagaTimeoutSeconds),
+            Long.parseLong(config.getProperty("saga.archive.segment.max.bytes", "67108864"))
         );
+        this.stateManager.setStaleSagaHandler(this::compensateStaleSaga);
+        
+        MetricsRegistry metrics = MetricsRegistry.shared();
+        MetricsRegistry.Family<MetricsRegistry.Histogram> phaseMetrics = metrics.histogramFamily(
+            "marketplace_saga_phase_duration_seconds", "Duration of each saga phase", "phase");
+        this.reservePhaseMetric = phaseMetrics.labels("reserve");
+        this.confirmPhaseMetric = phaseMetrics.labels("confirm");
+        this.compensatePhaseMetric = phaseMetrics.labels("compensate");
+        this.sagaDurationMetrics = metrics.histogramFamily(
+            "marketplace_saga_duration_seconds", "End-to-end saga duration by outcome", "outcome");
+        metrics.gaugeFamily("marketplace_sagas_active", "Sagas currently executing", "marketplace")
+               .labels(marketplaceId).setSupplier(() -> activeSagas.size());
         
         // Recover any incomplete sagas on startup
         recoverIncompleteSagas();
@@ -51,7 +77,7 @@ public class SagaOrchestrator {
             try {
                 SagaStateManager.SagaSnapshot snapshot = stateManager.getSagaState(sagaId);
                 if (snapshot != null && !isTerminalState(snapshot.getCurrentState())) {
-                    // TODO: Implement saga recovery logic
+                    // Picked up by the state manager's stale saga sweep once it exceeds the saga timeout
                     System.out.println("Found incomplete saga to recover: " + sagaId + " in state " + snapshot.getCurrentState());
                 }
             } catch (Exception e) {
@@ -61,39 +87,48 @@ public class SagaOrchestrator {
     }
     
     private boolean isTerminalState(SagaState state) {
-        return state == SagaState.COMPLETED || state == SagaState.FAILED || state == SagaState.COMPENSATION_COMPLETED;
+        return state != null && state.isTerminal();
     }
     
     public Order processOrder(Order order) throws Exception {
         String sagaId = UUID.randomUUID().toString();
-        SagaInstance saga = new SagaInstance(sagaId, order);
+        SagaInstance saga = new SagaInstance(sagaId, order, 
+            Clock.shared().millis() + TimeUnit.SECONDS.toMillis(sagaTimeoutSeconds));
         activeSagas.put(sagaId, saga);
+        Tracer.Span span = Tracer.shared().startTrace("saga")
+            .tag("orderId", order.getOrderId()).tag("sagaId", sagaId);
         
         // Save initial saga state
+        long persistStartNanos = System.nanoTime();
         stateManager.saveSagaState(sagaId, createSnapshot(saga));
+        long startNanos = System.nanoTime();
+        span.recordChild("saga.persist", persistStartNanos, startNanos);
         
         try {
-            Order result = executeSaga(saga).get(sagaTimeoutSeconds, TimeUnit.SECONDS);
-            
-            // Clean up completed saga state
-            if (result.getStatus() == OrderStatus.COMPLETED) {
-                stateManager.removeSagaState(sagaId);
-            }
-            
-            return result;
+            return executeSaga(saga, span).get(sagaTimeoutSeconds, TimeUnit.SECONDS);
         } catch (TimeoutException e) {
-            System.err.println("SAGA timeout for order " + order.getOrderId());
-            compensateSaga(saga);
+            Log.warn("SAGA timeout for order {}", order.getOrderId());
+            span.tag("error", "saga timeout");
+            compensateSaga(saga, span);
             order.setStatus(OrderStatus.FAILED);
             throw new RuntimeException("SAGA execution timeout", e);
         } finally {
+            // Terminal sagas leave the hot store; anything else is left for the stale saga sweep
+            if (isTerminalState(saga.getState())) {
+                stateManager.archiveSagaState(sagaId, createSnapshot(saga));
+            }
             activeSagas.remove(sagaId);
+            sagaDurationMetrics.labels(saga.getState() == SagaState.COMPLETED ? "completed" : "failed")
+                               .recordNanos(System.nanoTime() - startNanos);
+            span.tag("outcome", String.valueOf(saga.getState())).end();
         }
     }
     
-    private CompletableFuture<Order> executeSaga(SagaInstance saga) {
+    private CompletableFuture<Order> executeSaga(SagaInstance saga, Tracer.Span span) {
+        long submittedNanos = System.nanoTime();
         return CompletableFuture.supplyAsync(() -> {
             Order order = saga.getOrder();
+            span.recordChild("saga.queue", submittedNanos, System.nanoTime());
             
             try {
                 // Phase 1: Reserve all products
@@ -103,6 +138,9 @@ public class SagaOrchestrator {
                 order.setStatus(OrderStatus.RESERVING_PRODUCTS);
                 
                 Map<String, CompletableFuture<ReservationResult>> reservationFutures = new HashMap<>();
+                long reserveStartNanos = System.nanoTime();
+                long reserveDeadline = saga.phaseDeadline(PHASE_WAIT_MS);
+                Tracer.Span reserveSpan = span.startChild("saga.reserve", reserveStartNanos);
                 
                 // Send all reservation requests in parallel
                 for (Order.OrderItem item : order.getItems()) {
@@ -111,7 +149,9 @@ public class SagaOrchestrator {
                         item.getSellerId(), 
                         item.getProductId(), 
                         item.getQuantity(),
-                        correlationId
+                        correlationId,
+                        reserveDeadline,
+                        reserveSpan
                     );
                     reservationFutures.put(item.getProductId() + "@" + item.getSellerId(), future);
                 }
@@ -122,13 +162,12 @@ public class SagaOrchestrator {
                 
                 for (Map.Entry<String, CompletableFuture<ReservationResult>> entry : reservationFutures.entrySet()) {
                     try {
-                        ReservationResult result = entry.getValue().get(10, TimeUnit.SECONDS);
+                        ReservationResult result = entry.getValue().get(PHASE_WAIT_MS, TimeUnit.MILLISECONDS);
                         reservations.put(entry.getKey(), result);
                         
                         if (!result.isSuccess()) {
                             allSuccessful = false;
-                            System.out.println("Reservation failed for " + entry.getKey() + 
-                                             ": " + result.getErrorMessage());
+                            Log.info("Reservation failed for {}: {}", entry.getKey(), result.getErrorMessage());
                         } else {
                             saga.addCompensationAction(new CancelReservationAction(
                                 result.getSellerId(), 
@@ -137,10 +176,18 @@ public class SagaOrchestrator {
                         }
                     } catch (Exception e) {
                         allSuccessful = false;
-                        System.err.println("Error reserving " + entry.getKey() + ": " + e.getMessage());
+                        Log.warn("Error reserving {}: {}", entry.getKey(), e.getMessage());
                     }
                 }
                 
+                reservePhaseMetric.recordNanos(System.nanoTime() - reserveStartNanos);
+                reserveSpan.end();
+                
+                // Persist the compensation actions so a crash after this point can still be undone
+                long persistStartNanos = System.nanoTime();
+                stateManager.saveSagaState(saga.getSagaId(), createSnapshot(saga));
+                span.recordChild("saga.persist", persistStartNanos, System.nanoTime());
+                
                 if (!allSuccessful) {
                     throw new RuntimeException("Not all products could be reserved");
                 }
@@ -158,12 +205,17 @@ public class SagaOrchestrator {
                 
                 // Confirm all reservations in parallel
                 List<CompletableFuture<Boolean>> confirmationFutures = new ArrayList<>();
+                long confirmStartNanos = System.nanoTime();
+                long confirmDeadline = saga.phaseDeadline(PHASE_WAIT_MS);
+                Tracer.Span confirmSpan = span.startChild("saga.confirm", confirmStartNanos);
                 
                 for (ReservationResult reservation : reservations.values()) {
                     if (reservation.isSuccess()) {
                         CompletableFuture<Boolean> confirmFuture = confirmReservation(
                             reservation.getSellerId(),
-                            reservation.getReservationId()
+                            reservation.getReservationId(),
+                            confirmDeadline,
+                            confirmSpan
                         );
                         confirmationFutures.add(confirmFuture);
                     }
@@ -174,7 +226,12 @@ public class SagaOrchestrator {
                     confirmationFutures.toArray(new CompletableFuture[0])
                 );
                 
-                allConfirmations.get(10, TimeUnit.SECONDS);
+                try {
+                    allConfirmations.get(PHASE_WAIT_MS, TimeUnit.MILLISECONDS);
+                } finally {
+                    confirmPhaseMetric.recordNanos(System.nanoTime() - confirmStartNanos);
+                    confirmSpan.end();
+                }
                 
                 // Check if all confirmations succeeded
                 boolean allConfirmed = confirmationFutures.stream()
@@ -194,41 +251,117 @@ public class SagaOrchestrator {
                 return order;
                 
             } catch (Exception e) {
-                System.err.println("SAGA failed for order " + order.getOrderId() + ": " + e.getMessage());
-                compensateSaga(saga);
+                Log.warn("SAGA failed for order {}: {}", order.getOrderId(), e.getMessage());
+                span.error(e);
+                compensateSaga(saga, span);
                 order.setStatus(OrderStatus.FAILED);
                 throw new RuntimeException("SAGA execution failed", e);
             }
         }, sagaExecutor);
     }
     
-    private void compensateSaga(SagaInstance saga) {
+    private void compensateSaga(SagaInstance saga, Tracer.Span sagaSpan) {
         if (!saga.transitionTo(SagaState.COMPENSATING)) {
-            System.err.println("Cannot start compensation for SAGA " + saga.getSagaId());
+            Log.error("Cannot start compensation for SAGA {}", saga.getSagaId());
             return;
         }
         
         saga.getOrder().setStatus(OrderStatus.COMPENSATING);
+        long startNanos = System.nanoTime();
+        Tracer.Span span = sagaSpan.startChild("saga.compensate", startNanos);
         
-        List<CompensationAction> actions = saga.getCompensationActions();
-        Collections.reverse(actions); // Execute in reverse order
-        
-        for (CompensationAction action : actions) {
+        List<CompensationAction> unreleased = runCompensations(saga.getCompensationActions(), span);
+        if (unreleased.isEmpty()) {
+            saga.transitionTo(SagaState.COMPENSATION_COMPLETED);
+            saga.getOrder().setStatus(OrderStatus.CANCELLED);
+        } else {
+            // Stays COMPENSATING and hot, so the stale saga sweep retries the cancels that failed
+            saga.retainCompensationActions(unreleased);
+            stateManager.saveSagaState(saga.getSagaId(), createSnapshot(saga));
+        }
+        compensatePhaseMetric.recordNanos(System.nanoTime() - startNanos);
+        span.end();
+    }
+    
+    /**
+     * Runs compensation actions in reverse order.
+     * @param actions Actions in the order they were recorded
+     * @param span Span to record the cancel requests under
+     * @return The actions that did not succeed, in recorded order
+     */
+    private List<CompensationAction> runCompensations(List<CompensationAction> actions, Tracer.Span span) {
+        List<CompensationAction> unreleased = new ArrayList<>();
+        for (int i = actions.size() - 1; i >= 0; i--) {
+            CompensationAction action = actions.get(i);
+            boolean released = false;
             try {
-                action.execute(messageBroker).get(5, TimeUnit.SECONDS);
-                System.out.println("Compensation executed: " + action.getDescription());
+                released = action.execute(messageBroker, span).get(5, TimeUnit.SECONDS);
             } catch (Exception e) {
-                System.err.println("Compensation failed: " + action.getDescription() + 
-                                 " - " + e.getMessage());
+                Log.error("Compensation failed: {} - {}", action.getDescription(), e.getMessage());
+            }
+            if (released) {
+                Log.debug("Compensation executed: {}", action.getDescription());
+            } else {
+                unreleased.add(0, action);
             }
         }
+        return unreleased;
+    }
+    
+    /**
+     * Compensates a saga that the state manager found stuck in a non-terminal state,
+     * e.g. one recovered after a restart or one whose executor never finished it.
+     * @param snapshot The stale saga snapshot
+     */
+    private void compensateStaleSaga(SagaStateManager.SagaSnapshot snapshot) {
+        String sagaId = snapshot.getSagaId();
+        if (activeSagas.containsKey(sagaId) || !staleSagasInCompensation.add(sagaId)) {
+            return; // Still owned by a running saga or already being compensated
+        }
         
-        saga.transitionTo(SagaState.COMPENSATION_COMPLETED);
-        saga.getOrder().setStatus(OrderStatus.CANCELLED);
+        // Refresh the hot copy so the sweep does not hand it over again while we work
+        stateManager.saveSagaState(sagaId, snapshot.withState(SagaState.COMPENSATING));
+        
+        try {
+            sagaExecutor.execute(() -> compensateFromSnapshot(snapshot));
+        } catch (RejectedExecutionException e) {
+            staleSagasInCompensation.remove(sagaId);
+        }
+    }
+    
+    private void compensateFromSnapshot(SagaStateManager.SagaSnapshot snapshot) {
+        String sagaId = snapshot.getSagaId();
+        Tracer.Span span = Tracer.shared().startTrace("saga.compensate.stale")
+            .tag("orderId", snapshot.getOrderId()).tag("sagaId", sagaId);
+        try {
+            List<CompensationAction> actions = new ArrayList<>();
+            for (SagaStateManager.CompensationActionSnapshot action : snapshot.getCompensationActions()) {
+                actions.add(new CancelReservationAction(action.getSellerId(), action.getReservationId()));
+            }
+            List<CompensationAction> unreleased = runCompensations(actions, span);
+            
+            if (unreleased.isEmpty()) {
+                compensationAttempts.remove(sagaId);
+                stateManager.archiveSagaState(sagaId, snapshot.withState(SagaState.COMPENSATION_COMPLETED));
+            } else if (compensationAttempts.merge(sagaId, 1, Integer::sum) >= maxCompensationAttempts) {
+                // Give up; the sellers release what is left when the reservations expire
+                compensationAttempts.remove(sagaId);
+                Log.error("Giving up compensation of saga {} after {} attempts, {} reservation(s) left to expire",
+                          sagaId, maxCompensationAttempts, unreleased.size());
+                stateManager.archiveSagaState(sagaId, snapshot.withState(SagaState.FAILED));
+            } else {
+                // Keep only the cancels still owed; the next sweep picks the saga up again
+                stateManager.saveSagaState(sagaId, snapshot.withCompensationActions(snapshotsOf(unreleased)));
+            }
+        } finally {
+            staleSagasInCompensation.remove(sagaId);
+            span.end();
+        }
     }
     
     private CompletableFuture<ReservationResult> reserveProduct(String sellerId, String productId, 
-                                                               int quantity, String correlationId) {
+                                                               int quantity, String correlationId,
+                                                               long deadlineMillis, Tracer.Span span) {
         Message request = new Message();
         request.setType("RESERVE");
         request.setData(Map.of(
@@ -237,40 +370,41 @@ public class SagaOrchestrator {
         ));
         request.setCorrelationId(correlationId);
         request.setSenderId(marketplaceId);
+        span.inject(request);
         
         return messageBroker.sendAsyncRequestWithRetry(sellerId, request, 
-                "Reserve " + quantity + "x " + productId + " from " + sellerId)
+                "Reserve " + quantity + "x " + productId + " from " + sellerId, deadlineMillis)
             .thenApply(response -> {
-                if (response != null && "SUCCESS".equals(response.getType())) {
+                if (response != null && response.isSuccess()) {
                     return new ReservationResult(
                         true,
                         sellerId,
-                        response.getData().get("reservationId"),
+                        response.getReservationId(),
                         null
                     );
                 } else {
-                    String error = response != null ? 
-                        response.getData().getOrDefault("error", "Unknown error") : 
-                        "No response";
+                    String error = response == null ? "No response" :
+                        response.getReason() != null ? response.getReason() : "Unknown error";
                     return new ReservationResult(false, sellerId, null, error);
                 }
             });
     }
     
-    private CompletableFuture<Boolean> confirmReservation(String sellerId, String reservationId) {
+    private CompletableFuture<Boolean> confirmReservation(String sellerId, String reservationId, long deadlineMillis,
+                                                          Tracer.Span span) {
         Message request = new Message();
         request.setType("CONFIRM");
         request.setData(Map.of("reservationId", reservationId));
         request.setSenderId(marketplaceId);
+        span.inject(request);
         
         return messageBroker.sendAsyncRequestWithRetry(sellerId, request, 
-                "Confirm reservation " + reservationId + " from " + sellerId)
-            .thenApply(response -> response != null && "SUCCESS".equals(response.getType()));
+                "Confirm reservation " + reservationId + " from " + sellerId, deadlineMillis)
+            .thenApply(response -> response != null && response.isSuccess());
     }
     
     public void shutdown() {
         sagaExecutor.shutdown();
-        retryManager.shutdown();
         stateManager.shutdown();
         
         try {
@@ -285,9 +419,20 @@ public class SagaOrchestrator {
     }
     
     private SagaStateManager.SagaSnapshot createSnapshot(SagaInstance saga) {
+        return new SagaStateManager.SagaSnapshot(
+            saga.getSagaId(),
+            saga.getOrder().getOrderId(),
+            saga.getState(),
+            snapshotsOf(saga.getCompensationActions()),
+            saga.getReservationIds(),
+            saga.getOrder().getCreatedAt(),
+            Clock.shared().millis()
+        );
+    }
+    
+    private static List<SagaStateManager.CompensationActionSnapshot> snapshotsOf(List<CompensationAction> actions) {
         List<SagaStateManager.CompensationActionSnapshot> actionSnapshots = new ArrayList<>();
-        
-        for (CompensationAction action : saga.getCompensationActions()) {
+        for (CompensationAction action : actions) {
             if (action instanceof CancelReservationAction) {
                 CancelReservationAction cancelAction = (CancelReservationAction) action;
                 actionSnapshots.add(new SagaStateManager.CompensationActionSnapshot(
@@ -297,14 +442,7 @@ public class SagaOrchestrator {
                 ));
             }
         }
-        
-        return new SagaStateManager.SagaSnapshot(
-            saga.getSagaId(),
-            saga.getOrder().getOrderId(),
-            saga.getState(),
-            actionSnapshots,
-            saga.getReservationIds()
-        );
+        return actionSnapshots;
     }
     
     public int getActiveSagaCount() {
@@ -322,26 +460,54 @@ public class SagaOrchestrator {
         private final String sagaId;
         private final Order order;
         private final AtomicReference<SagaState> state = new AtomicReference<>(SagaState.STARTED);
+        private volatile long stateEnteredNanos = System.nanoTime();
         private final List<CompensationAction> compensationActions = new CopyOnWriteArrayList<>();
         private final Map<String, String> reservationIds = new ConcurrentHashMap<>();
+        private final long deadlineMillis;
         
-        public SagaInstance(String sagaId, Order order) {
+        public SagaInstance(String sagaId, Order order, long deadlineMillis) {
             this.sagaId = sagaId;
             this.order = order;
+            this.deadlineMillis = deadlineMillis;
+        }
+        
+        /**
+         * Gets the time by which a phase starting now must finish: its own wait limit,
+         * but never later than the saga deadline.
+         */
+        public long phaseDeadline(long phaseWaitMs) {
+            return Math.min(deadlineMillis, Clock.shared().millis() + phaseWaitMs);
         }
         
         public boolean transitionTo(SagaState newState) {
             SagaState currentState = state.get();
-            if (currentState.canTransitionTo(newState)) {
-                return state.compareAndSet(currentState, newState);
+            boolean accepted = currentState.canTransitionTo(newState) && state.compareAndSet(currentState, newState);
+            
+            long now = System.nanoTime();
+            FlightEvents.SagaTransition event = new FlightEvents.SagaTransition();
+            if (event.isEnabled()) {
+                event.sagaId = sagaId;
+                event.orderId = order.getOrderId();
+                event.fromState = currentState.name();
+                event.toState = newState.name();
+                event.accepted = accepted;
+                event.timeInPreviousState = now - stateEnteredNanos;
+                event.commit();
             }
-            return false;
+            if (accepted) {
+                stateEnteredNanos = now;
+            }
+            return accepted;
         }
         
         public void addCompensationAction(CompensationAction action) {
             compensationActions.add(action);
         }
         
+        public void retainCompensationActions(List<CompensationAction> remaining) {
+            compensationActions.retainAll(remaining);
+        }
+        
         public void addReservation(String sellerId, String reservationId) {
             reservationIds.put(sellerId, reservationId);
         }
@@ -358,7 +524,11 @@ public class SagaOrchestrator {
     }
     
     private interface CompensationAction {
-        CompletableFuture<Void> execute(AsyncMessageBroker broker);
+        /**
+         * Runs the action.
+         * @return Completes with true once the seller confirmed it, false if it refused
+         */
+        CompletableFuture<Boolean> execute(AsyncMessageBroker broker, Tracer.Span span);
         String getDescription();
     }
     
@@ -372,20 +542,22 @@ public class SagaOrchestrator {
         }
         
         @Override
-        public CompletableFuture<Void> execute(AsyncMessageBroker broker) {
+        public CompletableFuture<Boolean> execute(AsyncMessageBroker broker, Tracer.Span span) {
             Message request = new Message();
             request.setType("CANCEL");
             request.setData(Map.of("reservationId", reservationId));
             request.setSenderId(marketplaceId);
+            span.inject(request);
             
             return broker.sendAsyncRequestWithRetry(sellerId, request, 
                     "Cancel reservation " + reservationId + " from " + sellerId)
-                .thenAccept(response -> {
-                    if (response == null || !"SUCCESS".equals(response.getType())) {
-                        System.err.println("Failed to cancel reservation " + reservationId);
-                    } else {
-                        System.out.println("Successfully cancelled reservation " + reservationId);
+                .thenApply(response -> {
+                    if (response == null || !response.isSuccess()) {
+                        Log.warn("Failed to cancel reservation {}", reservationId);
+                        return false;
                     }
+                    Log.debug("Successfully cancelled reservation {}", reservationId);
+                    return true;
                 });
         }
         
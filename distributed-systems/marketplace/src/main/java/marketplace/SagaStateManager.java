@@ -1,32 +1,62 @@
 package marketplace;
 
+import common.Clock;
 import common.JsonParser;
-
+import common.Log;
+import common.MetricsRegistry;
 import common.SagaState;
+import common.TimerService;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Manages saga state persistence and recovery for distributed transactions.
  * Ensures saga durability across system failures and restarts.
+ * 
+ * Only in-flight sagas are kept in the hot store. Terminal sagas are moved to
+ * gzip-compressed, append-only archive segments, and sagas that stay in a
+ * non-terminal state longer than the stale timeout are handed to a compensation
+ * handler, so the periodic flush only ever covers the live working set.
  */
 public class SagaStateManager {
+    private static final long DEFAULT_STALE_SAGA_TIMEOUT_MS = 60000;
+    private static final long DEFAULT_ARCHIVE_SEGMENT_MAX_BYTES = 64L * 1024 * 1024;
+    
     private final Map<String, SagaSnapshot> sagaSnapshots = new ConcurrentHashMap<>();
-    private final ScheduledExecutorService persistenceExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final Queue<SagaSnapshot> pendingArchive = new ConcurrentLinkedQueue<>();
+    // File I/O runs on its own worker; the shared timer only triggers it
+    private final ExecutorService persistenceExecutor = Executors.newSingleThreadExecutor();
+    private TimerService.Timeout maintenanceTimer;
     private final String stateDirectory;
+    private final File archiveDirectory;
 
     private final long persistenceIntervalMs;
+    private final long staleSagaTimeoutMs;
+    private final long archiveSegmentMaxBytes;
+    private final AtomicLong archivedSagaCount = new AtomicLong(0);
+    private volatile Consumer<SagaSnapshot> staleSagaHandler;
+    private File currentSegment;
+    
+    private final MetricsRegistry.Histogram statePersistMetric;
+    private final MetricsRegistry.Histogram archiveFlushMetric;
     
     /**
      * Creates a saga state manager with default settings.
@@ -42,28 +72,53 @@ public class SagaStateManager {
      * @param persistenceIntervalMs Interval for periodic persistence in milliseconds
      */
     public SagaStateManager(String stateDirectory, long persistenceIntervalMs) {
+        this(stateDirectory, persistenceIntervalMs, DEFAULT_STALE_SAGA_TIMEOUT_MS, DEFAULT_ARCHIVE_SEGMENT_MAX_BYTES);
+    }
+    
+    /**
+     * Creates a saga state manager with custom persistence and retention settings.
+     * @param stateDirectory Directory to store saga state files
+     * @param persistenceIntervalMs Interval for periodic persistence in milliseconds
+     * @param staleSagaTimeoutMs Age after which a non-terminal saga is considered stuck
+     * @param archiveSegmentMaxBytes Size at which the current archive segment is rolled over
+     */
+    public SagaStateManager(String stateDirectory, long persistenceIntervalMs,
+                            long staleSagaTimeoutMs, long archiveSegmentMaxBytes) {
         this.stateDirectory = stateDirectory;
         this.persistenceIntervalMs = persistenceIntervalMs;
-
+        this.staleSagaTimeoutMs = staleSagaTimeoutMs;
+        this.archiveSegmentMaxBytes = archiveSegmentMaxBytes;
+        this.archiveDirectory = new File(stateDirectory, "archive");
         
-        // Create state directory if it doesn't exist
+        MetricsRegistry.Family<MetricsRegistry.Histogram> persistMetrics = MetricsRegistry.shared().histogramFamily(
+            "marketplace_saga_persist_duration_seconds", "Time to write saga state to disk", "operation");
+        this.statePersistMetric = persistMetrics.labels("state");
+        this.archiveFlushMetric = persistMetrics.labels("archive");
+        MetricsRegistry.shared().gauge("marketplace_saga_states_hot",
+            "Sagas held in the hot state store", () -> sagaSnapshots.size());
+        
+        // Create state and archive directories if they don't exist
         File dir = new File(stateDirectory);
         if (!dir.exists()) {
             dir.mkdirs();
         }
+        if (!archiveDirectory.exists()) {
+            archiveDirectory.mkdirs();
+        }
         
         // Recover existing saga states
         recoverSagaStates();
         
-        // Start periodic persistence
-        persistenceExecutor.scheduleAtFixedRate(
-            this::persistAllStates, 
+        // Start periodic archiving, stale saga sweeping and persistence
+        maintenanceTimer = TimerService.shared().scheduleWithFixedDelay(
+            this::runMaintenance, 
             persistenceIntervalMs, 
             persistenceIntervalMs, 
-            TimeUnit.MILLISECONDS
+            TimeUnit.MILLISECONDS,
+            persistenceExecutor
         );
         
-        System.out.println("SagaStateManager initialized with " + sagaSnapshots.size() + " recovered sagas");
+        Log.info("SagaStateManager initialized with {} recovered sagas", sagaSnapshots.size());
     }
     
     /**
@@ -98,6 +153,34 @@ public class SagaStateManager {
         }
     }
     
+    /**
+     * Moves a saga out of the hot store into the compressed archive.
+     * The state file is deleted once the archive segment has been written.
+     * @param sagaId The saga identifier
+     * @param finalSnapshot The final saga state snapshot
+     */
+    public void archiveSagaState(String sagaId, SagaSnapshot finalSnapshot) {
+        sagaSnapshots.remove(sagaId);
+        pendingArchive.add(finalSnapshot);
+    }
+    
+    /**
+     * Registers the handler that receives sagas stuck in a non-terminal state
+     * for longer than the stale saga timeout.
+     * @param handler Handler that compensates and archives the stale saga
+     */
+    public void setStaleSagaHandler(Consumer<SagaSnapshot> handler) {
+        this.staleSagaHandler = handler;
+    }
+    
+    /**
+     * Gets the number of sagas archived since startup.
+     * @return Number of archived sagas
+     */
+    public long getArchivedSagaCount() {
+        return archivedSagaCount.get();
+    }
+    
     /**
      * Gets all active saga IDs.
      * @return List of active saga IDs
@@ -121,13 +204,100 @@ public class SagaStateManager {
      */
     private void persistSagaState(String sagaId, SagaSnapshot snapshot) {
         try {
+            long startNanos = System.nanoTime();
             String data = serializeSnapshot(snapshot);
             Files.write(Paths.get(stateDirectory + "/" + sagaId + ".state"), 
                        data.getBytes(StandardCharsets.UTF_8));
-            System.out.println("Persisted saga state: " + sagaId);
+            statePersistMetric.recordNanos(System.nanoTime() - startNanos);
+            Log.debug("Persisted saga state: {}", sagaId);
+        } catch (IOException e) {
+            Log.error("Failed to persist saga state {}: {}", sagaId, e.getMessage());
+        }
+    }
+    
+    /**
+     * Periodic maintenance: archives terminal sagas, hands stale sagas to the
+     * compensation handler and re-persists the remaining hot set.
+     */
+    private void runMaintenance() {
+        try {
+            sweepSagas();
+            flushArchive();
+            persistAllStates();
+        } catch (Exception e) {
+            Log.error("Error during saga state maintenance: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Applies the retention policy to the hot store.
+     * Terminal sagas (e.g. recovered from disk) are archived, stuck sagas are handed off.
+     */
+    private void sweepSagas() {
+        Consumer<SagaSnapshot> handler = staleSagaHandler;
+        for (Map.Entry<String, SagaSnapshot> entry : sagaSnapshots.entrySet()) {
+            SagaSnapshot snapshot = entry.getValue();
+            if (snapshot.getCurrentState() != null && snapshot.getCurrentState().isTerminal()) {
+                archiveSagaState(entry.getKey(), snapshot);
+            } else if (handler != null && snapshot.isExpired(staleSagaTimeoutMs)) {
+                Log.warn("Saga {} stuck in state {}, handing over to compensation", 
+                         entry.getKey(), snapshot.getCurrentState());
+                try {
+                    handler.accept(snapshot);
+                } catch (Exception e) {
+                    Log.error("Stale saga handler failed for {}: {}", entry.getKey(), e.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Writes all pending archive records as one gzip member appended to the current segment.
+     * Concatenated gzip members form a valid gzip stream, so segments stay append-only.
+     */
+    private synchronized void flushArchive() {
+        if (pendingArchive.isEmpty()) {
+            return;
+        }
+        
+        List<SagaSnapshot> batch = new ArrayList<>();
+        SagaSnapshot snapshot;
+        while ((snapshot = pendingArchive.poll()) != null) {
+            batch.add(snapshot);
+        }
+        
+        File segment = currentArchiveSegment();
+        long startNanos = System.nanoTime();
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(segment, true), 64 * 1024)) {
+            for (SagaSnapshot archived : batch) {
+                out.write(serializeSnapshot(archived).getBytes(StandardCharsets.UTF_8));
+                out.write('\n');
+            }
         } catch (IOException e) {
-            System.err.println("Failed to persist saga state " + sagaId + ": " + e.getMessage());
+            Log.error("Failed to write archive segment {}: {}", segment.getName(), e.getMessage());
+            // Keep the records for the next flush; their state files are still on disk
+            pendingArchive.addAll(batch);
+            return;
+        }
+        archiveFlushMetric.recordNanos(System.nanoTime() - startNanos);
+        
+        for (SagaSnapshot archived : batch) {
+            if (!sagaSnapshots.containsKey(archived.getSagaId())) {
+                new File(stateDirectory + "/" + archived.getSagaId() + ".state").delete();
+            }
         }
+        archivedSagaCount.addAndGet(batch.size());
+        Log.info("Archived {} sagas to {}", batch.size(), segment.getName());
+    }
+    
+    /**
+     * Returns the segment to append to, rolling over to a new one when it grows too large.
+     */
+    private File currentArchiveSegment() {
+        if (currentSegment == null || currentSegment.length() >= archiveSegmentMaxBytes) {
+            currentSegment = new File(archiveDirectory, "segment-" + System.currentTimeMillis() + ".gz");
+        }
+        return currentSegment;
     }
     
     /**
@@ -140,11 +310,11 @@ public class SagaStateManager {
                 persistSagaState(entry.getKey(), entry.getValue());
                 persistedCount++;
             } catch (Exception e) {
-                System.err.println("Error persisting saga " + entry.getKey() + ": " + e.getMessage());
+                Log.error("Error persisting saga {}: {}", entry.getKey(), e.getMessage());
             }
         }
         if (persistedCount > 0) {
-            System.out.println("Persisted " + persistedCount + " saga states");
+            Log.debug("Persisted {} saga states", persistedCount);
         }
     }
     
@@ -162,9 +332,9 @@ public class SagaStateManager {
                     SagaSnapshot snapshot = deserializeSnapshot(data);
                     String sagaId = file.getName().replace(".state", "");
                     sagaSnapshots.put(sagaId, snapshot);
-                    System.out.println("Recovered saga state: " + sagaId + " in state " + snapshot.getCurrentState());
+                    Log.info("Recovered saga state: {} in state {}", sagaId, snapshot.getCurrentState());
                 } catch (IOException e) {
-                    System.err.println("Failed to recover saga state from " + file.getName() + ": " + e.getMessage());
+                    Log.warn("Failed to recover saga state from {}: {}", file.getName(), e.getMessage());
                 }
             }
         }
@@ -174,25 +344,27 @@ public class SagaStateManager {
      * Shuts down the saga state manager.
      */
     public void shutdown() {
+        maintenanceTimer.cancel();
         persistenceExecutor.shutdown();
         try {
-            // Final persistence before shutdown
-            persistAllStates();
-            
             if (!persistenceExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
                 persistenceExecutor.shutdownNow();
             }
+            
+            // Final archive flush and persistence before shutdown
+            flushArchive();
+            persistAllStates();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
         
-        System.out.println("SagaStateManager shut down");
+        Log.info("SagaStateManager shut down");
     }
     
     /**
-     * Serializes a SagaSnapshot to a simple text format.
+     * Serializes a SagaSnapshot to a simple text format. Package-private for the benchmarks.
      */
-    private String serializeSnapshot(SagaSnapshot snapshot) {
+    static String serializeSnapshot(SagaSnapshot snapshot) {
         if (snapshot == null) {
             return "";
         }
@@ -227,9 +399,9 @@ public class SagaStateManager {
     }
     
     /**
-     * Deserializes a SagaSnapshot from text format.
+     * Deserializes a SagaSnapshot from text format. Package-private for the benchmarks.
      */
-    private SagaSnapshot deserializeSnapshot(String data) {
+    static SagaSnapshot deserializeSnapshot(String data) {
         if (data == null || data.trim().isEmpty()) {
             return null;
         }
@@ -354,7 +526,11 @@ public class SagaStateManager {
             }
         }
         
-        return new SagaSnapshot(sagaId, orderId, currentState, compensationActions, reservationIds);
+        if (createdAt == 0 || lastUpdated == 0) {
+            return new SagaSnapshot(sagaId, orderId, currentState, compensationActions, reservationIds);
+        }
+        return new SagaSnapshot(sagaId, orderId, currentState, compensationActions, reservationIds,
+                                createdAt, lastUpdated);
     }
     
     /**
@@ -372,13 +548,41 @@ public class SagaStateManager {
         public SagaSnapshot(String sagaId, String orderId, SagaState currentState,
                            List<CompensationActionSnapshot> compensationActions,
                            Map<String, String> reservationIds) {
+            this(sagaId, orderId, currentState, compensationActions, reservationIds,
+                 Clock.shared().millis(), Clock.shared().millis());
+        }
+        
+        public SagaSnapshot(String sagaId, String orderId, SagaState currentState,
+                           List<CompensationActionSnapshot> compensationActions,
+                           Map<String, String> reservationIds, long createdAt, long lastUpdated) {
             this.sagaId = sagaId;
             this.orderId = orderId;
             this.currentState = currentState;
             this.compensationActions = compensationActions != null ? compensationActions : new ArrayList<>();
             this.reservationIds = reservationIds != null ? reservationIds : new ConcurrentHashMap<>();
-            this.lastUpdated = System.currentTimeMillis();
-            this.createdAt = System.currentTimeMillis();
+            this.lastUpdated = lastUpdated;
+            this.createdAt = createdAt;
+        }
+        
+        /**
+         * Creates a copy of this snapshot in a new state, stamped with the current time.
+         * @param newState The new saga state
+         * @return Updated snapshot
+         */
+        public SagaSnapshot withState(SagaState newState) {
+            return new SagaSnapshot(sagaId, orderId, newState, compensationActions, reservationIds,
+                                    createdAt, Clock.shared().millis());
+        }
+        
+        /**
+         * Creates a copy of this snapshot that still owes only the given compensation actions,
+         * in state COMPENSATING and stamped with the current time.
+         * @param remaining Compensation actions not yet carried out
+         * @return Updated snapshot
+         */
+        public SagaSnapshot withCompensationActions(List<CompensationActionSnapshot> remaining) {
+            return new SagaSnapshot(sagaId, orderId, SagaState.COMPENSATING, remaining, reservationIds,
+                                    createdAt, Clock.shared().millis());
         }
         
         // Getters
@@ -391,7 +595,7 @@ public class SagaStateManager {
         public long getCreatedAt() { return createdAt; }
         
         public boolean isExpired(long timeoutMs) {
-            return System.currentTimeMillis() - lastUpdated > timeoutMs;
+            return Clock.shared().millis() - lastUpdated > timeoutMs;
         }
         
         @Override
@@ -414,7 +618,7 @@ public class SagaStateManager {
             this.sellerId = sellerId;
             this.reservationId = reservationId;
             this.actionType = actionType;
-            this.timestamp = System.currentTimeMillis();
+            this.timestamp = Clock.shared().millis();
         }
         
         // Getters
@@ -0,0 +1,150 @@
+package marketplace;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Bulkhead isolating the requests to one seller.
+ * At most {@code min(maxInFlight, credits)} requests are outstanding at once, where credits is
+ * the window the seller last advertised in a response or heartbeat. Further requests wait in a
+ * bounded FIFO queue and are sent as slots free up; once the queue is full, requests are
+ * rejected immediately so a slow seller cannot tie up unbounded broker state.
+ */
+public class SellerBulkhead {
+    private final String sellerId;
+    private final int queueCapacity;
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    // Written under the monitor, volatile so getStats can read them without it
+    private volatile int maxInFlight;
+    private volatile int inFlight = 0;
+    private volatile int queued = 0;
+    private volatile int credits;
+    private volatile long rejectedCount = 0;
+
+    /**
+     * Creates a bulkhead.
+     * @param sellerId The seller this bulkhead protects
+     * @param maxInFlight Upper bound on outstanding requests regardless of credits
+     * @param queueCapacity Number of requests allowed to wait for a slot
+     */
+    public SellerBulkhead(String sellerId, int maxInFlight, int queueCapacity) {
+        this.sellerId = sellerId;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.queueCapacity = queueCapacity;
+        // Until the seller advertises a window, allow the configured maximum
+        this.credits = this.maxInFlight;
+    }
+
+    /**
+     * Runs an operation when a slot is available.
+     * @param operation The request to send
+     * @return Future completing with the operation's result, or failing with
+     *         RejectedExecutionException when the wait queue is full
+     */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable task = () -> run(operation, result);
+
+        synchronized (this) {
+            if (waiting.isEmpty() && inFlight < permits()) {
+                inFlight++;
+            } else if (waiting.size() < queueCapacity) {
+                waiting.add(task);
+                queued = waiting.size();
+                return result;
+            } else {
+                rejectedCount++;
+                return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "Bulkhead full for seller " + sellerId + ": " + inFlight + " in flight, " +
+                    waiting.size() + " queued"));
+            }
+        }
+
+        task.run();
+        return result;
+    }
+
+    private <T> void run(Supplier<CompletableFuture<T>> operation, CompletableFuture<T> result) {
+        CompletableFuture<T> future;
+        try {
+            future = operation.get();
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((value, exception) -> {
+            release();
+            if (exception != null) {
+                result.completeExceptionally(exception);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    private void release() {
+        synchronized (this) {
+            inFlight--;
+        }
+        drain();
+    }
+
+    /**
+     * Updates the window advertised by the seller and releases queued requests if it grew.
+     * @param advertisedCredits Number of outstanding requests the seller can absorb
+     */
+    public void updateCredits(int advertisedCredits) {
+        synchronized (this) {
+            // Never drop to zero: a seller that advertised no room must still get probes
+            credits = Math.max(1, advertisedCredits);
+        }
+        drain();
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable next;
+            synchronized (this) {
+                if (waiting.isEmpty() || inFlight >= permits()) {
+                    return;
+                }
+                next = waiting.poll();
+                queued = waiting.size();
+                inFlight++;
+            }
+            next.run();
+        }
+    }
+
+    /**
+     * Changes the upper bound on outstanding requests, releasing queued requests if it grew.
+     * Requests already in flight above a lowered bound are not interrupted.
+     * @param maxInFlight New bound (at least 1)
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        synchronized (this) {
+            this.maxInFlight = Math.max(1, maxInFlight);
+        }
+        drain();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    private int permits() {
+        return Math.min(maxInFlight, credits);
+    }
+
+    /**
+     * Gets bulkhead statistics without taking the bulkhead's lock; the fields may come from
+     * slightly different moments.
+     * @return Statistics string
+     */
+    public String getStats() {
+        return String.format("Bulkhead[%s]: InFlight=%d, Permits=%d (credits %d, max %d), Queued=%d/%d, Rejected=%d",
+                           sellerId, inFlight, permits(), credits, maxInFlight, queued, queueCapacity, rejectedCount);
+    }
+}
@@ -0,0 +1,97 @@
+package marketplace;
+
+import common.Clock;
+import common.Log;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks which sellers are alive based on the traffic the broker receives from them.
+ * Every frame from a seller (heartbeats as well as responses) refreshes its last-seen time.
+ * A seller is considered down once it has been silent for longer than the liveness timeout,
+ * or immediately when the broker finds that it is no longer connected.
+ */
+public class SellerLivenessRegistry {
+    private final long livenessTimeoutMs;
+    private final Map<String, SellerStatus> sellers = new ConcurrentHashMap<>();
+    private final Clock clock = Clock.shared();
+
+    /**
+     * Creates a liveness registry.
+     * @param livenessTimeoutMs Silence after which a seller is considered down
+     */
+    public SellerLivenessRegistry(long livenessTimeoutMs) {
+        this.livenessTimeoutMs = livenessTimeoutMs;
+    }
+
+    /**
+     * Records that a frame was received from a seller.
+     * @param sellerId The seller identifier
+     */
+    public void recordActivity(String sellerId) {
+        SellerStatus status = sellers.computeIfAbsent(sellerId, id -> new SellerStatus());
+        status.lastSeenMs = clock.millis();
+        if (status.unreachable) {
+            status.unreachable = false;
+            Log.info("Seller {} is back online", sellerId);
+        }
+    }
+
+    /**
+     * Marks a seller as down because the broker could not route a message to it.
+     * @param sellerId The seller identifier
+     */
+    public void markUnreachable(String sellerId) {
+        SellerStatus status = sellers.computeIfAbsent(sellerId, id -> new SellerStatus());
+        if (!status.unreachable) {
+            status.unreachable = true;
+            Log.warn("Seller {} is not connected, marking as down", sellerId);
+        }
+    }
+
+    /**
+     * Checks whether a seller is known to be down. Sellers never heard of are not
+     * considered down, since they may still be starting up.
+     * @param sellerId The seller identifier
+     * @return true if requests to this seller should fail fast
+     */
+    public boolean isDown(String sellerId) {
+        SellerStatus status = sellers.get(sellerId);
+        if (status == null) {
+            return false;
+        }
+        return status.unreachable || clock.millis() - status.lastSeenMs > livenessTimeoutMs;
+    }
+
+    /**
+     * Gets the sellers that have been heard from within the liveness timeout.
+     * @return Sorted set of live seller IDs
+     */
+    public Set<String> getLiveSellers() {
+        Set<String> live = new TreeSet<>();
+        sellers.forEach((sellerId, status) -> {
+            if (!isDown(sellerId)) {
+                live.add(sellerId);
+            }
+        });
+        return live;
+    }
+
+    /**
+     * Gets the time a seller was last heard from.
+     * @param sellerId The seller identifier
+     * @return Last-seen time in epoch milliseconds, or 0 if never seen
+     */
+    public long getLastSeen(String sellerId) {
+        SellerStatus status = sellers.get(sellerId);
+        return status != null ? status.lastSeenMs : 0;
+    }
+
+    private static class SellerStatus {
+        volatile long lastSeenMs;
+        volatile boolean unreachable;
+    }
+}
@@ -0,0 +1,14 @@
+#!/bin/bash
+# Starts the fault-injecting proxy with proxy/fault-proxy.properties. Point the sellers at it
+# (MARKETPLACE_ENDPOINT=tcp://localhost:5565). Arguments are key=value overrides, e.g.
+#   ./proxy/run.sh fault.seller3.delay.ms=200 fault.seller5.partition=to_marketplace
+set -e
+
+cd "$(dirname "$0")"
+
+if [ ! -f target/fault-proxy.jar ] || [ "$REBUILD" = "1" ]; then
+    (cd ../common && mvn -q -B install -DskipTests)
+    mvn -q -B package -DskipTests
+fi
+
+PROXY_CONFIG=fault-proxy.properties java -jar target/fault-proxy.jar "$@"
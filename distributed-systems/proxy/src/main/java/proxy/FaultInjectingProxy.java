@@ -0,0 +1,511 @@
+package proxy;
+
+import common.AdminHttpServer;
+import common.Clock;
+import common.Log;
+import common.MetricsHttpServer;
+import common.MetricsRegistry;
+import common.RandomSource;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZFrame;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQException;
+import org.zeromq.ZMsg;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ZeroMQ proxy between the marketplace ROUTER and the seller DEALERs that injects network
+ * faults per seller: lost messages, added latency and jitter, reordering, one-way partitions
+ * and slow consumers (see {@link NetworkFaults}).
+ *
+ * Sellers connect to the proxy instead of the marketplace. For every seller identity the proxy
+ * opens a DEALER with the same identity to the marketplace, so the marketplace routes to the
+ * seller exactly as without the proxy. With marketplace.router.shards above one, shard i is
+ * listened on proxy.listen.port + i and forwarded to the upstream port + i, which matches the
+ * shard each seller picks from its base endpoint.
+ *
+ * One thread owns all sockets. Every message gets a delivery time and waits in a priority
+ * queue until it is due, so latency, reordering and rate limits cost no extra threads.
+ */
+public class FaultInjectingProxy {
+    private static final String CONFIG_FILE = "fault-proxy.properties";
+    private static final long MAX_POLL_MS = 100;
+
+    private final Properties config;
+    private final String listenHost;
+    private final int listenPort;
+    private final String upstreamEndpoint;
+    private final int shards;
+    private final long statsIntervalMs;
+    private final Clock clock;
+    private final Random random;
+    private volatile Map<String, NetworkFaults> faults = new ConcurrentHashMap<>();
+    private final Map<String, SellerLink> links = new ConcurrentHashMap<>();
+    private final PriorityQueue<Delivery> scheduled = new PriorityQueue<>();
+    private final MetricsRegistry.Family<MetricsRegistry.Counter> messageCounters;
+    private final MetricsRegistry.Family<MetricsRegistry.Counter> reorderCounters;
+    private long sequence = 0;
+    private volatile boolean running = false;
+    private MetricsHttpServer metricsServer;
+    private AdminHttpServer adminServer;
+
+    /**
+     * Creates a proxy. Process-wide logging and randomness are left to the caller, so the proxy
+     * can share a JVM with the marketplace and sellers.
+     * @param config Configuration properties (proxy.*, fault.*, marketplace.router.shards)
+     */
+    public FaultInjectingProxy(Properties config) {
+        this.config = new Properties();
+        this.config.putAll(config);
+        this.listenHost = config.getProperty("proxy.listen.host", "*");
+        this.listenPort = Integer.parseInt(config.getProperty("proxy.listen.port", "5565"));
+        this.upstreamEndpoint = config.getProperty("proxy.upstream.endpoint", "tcp://localhost:5555");
+        this.shards = Math.max(1, Integer.parseInt(config.getProperty("marketplace.router.shards", "1")));
+        this.statsIntervalMs = TimeUnit.SECONDS.toMillis(
+            Long.parseLong(config.getProperty("proxy.stats.interval.seconds", "10")));
+        this.clock = Clock.shared();
+        this.random = RandomSource.create("fault-proxy");
+        faultsFor(null); // Fail fast on bad settings
+
+        MetricsRegistry metrics = MetricsRegistry.shared();
+        this.messageCounters = metrics.counterFamily("proxy_messages_total",
+            "Messages passing the fault proxy by outcome: forwarded, dropped, partitioned, overflow, unroutable",
+            "seller", "direction", "outcome");
+        this.reorderCounters = metrics.counterFamily("proxy_messages_reordered_total",
+            "Messages held back so that later ones overtake them", "seller", "direction");
+        if (Boolean.parseBoolean(config.getProperty("metrics.enabled", "false"))) {
+            this.metricsServer = new MetricsHttpServer(config, metrics);
+        }
+        if (Boolean.parseBoolean(config.getProperty("admin.enabled", "false"))) {
+            this.adminServer = createAdminServer(config);
+        }
+    }
+
+    /**
+     * Creates the admin endpoint: per-seller traffic and faults as status, and the shared fault
+     * settings plus those of the sellers listed in proxy.sellers as tunable settings.
+     */
+    private AdminHttpServer createAdminServer(Properties config) {
+        AdminHttpServer admin = new AdminHttpServer(config, "fault-proxy");
+        admin.addStatus("sellers", this::getStats);
+
+        List<String> sellers = new ArrayList<>();
+        sellers.add(null);
+        for (String sellerId : config.getProperty("proxy.sellers", "").split(",")) {
+            if (!sellerId.trim().isEmpty()) {
+                sellers.add(sellerId.trim());
+            }
+        }
+        for (String sellerId : sellers) {
+            for (String name : NetworkFaults.SETTINGS) {
+                admin.addSetting(NetworkFaults.key(sellerId, name),
+                                 () -> faultsFor(sellerId).toMap().get(name),
+                                 value -> setFault(sellerId, name, value));
+            }
+        }
+        return admin;
+    }
+
+    /**
+     * Changes a fault setting at runtime. Takes effect for the next message.
+     * @param sellerId The seller identifier, or null for the shared setting
+     * @param name Setting name from {@link NetworkFaults#SETTINGS}
+     * @param value New value
+     * @throws IllegalArgumentException If the value is out of range
+     */
+    public void setFault(String sellerId, String name, String value) {
+        Properties candidate = new Properties();
+        candidate.putAll(config);
+        candidate.setProperty(NetworkFaults.key(sellerId, name), value.trim());
+        new NetworkFaults(candidate, sellerId);
+        config.setProperty(NetworkFaults.key(sellerId, name), value.trim());
+        // A fresh cache rather than clear(): a resolve racing with this change lands in the old one
+        faults = new ConcurrentHashMap<>();
+    }
+
+    private NetworkFaults faultsFor(String sellerId) {
+        Map<String, NetworkFaults> cache = faults;
+        String cacheKey = sellerId == null ? "" : sellerId;
+        NetworkFaults resolved = cache.get(cacheKey);
+        if (resolved == null) {
+            resolved = new NetworkFaults(config, sellerId);
+            cache.put(cacheKey, resolved);
+        }
+        return resolved;
+    }
+
+    public static void main(String[] args) {
+        Properties config = loadConfig(System.getenv().getOrDefault("PROXY_CONFIG", CONFIG_FILE));
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                System.err.println("Expected key=value, got: " + arg);
+                System.exit(2);
+            }
+            config.setProperty(arg.substring(0, separator).trim(), arg.substring(separator + 1).trim());
+        }
+        Log.configure(config);
+        RandomSource.configure(config);
+
+        FaultInjectingProxy proxy = new FaultInjectingProxy(config);
+        Runtime.getRuntime().addShutdownHook(new Thread(proxy::stop));
+        proxy.run();
+    }
+
+    private static Properties loadConfig(String file) {
+        Properties props = new Properties();
+        try (InputStream is = new FileInputStream(file)) {
+            props.load(is);
+        } catch (IOException e) {
+            System.err.println("Could not load config, forwarding without faults: " + e.getMessage());
+        }
+        return props;
+    }
+
+    /**
+     * Runs the proxy until {@link #stop()} is called.
+     */
+    public void run() {
+        running = true;
+        if (metricsServer != null) {
+            try {
+                metricsServer.start();
+            } catch (IOException e) {
+                System.err.println("Could not start metrics endpoint: " + e.getMessage());
+            }
+        }
+        if (adminServer != null) {
+            try {
+                adminServer.start();
+            } catch (IOException e) {
+                System.err.println("Could not start admin endpoint: " + e.getMessage());
+            }
+        }
+
+        try (ZContext context = new ZContext()) {
+            context.setLinger(0);
+            ZMQ.Poller poller = context.createPoller(shards + 8);
+            List<ZMQ.Socket> frontends = new ArrayList<>();
+            // Poller index -> the seller link owning that upstream socket; frontends come first
+            List<SellerLink> pollerLinks = new ArrayList<>();
+            for (int shard = 0; shard < shards; shard++) {
+                ZMQ.Socket frontend = context.createSocket(SocketType.ROUTER);
+                // Like the broker: a send to a seller that has disconnected fails instead of vanishing
+                frontend.setRouterMandatory(true);
+                frontend.bind("tcp://" + listenHost + ":" + (listenPort + shard));
+                poller.register(frontend, ZMQ.Poller.POLLIN);
+                frontends.add(frontend);
+                pollerLinks.add(null);
+            }
+            System.out.println("Fault proxy listening on port " + listenPort +
+                               (shards > 1 ? "-" + (listenPort + shards - 1) : "") + ", forwarding to " + upstreamEndpoint);
+
+            long nextStatsAt = clock.millis() + statsIntervalMs;
+            while (running && !Thread.currentThread().isInterrupted()) {
+                Delivery next = scheduled.peek();
+                long timeout = next == null ? MAX_POLL_MS
+                    : Math.max(0, Math.min(MAX_POLL_MS, next.dueMs - clock.millis()));
+                if (poller.poll(timeout) > 0) {
+                    for (int index = 0; index < pollerLinks.size(); index++) {
+                        if (!poller.pollin(index)) {
+                            continue;
+                        }
+                        SellerLink link = pollerLinks.get(index);
+                        if (link == null) {
+                            receiveFromSellers(context, poller, pollerLinks, frontends.get(index), index);
+                        } else {
+                            receiveFromMarketplace(link);
+                        }
+                    }
+                }
+                deliverDue(frontends, clock.millis());
+
+                if (statsIntervalMs > 0 && clock.millis() >= nextStatsAt) {
+                    logStats();
+                    nextStatsAt = clock.millis() + statsIntervalMs;
+                }
+            }
+
+            poller.close();
+        } catch (Exception e) {
+            if (running) {
+                System.err.println("Fault proxy crashed: " + e.getMessage());
+                e.printStackTrace();
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void receiveFromSellers(ZContext context, ZMQ.Poller poller, List<SellerLink> pollerLinks,
+                                    ZMQ.Socket frontend, int shard) {
+        ZMsg message;
+        while ((message = ZMsg.recvMsg(frontend, ZMQ.DONTWAIT)) != null) {
+            ZFrame identity = message.pop();
+            String sellerId = new String(identity.getData(), ZMQ.CHARSET);
+            SellerLink link = links.get(sellerId);
+            if (link == null) {
+                link = new SellerLink(sellerId, identity.getData(), shard);
+                link.upstream = context.createSocket(SocketType.DEALER);
+                link.upstream.setIdentity(identity.getData());
+                link.upstream.connect(upstreamEndpointFor(shard));
+                poller.register(link.upstream, ZMQ.Poller.POLLIN);
+                pollerLinks.add(link);
+                links.put(sellerId, link);
+                Log.info("Seller {} connected through the fault proxy", sellerId);
+            }
+            identity.destroy();
+            schedule(link, NetworkFaults.Direction.TO_MARKETPLACE, message);
+        }
+    }
+
+    private void receiveFromMarketplace(SellerLink link) {
+        ZMsg message;
+        while ((message = ZMsg.recvMsg(link.upstream, ZMQ.DONTWAIT)) != null) {
+            schedule(link, NetworkFaults.Direction.TO_SELLER, message);
+        }
+    }
+
+    private String upstreamEndpointFor(int shard) {
+        if (shard == 0) {
+            return upstreamEndpoint;
+        }
+        int portSeparator = upstreamEndpoint.lastIndexOf(':');
+        int basePort = Integer.parseInt(upstreamEndpoint.substring(portSeparator + 1));
+        return upstreamEndpoint.substring(0, portSeparator + 1) + (basePort + shard);
+    }
+
+    /**
+     * Applies the seller's faults to a message: loses it, or queues it for the time it is due.
+     */
+    private void schedule(SellerLink link, NetworkFaults.Direction direction, ZMsg message) {
+        NetworkFaults applied = faultsFor(link.sellerId);
+        SellerLink.Traffic traffic = link.traffic(direction);
+        if (applied.getPartition().blocks(direction)) {
+            traffic.partitioned.increment();
+            message.destroy();
+            return;
+        }
+        if (applied.getDropProbability() > 0 && random.nextDouble() < applied.getDropProbability()) {
+            traffic.dropped.increment();
+            message.destroy();
+            return;
+        }
+
+        long now = clock.millis();
+        long dueMs = now + applied.getDelayMs();
+        if (applied.getJitterMs() > 0) {
+            dueMs += (long) (random.nextDouble() * (applied.getJitterMs() + 1));
+        }
+        if (applied.getReorderProbability() > 0 && random.nextDouble() < applied.getReorderProbability()) {
+            dueMs += applied.getReorderGapMs();
+            traffic.reordered.increment();
+        }
+        if (direction == NetworkFaults.Direction.TO_SELLER && applied.getConsumerRatePerSecond() > 0) {
+            // The seller takes one message per interval; what it cannot take yet waits here
+            if (link.waitingForSeller >= applied.getConsumerQueueCapacity()) {
+                traffic.overflow.increment();
+                message.destroy();
+                return;
+            }
+            double intervalMs = 1000.0 / applied.getConsumerRatePerSecond();
+            double slotMs = Math.max(dueMs, Math.max(link.nextConsumerSlotMs, now - intervalMs));
+            link.nextConsumerSlotMs = slotMs + intervalMs;
+            dueMs = (long) Math.ceil(slotMs);
+        }
+        if (direction == NetworkFaults.Direction.TO_SELLER) {
+            link.waitingForSeller++;
+        }
+        scheduled.add(new Delivery(dueMs, sequence++, link, direction, message));
+    }
+
+    private void deliverDue(List<ZMQ.Socket> frontends, long now) {
+        Delivery delivery;
+        while ((delivery = scheduled.peek()) != null && delivery.dueMs <= now) {
+            scheduled.poll();
+            SellerLink link = delivery.link;
+            boolean sent;
+            if (delivery.direction == NetworkFaults.Direction.TO_SELLER) {
+                link.waitingForSeller--;
+                delivery.message.push(link.identity);
+                sent = send(delivery.message, frontends.get(link.shard));
+            } else {
+                sent = send(delivery.message, link.upstream);
+            }
+            SellerLink.Traffic traffic = link.traffic(delivery.direction);
+            (sent ? traffic.forwarded : traffic.unroutable).increment();
+        }
+    }
+
+    /**
+     * Sends all frames without blocking, so a peer that stopped reading cannot stall the proxy.
+     * @return false if the peer is not connected or not reading
+     */
+    private static boolean send(ZMsg message, ZMQ.Socket socket) {
+        boolean sent = true;
+        Iterator<ZFrame> frames = message.iterator();
+        try {
+            while (sent && frames.hasNext()) {
+                ZFrame frame = frames.next();
+                int flags = ZMQ.DONTWAIT | (frames.hasNext() ? ZMQ.SNDMORE : 0);
+                sent = frame.sendAndKeep(socket, flags);
+            }
+        } catch (ZMQException e) {
+            // ROUTER_MANDATORY: the seller has no connection to this frontend
+            if (e.getErrorCode() != ZMQ.Error.EHOSTUNREACH.getCode()) throw e;
+            sent = false;
+        } finally {
+            message.destroy();
+        }
+        return sent;
+    }
+
+    private void logStats() {
+        for (SellerLink link : links.values()) {
+            Log.info("Proxy {}: {}", link.sellerId, link.getStats());
+        }
+    }
+
+    /**
+     * Gets traffic counters and active faults per seller.
+     * @return Seller identifier to statistics
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (SellerLink link : links.values()) {
+            Map<String, Object> seller = link.getStats();
+            seller.put("faults", faultsFor(link.sellerId).toMap());
+            stats.put(link.sellerId, seller);
+        }
+        return stats;
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    private void shutdown() {
+        running = false;
+        Delivery delivery;
+        while ((delivery = scheduled.poll()) != null) {
+            delivery.message.destroy();
+        }
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        if (adminServer != null) {
+            adminServer.stop();
+        }
+        System.out.println("Fault proxy stopped");
+    }
+
+    /**
+     * A seller's path through the proxy. Only the proxy thread touches the sockets and the
+     * consumer state; counters are read by the admin endpoint.
+     */
+    private class SellerLink {
+        final String sellerId;
+        final byte[] identity;
+        final int shard;
+        final Traffic toSeller;
+        final Traffic toMarketplace;
+        ZMQ.Socket upstream;
+        volatile int waitingForSeller = 0;
+        double nextConsumerSlotMs = 0;
+
+        SellerLink(String sellerId, byte[] identity, int shard) {
+            this.sellerId = sellerId;
+            this.identity = identity;
+            this.shard = shard;
+            this.toSeller = new Traffic(NetworkFaults.Direction.TO_SELLER);
+            this.toMarketplace = new Traffic(NetworkFaults.Direction.TO_MARKETPLACE);
+        }
+
+        Traffic traffic(NetworkFaults.Direction direction) {
+            return direction == NetworkFaults.Direction.TO_SELLER ? toSeller : toMarketplace;
+        }
+
+        Map<String, Object> getStats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("shard", shard);
+            stats.put("waitingForSeller", waitingForSeller);
+            stats.put(toSeller.direction.getLabel(), toSeller.getStats());
+            stats.put(toMarketplace.direction.getLabel(), toMarketplace.getStats());
+            return stats;
+        }
+
+        /**
+         * Counters of one direction, resolved once so the message path does no label lookups.
+         */
+        class Traffic {
+            final NetworkFaults.Direction direction;
+            final MetricsRegistry.Counter forwarded;
+            final MetricsRegistry.Counter dropped;
+            final MetricsRegistry.Counter partitioned;
+            final MetricsRegistry.Counter overflow;
+            final MetricsRegistry.Counter unroutable;
+            final MetricsRegistry.Counter reordered;
+
+            Traffic(NetworkFaults.Direction direction) {
+                String label = direction.getLabel();
+                this.direction = direction;
+                this.forwarded = messageCounters.labels(sellerId, label, "forwarded");
+                this.dropped = messageCounters.labels(sellerId, label, "dropped");
+                this.partitioned = messageCounters.labels(sellerId, label, "partitioned");
+                this.overflow = messageCounters.labels(sellerId, label, "overflow");
+                this.unroutable = messageCounters.labels(sellerId, label, "unroutable");
+                this.reordered = reorderCounters.labels(sellerId, label);
+            }
+
+            Map<String, Object> getStats() {
+                Map<String, Object> stats = new LinkedHashMap<>();
+                stats.put("forwarded", forwarded.get());
+                stats.put("dropped", dropped.get());
+                stats.put("partitioned", partitioned.get());
+                stats.put("overflow", overflow.get());
+                stats.put("unroutable", unroutable.get());
+                stats.put("reordered", reordered.get());
+                return stats;
+            }
+        }
+    }
+
+    /**
+     * A message waiting for its delivery time; ties keep arrival order.
+     */
+    private static final class Delivery implements Comparable<Delivery> {
+        final long dueMs;
+        final long sequence;
+        final SellerLink link;
+        final NetworkFaults.Direction direction;
+        final ZMsg message;
+
+        Delivery(long dueMs, long sequence, SellerLink link, NetworkFaults.Direction direction, ZMsg message) {
+            this.dueMs = dueMs;
+            this.sequence = sequence;
+            this.link = link;
+            this.direction = direction;
+            this.message = message;
+        }
+
+        @Override
+        public int compareTo(Delivery other) {
+            int byDue = Long.compare(dueMs, other.dueMs);
+            return byDue != 0 ? byDue : Long.compare(sequence, other.sequence);
+        }
+    }
+}
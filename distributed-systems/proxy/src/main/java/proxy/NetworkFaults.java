@@ -0,0 +1,148 @@
+package proxy;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Network faults the proxy injects for one seller. Each setting is read from
+ * fault.&lt;sellerId&gt;.&lt;name&gt; and falls back to fault.&lt;name&gt;, so a profile for all
+ * sellers can be overridden for single ones:
+ * <ul>
+ *   <li>drop.probability: share of messages lost, in both directions</li>
+ *   <li>delay.ms, jitter.ms: added latency per direction, plus a uniform 0..jitter extra</li>
+ *   <li>reorder.probability, reorder.gap.ms: share of messages held back by the gap so that
+ *       later messages overtake them</li>
+ *   <li>partition: none, to_seller, to_marketplace or both; a one-way partition loses only
+ *       the messages travelling that way</li>
+ *   <li>consumer.rate.per.second, consumer.queue.capacity: a slow consumer, i.e. at most this
+ *       many messages per second reach the seller and messages beyond the capacity waiting
+ *       for it are lost (0 = unlimited)</li>
+ * </ul>
+ * Instances are immutable; the proxy resolves them again whenever a setting changes.
+ */
+public final class NetworkFaults {
+    /**
+     * Direction a message travels through the proxy.
+     */
+    public enum Direction {
+        TO_SELLER("to_seller"),
+        TO_MARKETPLACE("to_marketplace");
+
+        private final String label;
+
+        Direction(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * Which directions a partition cuts.
+     */
+    public enum Partition {
+        NONE, TO_SELLER, TO_MARKETPLACE, BOTH;
+
+        boolean blocks(Direction direction) {
+            return this == BOTH || name().equals(direction.name());
+        }
+    }
+
+    /** Setting names, without the fault. or fault.&lt;sellerId&gt;. prefix. */
+    public static final List<String> SETTINGS = Collections.unmodifiableList(Arrays.asList(
+        "drop.probability", "delay.ms", "jitter.ms", "reorder.probability", "reorder.gap.ms",
+        "partition", "consumer.rate.per.second", "consumer.queue.capacity"));
+
+    private final double dropProbability;
+    private final long delayMs;
+    private final long jitterMs;
+    private final double reorderProbability;
+    private final long reorderGapMs;
+    private final Partition partition;
+    private final double consumerRatePerSecond;
+    private final int consumerQueueCapacity;
+
+    /**
+     * Resolves the faults of a seller.
+     * @param config Configuration properties
+     * @param sellerId The seller identifier, or null for the settings shared by all sellers
+     * @throws IllegalArgumentException If a setting is out of range
+     */
+    public NetworkFaults(Properties config, String sellerId) {
+        this.dropProbability = probability(get(config, sellerId, "drop.probability", "0"), "drop.probability");
+        this.delayMs = nonNegative(get(config, sellerId, "delay.ms", "0"), "delay.ms");
+        this.jitterMs = nonNegative(get(config, sellerId, "jitter.ms", "0"), "jitter.ms");
+        this.reorderProbability = probability(get(config, sellerId, "reorder.probability", "0"), "reorder.probability");
+        this.reorderGapMs = nonNegative(get(config, sellerId, "reorder.gap.ms", "20"), "reorder.gap.ms");
+        this.partition = Partition.valueOf(get(config, sellerId, "partition", "none").trim().toUpperCase());
+        this.consumerRatePerSecond = Double.parseDouble(get(config, sellerId, "consumer.rate.per.second", "0").trim());
+        this.consumerQueueCapacity = (int) nonNegative(get(config, sellerId, "consumer.queue.capacity", "1000"),
+                                                       "consumer.queue.capacity");
+        if (consumerRatePerSecond < 0) {
+            throw new IllegalArgumentException("consumer.rate.per.second must not be negative");
+        }
+    }
+
+    /**
+     * Gets the configuration key of a setting.
+     * @param sellerId The seller identifier, or null for the shared setting
+     * @param name Setting name from {@link #SETTINGS}
+     * @return fault.&lt;sellerId&gt;.&lt;name&gt; or fault.&lt;name&gt;
+     */
+    public static String key(String sellerId, String name) {
+        return sellerId == null ? "fault." + name : "fault." + sellerId + "." + name;
+    }
+
+    private static String get(Properties config, String sellerId, String name, String defaultValue) {
+        String shared = config.getProperty(key(null, name), defaultValue);
+        return sellerId == null ? shared : config.getProperty(key(sellerId, name), shared);
+    }
+
+    private static double probability(String value, String name) {
+        double probability = Double.parseDouble(value.trim());
+        if (!(probability >= 0.0 && probability <= 1.0)) {
+            throw new IllegalArgumentException(name + " must be between 0 and 1");
+        }
+        return probability;
+    }
+
+    private static long nonNegative(String value, String name) {
+        long parsed = Long.parseLong(value.trim());
+        if (parsed < 0) {
+            throw new IllegalArgumentException(name + " must not be negative");
+        }
+        return parsed;
+    }
+
+    public double getDropProbability() { return dropProbability; }
+    public long getDelayMs() { return delayMs; }
+    public long getJitterMs() { return jitterMs; }
+    public double getReorderProbability() { return reorderProbability; }
+    public long getReorderGapMs() { return reorderGapMs; }
+    public Partition getPartition() { return partition; }
+    public double getConsumerRatePerSecond() { return consumerRatePerSecond; }
+    public int getConsumerQueueCapacity() { return consumerQueueCapacity; }
+
+    /**
+     * Gets the settings as a map for status output.
+     * @return Setting name to value
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("drop.probability", dropProbability);
+        settings.put("delay.ms", delayMs);
+        settings.put("jitter.ms", jitterMs);
+        settings.put("reorder.probability", reorderProbability);
+        settings.put("reorder.gap.ms", reorderGapMs);
+        settings.put("partition", partition.name().toLowerCase());
+        settings.put("consumer.rate.per.second", consumerRatePerSecond);
+        settings.put("consumer.queue.capacity", consumerQueueCapacity);
+        return settings;
+    }
+}
@@ -0,0 +1,79 @@
+package proxy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for resolving and validating the proxy's per-seller fault settings.
+ */
+class NetworkFaultsTest {
+
+    @Test
+    void defaultsInjectNothing() {
+        NetworkFaults faults = new NetworkFaults(new Properties(), "seller1");
+
+        assertEquals(0.0, faults.getDropProbability(), 0.0);
+        assertEquals(0, faults.getDelayMs());
+        assertEquals(NetworkFaults.Partition.NONE, faults.getPartition());
+        assertEquals(0.0, faults.getConsumerRatePerSecond(), 0.0);
+        assertEquals(NetworkFaults.SETTINGS, new ArrayList<>(faults.toMap().keySet()));
+    }
+
+    @Test
+    void sellerSettingsOverrideSharedOnes() {
+        Properties config = new Properties();
+        config.setProperty("fault.drop.probability", "0.1");
+        config.setProperty("fault.delay.ms", "5");
+        config.setProperty("fault.seller2.drop.probability", "0.5");
+        config.setProperty("fault.seller2.partition", " To_Seller ");
+
+        NetworkFaults seller1 = new NetworkFaults(config, "seller1");
+        NetworkFaults seller2 = new NetworkFaults(config, "seller2");
+        NetworkFaults shared = new NetworkFaults(config, null);
+
+        assertEquals(0.1, seller1.getDropProbability(), 0.0);
+        assertEquals(0.5, seller2.getDropProbability(), 0.0);
+        assertEquals(5, seller2.getDelayMs());
+        assertEquals(NetworkFaults.Partition.TO_SELLER, seller2.getPartition());
+        assertEquals(NetworkFaults.Partition.NONE, seller1.getPartition());
+        assertEquals(0.1, shared.getDropProbability(), 0.0);
+    }
+
+    @Test
+    void partitionsBlockOnlyTheirDirections() {
+        assertTrue(NetworkFaults.Partition.TO_SELLER.blocks(NetworkFaults.Direction.TO_SELLER));
+        assertFalse(NetworkFaults.Partition.TO_SELLER.blocks(NetworkFaults.Direction.TO_MARKETPLACE));
+        assertTrue(NetworkFaults.Partition.BOTH.blocks(NetworkFaults.Direction.TO_MARKETPLACE));
+        assertFalse(NetworkFaults.Partition.NONE.blocks(NetworkFaults.Direction.TO_SELLER));
+    }
+
+    @Test
+    void keysFollowTheSellerPrefix() {
+        assertEquals("fault.jitter.ms", NetworkFaults.key(null, "jitter.ms"));
+        assertEquals("fault.seller3.jitter.ms", NetworkFaults.key("seller3", "jitter.ms"));
+    }
+
+    @Test
+    void rejectsOutOfRangeAndMalformedSettings() {
+        assertInvalid("fault.drop.probability", "1.5");
+        assertInvalid("fault.reorder.probability", "-0.1");
+        assertInvalid("fault.delay.ms", "-1");
+        assertInvalid("fault.consumer.rate.per.second", "-5");
+        assertInvalid("fault.partition", "sideways");
+        assertInvalid("fault.jitter.ms", "ten");
+        assertInvalid("fault.drop.probability", "NaN");
+    }
+
+    private static void assertInvalid(String key, String value) {
+        Properties config = new Properties();
+        config.setProperty(key, value);
+        assertThrows(IllegalArgumentException.class, () -> new NetworkFaults(config, "seller1"), key + "=" + value);
+    }
+}
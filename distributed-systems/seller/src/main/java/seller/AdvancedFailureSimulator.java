@@ -1,9 +1,17 @@
 package seller;
 
+import common.Clock;
+import common.RandomSource;
+
+import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -13,9 +21,29 @@ import java.util.concurrent.atomic.AtomicLong;
  * and periodic maintenance windows.
  */
 public class AdvancedFailureSimulator {
-    private final Random random = new Random();
+    /**
+     * Configuration key of each failure probability, by operation type.
+     */
+    public static final Map<String, String> PROBABILITY_KEYS;
+    static {
+        Map<String, String> keys = new LinkedHashMap<>();
+        keys.put("no_response", "failure.no.response");
+        keys.put("processing_failure", "failure.processing");
+        keys.put("out_of_stock", "failure.out.of.stock");
+        keys.put("network_partition", "failure.network.partition");
+        keys.put("slow_response", "failure.slow.response");
+        keys.put("corruption", "failure.corruption");
+        PROBABILITY_KEYS = Collections.unmodifiableMap(keys);
+    }
+    
+    private final Random random;
+    private final Clock clock;
     private final Map<String, Double> failureProbabilities;
     private final Map<String, FailurePattern> patterns;
+    private final FailurePattern[] patternOrder;
+    private final ChaosScenario scenario;
+    private final AtomicLong scenarioStart = new AtomicLong(-1);
+    private volatile int phaseHint = 0;
     private final AtomicInteger consecutiveFailures = new AtomicInteger(0);
     private final AtomicLong lastFailureTime = new AtomicLong(0);
     private final AtomicInteger successCount = new AtomicInteger(0);
@@ -25,7 +53,29 @@ public class AdvancedFailureSimulator {
      * @param config Configuration properties
      */
     public AdvancedFailureSimulator(Properties config) {
-        this.failureProbabilities = new HashMap<>();
+        this(null, config, Clock.shared(), RandomSource.create("failure-simulator"));
+    }
+    
+    /**
+     * Creates a failure simulator for one seller with an explicit clock and random source,
+     * so that maintenance windows, bursts and scenario phases follow virtual time and replay
+     * from a seed. The scenario in failure.scenario.file, if any, starts at
+     * failure.scenario.start.epoch.ms, so that sellers in separate processes play their phases
+     * in step, or with this seller's first decision if that is not set.
+     * @param sellerId Seller whose scenario phases apply, or null for phases on all sellers only
+     * @param config Configuration properties
+     * @param clock Clock for maintenance windows, bursts and scenario phases
+     * @param random Source of every failure roll
+     */
+    public AdvancedFailureSimulator(String sellerId, Properties config, Clock clock, Random random) {
+        this.clock = clock;
+        this.random = random;
+        this.scenario = loadScenario(config.getProperty("failure.scenario.file", ""), sellerId);
+        long scenarioStartMs = Long.parseLong(config.getProperty("failure.scenario.start.epoch.ms", "-1").trim());
+        if (scenarioStartMs >= 0) {
+            scenarioStart.set(scenarioStartMs);
+        }
+        this.failureProbabilities = new ConcurrentHashMap<>();
         this.patterns = new HashMap<>();
         
         // Load failure probabilities
@@ -44,8 +94,21 @@ public class AdvancedFailureSimulator {
         
         // Initialize failure patterns
         initializeFailurePatterns(config);
+        this.patternOrder = patterns.values().toArray(new FailurePattern[0]);
         
-        System.out.println("Advanced failure simulator initialized with " + patterns.size() + " patterns");
+        System.out.println("Advanced failure simulator initialized with " + patterns.size() + " patterns" +
+                           (scenario != null ? " and a " + scenario.getPhases().size() + "-phase scenario" : ""));
+    }
+    
+    private static ChaosScenario loadScenario(String file, String sellerId) {
+        if (file.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return ChaosScenario.load(file.trim()).forSeller(sellerId);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read failure.scenario.file " + file + ": " + e.getMessage(), e);
+        }
     }
     
     /**
@@ -84,22 +147,34 @@ public class AdvancedFailureSimulator {
      * @return FailureDecision indicating if and how to fail
      */
     public FailureDecision shouldSimulateFailure(String operationType) {
-        // Check patterns first
-        for (FailurePattern pattern : patterns.values()) {
-            if (pattern.isActive()) {
-                double modifiedProbability = pattern.modifyProbability(
-                    failureProbabilities.getOrDefault(operationType, 0.0));
-                if (random.nextDouble() < modifiedProbability) {
-                    recordFailure();
-                    return createFailureDecision(operationType, pattern);
+        long now = clock.millis();
+        ChaosScenario.Phase phase = currentPhase(now, true);
+        double baseProbability = failureProbabilities.getOrDefault(operationType, 0.0);
+        if (phase != null) {
+            baseProbability = phase.probability(operationType, baseProbability);
+        }
+        
+        // One draw decides between the active patterns and the base probability, with the same
+        // odds as rolling each in turn: a pattern fails its share of the draws still left over
+        double draw = random.nextDouble();
+        double taken = 0.0;
+        double remaining = 1.0;
+        if (phase == null || phase.isPatternsEnabled()) {
+            for (FailurePattern pattern : patternOrder) {
+                if (pattern.isActive(now)) {
+                    double share = remaining * pattern.modifyProbability(baseProbability);
+                    if (draw < taken + share) {
+                        recordFailure(now);
+                        return createFailureDecision(operationType, pattern);
+                    }
+                    taken += share;
+                    remaining -= share;
                 }
             }
         }
         
-        // Normal failure simulation
-        double baseProbability = failureProbabilities.getOrDefault(operationType, 0.0);
-        if (random.nextDouble() < baseProbability) {
-            recordFailure();
+        if (draw < taken + remaining * baseProbability) {
+            recordFailure(now);
             return createFailureDecision(operationType, null);
         }
         
@@ -107,6 +182,53 @@ public class AdvancedFailureSimulator {
         return FailureDecision.NO_FAILURE;
     }
     
+    /**
+     * Checks whether the current scenario phase cuts this seller off, in which case it
+     * neither answers requests nor sends heartbeats. Does not start the scenario.
+     * @return true while partitioned
+     */
+    public boolean isPartitioned() {
+        ChaosScenario.Phase phase = currentPhase(clock.millis(), false);
+        return phase != null && phase.isPartitioned();
+    }
+    
+    /**
+     * Starts the scenario at a given time instead of with the first decision, e.g. when a
+     * harness starts the load for all sellers at once.
+     * @param startMs Scenario start in epoch milliseconds on this simulator's clock
+     */
+    public void startScenario(long startMs) {
+        scenarioStart.set(startMs);
+    }
+    
+    /**
+     * Gets the scenario phase in effect.
+     * @param now Current time in epoch milliseconds
+     * @param startScenario Whether to start the scenario if it has not started yet
+     * @return The phase, or null without a scenario, before its start or once it has ended
+     */
+    private ChaosScenario.Phase currentPhase(long now, boolean startScenario) {
+        if (scenario == null) {
+            return null;
+        }
+        long start = scenarioStart.get();
+        if (start < 0 && !startScenario) {
+            return null;
+        }
+        if (start < 0 && !scenarioStart.compareAndSet(-1, now)) {
+            start = scenarioStart.get();
+        } else if (start < 0) {
+            start = now;
+        }
+        if (now < start) {
+            return null;
+        }
+        // A stale hint from a racing thread only costs a longer scan
+        int index = scenario.phaseIndexAt(now - start, phaseHint);
+        phaseHint = index;
+        return index < scenario.getPhases().size() ? scenario.getPhases().get(index) : null;
+    }
+    
     /**
      * Creates a failure decision based on operation type and pattern.
      * @param operationType The type of operation
@@ -150,6 +272,29 @@ public class AdvancedFailureSimulator {
         }
     }
     
+    /**
+     * Gets the base failure probabilities, before patterns modify them.
+     * @return Map of operation type to probability
+     */
+    public Map<String, Double> getFailureProbabilities() {
+        return new TreeMap<>(failureProbabilities);
+    }
+    
+    /**
+     * Changes the base failure probability of an operation type; takes effect on the next decision.
+     * @param operationType One of the keys of {@link #PROBABILITY_KEYS}
+     * @param probability Probability between 0 and 1
+     */
+    public void setFailureProbability(String operationType, double probability) {
+        if (!PROBABILITY_KEYS.containsKey(operationType)) {
+            throw new IllegalArgumentException("unknown operation type " + operationType);
+        }
+        if (!(probability >= 0.0 && probability <= 1.0)) {
+            throw new IllegalArgumentException("probability must be between 0 and 1");
+        }
+        failureProbabilities.put(operationType, probability);
+    }
+    
     /**
      * Records a successful operation.
      */
@@ -160,9 +305,9 @@ public class AdvancedFailureSimulator {
     /**
      * Records a failure occurrence.
      */
-    private void recordFailure() {
+    private void recordFailure(long now) {
         consecutiveFailures.incrementAndGet();
-        lastFailureTime.set(System.currentTimeMillis());
+        lastFailureTime.set(now);
         successCount.set(0);
     }
     
@@ -193,6 +338,11 @@ public class AdvancedFailureSimulator {
         }
         stats.put("patterns", patternStats);
         
+        if (scenario != null) {
+            ChaosScenario.Phase phase = currentPhase(clock.millis(), false);
+            stats.put("scenarioPhase", scenarioStart.get() < 0 ? "not started" : phase != null ? phase.getName() : "finished");
+        }
+        
         return stats;
     }
     
@@ -239,21 +389,28 @@ public class AdvancedFailureSimulator {
     /**
      * Abstract base class for failure patterns.
      */
-    private abstract static class FailurePattern {
+    private abstract class FailurePattern {
         protected final String name;
         
         public FailurePattern(String name) {
             this.name = name;
         }
         
-        public abstract boolean isActive();
+        public abstract boolean isActive(long now);
         public abstract double modifyProbability(double baseProbability);
         public String getName() { return name; }
         
+        /**
+         * Like {@link #isActive(long)}, but never changes the pattern's state, for reporting.
+         */
+        protected boolean isInEffect(long now) {
+            return isActive(now);
+        }
+        
         public Map<String, Object> getStats() {
             Map<String, Object> stats = new HashMap<>();
             stats.put("name", name);
-            stats.put("active", isActive());
+            stats.put("active", isInEffect(clock.millis()));
             return stats;
         }
     }
@@ -272,7 +429,7 @@ public class AdvancedFailureSimulator {
         }
         
         @Override
-        public boolean isActive() {
+        public boolean isActive(long now) {
             return consecutiveFailures.get() > 0;
         }
         
@@ -294,7 +451,7 @@ public class AdvancedFailureSimulator {
     /**
      * Periodic failure pattern - simulates maintenance windows.
      */
-    private static class PeriodicFailurePattern extends FailurePattern {
+    private class PeriodicFailurePattern extends FailurePattern {
         private final long intervalMs;
         private final long durationMs;
         
@@ -305,9 +462,8 @@ public class AdvancedFailureSimulator {
         }
         
         @Override
-        public boolean isActive() {
-            long currentTime = System.currentTimeMillis();
-            long phase = currentTime % intervalMs;
+        public boolean isActive(long now) {
+            long phase = now % intervalMs;
             return phase < durationMs;
         }
         
@@ -328,7 +484,7 @@ public class AdvancedFailureSimulator {
     /**
      * Burst failure pattern - sudden spikes in failures.
      */
-    private static class BurstFailurePattern extends FailurePattern {
+    private class BurstFailurePattern extends FailurePattern {
         private final double burstProbability;
         private final long burstDurationMs;
         private volatile long burstStartTime = 0;
@@ -340,18 +496,16 @@ public class AdvancedFailureSimulator {
         }
         
         @Override
-        public boolean isActive() {
-            long currentTime = System.currentTimeMillis();
-            
+        public boolean isActive(long now) {
             // Check if we're in a burst period
-            if (burstStartTime > 0 && currentTime - burstStartTime < burstDurationMs) {
+            if (burstStartTime > 0 && now - burstStartTime < burstDurationMs) {
                 return true;
             }
             
             // Check if we should start a new burst
-            if (burstStartTime == 0 || currentTime - burstStartTime > burstDurationMs * 10) {
-                if (new Random().nextDouble() < 0.01) { // 1% chance to start burst
-                    burstStartTime = currentTime;
+            if (burstStartTime == 0 || now - burstStartTime > burstDurationMs * 10) {
+                if (random.nextDouble() < 0.01) { // 1% chance to start burst
+                    burstStartTime = now;
                     return true;
                 }
             }
@@ -359,6 +513,12 @@ public class AdvancedFailureSimulator {
             return false;
         }
         
+        @Override
+        protected boolean isInEffect(long now) {
+            long start = burstStartTime;
+            return start > 0 && now - start < burstDurationMs;
+        }
+        
         @Override
         public double modifyProbability(double baseProbability) {
             return burstProbability;
@@ -387,7 +547,7 @@ public class AdvancedFailureSimulator {
         }
         
         @Override
-        public boolean isActive() {
+        public boolean isActive(long now) {
             return consecutiveFailures.get() > 0 && successCount.get() < successThreshold;
         }
         
@@ -0,0 +1,242 @@
+package seller;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timed failure phases for {@link AdvancedFailureSimulator}, one phase per line:
+ * <pre>
+ * # name|duration seconds|sellers|settings
+ * baseline|60|*|
+ * slow-seller3|30|seller3|slow_response=0.4
+ * partition-seller5|30|seller5|partition=true
+ * recovery|60|*|
+ * </pre>
+ * Sellers is * or a comma-separated list of seller IDs. Settings are comma-separated:
+ * an operation type from {@link AdvancedFailureSimulator#PROBABILITY_KEYS} with the
+ * probability it has during the phase, partition=true to drop all traffic including
+ * heartbeats, or patterns=false to switch the cascading, periodic, burst and recovery
+ * patterns off. Sellers a phase does not name run with their configured probabilities
+ * for its duration. After the last phase the configured probabilities apply again.
+ *
+ * Phases are immutable and resolved per seller up front, so finding the current phase is
+ * an index comparison on the request path.
+ */
+public final class ChaosScenario {
+    private final List<Phase> phases;
+    private final long[] phaseEndOffsetsMs;
+
+    private ChaosScenario(List<Phase> phases) {
+        this.phases = Collections.unmodifiableList(phases);
+        this.phaseEndOffsetsMs = new long[phases.size()];
+        long end = 0;
+        for (int i = 0; i < phases.size(); i++) {
+            end += phases.get(i).getDurationMs();
+            phaseEndOffsetsMs[i] = end;
+        }
+    }
+
+    /**
+     * Loads a scenario file.
+     * @param file Path of the scenario file
+     * @return The scenario
+     * @throws IOException If the file cannot be read
+     * @throws IllegalArgumentException If a line is malformed
+     */
+    public static ChaosScenario load(String file) throws IOException {
+        return parse(Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses scenario lines; blank lines and lines starting with # are skipped.
+     * @param lines Lines in the scenario file format
+     * @return The scenario
+     * @throws IllegalArgumentException If a line is malformed
+     */
+    public static ChaosScenario parse(List<String> lines) {
+        List<Phase> phases = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : lines) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            try {
+                phases.add(parsePhase(trimmed));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Scenario line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        if (phases.isEmpty()) {
+            throw new IllegalArgumentException("Scenario has no phases");
+        }
+        return new ChaosScenario(phases);
+    }
+
+    private static Phase parsePhase(String line) {
+        String[] fields = line.split("\\|", -1);
+        if (fields.length < 3 || fields.length > 4) {
+            throw new IllegalArgumentException("expected name|duration seconds|sellers|settings");
+        }
+        String name = fields[0].trim();
+        long durationMs = TimeUnit.SECONDS.toMillis(Long.parseLong(fields[1].trim()));
+        if (durationMs <= 0) {
+            throw new IllegalArgumentException("duration must be positive");
+        }
+
+        Set<String> sellers = null;
+        String sellerSpec = fields[2].trim();
+        if (!sellerSpec.equals("*")) {
+            sellers = new LinkedHashSet<>(Arrays.asList(sellerSpec.split("\\s*,\\s*")));
+        }
+
+        Map<String, Double> probabilities = new HashMap<>();
+        boolean partitioned = false;
+        boolean patternsEnabled = true;
+        String settings = fields.length > 3 ? fields[3].trim() : "";
+        for (String setting : settings.isEmpty() ? new String[0] : settings.split(",")) {
+            String[] keyValue = setting.split("=", 2);
+            if (keyValue.length != 2) {
+                throw new IllegalArgumentException("expected key=value, got " + setting.trim());
+            }
+            String key = keyValue[0].trim();
+            String value = keyValue[1].trim();
+            if (key.equals("partition")) {
+                partitioned = Boolean.parseBoolean(value);
+            } else if (key.equals("patterns")) {
+                patternsEnabled = Boolean.parseBoolean(value);
+            } else if (AdvancedFailureSimulator.PROBABILITY_KEYS.containsKey(key)) {
+                double probability = Double.parseDouble(value);
+                if (!(probability >= 0.0 && probability <= 1.0)) {
+                    throw new IllegalArgumentException("probability of " + key + " must be between 0 and 1");
+                }
+                probabilities.put(key, probability);
+            } else {
+                throw new IllegalArgumentException("unknown setting " + key);
+            }
+        }
+        return new Phase(name, durationMs, sellers, probabilities, partitioned, patternsEnabled);
+    }
+
+    /**
+     * Gets the scenario as one seller sees it: phases naming other sellers keep their
+     * duration but change nothing.
+     * @param sellerId The seller identifier
+     * @return Scenario with the same timeline
+     */
+    public ChaosScenario forSeller(String sellerId) {
+        List<Phase> resolved = new ArrayList<>(phases.size());
+        for (Phase phase : phases) {
+            resolved.add(phase.appliesTo(sellerId) ? phase
+                : new Phase(phase.name, phase.durationMs, null, Collections.emptyMap(), false, true));
+        }
+        return new ChaosScenario(resolved);
+    }
+
+    /**
+     * Finds the phase in effect at an offset from the scenario start, starting the search
+     * at a hint so that lookups along a running clock stay constant time.
+     * @param offsetMs Milliseconds since the scenario started
+     * @param hint Index of the phase found last time, or 0
+     * @return Phase index, or the phase count once the scenario is over
+     */
+    int phaseIndexAt(long offsetMs, int hint) {
+        int index = Math.max(0, Math.min(hint, phaseEndOffsetsMs.length));
+        if (index > 0 && offsetMs < phaseEndOffsetsMs[index - 1]) {
+            index = 0; // Offset went backwards, e.g. a restarted clock
+        }
+        while (index < phaseEndOffsetsMs.length && offsetMs >= phaseEndOffsetsMs[index]) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Gets the phases in order.
+     * @return Unmodifiable list of phases
+     */
+    public List<Phase> getPhases() {
+        return phases;
+    }
+
+    /**
+     * Gets the total duration of all phases.
+     * @return Duration in milliseconds
+     */
+    public long getDurationMs() {
+        return phaseEndOffsetsMs[phaseEndOffsetsMs.length - 1];
+    }
+
+    /**
+     * One timed phase of a scenario.
+     */
+    public static final class Phase {
+        private final String name;
+        private final long durationMs;
+        private final Set<String> sellers;
+        private final Map<String, Double> probabilities;
+        private final boolean partitioned;
+        private final boolean patternsEnabled;
+
+        Phase(String name, long durationMs, Set<String> sellers, Map<String, Double> probabilities,
+              boolean partitioned, boolean patternsEnabled) {
+            this.name = name;
+            this.durationMs = durationMs;
+            this.sellers = sellers;
+            this.probabilities = probabilities;
+            this.partitioned = partitioned;
+            this.patternsEnabled = patternsEnabled;
+        }
+
+        /**
+         * Checks whether the phase applies to a seller.
+         * @param sellerId The seller identifier
+         * @return true if the phase names the seller or all sellers
+         */
+        public boolean appliesTo(String sellerId) {
+            return sellers == null || sellers.contains(sellerId);
+        }
+
+        /**
+         * Checks whether the phase injects any fault.
+         * @return true if it partitions or raises a probability above zero
+         */
+        public boolean isFaulty() {
+            return partitioned || probabilities.values().stream().anyMatch(probability -> probability > 0);
+        }
+
+        public String getName() { return name; }
+        public long getDurationMs() { return durationMs; }
+        public Map<String, Double> getProbabilities() { return Collections.unmodifiableMap(probabilities); }
+        public boolean isPartitioned() { return partitioned; }
+        public boolean isPatternsEnabled() { return patternsEnabled; }
+
+        /**
+         * Gets the probability of an operation type during the phase.
+         * @param operationType The operation type
+         * @param base Probability outside the scenario
+         * @return The overridden or the base probability
+         */
+        double probability(String operationType, double base) {
+            Double override = probabilities.get(operationType);
+            return override != null ? override : base;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + durationMs / 1000 + "s" + (sellers != null ? " on " + sellers : "") + ")";
+        }
+    }
+}
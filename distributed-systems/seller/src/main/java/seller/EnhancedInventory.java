@@ -1,10 +1,17 @@
 package seller;
 
+import common.Clock;
+import common.FlightEvents;
+import common.Log;
+import common.MetricsRegistry;
+import common.TimerService;
+import common.Tracer;
+
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -22,9 +29,11 @@ public class EnhancedInventory {
     private final Map<String, TimedReservation> reservations;
     private final AtomicInteger reservationCounter = new AtomicInteger(0);
     private final ReentrantReadWriteLock inventoryLock = new ReentrantReadWriteLock();
-    private final ScheduledExecutorService cleanupExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final TimerService.Timeout cleanupTimer;
     private final long reservationTimeoutMs;
     private final int cleanupIntervalSeconds;
+    private final MetricsRegistry.Histogram writeLockWaitMetric;
+    private final Clock clock;
     
     /**
      * Creates an enhanced inventory with default settings.
@@ -32,12 +41,30 @@ public class EnhancedInventory {
      * @param config Configuration properties
      */
     public EnhancedInventory(String sellerId, Properties config) {
+        this(sellerId, config, Clock.shared(), TimerService.shared(), ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Creates an enhanced inventory whose reservation expiry follows the given clock.
+     * @param sellerId The seller identifier
+     * @param config Configuration properties
+     * @param clock Clock for reservation expiry
+     * @param timer Timer that schedules the expiry cleanup
+     * @param cleanupExecutor Executor the cleanup runs on
+     */
+    public EnhancedInventory(String sellerId, Properties config, Clock clock, TimerService timer,
+                             Executor cleanupExecutor) {
         this.sellerId = sellerId;
+        this.clock = clock;
         this.stock = new ConcurrentHashMap<>();
         this.reservations = new ConcurrentHashMap<>();
         this.reservationTimeoutMs = Long.parseLong(config.getProperty("reservation.timeout.ms", "300000")); // 5 minutes
         this.cleanupIntervalSeconds = Integer.parseInt(config.getProperty("cleanup.interval.seconds", "60"));
         
+        MetricsRegistry.Family<MetricsRegistry.Histogram> lockWaitMetrics = MetricsRegistry.shared().histogramFamily(
+            "seller_inventory_lock_wait_seconds", "Time spent waiting for the inventory lock", "seller", "mode");
+        this.writeLockWaitMetric = lockWaitMetrics.labels(sellerId, "write");
+        
         // Initialize stock
         int initialStock = Integer.parseInt(config.getProperty("seller.inventory.size", "50"));
         for (int i = 1; i <= 3; i++) {
@@ -45,15 +72,16 @@ public class EnhancedInventory {
         }
         
         // Start cleanup task
-        cleanupExecutor.scheduleAtFixedRate(
+        this.cleanupTimer = timer.scheduleWithFixedDelay(
             this::cleanupExpiredReservations, 
             cleanupIntervalSeconds, 
             cleanupIntervalSeconds, 
-            TimeUnit.SECONDS
+            TimeUnit.SECONDS,
+            cleanupExecutor
         );
         
-        System.out.println("Enhanced inventory initialized for " + sellerId + 
-                         " with " + stock.size() + " products and " + reservationTimeoutMs + "ms reservation timeout");
+        Log.info("Enhanced inventory initialized for {} with {} products and {}ms reservation timeout",
+                 sellerId, stock.size(), reservationTimeoutMs);
     }
     
     /**
@@ -64,50 +92,66 @@ public class EnhancedInventory {
      */
     public String reserve(String productId, int quantity) {
         if (quantity <= 0) {
-            System.out.println("Invalid quantity: " + quantity);
+            Log.debug("Invalid quantity: {}", quantity);
             return null;
         }
         
+        FlightEvents.InventoryOperation event = new FlightEvents.InventoryOperation();
+        event.begin();
         Lock writeLock = inventoryLock.writeLock();
-        writeLock.lock();
+        long lockWaitNanos = lock(writeLock, writeLockWaitMetric);
+        long acquiredNanos = System.nanoTime();
+        String reservationId = null;
         try {
-            // Clean up expired reservations first
-            cleanupExpiredReservations();
-            
-            AtomicInteger available = stock.get(productId);
-            if (available == null) {
-                System.out.println("Product " + productId + " not found");
-                return null;
-            }
-            
-            int currentStock = available.get();
-            if (currentStock >= quantity) {
-                // Reduce stock atomically
-                int newStock = currentStock - quantity;
-                if (available.compareAndSet(currentStock, newStock)) {
-                    // Create reservation
-                    String reservationId = sellerId + "-R" + reservationCounter.incrementAndGet();
-                    long expiryTime = System.currentTimeMillis() + reservationTimeoutMs;
-                    TimedReservation reservation = new TimedReservation(
-                        reservationId, productId, quantity, expiryTime);
-                    reservations.put(reservationId, reservation);
-                    
-                    System.out.println("Reserved " + quantity + "x " + productId + 
-                                     " (ID: " + reservationId + ") - remaining stock: " + newStock);
-                    return reservationId;
-                } else {
-                    // Stock changed between check and update, retry
-                    System.out.println("Stock changed during reservation, retrying...");
-                    return reserve(productId, quantity);
-                }
-            }
-            
-            System.out.println("Insufficient stock for " + productId + ": " + currentStock + " < " + quantity);
-            return null;
-            
+            reservationId = reserveLocked(productId, quantity);
+            return reservationId;
         } finally {
             writeLock.unlock();
+            commitEvent(event, "reserve", productId, quantity, reservationId, reservationId != null,
+                        lockWaitNanos, acquiredNanos);
+        }
+    }
+    
+    private String reserveLocked(String productId, int quantity) {
+        AtomicInteger available = stock.get(productId);
+        if (available == null) {
+            Log.debug("Product {} not found", productId);
+            return null;
         }
+        
+        int currentStock = available.get();
+        // Expired reservations only matter when stock runs short; sweeping on every call
+        // would scan all reservations each time, including the confirmed ones that are kept
+        if (currentStock < quantity && cleanupExpiredReservations() > 0) {
+            currentStock = available.get();
+        }
+        if (currentStock >= quantity) {
+            // Reduce stock atomically
+            int newStock = currentStock - quantity;
+            if (available.compareAndSet(currentStock, newStock)) {
+                // Create reservation
+                String reservationId = sellerId + "-R" + reservationCounter.incrementAndGet();
+                long expiryTime = clock.millis() + reservationTimeoutMs;
+                TimedReservation reservation = new TimedReservation(
+                    reservationId, productId, quantity, expiryTime);
+                reservations.put(reservationId, reservation);
+                
+                if (Log.isDebugEnabled()) {
+                    Log.debug("Reserved " + quantity + "x " + productId + 
+                              " (ID: " + reservationId + ") - remaining stock: " + newStock);
+                }
+                return reservationId;
+            } else {
+                // Stock changed between check and update, retry
+                Log.debug("Stock changed during reservation, retrying...");
+                return reserveLocked(productId, quantity);
+            }
+        }
+        
+        if (Log.isDebugEnabled()) {
+            Log.debug("Insufficient stock for {}: {} < {}", productId, currentStock, quantity);
+        }
+        return null;
     }
     
     /**
@@ -116,28 +160,38 @@ public class EnhancedInventory {
      * @return true if confirmation was successful
      */
     public boolean confirm(String reservationId) {
+        FlightEvents.InventoryOperation event = new FlightEvents.InventoryOperation();
+        event.begin();
         Lock writeLock = inventoryLock.writeLock();
-        writeLock.lock();
+        long lockWaitNanos = lock(writeLock, writeLockWaitMetric);
+        long acquiredNanos = System.nanoTime();
+        boolean confirmed = false;
         try {
-            TimedReservation reservation = reservations.get(reservationId);
-            if (reservation != null && !reservation.isExpired() && !reservation.isConfirmed()) {
-                reservation.setConfirmed(true);
-                System.out.println("Confirmed reservation: " + reservationId);
-                return true;
-            }
-            
-            if (reservation == null) {
-                System.out.println("Reservation not found: " + reservationId);
-            } else if (reservation.isExpired()) {
-                System.out.println("Reservation expired: " + reservationId);
-            } else if (reservation.isConfirmed()) {
-                System.out.println("Reservation already confirmed: " + reservationId);
-            }
-            
-            return false;
+            confirmed = confirmLocked(reservationId);
+            return confirmed;
         } finally {
             writeLock.unlock();
+            commitEvent(event, "confirm", null, 0, reservationId, confirmed, lockWaitNanos, acquiredNanos);
+        }
+    }
+    
+    private boolean confirmLocked(String reservationId) {
+        TimedReservation reservation = reservations.get(reservationId);
+        if (reservation != null && !reservation.isExpired(clock.millis()) && !reservation.isConfirmed()) {
+            reservation.setConfirmed(true);
+            Log.debug("Confirmed reservation: {}", reservationId);
+            return true;
         }
+        
+        if (reservation == null) {
+            Log.debug("Reservation not found: {}", reservationId);
+        } else if (reservation.isExpired(clock.millis())) {
+            Log.debug("Reservation expired: {}", reservationId);
+        } else if (reservation.isConfirmed()) {
+            Log.debug("Reservation already confirmed: {}", reservationId);
+        }
+        
+        return false;
     }
     
     /**
@@ -146,85 +200,89 @@ public class EnhancedInventory {
      * @return true if cancellation was successful
      */
     public boolean cancel(String reservationId) {
+        FlightEvents.InventoryOperation event = new FlightEvents.InventoryOperation();
+        event.begin();
         Lock writeLock = inventoryLock.writeLock();
-        writeLock.lock();
+        long lockWaitNanos = lock(writeLock, writeLockWaitMetric);
+        long acquiredNanos = System.nanoTime();
+        boolean cancelled = false;
         try {
-            TimedReservation reservation = reservations.remove(reservationId);
-            if (reservation != null && !reservation.isConfirmed()) {
-                // Return stock to inventory
-                AtomicInteger available = stock.get(reservation.getProductId());
-                if (available != null) {
-                    int newStock = available.addAndGet(reservation.getQuantity());
-                    System.out.println("Cancelled reservation: " + reservationId + 
-                                     " - returned " + reservation.getQuantity() + "x " + 
-                                     reservation.getProductId() + " - new stock: " + newStock);
-                }
-                return true;
-            }
-            
-            if (reservation == null) {
-                System.out.println("Reservation not found for cancellation: " + reservationId);
-            } else if (reservation.isConfirmed()) {
-                System.out.println("Cannot cancel confirmed reservation: " + reservationId);
-            }
-            
-            return false;
+            cancelled = cancelLocked(reservationId);
+            return cancelled;
         } finally {
             writeLock.unlock();
+            commitEvent(event, "cancel", null, 0, reservationId, cancelled, lockWaitNanos, acquiredNanos);
+        }
+    }
+    
+    private boolean cancelLocked(String reservationId) {
+        TimedReservation reservation = reservations.remove(reservationId);
+        if (reservation != null && !reservation.isConfirmed()) {
+            // Return stock to inventory
+            AtomicInteger available = stock.get(reservation.getProductId());
+            if (available != null) {
+                int newStock = available.addAndGet(reservation.getQuantity());
+                if (Log.isDebugEnabled()) {
+                    Log.debug("Cancelled reservation: " + reservationId + 
+                              " - returned " + reservation.getQuantity() + "x " + 
+                              reservation.getProductId() + " - new stock: " + newStock);
+                }
+            }
+            return true;
+        }
+        
+        if (reservation == null) {
+            Log.debug("Reservation not found for cancellation: {}", reservationId);
+        } else if (reservation.isConfirmed()) {
+            Log.debug("Cannot cancel confirmed reservation: {}", reservationId);
         }
+        
+        return false;
     }
     
     /**
-     * Gets current inventory status.
+     * Gets current inventory status. Reads the concurrent stock map without the inventory lock,
+     * so monitoring never waits behind reservations; a reserve running at the same time may or
+     * may not be reflected.
      * @return Map of product IDs to available quantities
      */
     public Map<String, Integer> getInventoryStatus() {
-        Lock readLock = inventoryLock.readLock();
-        readLock.lock();
-        try {
-            Map<String, Integer> status = new HashMap<>();
-            for (Map.Entry<String, AtomicInteger> entry : stock.entrySet()) {
-                status.put(entry.getKey(), entry.getValue().get());
-            }
-            return status;
-        } finally {
-            readLock.unlock();
+        Map<String, Integer> status = new HashMap<>();
+        for (Map.Entry<String, AtomicInteger> entry : stock.entrySet()) {
+            status.put(entry.getKey(), entry.getValue().get());
         }
+        return status;
     }
     
     /**
-     * Gets current reservation status.
+     * Gets current reservation status. Like {@link #getInventoryStatus()} this is a lock-free,
+     * weakly consistent snapshot.
      * @return Map of reservation information
      */
     public Map<String, Object> getReservationStatus() {
-        Lock readLock = inventoryLock.readLock();
-        readLock.lock();
-        try {
-            Map<String, Object> status = new HashMap<>();
-            status.put("totalReservations", reservations.size());
-            
-            int activeReservations = 0;
-            int expiredReservations = 0;
-            int confirmedReservations = 0;
-            
-            for (TimedReservation reservation : reservations.values()) {
-                if (reservation.isConfirmed()) {
-                    confirmedReservations++;
-                } else if (reservation.isExpired()) {
-                    expiredReservations++;
-                } else {
-                    activeReservations++;
-                }
+        Map<String, Object> status = new HashMap<>();
+        
+        int activeReservations = 0;
+        int expiredReservations = 0;
+        int confirmedReservations = 0;
+        long now = clock.millis();
+        
+        for (TimedReservation reservation : reservations.values()) {
+            if (reservation.isConfirmed()) {
+                confirmedReservations++;
+            } else if (reservation.isExpired(now)) {
+                expiredReservations++;
+            } else {
+                activeReservations++;
             }
-            
-            status.put("activeReservations", activeReservations);
-            status.put("expiredReservations", expiredReservations);
-            status.put("confirmedReservations", confirmedReservations);
-            
-            return status;
-        } finally {
-            readLock.unlock();
         }
+        
+        status.put("totalReservations", activeReservations + expiredReservations + confirmedReservations);
+        status.put("activeReservations", activeReservations);
+        status.put("expiredReservations", expiredReservations);
+        status.put("confirmedReservations", confirmedReservations);
+        
+        return status;
     }
     
     /**
@@ -240,21 +298,58 @@ public class EnhancedInventory {
         return sb.toString().trim();
     }
     
+    /**
+     * Acquires a lock and records how long the caller waited for it, in the metrics and
+     * as an inventory.lock.wait span under the request being traced on this thread.
+     * @return Time spent waiting in nanoseconds
+     */
+    private static long lock(Lock lock, MetricsRegistry.Histogram waitMetric) {
+        long startNanos = System.nanoTime();
+        lock.lock();
+        long endNanos = System.nanoTime();
+        waitMetric.recordNanos(endNanos - startNanos);
+        Tracer.currentSpan().recordChild("inventory.lock.wait", startNanos, endNanos);
+        return endNanos - startNanos;
+    }
+    
+    /**
+     * Ends and commits an inventory operation event if the recording wants it.
+     * Called after the lock is released so the hold time covers the whole critical section.
+     */
+    private void commitEvent(FlightEvents.InventoryOperation event, String operation, String productId,
+                             int quantity, String reservationId, boolean success,
+                             long lockWaitNanos, long acquiredNanos) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.seller = sellerId;
+            event.operation = operation;
+            event.productId = productId;
+            event.quantity = quantity;
+            event.reservationId = reservationId;
+            event.success = success;
+            event.lockWait = lockWaitNanos;
+            event.lockHold = System.nanoTime() - acquiredNanos;
+            event.commit();
+        }
+    }
+    
     /**
      * Cleans up expired reservations and returns stock to inventory.
+     * @return Number of reservations cleaned up
      */
-    private void cleanupExpiredReservations() {
+    private int cleanupExpiredReservations() {
         Lock writeLock = inventoryLock.writeLock();
-        writeLock.lock();
+        lock(writeLock, writeLockWaitMetric);
         try {
             Iterator<Map.Entry<String, TimedReservation>> iterator = reservations.entrySet().iterator();
             int cleanedCount = 0;
+            long now = clock.millis();
             
             while (iterator.hasNext()) {
                 Map.Entry<String, TimedReservation> entry = iterator.next();
                 TimedReservation reservation = entry.getValue();
                 
-                if (reservation.isExpired() && !reservation.isConfirmed()) {
+                if (reservation.isExpired(now) && !reservation.isConfirmed()) {
                     // Return stock to inventory
                     AtomicInteger available = stock.get(reservation.getProductId());
                     if (available != null) {
@@ -266,30 +361,24 @@ public class EnhancedInventory {
             }
             
             if (cleanedCount > 0) {
-                System.out.println("Cleaned up " + cleanedCount + " expired reservations");
+                Log.info("Cleaned up {} expired reservations", cleanedCount);
             }
+            return cleanedCount;
         } finally {
             writeLock.unlock();
         }
     }
     
     /**
-     * Shuts down the inventory cleanup executor.
+     * Stops the periodic cleanup.
      */
     public void shutdown() {
-        cleanupExecutor.shutdown();
-        try {
-            // Final cleanup before shutdown
-            cleanupExpiredReservations();
-            
-            if (!cleanupExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                cleanupExecutor.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+        cleanupTimer.cancel();
+        
+        // Final cleanup before shutdown
+        cleanupExpiredReservations();
         
-        System.out.println("Enhanced inventory shut down for " + sellerId);
+        Log.info("Enhanced inventory shut down for {}", sellerId);
     }
     
     /**
@@ -309,8 +398,8 @@ public class EnhancedInventory {
             this.expiryTime = expiryTime;
         }
         
-        public boolean isExpired() {
-            return System.currentTimeMillis() > expiryTime;
+        public boolean isExpired(long nowMillis) {
+            return nowMillis > expiryTime;
         }
         
         // Getters and setters
@@ -323,8 +412,8 @@ public class EnhancedInventory {
         
         @Override
         public String toString() {
-            return String.format("TimedReservation{id='%s', productId='%s', quantity=%d, confirmed=%s, expired=%s}", 
-                               id, productId, quantity, confirmed, isExpired());
+            return String.format("TimedReservation{id='%s', productId='%s', quantity=%d, confirmed=%s, expiryTime=%d}", 
+                               id, productId, quantity, confirmed, expiryTime);
         }
     }
 }
\ No newline at end of file
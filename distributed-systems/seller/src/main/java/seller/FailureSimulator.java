@@ -1,10 +1,12 @@
 package seller;
 
+import common.RandomSource;
+
 import java.util.Properties;
 import java.util.Random;
 
 public class FailureSimulator {
-    private final Random random = new Random();
+    private final Random random = RandomSource.create("failure-simulator");
     private final double noResponseProbability;
     private final double processingFailureProbability;
     private final double outOfStockProbability;
@@ -4,13 +4,24 @@ import org.zeromq.SocketType;
 import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
 
+import common.AdminHttpServer;
+import common.Clock;
+import common.ConsistentHashRing;
 import common.IdempotencyManager;
 import common.JsonParser;
+import common.Log;
 import common.Message;
+import common.MetricsHttpServer;
+import common.MetricsRegistry;
+import common.RandomSource;
+import common.TimerService;
+import common.Tracer;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 
 public class SellerApp {
@@ -21,21 +32,126 @@ public class SellerApp {
     private EnhancedInventory inventory;
     private AdvancedFailureSimulator failureSimulator;
     private IdempotencyManager idempotencyManager;
+    // Failure replies, kept only to answer hedged duplicates; retries still run again
+    private IdempotencyManager failedRequests;
+    private long heartbeatIntervalMs;
+    private MetricsHttpServer metricsServer;
+    private AdminHttpServer adminServer;
+    private MetricsRegistry.Histogram processingMetric;
+    private final Clock clock = Clock.shared();
+    private volatile long processingDelayMs;
+    
+    // Credit-based flow control: the window advertised to the marketplace
+    private volatile int maxCredits;
+    private volatile long creditTargetLatencyMs;
+    private volatile double avgProcessingMs;
 
     private volatile boolean running = false;
     
-    public SellerApp() {
-        this.sellerId = System.getenv().getOrDefault("SELLER_ID", "seller1");
-        this.marketplaceEndpoint = System.getenv().getOrDefault("MARKETPLACE_ENDPOINT", "tcp://localhost:5555");
-        Properties config = loadConfig();
+    /**
+     * Creates a seller. Process-wide logging and tracing are left to the caller, so several
+     * sellers can share one JVM.
+     * @param sellerId Identity this seller registers with at the marketplace
+     * @param marketplaceEndpoint Endpoint of the marketplace's shard 0, e.g. tcp://host:5555
+     * @param config Configuration properties
+     */
+    public SellerApp(String sellerId, String marketplaceEndpoint, Properties config) {
+        this.sellerId = sellerId;
+        this.marketplaceEndpoint = resolveShardEndpoint(marketplaceEndpoint,
+            Integer.parseInt(config.getProperty("marketplace.router.shards", "1")));
         this.inventory = new EnhancedInventory(sellerId, config);
-        this.failureSimulator = new AdvancedFailureSimulator(config);
-        this.idempotencyManager = new IdempotencyManager();
+        this.failureSimulator = new AdvancedFailureSimulator(sellerId, config, clock,
+            RandomSource.create("failure-simulator-" + sellerId));
+        this.idempotencyManager = new IdempotencyManager(sellerId);
+        this.failedRequests = new IdempotencyManager(sellerId + "-failed",
+            Long.parseLong(config.getProperty("seller.failed.reply.retention.ms", "60000")), TimerService.shared());
+        this.heartbeatIntervalMs = Long.parseLong(config.getProperty("seller.heartbeat.interval.ms", "30000"));
+        this.maxCredits = Integer.parseInt(config.getProperty("seller.credits.max", "16"));
+        this.creditTargetLatencyMs = Long.parseLong(config.getProperty("seller.credits.target.latency.ms", "2000"));
+        this.processingDelayMs = Long.parseLong(config.getProperty("seller.processing.delay.ms", "200"));
+        this.avgProcessingMs = processingDelayMs;
+        this.processingMetric = MetricsRegistry.shared().histogramFamily("seller_request_processing_seconds",
+            "Time to process a marketplace request, including simulated delays", "seller").labels(sellerId);
+        if (Boolean.parseBoolean(config.getProperty("metrics.enabled", "false"))) {
+            this.metricsServer = new MetricsHttpServer(config, MetricsRegistry.shared());
+        }
+        if (Boolean.parseBoolean(config.getProperty("admin.enabled", "false"))) {
+            this.adminServer = createAdminServer(config);
+        }
+    }
+    
+    /**
+     * Creates the admin endpoint with the seller's status sections and tunable settings.
+     */
+    private AdminHttpServer createAdminServer(Properties config) {
+        AdminHttpServer admin = new AdminHttpServer(config, sellerId);
+        admin.addStatus("inventory", inventory::getInventoryStatus);
+        admin.addStatus("reservations", inventory::getReservationStatus);
+        admin.addStatus("failureSimulator", () -> {
+            Map<String, Object> stats = failureSimulator.getStats();
+            stats.put("probabilities", failureSimulator.getFailureProbabilities());
+            return stats;
+        });
+        admin.addStatus("idempotency", () -> Map.of("processedMessages", idempotencyManager.getProcessedMessageCount()));
+        admin.addStatus("credits", () -> {
+            Map<String, Object> credits = new LinkedHashMap<>();
+            credits.put("advertised", currentCredits());
+            credits.put("max", maxCredits);
+            credits.put("targetLatencyMs", creditTargetLatencyMs);
+            credits.put("avgProcessingMs", avgProcessingMs);
+            return credits;
+        });
+        
+        admin.addSetting("seller.processing.delay.ms", () -> processingDelayMs,
+                         value -> processingDelayMs = parseNonNegative(value));
+        admin.addSetting("seller.credits.max", () -> maxCredits,
+                         value -> maxCredits = (int) Math.max(1, parseNonNegative(value)));
+        admin.addSetting("seller.credits.target.latency.ms", () -> creditTargetLatencyMs,
+                         value -> creditTargetLatencyMs = parseNonNegative(value));
+        AdvancedFailureSimulator.PROBABILITY_KEYS.forEach((operationType, key) ->
+            admin.addSetting(key, () -> failureSimulator.getFailureProbabilities().get(operationType),
+                             value -> failureSimulator.setFailureProbability(operationType, Double.parseDouble(value.trim()))));
+        return admin;
+    }
+    
+    private static long parseNonNegative(String value) {
+        long parsed = Long.parseLong(value.trim());
+        if (parsed < 0) {
+            throw new IllegalArgumentException("must not be negative");
+        }
+        return parsed;
+    }
+    
+    /**
+     * Maps the marketplace base endpoint to the ROUTER shard this seller is assigned to.
+     * The marketplace binds shard i on base port + i and routes by the same hash ring.
+     * @param baseEndpoint Endpoint of shard 0, e.g. tcp://host:5555
+     * @param shardCount Number of ROUTER shards the marketplace runs
+     * @return Endpoint of this seller's shard
+     */
+    private String resolveShardEndpoint(String baseEndpoint, int shardCount) {
+        if (shardCount <= 1) {
+            return baseEndpoint;
+        }
+        int portSeparator = baseEndpoint.lastIndexOf(':');
+        int basePort = Integer.parseInt(baseEndpoint.substring(portSeparator + 1));
+        int shard = new ConsistentHashRing(shardCount).shardFor(sellerId);
+        return baseEndpoint.substring(0, portSeparator + 1) + (basePort + shard);
     }
     
     public static void main(String[] args) {
         System.out.println("Starting Seller...");
-        new SellerApp().run();
+        String sellerId = System.getenv().getOrDefault("SELLER_ID", "seller1");
+        Properties config = loadConfig();
+        String shards = System.getenv("MARKETPLACE_SHARDS");
+        if (shards != null) {
+            config.setProperty("marketplace.router.shards", shards);
+        }
+        Log.configure(config);
+        RandomSource.configure(config);
+        Tracer.configure(config, sellerId);
+        new SellerApp(sellerId, System.getenv().getOrDefault("MARKETPLACE_ENDPOINT", "tcp://localhost:5555"), 
+                      config).run();
     }
     
     public void run() {
@@ -44,6 +160,21 @@ public class SellerApp {
         
         running = true;
         
+        if (metricsServer != null) {
+            try {
+                metricsServer.start();
+            } catch (IOException e) {
+                System.err.println("Could not start metrics endpoint: " + e.getMessage());
+            }
+        }
+        if (adminServer != null) {
+            try {
+                adminServer.start();
+            } catch (IOException e) {
+                System.err.println("Could not start admin endpoint: " + e.getMessage());
+            }
+        }
+        
         try (ZContext context = new ZContext()) {
             // Use DEALER socket instead of REP for proper identity routing
             ZMQ.Socket dealerSocket = context.createSocket(SocketType.DEALER);
@@ -64,8 +195,10 @@ public class SellerApp {
                     }
                 }
                 
-                // Send heartbeat periodically
-                sendHeartbeat(dealerSocket);
+                // Send heartbeat periodically, unless a chaos scenario has cut this seller off
+                if (!failureSimulator.isPartitioned()) {
+                    sendHeartbeat(dealerSocket);
+                }
             }
             
             poller.close();
@@ -83,29 +216,63 @@ public class SellerApp {
             byte[] empty = dealerSocket.recv();
             byte[] messageBytes = dealerSocket.recv();
             
-            if (messageBytes != null) {
+            if (messageBytes != null && failureSimulator.isPartitioned()) {
+                Log.debug("Dropping request while partitioned");
+            } else if (messageBytes != null) {
                 String jsonRequest = new String(messageBytes, ZMQ.CHARSET);
-                System.out.println("\nReceived request: " + jsonRequest);
+                Log.debug("Received request: {}", jsonRequest);
                 
-                String jsonResponse = processRequest(jsonRequest);
+                long startNanos = System.nanoTime();
+                String jsonResponse = advertiseCredits(processRequest(jsonRequest));
+                long processingNanos = System.nanoTime() - startNanos;
+                recordProcessingTime(processingNanos);
+                processingMetric.recordNanos(processingNanos);
                 
                 // Send response back [empty, response]
                 dealerSocket.send("", ZMQ.SNDMORE);
                 dealerSocket.send(jsonResponse.getBytes(ZMQ.CHARSET), 0);
             }
         } catch (Exception e) {
-            System.err.println("Error processing message: " + e.getMessage());
+            Log.error("Error processing message: {}", e.getMessage());
         }
     }
     
+    /**
+     * Gets the number of outstanding requests this seller can absorb while keeping queueing
+     * delay under the target latency. The loop handles one request at a time, so that is the
+     * target divided by the recent average processing time.
+     */
+    private int currentCredits() {
+        int credits = (int) (creditTargetLatencyMs / Math.max(1.0, avgProcessingMs));
+        return Math.max(1, Math.min(maxCredits, credits));
+    }
+    
+    private void recordProcessingTime(long nanos) {
+        avgProcessingMs = 0.8 * avgProcessingMs + 0.2 * (nanos / 1_000_000.0);
+    }
+    
+    /**
+     * Adds the current credit window to an outgoing response. Done on the way out rather than
+     * in processRequest so that responses replayed from the idempotency cache carry fresh credits.
+     */
+    private String advertiseCredits(String jsonResponse) {
+        if (!jsonResponse.endsWith("}")) {
+            return jsonResponse;
+        }
+        String separator = jsonResponse.length() > 2 ? "," : "";
+        return jsonResponse.substring(0, jsonResponse.length() - 1) + separator + 
+               "\"credits\":\"" + currentCredits() + "\"}";
+    }
+    
     private long lastHeartbeat = 0;
     private void sendHeartbeat(ZMQ.Socket dealerSocket) {
-        long now = System.currentTimeMillis();
-        if (now - lastHeartbeat > 30000) { // Send heartbeat every 30 seconds
+        long now = clock.millis();
+        if (now - lastHeartbeat > heartbeatIntervalMs) {
             try {
                 Message heartbeat = new Message();
                 heartbeat.setType(Message.Type.HEARTBEAT);
                 heartbeat.setSenderId(sellerId);
+                heartbeat.setCredits(currentCredits());
                 
                 String heartbeatJson = JsonParser.toJson(heartbeat);
                 dealerSocket.send("", ZMQ.SNDMORE);
@@ -113,12 +280,13 @@ public class SellerApp {
                 
                 lastHeartbeat = now;
             } catch (Exception e) {
-                System.err.println("Error sending heartbeat: " + e.getMessage());
+                Log.warn("Error sending heartbeat: {}", e.getMessage());
             }
         }
     }
     
     private String processRequest(String jsonRequest) {
+        Tracer.Span span = Tracer.NOOP_SPAN;
         try {
             Message request = JsonParser.fromJson(jsonRequest);
             
@@ -133,55 +301,75 @@ public class SellerApp {
                 return JsonParser.toJson(response);
             }
             
+            // Continue the marketplace's trace; the inventory records its lock waits under this span
+            span = Tracer.shared().startSpan("seller.request", request)
+                .tag("seller", sellerId).tag("type", request.getType());
+            Tracer.setCurrentSpan(span);
+            
             // Check for idempotency - if we already processed this message, return cached result
             if (request.getMessageId() != null && idempotencyManager.isAlreadyProcessed(request.getMessageId())) {
-                System.out.println("Request " + request.getMessageId() + " already processed, returning cached result");
+                Log.debug("Request {} already processed, returning cached result", request.getMessageId());
+                span.tag("result", "cached");
                 return idempotencyManager.getProcessedResult(request.getMessageId());
             }
+            // Requests are handled one at a time, so a hedge never overlaps its original. If the
+            // original failed, the marketplace has already taken that answer and would drop the
+            // hedge's reply, so running the operation now would only leave a stray reservation
+            if (request.isHedge() && request.getMessageId() != null &&
+                failedRequests.isAlreadyProcessed(request.getMessageId())) {
+                span.tag("result", "cached failure");
+                return failedRequests.getProcessedResult(request.getMessageId());
+            }
             
             // Check for various failure scenarios
             AdvancedFailureSimulator.FailureDecision noResponseDecision = 
                 failureSimulator.shouldSimulateFailure("no_response");
             if (noResponseDecision.shouldFail()) {
-                System.out.println("Simulating no response: " + noResponseDecision.getReason());
+                Log.info("Simulating no response: {}", noResponseDecision.getReason());
+                span.tag("result", "simulated no_response");
                 Message response = new Message();
                 response.setSuccess(false);
                 response.setReason(noResponseDecision.getReason());
                 response.setCorrelationId(request.getCorrelationId());
                 response.setMessageId(request.getMessageId());
-                return JsonParser.toJson(response);
+                return rememberFailure(request, JsonParser.toJson(response));
             }
             
             // Check for slow response simulation
             AdvancedFailureSimulator.FailureDecision slowResponseDecision = 
                 failureSimulator.shouldSimulateFailure("slow_response");
             if (slowResponseDecision.shouldFail()) {
-                System.out.println("Simulating slow response: " + slowResponseDecision.getReason());
+                Log.info("Simulating slow response: {}", slowResponseDecision.getReason());
+                long delayStartNanos = System.nanoTime();
                 try {
                     Thread.sleep(slowResponseDecision.getDelayMs());
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                 }
+                span.recordChild("seller.slow_response", delayStartNanos, System.nanoTime());
             } else {
                 // Normal processing delay
+                long delayStartNanos = System.nanoTime();
                 try {
-                    Thread.sleep(Integer.parseInt(loadConfig().getProperty("seller.processing.delay.ms", "200")));
+                    Thread.sleep(processingDelayMs);
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                 }
+                span.recordChild("seller.processing.delay", delayStartNanos, System.nanoTime());
             }
             
             // Check for processing failure
             AdvancedFailureSimulator.FailureDecision processingFailureDecision = 
                 failureSimulator.shouldSimulateFailure("processing_failure");
             if (processingFailureDecision.shouldFail()) {
-                System.out.println("Simulating processing failure: " + processingFailureDecision.getReason());
+                Log.info("Simulating processing failure: {}", processingFailureDecision.getReason());
+                span.tag("result", "simulated processing_failure");
                 Message response = new Message();
                 response.setSuccess(false);
                 response.setReason(processingFailureDecision.getReason());
                 response.setCorrelationId(request.getCorrelationId());
                 response.setMessageId(request.getMessageId());
-                return JsonParser.toJson(response);
+                return rememberFailure(request, JsonParser.toJson(response));
             }
             
             // Process based on message type
@@ -220,17 +408,34 @@ public class SellerApp {
             if (response != null && response.isSuccess()) {
                 failureSimulator.reportSuccess();
             }
+            span.tag("result", response != null && response.isSuccess() ? "success" : "failure");
             
             return responseJson;
             
         } catch (Exception e) {
-            System.err.println("Error processing request: " + e.getMessage());
+            Log.error("Error processing request: {}", e.getMessage());
             e.printStackTrace();
+            span.error(e);
             Message errorResponse = createErrorResponse("Internal processing error: " + e.getMessage());
             return JsonParser.toJson(errorResponse);
+        } finally {
+            Tracer.setCurrentSpan(null);
+            span.end();
         }
     }
     
+    /**
+     * Remembers a simulated failure reply so that a hedged duplicate of the request gets the
+     * same answer instead of running the operation.
+     * @return The reply
+     */
+    private String rememberFailure(Message request, String responseJson) {
+        if (request.getMessageId() != null) {
+            failedRequests.markAsProcessed(request.getMessageId(), responseJson);
+        }
+        return responseJson;
+    }
+    
     private Message handleReserve(Message request) {
         Message response = new Message();
         response.setType(Message.Type.RESERVE);
@@ -243,7 +448,7 @@ public class SellerApp {
         AdvancedFailureSimulator.FailureDecision outOfStockDecision = 
             failureSimulator.shouldSimulateFailure("out_of_stock");
         if (outOfStockDecision.shouldFail()) {
-            System.out.println("Simulating out of stock: " + outOfStockDecision.getReason());
+            Log.info("Simulating out of stock: {}", outOfStockDecision.getReason());
             response.setSuccess(false);
             response.setReason(outOfStockDecision.getReason());
             return response;
@@ -254,12 +459,13 @@ public class SellerApp {
         if (reservationId != null) {
             response.setSuccess(true);
             response.setReservationId(reservationId);
-            System.out.println("Reserved: " + request.getQuantity() + "x " +
-                               request.getProductId() + " (ID: " + reservationId + ")");
+            if (Log.isDebugEnabled()) {
+                Log.debug("Reserved: {}x {} (ID: {})", request.getQuantity(), request.getProductId(), reservationId);
+            }
         } else {
             response.setSuccess(false);
             response.setReason("Insufficient stock");
-            System.out.println("Reservation failed: Insufficient stock");
+            Log.debug("Reservation failed: Insufficient stock");
         }
         
         return response;
@@ -274,10 +480,10 @@ public class SellerApp {
         response.setSuccess(confirmed);
         
         if (confirmed) {
-            System.out.println("Confirmed reservation: " + request.getReservationId());
+            Log.debug("Confirmed reservation: {}", request.getReservationId());
         } else {
             response.setReason("Reservation not found or already confirmed");
-            System.out.println("Confirmation failed: " + response.getReason());
+            Log.debug("Confirmation failed: {}", response.getReason());
         }
         
         return response;
@@ -292,10 +498,10 @@ public class SellerApp {
         response.setSuccess(cancelled);
         
         if (cancelled) {
-            System.out.println("Cancelled reservation: " + request.getReservationId());
+            Log.debug("Cancelled reservation: {}", request.getReservationId());
         } else {
             response.setReason("Reservation not found or already cancelled/confirmed");
-            System.out.println("Cancellation failed: " + response.getReason());
+            Log.debug("Cancellation failed: {}", response.getReason());
         }
         
         return response;
@@ -308,7 +514,7 @@ public class SellerApp {
         return response;
     }
     
-    private Properties loadConfig() {
+    private static Properties loadConfig() {
         Properties props = new Properties();
         try (InputStream is = new FileInputStream(CONFIG_FILE)) {
             props.load(is);
@@ -323,14 +529,39 @@ public class SellerApp {
         return props;
     }
     
+    /**
+     * Starts the failure scenario, if one is configured, at a given time, so that several
+     * sellers play their phases in step.
+     * @param startMs Scenario start in epoch milliseconds
+     */
+    public void startFailureScenario(long startMs) {
+        failureSimulator.startScenario(startMs);
+    }
+    
+    /**
+     * Stops the request loop; {@link #run} then releases the seller's resources and returns.
+     */
+    public void stop() {
+        running = false;
+    }
+    
     public void shutdown() {
         running = false;
         if (idempotencyManager != null) {
             idempotencyManager.shutdown();
         }
+        if (failedRequests != null) {
+            failedRequests.shutdown();
+        }
         if (inventory != null) {
             inventory.shutdown();
         }
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        if (adminServer != null) {
+            adminServer.stop();
+        }
         System.out.println("Seller " + sellerId + " shutting down...");
     }
 }
\ No newline at end of file
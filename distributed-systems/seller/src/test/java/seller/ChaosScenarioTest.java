@@ -0,0 +1,89 @@
+package seller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for the chaos scenario file format and the phase timeline.
+ */
+class ChaosScenarioTest {
+    private static final List<String> SCENARIO = Arrays.asList(
+        "# name|duration seconds|sellers|settings",
+        "baseline|60|*|",
+        "",
+        "slow-seller3|30|seller3|slow_response=0.4, patterns=false",
+        "partition|30|seller4, seller5|partition=true",
+        "recovery|60|*");
+
+    @Test
+    void parsesPhasesInOrder() {
+        ChaosScenario scenario = ChaosScenario.parse(SCENARIO);
+
+        List<ChaosScenario.Phase> phases = scenario.getPhases();
+        assertEquals(4, phases.size());
+        assertEquals("slow-seller3", phases.get(1).getName());
+        assertEquals(30_000, phases.get(1).getDurationMs());
+        assertEquals(0.4, phases.get(1).getProbabilities().get("slow_response"), 1e-9);
+        assertFalse(phases.get(1).isPatternsEnabled());
+        assertTrue(phases.get(2).isPartitioned());
+        assertTrue(phases.get(2).appliesTo("seller5"));
+        assertFalse(phases.get(2).appliesTo("seller3"));
+        assertFalse(phases.get(3).isFaulty());
+        assertEquals(180_000, scenario.getDurationMs());
+    }
+
+    @Test
+    void sellerViewKeepsTheTimelineButNeutralisesOtherSellersPhases() {
+        ChaosScenario scenario = ChaosScenario.parse(SCENARIO).forSeller("seller3");
+
+        List<ChaosScenario.Phase> phases = scenario.getPhases();
+        assertEquals(4, phases.size());
+        assertTrue(phases.get(1).isFaulty());
+        assertFalse(phases.get(2).isFaulty());
+        assertEquals(30_000, phases.get(2).getDurationMs());
+        assertEquals(180_000, scenario.getDurationMs());
+    }
+
+    @Test
+    void findsThePhaseForAnOffset() {
+        ChaosScenario scenario = ChaosScenario.parse(SCENARIO);
+
+        assertEquals(0, scenario.phaseIndexAt(0, 0));
+        assertEquals(0, scenario.phaseIndexAt(59_999, 0));
+        assertEquals(1, scenario.phaseIndexAt(60_000, 0));
+        assertEquals(2, scenario.phaseIndexAt(95_000, 1));
+        assertEquals(4, scenario.phaseIndexAt(180_000, 3));
+        // A hint past the offset, e.g. after the clock went backwards
+        assertEquals(0, scenario.phaseIndexAt(10_000, 3));
+    }
+
+    @Test
+    void rejectsMalformedLinesWithTheirLineNumber() {
+        assertMalformed("line 2", "# header", "broken|60");
+        assertMalformed("duration", "zero|0|*|");
+        assertMalformed("line 1", "nan|soon|*|");
+        assertMalformed("unknown setting", "typo|10|*|slow_respone=0.5");
+        assertMalformed("between 0 and 1", "high|10|*|corruption=1.5");
+        assertMalformed("key=value", "flag|10|*|partition");
+        assertMalformed("expected name|duration", "extra|10|*||more");
+    }
+
+    @Test
+    void rejectsAScenarioWithoutPhases() {
+        assertThrows(IllegalArgumentException.class, () -> ChaosScenario.parse(Collections.singletonList("# only a comment")));
+    }
+
+    private static void assertMalformed(String expectedMessagePart, String... lines) {
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                                                      () -> ChaosScenario.parse(Arrays.asList(lines)));
+        assertTrue(error.getMessage().contains(expectedMessagePart), error.getMessage());
+    }
+}